@@ -0,0 +1,87 @@
+package org.moviesystem.back;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.eclipse.persistence.internal.weaving.PersistenceWeaved;
+import org.moviesystem.back.model.Color;
+import org.moviesystem.back.model.Coordinates;
+import org.moviesystem.back.model.Country;
+import org.moviesystem.back.model.Location;
+import org.moviesystem.back.model.Movie;
+import org.moviesystem.back.model.MovieGenre;
+import org.moviesystem.back.model.MpaaRating;
+import org.moviesystem.back.model.Person;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * База H2 в памяти для бенчмарков: единица persistence "benchmark"
+ * (src/jmh/resources/META-INF/persistence.xml) и фильмы со случайными полями.
+ * Если классы сущностей не связаны (./gradlew jmh -PjmhUnwoven), берется единица
+ * "benchmark-unwoven".
+ */
+public final class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * @param properties дополнительные свойства единицы persistence
+     */
+    public static EntityManagerFactory create(int movies, Map<String, Object> properties) {
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory(
+            woven() ? "benchmark" : "benchmark-unwoven", properties);
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            Random random = new Random(42);
+            for (int i = 0; i < movies; i++) {
+                entityManager.persist(movie(i, random));
+            }
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+        }
+        // Разделяемый кеш заполнен при вставке; бенчмарки читают из базы
+        factory.getCache().evictAll();
+        return factory;
+    }
+
+    /**
+     * Классы сущностей прошли статическое связывание (weaveEntities).
+     */
+    public static boolean woven() {
+        return PersistenceWeaved.class.isAssignableFrom(Movie.class);
+    }
+
+    private static Movie movie(int i, Random random) {
+        MovieGenre[] genres = MovieGenre.values();
+        MpaaRating[] ratings = MpaaRating.values();
+        return new Movie("Movie " + i,
+            new Coordinates(random.nextInt(1000), random.nextDouble() * 1000),
+            random.nextInt(12),
+            1_000_000.0 + random.nextInt(100_000_000),
+            1 + random.nextInt(1_000_000_000),
+            ratings[random.nextInt(ratings.length)],
+            person("Director " + i, random),
+            person("Screenwriter " + i, random),
+            person("Operator " + i, random),
+            60L + random.nextInt(150),
+            (long) random.nextInt(3),
+            genres[random.nextInt(genres.length)]);
+    }
+
+    private static Person person(String name, Random random) {
+        Color[] colors = Color.values();
+        Country[] countries = Country.values();
+        Person person = new Person(name, LocalDate.of(1950 + random.nextInt(50), 1 + random.nextInt(12), 1));
+        person.setEyeColor(colors[random.nextInt(colors.length)]);
+        person.setHairColor(colors[random.nextInt(colors.length)]);
+        person.setNationality(countries[random.nextInt(countries.length)]);
+        person.setLocation(new Location(random.nextInt(1000), random.nextInt(1000), random.nextDouble() * 1000));
+        return person;
+    }
+}
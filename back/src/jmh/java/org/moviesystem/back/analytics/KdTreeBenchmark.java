@@ -0,0 +1,104 @@
+package org.moviesystem.back.analytics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запросы /api/persons/nearest и /api/persons/within по {@link KdTree} против полного
+ * прохода по тем же точкам ({@link KdTree#nearestScan}, {@link KdTree#withinScan}).
+ *
+ * Точки равномерно распределены в кубе со стороной 2000; параллелепипед для within
+ * занимает 1% объема (сторона около 430), k - как по умолчанию в /api/persons/nearest.
+ * Цели запросов чередуются, чтобы не измерять один и тот же путь по дереву.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KdTreeBenchmark {
+
+    private static final int QUERIES = 1024;
+    private static final double SIDE = 2000;
+    private static final double BOX = SIDE * Math.cbrt(0.01);
+
+    @Param({"10000", "100000", "1000000"})
+    public int points;
+
+    @Param({"10"})
+    public int k;
+
+    private KdTree tree;
+    private double[][] targets;
+    private double[][] mins;
+    private double[][] maxs;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(50);
+        long[] ids = new long[points];
+        double[] coordinates = new double[points * 3];
+        for (int i = 0; i < points; i++) {
+            ids[i] = i + 1;
+            for (int axis = 0; axis < 3; axis++) {
+                coordinates[i * 3 + axis] = random.nextDouble() * SIDE - SIDE / 2;
+            }
+        }
+        tree = new KdTree(ids, coordinates);
+
+        targets = new double[QUERIES][3];
+        mins = new double[QUERIES][3];
+        maxs = new double[QUERIES][3];
+        for (int query = 0; query < QUERIES; query++) {
+            for (int axis = 0; axis < 3; axis++) {
+                targets[query][axis] = random.nextDouble() * SIDE - SIDE / 2;
+                mins[query][axis] = random.nextDouble() * (SIDE - BOX) - SIDE / 2;
+                maxs[query][axis] = mins[query][axis] + BOX;
+            }
+        }
+    }
+
+    @Benchmark
+    public long[] nearestTree() {
+        double[] target = targets[nextQuery()];
+        return tree.nearest(target[0], target[1], target[2], k);
+    }
+
+    @Benchmark
+    public long[] nearestScan() {
+        double[] target = targets[nextQuery()];
+        return tree.nearestScan(target[0], target[1], target[2], k);
+    }
+
+    @Benchmark
+    public long[] withinTree() {
+        int query = nextQuery();
+        return tree.within(mins[query], maxs[query]);
+    }
+
+    @Benchmark
+    public long[] withinScan() {
+        int query = nextQuery();
+        return tree.withinScan(mins[query], maxs[query]);
+    }
+
+    private int nextQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        return next;
+    }
+}
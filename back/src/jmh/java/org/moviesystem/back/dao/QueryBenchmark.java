@@ -0,0 +1,121 @@
+package org.moviesystem.back.dao;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Query;
+import org.moviesystem.back.BenchmarkDatabase;
+import org.moviesystem.back.model.MovieGenre;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сортированные запросы фильмов: JPQL, собираемый на каждый запрос (как было до
+ * {@link MovieQueryRegistry}), против именованных запросов из реестра.
+ *
+ * {@code variants} - сколько разных сортировок чередуется: 1 - одна строка JPQL,
+ * которая всегда лежит в кеше разбора EclipseLink; 100 - все варианты реестра
+ * (5 запросов x 10 полей x 2 направления), столько же, сколько записей в этом кеше.
+ * Методы create* измеряют только создание запроса, остальные - и выполнение в H2.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"1", "100"})
+    public int variants;
+
+    private EntityManagerFactory factory;
+    private EntityManager entityManager;
+    private final List<String[]> queries = new ArrayList<>();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        factory = BenchmarkDatabase.create(200, Map.of());
+        new MovieQueryRegistry().register(factory);
+        entityManager = factory.createEntityManager();
+        for (String base : MovieQueryRegistry.baseQueries()) {
+            for (String attribute : MovieQueryRegistry.sortAttributes()) {
+                for (String direction : new String[] {"ASC", "DESC"}) {
+                    queries.add(new String[] {base, attribute, direction});
+                }
+            }
+        }
+        queries.subList(variants, queries.size()).clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        entityManager.close();
+        factory.close();
+    }
+
+    @Benchmark
+    public List<?> dynamicJpql() {
+        String[] query = nextQuery();
+        return execute(query[0], entityManager.createQuery(MovieQueryRegistry.jpql(query[0], query[1], query[2])));
+    }
+
+    @Benchmark
+    public List<?> namedQuery() {
+        String[] query = nextQuery();
+        return execute(query[0], entityManager.createNamedQuery(MovieQueryRegistry.queryName(query[0], query[1], query[2])));
+    }
+
+    /**
+     * Только создание запроса, без выполнения: разбор JPQL (или поиск в кеше разбора)
+     * против клонирования готового именованного запроса.
+     */
+    @Benchmark
+    public Query createDynamicJpql() {
+        String[] query = nextQuery();
+        return entityManager.createQuery(MovieQueryRegistry.jpql(query[0], query[1], query[2]));
+    }
+
+    @Benchmark
+    public Query createNamedQuery() {
+        String[] query = nextQuery();
+        return entityManager.createNamedQuery(MovieQueryRegistry.queryName(query[0], query[1], query[2]));
+    }
+
+    private String[] nextQuery() {
+        String[] query = queries.get(next);
+        next = (next + 1) % queries.size();
+        return query;
+    }
+
+    private List<?> execute(String base, Query query) {
+        switch (base) {
+            case MovieQueryRegistry.FIND_BY_NAME_CONTAINING, MovieQueryRegistry.FIND_BY_DIRECTOR ->
+                query.setParameter("name", "%1%");
+            case MovieQueryRegistry.FIND_BY_GENRE -> query.setParameter("genre", MovieGenre.DRAMA);
+            case MovieQueryRegistry.FIND_BY_OSCARS_RANGE -> query.setParameter("minOscars", 2).setParameter("maxOscars", 8);
+            default -> {
+            }
+        }
+        List<?> result = query.setMaxResults(20).getResultList();
+        // Без накопления объектов в контексте: каждый вызов читает одинаковое число строк
+        entityManager.clear();
+        return result;
+    }
+}
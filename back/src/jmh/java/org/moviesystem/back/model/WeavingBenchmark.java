@@ -0,0 +1,149 @@
+package org.moviesystem.back.model;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.sessions.UnitOfWork;
+import org.moviesystem.back.BenchmarkDatabase;
+import org.moviesystem.back.profiler.SqlProfiler;
+import org.moviesystem.back.profiler.SqlStatementStats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Статическое связывание сущностей против несвязанных классов на странице из 100 фильмов.
+ *
+ * Запускается дважды: ./gradlew jmh -PjmhArgs=WeavingBenchmark и то же с -PjmhUnwoven.
+ * Без связывания LAZY-связи (координаты, люди, их местоположения) загружаются сразу,
+ * а фиксация сравнивает каждый загруженный объект с его копией; со связыванием
+ * загружаются только фильмы, а фиксация пишет только отмеченные изменения.
+ * Сколько объектов строится и сколько SQL выполняется на одно чтение страницы,
+ * печатается при подготовке (счетчики {@link SqlProfiler}).
+ *
+ * Разделяемый кеш отключен: каждое чтение идет в базу, как первое обращение к странице.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeavingBenchmark {
+
+    private static final int MOVIES = 1000;
+    private static final int PAGE = 100;
+
+    private EntityManagerFactory factory;
+    private int offset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        factory = BenchmarkDatabase.create(MOVIES, Map.of(PersistenceUnitProperties.CACHE_SHARED_DEFAULT, "false"));
+
+        long objects = SqlProfiler.objectsBuilt();
+        long statements = executions();
+        EntityManager entityManager = factory.createEntityManager();
+        int managed;
+        try {
+            touch(page(entityManager));
+            managed = ((UnitOfWorkImpl) entityManager.unwrap(UnitOfWork.class)).getCloneMapping().size();
+        } finally {
+            entityManager.close();
+        }
+        System.out.printf("%nwoven=%s, page of %d movies: %d objects built, %d managed, %d SQL statements%n",
+            BenchmarkDatabase.woven(), PAGE, SqlProfiler.objectsBuilt() - objects, managed, executions() - statements);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        factory.close();
+    }
+
+    /**
+     * Чтение страницы и обращение к простым полям, как при выдаче списка.
+     */
+    @Benchmark
+    public int readPage() {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            return touch(page(entityManager));
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Чтение страницы в транзакции и фиксация без изменений: вся цена - поиск изменений.
+     */
+    @Benchmark
+    public int readAndCommit() {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            int result = touch(page(entityManager));
+            entityManager.getTransaction().commit();
+            return result;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Изменение одного поля у каждого фильма страницы и фиксация: 100 UPDATE.
+     */
+    @Benchmark
+    public int updateAndCommit() {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            List<Movie> movies = page(entityManager);
+            for (Movie movie : movies) {
+                movie.setOscarsCount(movie.getOscarsCount() + 1);
+            }
+            entityManager.getTransaction().commit();
+            return movies.size();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private List<Movie> page(EntityManager entityManager) {
+        List<Movie> movies = entityManager.createNamedQuery(Movie.FIND_ALL, Movie.class)
+            .setFirstResult(offset)
+            .setMaxResults(PAGE)
+            .getResultList();
+        offset = (offset + PAGE) % MOVIES;
+        return movies;
+    }
+
+    private static int touch(List<Movie> movies) {
+        int hash = 0;
+        for (Movie movie : movies) {
+            hash += movie.getName().length() + movie.getOscarsCount() + movie.getGenre().ordinal();
+        }
+        return hash;
+    }
+
+    private static long executions() {
+        long executions = 0;
+        for (SqlStatementStats stats : SqlProfiler.statements()) {
+            executions += stats.getExecutions();
+        }
+        return executions;
+    }
+}
@@ -0,0 +1,222 @@
+package org.moviesystem.back.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный тест REST API для сравнения режимов {@code RequestExecutor}: виртуальные
+ * потоки (сборка -PjavaVersion=21) против платформенных (-Dmoviesystem.threads.virtual=false
+ * или сборка для Java 17).
+ *
+ * Замкнутый цикл: {@code concurrency} клиентов, каждый шлет следующий запрос сразу после
+ * ответа на предыдущий. На каждом уровне конкурентности после прогрева считаются пропускная
+ * способность, перцентили задержки и ошибки (не 2xx). Параллельно раз в 250 мс читается
+ * /metrics сервера: запросы в работе (moviesystem_executor_in_flight), занятая куча
+ * и платформенные потоки. Память на запрос в работе - прирост средней кучи под нагрузкой
+ * к куче без нагрузки, деленный на среднее число запросов в работе; это оценка (куча
+ * меняется пилой сборок мусора), поэтому сравнивать режимы стоит при одинаковом -Xmx
+ * и по нескольким прогонам.
+ *
+ * Запуск: ./gradlew loadTest -PloadTestArgs='--concurrency 50,200,1000 --duration 30'.
+ * Параметры: --url (база API, по умолчанию http://localhost:8080/back-1.0-SNAPSHOT/api),
+ * --path (по умолчанию /movies?page=0&size=10), --concurrency, --duration и --warmup (секунды).
+ */
+public final class LoadTest {
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+
+    private final String baseUrl;
+    private final HttpRequest request;
+    private final HttpRequest metricsRequest;
+
+    private LoadTest(String baseUrl, String path) {
+        this.baseUrl = baseUrl;
+        this.request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(60)).build();
+        this.metricsRequest = HttpRequest.newBuilder(URI.create(baseUrl + "/metrics")).timeout(Duration.ofSeconds(5)).build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("url", "http://localhost:8080/back-1.0-SNAPSHOT/api");
+        options.put("path", "/movies?page=0&size=10");
+        options.put("concurrency", "50,200,1000");
+        options.put("duration", "30");
+        options.put("warmup", "10");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--") || !options.containsKey(args[i].substring(2))) {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        LoadTest test = new LoadTest(options.get("url"), options.get("path"));
+        Map<String, Double> idle = test.idleMetrics();
+        System.out.printf(Locale.ROOT, "%s %s, executor mode: %s, idle heap: %.1f MB, platform threads: %.0f%n",
+            options.get("url"), options.get("path"), test.executorMode(),
+            idle.get("moviesystem_jvm_heap_used_bytes") / 1e6, idle.get("moviesystem_jvm_platform_threads"));
+        System.out.printf(Locale.ROOT, "%11s %10s %8s %8s %8s %7s %9s %10s %12s %9s%n",
+            "concurrency", "req/s", "p50 ms", "p95 ms", "p99 ms", "errors",
+            "in-flight", "heap MB", "KB/in-flight", "threads");
+        for (String level : options.get("concurrency").split(",")) {
+            int concurrency = Integer.parseInt(level.trim());
+            test.run(concurrency, Integer.parseInt(options.get("warmup")), null);
+            Result result = new Result();
+            test.run(concurrency, Integer.parseInt(options.get("duration")), result);
+            result.print(concurrency, idle.get("moviesystem_jvm_heap_used_bytes"));
+        }
+    }
+
+    /**
+     * @param result null - прогрев, результаты не собираются
+     */
+    private void run(int concurrency, int seconds, Result result) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch finished = new CountDownLatch(concurrency);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        if (result != null) {
+            sampler.scheduleAtFixedRate(() -> result.sample(scrape()), 250, 250, TimeUnit.MILLISECONDS);
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            send(deadline, finished, result);
+        }
+        finished.await();
+        sampler.shutdownNow();
+        if (result != null) {
+            result.elapsedNanos = System.nanoTime() - started;
+        }
+    }
+
+    private void send(long deadline, CountDownLatch finished, Result result) {
+        if (System.nanoTime() >= deadline) {
+            finished.countDown();
+            return;
+        }
+        long started = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            if (result != null) {
+                result.record(System.nanoTime() - started, error == null && response.statusCode() / 100 == 2);
+            }
+            send(deadline, finished, result);
+        });
+    }
+
+    private Map<String, Double> idleMetrics() throws InterruptedException {
+        Result idle = new Result();
+        for (int i = 0; i < 8; i++) {
+            idle.sample(scrape());
+            Thread.sleep(250);
+        }
+        Map<String, Double> averages = new HashMap<>();
+        idle.sums.forEach((name, sum) -> averages.put(name, sum / idle.samples));
+        if (!averages.containsKey("moviesystem_jvm_heap_used_bytes")) {
+            throw new IllegalStateException("No JVM metrics at " + baseUrl + "/metrics");
+        }
+        return averages;
+    }
+
+    private String executorMode() {
+        for (String line : scrapeText().split("\n")) {
+            if (line.startsWith("moviesystem_executor_info{")) {
+                int start = line.indexOf("mode=\"") + 6;
+                return line.substring(start, line.indexOf('"', start));
+            }
+        }
+        return "unknown";
+    }
+
+    private Map<String, Double> scrape() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (String line : scrapeText().split("\n")) {
+            if (line.startsWith("#") || line.isBlank()) {
+                continue;
+            }
+            int space = line.lastIndexOf(' ');
+            String name = line.substring(0, space);
+            if (Result.SAMPLED.contains(name)) {
+                values.put(name, Double.parseDouble(line.substring(space + 1)));
+            }
+        }
+        return values;
+    }
+
+    private String scrapeText() {
+        try {
+            return client.send(metricsRequest, HttpResponse.BodyHandlers.ofString()).body();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read " + baseUrl + "/metrics: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    private static final class Result {
+
+        static final Set<String> SAMPLED = Set.of(
+            "moviesystem_executor_in_flight", "moviesystem_jvm_heap_used_bytes", "moviesystem_jvm_platform_threads");
+
+        private final AtomicLong errors = new AtomicLong();
+        private long[] latencies = new long[1 << 16];
+        private int count;
+        private final Map<String, Double> sums = new HashMap<>();
+        private int samples;
+        long elapsedNanos;
+
+        synchronized void record(long nanos, boolean ok) {
+            if (!ok) {
+                errors.incrementAndGet();
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        synchronized void sample(Map<String, Double> values) {
+            values.forEach((name, value) -> sums.merge(name, value, Double::sum));
+            samples++;
+        }
+
+        synchronized void print(int concurrency, double idleHeap) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            double inFlight = average("moviesystem_executor_in_flight");
+            double heap = average("moviesystem_jvm_heap_used_bytes");
+            double perRequest = inFlight > 0 ? (heap - idleHeap) / inFlight / 1024 : Double.NaN;
+            System.out.printf(Locale.ROOT, "%11d %10.1f %8.1f %8.1f %8.1f %7d %9.1f %10.1f %12.1f %9.0f%n",
+                concurrency, count / (elapsedNanos / 1e9),
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), errors.get(),
+                inFlight, heap / 1e6, perRequest, average("moviesystem_jvm_platform_threads"));
+        }
+
+        private double average(String name) {
+            return samples == 0 ? Double.NaN : sums.getOrDefault(name, Double.NaN) / samples;
+        }
+
+        private static double percentile(long[] sorted, double rank) {
+            if (sorted.length == 0) {
+                return Double.NaN;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) (rank * sorted.length))] / 1e6;
+        }
+    }
+}
@@ -2,8 +2,46 @@ package org.moviesystem.back;
 
 import jakarta.ws.rs.ApplicationPath;
 import jakarta.ws.rs.core.Application;
+import org.moviesystem.back.cors.CorsFilter;
+import org.moviesystem.back.metrics.MetricsFilter;
+import org.moviesystem.back.replica.ConsistencyTokenFilter;
+import org.moviesystem.back.rest.AdminResource;
+import org.moviesystem.back.rest.AnalyticsResource;
+import org.moviesystem.back.rest.CoordinatesResource;
+import org.moviesystem.back.rest.JobResource;
+import org.moviesystem.back.rest.MetricsResource;
+import org.moviesystem.back.rest.MovieResource;
+import org.moviesystem.back.rest.PersonResource;
+import org.moviesystem.back.rest.StatsResource;
 
+import java.util.Set;
+
+/**
+ * REST-приложение с явным списком ресурсов и провайдеров.
+ *
+ * Сканирование классов RESTEasy отключено (resteasy.scan=false в web.xml), поэтому
+ * новый ресурс или фильтр нужно добавить сюда - иначе он не будет зарегистрирован.
+ */
 @ApplicationPath("/api")
 public class HelloApplication extends Application {
 
-}
\ No newline at end of file
+    private static final Set<Class<?>> CLASSES = Set.of(
+        HelloResource.class,
+        MovieResource.class,
+        PersonResource.class,
+        CoordinatesResource.class,
+        JobResource.class,
+        AdminResource.class,
+        AnalyticsResource.class,
+        StatsResource.class,
+        MetricsResource.class,
+        MetricsFilter.class,
+        ConsistencyTokenFilter.class,
+        CorsFilter.class
+    );
+
+    @Override
+    public Set<Class<?>> getClasses() {
+        return CLASSES;
+    }
+}
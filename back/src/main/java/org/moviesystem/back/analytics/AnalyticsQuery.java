@@ -0,0 +1,92 @@
+package org.moviesystem.back.analytics;
+
+import org.moviesystem.back.model.MovieGenre;
+import org.moviesystem.back.model.MpaaRating;
+
+import java.util.Locale;
+
+/**
+ * Параметры агрегата по колоночному снимку: группировка, показатель и фильтры.
+ *
+ * Имена параметров совпадают с полями фильма в JSON: {@code groupBy=genre|mpaaRating|director|year|length},
+ * {@code measure=oscarsCount|totalBoxOffice|length|budget|goldenPalmCount}. Для группировки
+ * по длительности ширина интервала задается {@code bucket}.
+ */
+public final class AnalyticsQuery {
+
+    public enum GroupBy {
+        NONE, GENRE, MPAA_RATING, DIRECTOR, YEAR, LENGTH
+    }
+
+    public enum Measure {
+        OSCARS_COUNT, TOTAL_BOX_OFFICE, LENGTH, BUDGET, GOLDEN_PALM_COUNT
+    }
+
+    final GroupBy groupBy;
+    final Measure measure;
+    final long bucket;
+    // -1 - без фильтра
+    final int genre;
+    final int mpaaRating;
+    final int minOscars;
+    final int maxOscars;
+    final long minLength;
+    final long maxLength;
+
+    private AnalyticsQuery(GroupBy groupBy, Measure measure, long bucket, int genre, int mpaaRating,
+                           int minOscars, int maxOscars, long minLength, long maxLength) {
+        this.groupBy = groupBy;
+        this.measure = measure;
+        this.bucket = bucket;
+        this.genre = genre;
+        this.mpaaRating = mpaaRating;
+        this.minOscars = minOscars;
+        this.maxOscars = maxOscars;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @throws IllegalArgumentException если значение параметра неизвестно или недопустимо
+     */
+    public static AnalyticsQuery of(String groupBy, String measure, Long bucket,
+                                    String genre, String mpaaRating,
+                                    Integer minOscars, Integer maxOscars, Long minLength, Long maxLength) {
+        GroupBy group = switch (normalize(groupBy)) {
+            case "", "none" -> GroupBy.NONE;
+            case "genre" -> GroupBy.GENRE;
+            case "mpaarating" -> GroupBy.MPAA_RATING;
+            case "director" -> GroupBy.DIRECTOR;
+            case "year" -> GroupBy.YEAR;
+            case "length" -> GroupBy.LENGTH;
+            default -> throw new IllegalArgumentException("Unknown groupBy: " + groupBy);
+        };
+        Measure value = switch (normalize(measure)) {
+            case "", "oscarscount" -> Measure.OSCARS_COUNT;
+            case "totalboxoffice" -> Measure.TOTAL_BOX_OFFICE;
+            case "length" -> Measure.LENGTH;
+            case "budget" -> Measure.BUDGET;
+            case "goldenpalmcount" -> Measure.GOLDEN_PALM_COUNT;
+            default -> throw new IllegalArgumentException("Unknown measure: " + measure);
+        };
+        long width = bucket != null ? bucket : 10;
+        if (width <= 0) {
+            throw new IllegalArgumentException("bucket must be positive");
+        }
+        return new AnalyticsQuery(group, value, width,
+            isBlank(genre) ? -1 : MovieGenre.valueOf(genre.trim().toUpperCase(Locale.ROOT)).ordinal(),
+            isBlank(mpaaRating) ? -1 : MpaaRating.valueOf(mpaaRating.trim().toUpperCase(Locale.ROOT)).ordinal(),
+            minOscars != null ? minOscars : Integer.MIN_VALUE,
+            maxOscars != null ? maxOscars : Integer.MAX_VALUE,
+            minLength != null ? minLength : Long.MIN_VALUE,
+            maxLength != null ? maxLength : Long.MAX_VALUE);
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,29 @@
+package org.moviesystem.back.analytics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ответ /api/analytics: агрегаты показателя по группам.
+ *
+ * {@code count} - строки группы, прошедшие фильтры; {@code sum/min/max/avg} считаются
+ * по строкам, где показатель задан (бюджет и Золотые пальмы необязательны).
+ */
+public class AnalyticsResult {
+
+    // Версия изменений (change_version), до которой применен снимок
+    public long version;
+    public int rows;
+    public long matched;
+    public double tookMs;
+    public List<Group> groups = new ArrayList<>();
+
+    public static class Group {
+        public String key;
+        public long count;
+        public double sum;
+        public Double min;
+        public Double max;
+        public Double avg;
+    }
+}
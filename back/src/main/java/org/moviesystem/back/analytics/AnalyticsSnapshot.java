@@ -0,0 +1,204 @@
+package org.moviesystem.back.analytics;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.moviesystem.back.dao.ChangeDAO;
+import org.moviesystem.back.event.MovieChangeEvent;
+import org.moviesystem.back.metrics.MetricsRegistry;
+import org.moviesystem.back.model.MovieGenre;
+import org.moviesystem.back.model.MpaaRating;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Колоночный снимок таблицы movies в памяти для аналитических запросов (/api/analytics).
+ *
+ * Включается {@code -Dmoviesystem.analytics.enabled=true}. При старте снимок загружается
+ * в фоне порциями, затем обновляется по версиям изменений (change_version и надгробия,
+ * см. {@link ChangeDAO}): читаются только строки, измененные после примененной версии.
+ * Обновление запускается событием об изменении фильма и, для записей в обход приложения
+ * и с других узлов, раз в {@code moviesystem.analytics.refresh-ms} (по умолчанию 1000 мс);
+ * если номер версии не менялся, обновление обходится одним чтением последовательности.
+ *
+ * Запросы выполняются без обращения к PostgreSQL под блокировкой чтения, обновление
+ * применяется под блокировкой записи порциями - запросы ждут не дольше одной порции.
+ * Отрезки прохода выполняются в своем пуле управляемых потоков размером
+ * {@code moviesystem.analytics.scan-threads} (по умолчанию - число процессоров); при
+ * заполненной очереди отрезок выполняет сам поток запроса.
+ */
+@ApplicationScoped
+public class AnalyticsSnapshot {
+
+    private static final Logger LOG = Logger.getLogger(AnalyticsSnapshot.class.getName());
+
+    private static final boolean ENABLED = Boolean.getBoolean("moviesystem.analytics.enabled");
+    private static final long REFRESH_MS = Long.getLong("moviesystem.analytics.refresh-ms", 1000);
+    private static final int BATCH_SIZE = 10_000;
+    private static final int SCAN_THREADS =
+        Integer.getInteger("moviesystem.analytics.scan-threads", Runtime.getRuntime().availableProcessors());
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ManagedScheduledExecutorService scheduler;
+
+    @Resource(lookup = "java:comp/DefaultManagedThreadFactory")
+    private ManagedThreadFactory threadFactory;
+
+    @Inject
+    private ChangeDAO changeDAO;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private final MovieColumns columns = new MovieColumns();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object refreshLock = new Object();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private final LongAdder appliedRows = new LongAdder();
+
+    // Примененная версия изменений; -1 - снимок еще не загружен
+    private volatile long version = -1;
+    private ScheduledFuture<?> task;
+    private ThreadPoolExecutor scanPool;
+
+    public void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        if (!ENABLED) {
+            return;
+        }
+        metricsRegistry.gauge("moviesystem_analytics_rows", "Фильмы в колоночном снимке аналитики", "",
+            () -> columns.size);
+        metricsRegistry.gauge("moviesystem_analytics_version", "Версия изменений, до которой применен снимок", "",
+            () -> version);
+        metricsRegistry.counter("moviesystem_analytics_applied_rows_total",
+            "Строки, загруженные в снимок при старте и обновлениях", "", appliedRows::sum);
+        scanPool = new ThreadPoolExecutor(SCAN_THREADS, SCAN_THREADS, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(SCAN_THREADS * 16), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        task = scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (task != null) {
+            task.cancel(false);
+        }
+        if (scanPool != null) {
+            scanPool.shutdown();
+        }
+    }
+
+    public void onMovieChange(@Observes(during = TransactionPhase.AFTER_SUCCESS) MovieChangeEvent event) {
+        if (ENABLED && version >= 0 && refreshQueued.compareAndSet(false, true)) {
+            scheduler.execute(this::refreshQuietly);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException если снимок выключен или еще загружается
+     */
+    public AnalyticsResult query(AnalyticsQuery query) {
+        if (!ENABLED) {
+            throw new IllegalStateException("Analytics snapshot is disabled (-Dmoviesystem.analytics.enabled=true)");
+        }
+        if (version < 0) {
+            throw new IllegalStateException("Analytics snapshot is loading");
+        }
+        long started = System.nanoTime();
+        AnalyticsResult result;
+        lock.readLock().lock();
+        try {
+            result = ColumnScan.run(columns, query, scanPool, SCAN_THREADS);
+            result.version = version;
+        } finally {
+            lock.readLock().unlock();
+        }
+        result.tookMs = (System.nanoTime() - started) / 1_000_000.0;
+        return result;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // Исключение отменило бы периодическую задачу
+            LOG.log(Level.WARNING, "Analytics snapshot refresh failed", e);
+        }
+    }
+
+    private void refresh() {
+        synchronized (refreshLock) {
+            refreshQueued.set(false);
+            long since = Math.max(version, 0);
+            if (version >= 0 && changeDAO.latestVersion() <= since) {
+                return;
+            }
+            long until = changeDAO.watermark();
+            long started = System.currentTimeMillis();
+
+            // Порции по (change_version, id): у строк одной транзакции версия общая
+            long cursorVersion = since;
+            long cursorId = Long.MAX_VALUE;
+            List<Object[]> rows;
+            do {
+                rows = changeDAO.changedColumns(cursorVersion, cursorId, until, BATCH_SIZE);
+                if (!rows.isEmpty()) {
+                    apply(rows);
+                    Object[] last = rows.get(rows.size() - 1);
+                    cursorVersion = ((Number) last[1]).longValue();
+                    cursorId = ((Number) last[0]).longValue();
+                }
+            } while (rows.size() == BATCH_SIZE);
+
+            // При первой загрузке удаленных строк в снимке нет
+            List<Long> deleted = version >= 0 ? changeDAO.deletedIds(since, until) : List.of();
+            lock.writeLock().lock();
+            try {
+                deleted.forEach(columns::delete);
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            if (version < 0) {
+                LOG.info(() -> "Analytics snapshot loaded: " + columns.size + " movies in "
+                    + (System.currentTimeMillis() - started) + " ms");
+            }
+            version = until;
+        }
+    }
+
+    private void apply(List<Object[]> rows) {
+        lock.writeLock().lock();
+        try {
+            for (Object[] row : rows) {
+                columns.upsert(
+                    ((Number) row[0]).longValue(),
+                    ((Number) row[2]).intValue(),
+                    ((Number) row[3]).longValue(),
+                    ((Number) row[4]).longValue(),
+                    row[5] != null ? ((Number) row[5]).doubleValue() : Double.NaN,
+                    row[6] != null ? ((Number) row[6]).longValue() : MovieColumns.NO_PALMS,
+                    ((Number) row[10]).intValue(),
+                    (byte) MovieGenre.valueOf((String) row[7]).ordinal(),
+                    (byte) MpaaRating.valueOf((String) row[8]).ordinal(),
+                    row[9] != null ? ((Number) row[9]).longValue() : null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        appliedRows.add(rows.size());
+    }
+}
@@ -0,0 +1,223 @@
+package org.moviesystem.back.analytics;
+
+import org.moviesystem.back.model.MovieGenre;
+import org.moviesystem.back.model.MpaaRating;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Параллельный проход по столбцам {@link MovieColumns} с группировкой.
+ *
+ * Строки делятся на отрезки, каждый отрезок копит агрегаты в своих массивах по группам,
+ * затем частичные результаты складываются. Внутренний цикл не создает объектов и читает
+ * только нужные столбцы. Отрезки выполняются в переданном пуле (в приложении - управляемые
+ * потоки {@link AnalyticsSnapshot}, не общий ForkJoinPool), первый - в вызывающем потоке.
+ * Вызывающий поток держит блокировку чтения снимка на все время прохода, поэтому потоки
+ * пула видят согласованные массивы.
+ *
+ * Число групп ограничено {@code MAX_GROUPS}, а число отрезков - еще и суммарным размером
+ * их массивов: при многих группах (например, режиссерах) отрезков меньше.
+ */
+final class ColumnScan {
+
+    private static final int CHUNK_ROWS = 64 * 1024;
+    private static final int MAX_GROUPS = 100_000;
+    // Группы во всех частичных результатах одного прохода вместе
+    private static final int MAX_PARTIAL_GROUPS = 4 * MAX_GROUPS;
+
+    private static final MovieGenre[] GENRES = MovieGenre.values();
+    private static final MpaaRating[] RATINGS = MpaaRating.values();
+
+    private final MovieColumns columns;
+    private final AnalyticsQuery query;
+    private final int groups;
+    private final int minYear;
+
+    private ColumnScan(MovieColumns columns, AnalyticsQuery query) {
+        this.columns = columns;
+        this.query = query;
+        int size = columns.size;
+        switch (query.groupBy) {
+            case NONE -> {
+                groups = 1;
+                minYear = 0;
+            }
+            case GENRE -> {
+                groups = GENRES.length;
+                minYear = 0;
+            }
+            case MPAA_RATING -> {
+                groups = RATINGS.length;
+                minYear = 0;
+            }
+            case DIRECTOR -> {
+                if (columns.directorCount > MAX_GROUPS) {
+                    throw new IllegalArgumentException("Too many directors to group by");
+                }
+                groups = columns.directorCount;
+                minYear = 0;
+            }
+            case YEAR -> {
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                for (int row = 0; row < size; row++) {
+                    min = Math.min(min, columns.year[row]);
+                    max = Math.max(max, columns.year[row]);
+                }
+                minYear = size == 0 ? 0 : min;
+                groups = size == 0 ? 1 : max - min + 1;
+            }
+            case LENGTH -> {
+                long max = 0;
+                for (int row = 0; row < size; row++) {
+                    max = Math.max(max, columns.length[row]);
+                }
+                long buckets = max / query.bucket + 1;
+                if (buckets > MAX_GROUPS) {
+                    throw new IllegalArgumentException("Too many length buckets, increase bucket");
+                }
+                groups = (int) buckets;
+                minYear = 0;
+            }
+            default -> throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * @param pool потоки для отрезков после первого
+     * @param threads число потоков пула: отрезков не больше чем по четыре на поток
+     */
+    static AnalyticsResult run(MovieColumns columns, AnalyticsQuery query, Executor pool, int threads) {
+        return new ColumnScan(columns, query).execute(pool, threads);
+    }
+
+    private AnalyticsResult execute(Executor pool, int threads) {
+        int size = columns.size;
+        int chunks = Math.max(1, Math.min((size + CHUNK_ROWS - 1) / CHUNK_ROWS,
+            Math.min(threads * 4, MAX_PARTIAL_GROUPS / groups)));
+        int chunkRows = (size + chunks - 1) / chunks;
+
+        List<CompletableFuture<Partial>> others = new ArrayList<>(chunks - 1);
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            int from = chunk * chunkRows;
+            others.add(CompletableFuture.supplyAsync(() -> scan(from, Math.min(size, from + chunkRows)), pool));
+        }
+        Partial total = scan(0, Math.min(size, chunkRows));
+        for (CompletableFuture<Partial> other : others) {
+            total.merge(other.join());
+        }
+
+        AnalyticsResult result = new AnalyticsResult();
+        result.rows = size;
+        for (int group = 0; group < groups; group++) {
+            if (total.count[group] == 0) {
+                continue;
+            }
+            result.matched += total.count[group];
+            AnalyticsResult.Group out = new AnalyticsResult.Group();
+            out.key = key(group);
+            out.count = total.count[group];
+            out.sum = total.sum[group];
+            if (total.values[group] > 0) {
+                out.min = total.min[group];
+                out.max = total.max[group];
+                out.avg = total.sum[group] / total.values[group];
+            }
+            result.groups.add(out);
+        }
+        return result;
+    }
+
+    private Partial scan(int from, int to) {
+        Partial partial = new Partial(groups);
+        MovieColumns c = columns;
+        AnalyticsQuery q = query;
+        for (int row = from; row < to; row++) {
+            if ((q.genre >= 0 && c.genre[row] != q.genre)
+                    || (q.mpaaRating >= 0 && c.mpaa[row] != q.mpaaRating)
+                    || c.oscars[row] < q.minOscars || c.oscars[row] > q.maxOscars
+                    || c.length[row] < q.minLength || c.length[row] > q.maxLength) {
+                continue;
+            }
+            int group = group(row);
+            partial.count[group]++;
+            double value = measure(row);
+            if (value == value) { // не NaN - показатель задан
+                partial.values[group]++;
+                partial.sum[group] += value;
+                if (value < partial.min[group]) {
+                    partial.min[group] = value;
+                }
+                if (value > partial.max[group]) {
+                    partial.max[group] = value;
+                }
+            }
+        }
+        return partial;
+    }
+
+    private int group(int row) {
+        return switch (query.groupBy) {
+            case NONE -> 0;
+            case GENRE -> columns.genre[row];
+            case MPAA_RATING -> columns.mpaa[row];
+            case DIRECTOR -> columns.director[row];
+            case YEAR -> columns.year[row] - minYear;
+            case LENGTH -> (int) (columns.length[row] / query.bucket);
+        };
+    }
+
+    private double measure(int row) {
+        return switch (query.measure) {
+            case OSCARS_COUNT -> columns.oscars[row];
+            case TOTAL_BOX_OFFICE -> columns.boxOffice[row];
+            case LENGTH -> columns.length[row];
+            case BUDGET -> columns.budget[row];
+            case GOLDEN_PALM_COUNT -> columns.palms[row] == MovieColumns.NO_PALMS ? Double.NaN : columns.palms[row];
+        };
+    }
+
+    private String key(int group) {
+        return switch (query.groupBy) {
+            case NONE -> "all";
+            case GENRE -> GENRES[group].name();
+            case MPAA_RATING -> RATINGS[group].name();
+            case DIRECTOR -> group == 0 ? "none" : String.valueOf(columns.directorId(group));
+            case YEAR -> String.valueOf(minYear + group);
+            case LENGTH -> (group * query.bucket) + "-" + ((group + 1) * query.bucket - 1);
+        };
+    }
+
+    private static final class Partial {
+        final long[] count;
+        final long[] values;
+        final double[] sum;
+        final double[] min;
+        final double[] max;
+
+        Partial(int groups) {
+            count = new long[groups];
+            values = new long[groups];
+            sum = new double[groups];
+            min = new double[groups];
+            max = new double[groups];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        Partial merge(Partial other) {
+            for (int group = 0; group < count.length; group++) {
+                count[group] += other.count[group];
+                values[group] += other.values[group];
+                sum[group] += other.sum[group];
+                min[group] = Math.min(min[group], other.min[group]);
+                max[group] = Math.max(max[group], other.max[group]);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.moviesystem.back.analytics;
+
+/**
+ * Count-min: оценка частоты ключа сверху в таблице {@link #DEPTH} x {@link #WIDTH} счетчиков.
+ *
+ * С вероятностью не меньше 1 - e^-DEPTH (около 98%) оценка превышает истинную частоту
+ * не больше чем на e / WIDTH от общего числа добавлений и никогда не бывает меньше нее.
+ * Скетчи с одинаковыми размерами объединяются сложением счетчиков.
+ */
+final class CountMinSketch {
+
+    static final int WIDTH = 1024;
+    static final int DEPTH = 4;
+
+    static final double EPSILON = Math.E / WIDTH;
+    static final double CONFIDENCE = 1 - Math.exp(-DEPTH);
+
+    private final long[] counts = new long[DEPTH * WIDTH];
+    private long total;
+
+    void add(long key) {
+        for (int row = 0; row < DEPTH; row++) {
+            counts[row * WIDTH + cell(key, row)]++;
+        }
+        total++;
+    }
+
+    void merge(CountMinSketch other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    long estimate(long key) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counts[row * WIDTH + cell(key, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * Наибольшее превышение оценки над истинной частотой (с вероятностью {@link #CONFIDENCE}).
+     */
+    long errorBound() {
+        return (long) Math.ceil(EPSILON * total);
+    }
+
+    long total() {
+        return total;
+    }
+
+    private static int cell(long key, int row) {
+        // Строки различаются константой, добавленной до перемешивания
+        return (int) Math.floorMod(Hashing.mix(key + row * 0x9e3779b97f4a7c15L), (long) WIDTH);
+    }
+}
@@ -0,0 +1,20 @@
+package org.moviesystem.back.analytics;
+
+/**
+ * Перемешивание 64-битных ключей для скетчей: финализатор MurmurHash3 (fmix64).
+ * Идентификаторы идут подряд, поэтому без перемешивания они попадали бы
+ * в соседние регистры и ячейки.
+ */
+final class Hashing {
+
+    private Hashing() {}
+
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,53 @@
+package org.moviesystem.back.analytics;
+
+/**
+ * HyperLogLog: оценка числа различных значений в 2^{@link #PRECISION} регистрах (4 КБ).
+ *
+ * Относительная стандартная ошибка 1.04 / sqrt(m), для m = 4096 - около 1.6%.
+ * Малые множества оцениваются линейным подсчетом по пустым регистрам. Скетчи
+ * объединяются поэлементным максимумом регистров без потери точности.
+ */
+final class HyperLogLog {
+
+    static final int PRECISION = 12;
+    private static final int M = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+    static final double RELATIVE_ERROR = 1.04 / Math.sqrt(M);
+
+    private final byte[] registers = new byte[M];
+
+    void add(long value) {
+        long hash = Hashing.mix(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        // Младший установленный бит ограничивает ранг, если остаток хеша нулевой
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    void merge(HyperLogLog other) {
+        for (int i = 0; i < M; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * M * M / sum;
+        if (estimate <= 2.5 * M && zeros > 0) {
+            estimate = M * Math.log((double) M / zeros);
+        }
+        return Math.round(estimate);
+    }
+}
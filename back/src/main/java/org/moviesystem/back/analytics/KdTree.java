@@ -0,0 +1,243 @@
+package org.moviesystem.back.analytics;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Неизменяемое KD-дерево точек (x, y, z) с id: поиск k ближайших соседей и точек
+ * внутри параллелепипеда.
+ *
+ * Дерево неявное: точки переставляются так, что середина любого отрезка [lo, hi) - медиана
+ * по оси глубины (x, y, z по кругу), левее нее - не больше, правее - не меньше. Построение
+ * O(n log n) в среднем, узлы не выделяются. Для сравнения те же запросы есть полным
+ * проходом ({@link #nearestScan}, {@link #withinScan}). Потокобезопасно после построения.
+ */
+final class KdTree {
+
+    private static final int DIMENSIONS = 3;
+
+    private final long[] ids;
+    private final double[] points;
+
+    /**
+     * @param ids id точек; массив переупорядочивается и остается у дерева
+     * @param points координаты подряд (x, y, z) на каждый id; так же переупорядочиваются
+     */
+    KdTree(long[] ids, double[] points) {
+        if (points.length != ids.length * DIMENSIONS) {
+            throw new IllegalArgumentException("Expected " + DIMENSIONS + " coordinates per id");
+        }
+        this.ids = ids;
+        this.points = points;
+        build(0, ids.length, 0);
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return id не больше k ближайших точек, от ближней к дальней
+     */
+    long[] nearest(double x, double y, double z, int k) {
+        PriorityQueue<double[]> best = maxHeap(k);
+        nearest(new double[] {x, y, z}, k, best, 0, ids.length, 0);
+        return drain(best);
+    }
+
+    long[] nearestScan(double x, double y, double z, int k) {
+        double[] target = {x, y, z};
+        PriorityQueue<double[]> best = maxHeap(k);
+        for (int i = 0; i < ids.length; i++) {
+            offer(best, k, distance(target, i), i);
+        }
+        return drain(best);
+    }
+
+    /**
+     * @return id точек внутри [min, max] по всем осям (границы включены), по возрастанию
+     */
+    long[] within(double[] min, double[] max) {
+        Ids found = new Ids();
+        within(min, max, found, 0, ids.length, 0);
+        return found.sorted();
+    }
+
+    long[] withinScan(double[] min, double[] max) {
+        Ids found = new Ids();
+        for (int i = 0; i < ids.length; i++) {
+            if (inside(min, max, i)) {
+                found.add(ids[i]);
+            }
+        }
+        return found.sorted();
+    }
+
+    private void build(int lo, int hi, int axis) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi - 1, mid, axis);
+            int next = (axis + 1) % DIMENSIONS;
+            build(lo, mid, next);
+            // Правая половина - в цикле, чтобы глубина рекурсии была O(log n)
+            lo = mid + 1;
+            axis = next;
+        }
+    }
+
+    /**
+     * Quickselect: ставит на место k элемент, который стоял бы там после сортировки
+     * отрезка [left, right] по оси.
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (left < right) {
+            // Медиана трех против квадратичного случая на упорядоченных данных
+            int mid = (left + right) >>> 1;
+            if (coordinate(mid, axis) < coordinate(left, axis)) {
+                swap(mid, left);
+            }
+            if (coordinate(right, axis) < coordinate(left, axis)) {
+                swap(right, left);
+            }
+            if (coordinate(right, axis) < coordinate(mid, axis)) {
+                swap(right, mid);
+            }
+            double pivot = coordinate(mid, axis);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (coordinate(i, axis) < pivot) {
+                    i++;
+                }
+                while (coordinate(j, axis) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void nearest(double[] target, int k, PriorityQueue<double[]> best, int lo, int hi, int axis) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        offer(best, k, distance(target, mid), mid);
+        int next = (axis + 1) % DIMENSIONS;
+        double delta = target[axis] - coordinate(mid, axis);
+        // Сначала сторона с целью; другая - только если плоскость ближе худшего из найденных
+        if (delta < 0) {
+            nearest(target, k, best, lo, mid, next);
+            if (best.size() < k || delta * delta < best.peek()[0]) {
+                nearest(target, k, best, mid + 1, hi, next);
+            }
+        } else {
+            nearest(target, k, best, mid + 1, hi, next);
+            if (best.size() < k || delta * delta < best.peek()[0]) {
+                nearest(target, k, best, lo, mid, next);
+            }
+        }
+    }
+
+    private void within(double[] min, double[] max, Ids found, int lo, int hi, int axis) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double value = coordinate(mid, axis);
+        if (inside(min, max, mid)) {
+            found.add(ids[mid]);
+        }
+        int next = (axis + 1) % DIMENSIONS;
+        if (min[axis] <= value) {
+            within(min, max, found, lo, mid, next);
+        }
+        if (max[axis] >= value) {
+            within(min, max, found, mid + 1, hi, next);
+        }
+    }
+
+    private boolean inside(double[] min, double[] max, int index) {
+        for (int axis = 0; axis < DIMENSIONS; axis++) {
+            double value = coordinate(index, axis);
+            if (value < min[axis] || value > max[axis]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Квадрат расстояния: для сравнения корень не нужен
+    private double distance(double[] target, int index) {
+        double sum = 0;
+        for (int axis = 0; axis < DIMENSIONS; axis++) {
+            double delta = target[axis] - coordinate(index, axis);
+            sum += delta * delta;
+        }
+        return sum;
+    }
+
+    private double coordinate(int index, int axis) {
+        return points[index * DIMENSIONS + axis];
+    }
+
+    private void swap(int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        for (int axis = 0; axis < DIMENSIONS; axis++) {
+            double value = points[a * DIMENSIONS + axis];
+            points[a * DIMENSIONS + axis] = points[b * DIMENSIONS + axis];
+            points[b * DIMENSIONS + axis] = value;
+        }
+    }
+
+    // Элемент кучи - {квадрат расстояния, индекс точки}; в вершине самый дальний
+    private static PriorityQueue<double[]> maxHeap(int k) {
+        return new PriorityQueue<>(k, (a, b) -> Double.compare(b[0], a[0]));
+    }
+
+    private static void offer(PriorityQueue<double[]> best, int k, double distance, int index) {
+        if (best.size() < k) {
+            best.add(new double[] {distance, index});
+        } else if (distance < best.peek()[0]) {
+            best.poll();
+            best.add(new double[] {distance, index});
+        }
+    }
+
+    private long[] drain(PriorityQueue<double[]> best) {
+        long[] result = new long[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = ids[(int) best.poll()[1]];
+        }
+        return result;
+    }
+
+    private static final class Ids {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] sorted() {
+            long[] result = Arrays.copyOf(values, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
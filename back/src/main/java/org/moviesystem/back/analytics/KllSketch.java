@@ -0,0 +1,174 @@
+package org.moviesystem.back.analytics;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * KLL: оценка квантилей потока чисел в O(k) памяти.
+ *
+ * Значения копятся на уровнях; элемент уровня h представляет 2^h исходных значений.
+ * Переполненный уровень сортируется, и каждый второй элемент (со случайным сдвигом)
+ * переходит на уровень выше, остальные отбрасываются. Емкость уровней убывает
+ * в 2/3 раза вниз от верхнего, поэтому всего хранится около 3k значений.
+ * Погрешность ранга при k = {@link #K} - около {@link #RANK_ERROR} (1.3%). Скетчи
+ * объединяются слиянием уровней с тем же сжатием.
+ */
+final class KllSketch {
+
+    static final int K = 200;
+    private static final int MIN_CAPACITY = 8;
+
+    // Приближение нормированной погрешности ранга из реализации DataSketches
+    static final double RANK_ERROR = 2.296 / Math.pow(K, 0.9723);
+
+    private double[][] levels = new double[1][K];
+    private int[] sizes = new int[1];
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        count++;
+        min = Double.isNaN(min) ? value : Math.min(min, value);
+        max = Double.isNaN(max) ? value : Math.max(max, value);
+        append(0, value);
+        compact();
+    }
+
+    void merge(KllSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        count += other.count;
+        min = Double.isNaN(min) ? other.min : Math.min(min, other.min);
+        max = Double.isNaN(max) ? other.max : Math.max(max, other.max);
+        for (int level = 0; level < other.sizes.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+        compact();
+    }
+
+    long count() {
+        return count;
+    }
+
+    double min() {
+        return min;
+    }
+
+    double max() {
+        return max;
+    }
+
+    /**
+     * @param rank доля от 0 до 1
+     * @return оценка квантиля; NaN для пустого скетча
+     */
+    double quantile(double rank) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (rank <= 0) {
+            return min;
+        }
+        if (rank >= 1) {
+            return max;
+        }
+        int retained = 0;
+        for (int size : sizes) {
+            retained += size;
+        }
+        double[] values = new double[retained];
+        long[] weights = new long[retained];
+        int next = 0;
+        for (int level = 0; level < sizes.length; level++) {
+            for (int i = 0; i < sizes[level]; i++) {
+                values[next] = levels[level][i];
+                weights[next++] = 1L << level;
+            }
+        }
+        Integer[] order = new Integer[retained];
+        for (int i = 0; i < retained; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+        double target = rank * count;
+        long cumulative = 0;
+        for (int index : order) {
+            cumulative += weights[index];
+            if (cumulative >= target) {
+                return values[index];
+            }
+        }
+        return max;
+    }
+
+    private void append(int level, double value) {
+        // При слиянии со скетчем выше этого недостающих уровней может быть несколько
+        if (level >= sizes.length) {
+            int height = sizes.length;
+            levels = Arrays.copyOf(levels, level + 1);
+            for (int added = height; added <= level; added++) {
+                levels[added] = new double[K];
+            }
+            sizes = Arrays.copyOf(sizes, level + 1);
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], sizes[level] * 2);
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    private int capacity(int level) {
+        int depth = sizes.length - 1 - level;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(K * Math.pow(2.0 / 3.0, depth)));
+    }
+
+    private void compact() {
+        while (true) {
+            int retained = 0;
+            int total = 0;
+            for (int level = 0; level < sizes.length; level++) {
+                retained += sizes[level];
+                total += capacity(level);
+            }
+            if (retained <= total) {
+                return;
+            }
+            for (int level = 0; level < sizes.length; level++) {
+                if (sizes[level] >= capacity(level)) {
+                    compactLevel(level);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void compactLevel(int level) {
+        double[] items = levels[level];
+        int size = sizes[level];
+        Arrays.sort(items, 0, size);
+        // При нечетном размере наибольший элемент остается на уровне
+        int pairs = size / 2;
+        int offset = ThreadLocalRandom.current().nextInt(2);
+        double[] promoted = new double[pairs];
+        for (int i = 0; i < pairs; i++) {
+            promoted[i] = items[2 * i + offset];
+        }
+        if (size % 2 == 1) {
+            items[0] = items[size - 1];
+            sizes[level] = 1;
+        } else {
+            sizes[level] = 0;
+        }
+        for (double value : promoted) {
+            append(level + 1, value);
+        }
+    }
+}
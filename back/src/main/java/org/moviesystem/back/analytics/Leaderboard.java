@@ -0,0 +1,100 @@
+package org.moviesystem.back.analytics;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Ограниченный упорядоченный рейтинг одного показателя: не больше capacity лучших фильмов.
+ *
+ * Инвариант: множество - это точно первые size() фильмов по (значение по убыванию, id),
+ * любой фильм вне его не выше последнего элемента. Поэтому фильм вне рейтинга добавляется,
+ * только если он выше последнего, а фильм, опустившийся ниже последнего, просто удаляется -
+ * рейтинг укорачивается, но остается точным. Когда он становится короче minSize,
+ * {@link #needsReload()} просит перечитать его из базы.
+ *
+ * Не потокобезопасен: запись и чтение синхронизирует {@link MovieLeaderboards}.
+ */
+final class Leaderboard {
+
+    private static final Comparator<LeaderboardPage.Entry> ORDER =
+        Comparator.comparingLong((LeaderboardPage.Entry entry) -> entry.value).reversed()
+            .thenComparingLong(entry -> entry.movieId);
+
+    private final int capacity;
+    private final int minSize;
+    private final TreeSet<LeaderboardPage.Entry> entries = new TreeSet<>(ORDER);
+    private final Map<Long, LeaderboardPage.Entry> byId = new HashMap<>();
+    // В рейтинге все фильмы, у которых задан показатель
+    private boolean complete;
+
+    Leaderboard(int capacity, int minSize) {
+        this.capacity = capacity;
+        this.minSize = minSize;
+    }
+
+    /**
+     * @param top строки {id, name, значение} по убыванию, не больше capacity
+     */
+    void reset(List<Object[]> top) {
+        entries.clear();
+        byId.clear();
+        for (Object[] row : top) {
+            add(new LeaderboardPage.Entry(((Number) row[0]).longValue(), (String) row[1],
+                ((Number) row[2]).longValue()));
+        }
+        complete = top.size() < capacity;
+    }
+
+    /**
+     * @param value новое значение показателя; null - не задан
+     */
+    void upsert(long movieId, String name, Long value) {
+        remove(movieId);
+        if (value == null) {
+            return;
+        }
+        LeaderboardPage.Entry entry = new LeaderboardPage.Entry(movieId, name, value);
+        boolean qualifies = entries.isEmpty()
+            ? complete
+            : ORDER.compare(entry, entries.last()) < 0 || (complete && entries.size() < capacity);
+        if (!qualifies) {
+            return;
+        }
+        add(entry);
+        if (entries.size() > capacity) {
+            byId.remove(entries.pollLast().movieId);
+            complete = false;
+        }
+    }
+
+    void remove(long movieId) {
+        LeaderboardPage.Entry old = byId.remove(movieId);
+        if (old != null) {
+            entries.remove(old);
+        }
+    }
+
+    boolean needsReload() {
+        return !complete && entries.size() < minSize;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void top(int k, List<LeaderboardPage.Entry> out) {
+        Iterator<LeaderboardPage.Entry> iterator = entries.iterator();
+        for (int i = 0; i < k && iterator.hasNext(); i++) {
+            out.add(iterator.next());
+        }
+    }
+
+    private void add(LeaderboardPage.Entry entry) {
+        entries.add(entry);
+        byId.put(entry.movieId, entry);
+    }
+}
@@ -0,0 +1,32 @@
+package org.moviesystem.back.analytics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ответ /api/movies/top/{metric}: первые k фильмов по убыванию показателя.
+ *
+ * Если рейтинг в этот момент пополняется из базы, записей может быть меньше k,
+ * но это всегда точное начало рейтинга.
+ */
+public class LeaderboardPage {
+
+    public String metric;
+    // Версия изменений (change_version), до которой применен рейтинг
+    public long version;
+    public List<Entry> entries = new ArrayList<>();
+
+    public static class Entry {
+        public long movieId;
+        public String name;
+        public long value;
+
+        public Entry() {}
+
+        Entry(long movieId, String name, long value) {
+            this.movieId = movieId;
+            this.name = name;
+            this.value = value;
+        }
+    }
+}
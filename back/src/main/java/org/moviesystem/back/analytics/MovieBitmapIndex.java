@@ -0,0 +1,327 @@
+package org.moviesystem.back.analytics;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.moviesystem.back.dao.ChangeDAO;
+import org.moviesystem.back.event.MovieChangeEvent;
+import org.moviesystem.back.metrics.MetricsRegistry;
+import org.moviesystem.back.model.Color;
+import org.moviesystem.back.model.Country;
+import org.moviesystem.back.model.MovieGenre;
+import org.moviesystem.back.model.MpaaRating;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Битовые индексы фильмов для фильтра /api/movies/filter: по сжатому множеству id
+ * ({@link RoaringBitmap}) на каждое значение жанра, рейтинга MPAA, цвета глаз, цвета волос
+ * и национальности режиссера, а также на каждого режиссера.
+ *
+ * Фильтр по нескольким атрибутам - пересечение множеств (значения одного атрибута
+ * объединяются), из результата берется только страница id, и из базы читаются лишь
+ * эти фильмы. Порядок - по id.
+ *
+ * Включается {@code -Dmoviesystem.bitmaps.enabled=true}. Индексы загружаются при старте
+ * и поддерживаются по версиям изменений (change_version и надгробия, см. {@link ChangeDAO})
+ * после события об изменении фильма и раз в {@code moviesystem.bitmaps.refresh-ms}
+ * (по умолчанию 1000 мс). Атрибуты режиссера читаются вместе с фильмом: приложение
+ * не меняет людей после создания, поэтому они меняются только со сменой режиссера фильма.
+ */
+@ApplicationScoped
+public class MovieBitmapIndex {
+
+    private static final Logger LOG = Logger.getLogger(MovieBitmapIndex.class.getName());
+
+    private static final boolean ENABLED = Boolean.getBoolean("moviesystem.bitmaps.enabled");
+    private static final long REFRESH_MS = Long.getLong("moviesystem.bitmaps.refresh-ms", 1000);
+    private static final int BATCH_SIZE = 10_000;
+    private static final int MAX_DIRECTORS = 1000;
+
+    /**
+     * Атрибут с битовой картой на значение: имя параметра запроса, значения перечисления
+     * и позиция в строке {@link ChangeDAO#changedAttributes}.
+     */
+    enum Attribute {
+        GENRE("genre", MovieGenre.values(), 2),
+        MPAA_RATING("mpaaRating", MpaaRating.values(), 3),
+        DIRECTOR_EYE_COLOR("directorEyeColor", Color.values(), 5),
+        DIRECTOR_HAIR_COLOR("directorHairColor", Color.values(), 6),
+        DIRECTOR_NATIONALITY("directorNationality", Country.values(), 7);
+
+        final String param;
+        final Enum<?>[] values;
+        final int column;
+
+        Attribute(String param, Enum<?>[] values, int column) {
+            this.param = param;
+            this.values = values;
+            this.column = column;
+        }
+
+        int ordinal(String value) {
+            String normalized = value.trim().toUpperCase(Locale.ROOT);
+            for (Enum<?> candidate : values) {
+                if (candidate.name().equals(normalized)) {
+                    return candidate.ordinal();
+                }
+            }
+            throw new IllegalArgumentException("Unknown " + param + ": " + value);
+        }
+    }
+
+    /**
+     * Страница id по фильтру и общее число подходящих фильмов.
+     */
+    public static final class Result {
+        public final long total;
+        public final long[] ids;
+        public final long version;
+
+        Result(long total, long[] ids, long version) {
+            this.total = total;
+            this.ids = ids;
+            this.version = version;
+        }
+    }
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    private ChangeDAO changeDAO;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final Map<Attribute, RoaringBitmap[]> bitmaps = new EnumMap<>(Attribute.class);
+    private final Map<Long, RoaringBitmap> byDirector = new HashMap<>();
+    private final Map<Long, Long> directorByMovie = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object refreshLock = new Object();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+    // Примененная версия изменений; -1 - индексы еще не загружены
+    private volatile long version = -1;
+    private ScheduledFuture<?> task;
+
+    public MovieBitmapIndex() {
+        for (Attribute attribute : Attribute.values()) {
+            RoaringBitmap[] values = new RoaringBitmap[attribute.values.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new RoaringBitmap();
+            }
+            bitmaps.put(attribute, values);
+        }
+    }
+
+    public void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        if (!ENABLED) {
+            return;
+        }
+        metricsRegistry.gauge("moviesystem_bitmaps_movies", "Фильмы в битовых индексах", "",
+            () -> directorByMovie.size());
+        metricsRegistry.gauge("moviesystem_bitmaps_version", "Версия изменений, до которой применены битовые индексы", "",
+            () -> version);
+        task = scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    public void onMovieChange(@Observes(during = TransactionPhase.AFTER_SUCCESS) MovieChangeEvent event) {
+        if (ENABLED && version >= 0 && refreshQueued.compareAndSet(false, true)) {
+            scheduler.execute(this::refreshQuietly);
+        }
+    }
+
+    /**
+     * @param filters имя параметра атрибута -> значения через запятую; пустые не фильтруют
+     * @param directorIds id режиссеров; пустой список не фильтрует
+     * @throws IllegalArgumentException если значение атрибута неизвестно
+     * @throws IllegalStateException если индексы выключены или еще загружаются
+     */
+    public Result filter(Map<String, String> filters, List<Long> directorIds,
+                         long offset, int limit, boolean descending) {
+        if (!ENABLED) {
+            throw new IllegalStateException("Bitmap index is disabled (-Dmoviesystem.bitmaps.enabled=true)");
+        }
+        if (version < 0) {
+            throw new IllegalStateException("Bitmap index is loading");
+        }
+        if (directorIds.size() > MAX_DIRECTORS) {
+            throw new IllegalArgumentException("At most " + MAX_DIRECTORS + " directors");
+        }
+        Map<Attribute, int[]> ordinals = new EnumMap<>(Attribute.class);
+        for (Attribute attribute : Attribute.values()) {
+            String values = filters.get(attribute.param);
+            if (values != null && !values.isBlank()) {
+                ordinals.put(attribute, Arrays.stream(values.split(","))
+                    .filter(value -> !value.isBlank())
+                    .mapToInt(attribute::ordinal)
+                    .toArray());
+            }
+        }
+
+        lock.readLock().lock();
+        try {
+            List<RoaringBitmap> sets = new ArrayList<>();
+            ordinals.forEach((attribute, values) -> {
+                RoaringBitmap union = new RoaringBitmap();
+                for (int ordinal : values) {
+                    union = RoaringBitmap.or(union, bitmaps.get(attribute)[ordinal]);
+                }
+                sets.add(union);
+            });
+            if (!directorIds.isEmpty()) {
+                RoaringBitmap union = new RoaringBitmap();
+                for (Long directorId : directorIds) {
+                    RoaringBitmap movies = byDirector.get(directorId);
+                    if (movies != null) {
+                        union = RoaringBitmap.or(union, movies);
+                    }
+                }
+                sets.add(union);
+            }
+
+            RoaringBitmap result;
+            if (sets.isEmpty()) {
+                result = all;
+            } else {
+                // Сначала самые маленькие множества: промежуточные пересечения короче
+                List<Long> cardinalities = new ArrayList<>();
+                sets.forEach(set -> cardinalities.add(set.cardinality()));
+                List<Integer> order = new ArrayList<>();
+                for (int i = 0; i < sets.size(); i++) {
+                    order.add(i);
+                }
+                order.sort(Comparator.comparing(cardinalities::get));
+                result = sets.get(order.get(0));
+                for (int i = 1; i < order.size() && !result.isEmpty(); i++) {
+                    result = RoaringBitmap.and(result, sets.get(order.get(i)));
+                }
+            }
+            return new Result(result.cardinality(), result.page(offset, limit, descending), version);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // Исключение отменило бы периодическую задачу
+            LOG.log(Level.WARNING, "Bitmap index refresh failed", e);
+        }
+    }
+
+    private void refresh() {
+        synchronized (refreshLock) {
+            refreshQueued.set(false);
+            long since = Math.max(version, 0);
+            if (version >= 0 && changeDAO.latestVersion() <= since) {
+                return;
+            }
+            long until = changeDAO.watermark();
+            long started = System.currentTimeMillis();
+
+            // Порции по (change_version, id): у строк одной транзакции версия общая
+            long cursorVersion = since;
+            long cursorId = Long.MAX_VALUE;
+            List<Object[]> rows;
+            do {
+                rows = changeDAO.changedAttributes(cursorVersion, cursorId, until, BATCH_SIZE);
+                if (!rows.isEmpty()) {
+                    apply(rows);
+                    Object[] last = rows.get(rows.size() - 1);
+                    cursorVersion = ((Number) last[1]).longValue();
+                    cursorId = ((Number) last[0]).longValue();
+                }
+            } while (rows.size() == BATCH_SIZE);
+
+            // При первой загрузке удаленных фильмов в индексах нет
+            List<Long> deleted = version >= 0 ? changeDAO.deletedIds(since, until) : List.of();
+            lock.writeLock().lock();
+            try {
+                deleted.forEach(this::remove);
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            if (version < 0) {
+                LOG.info(() -> "Bitmap index loaded: " + directorByMovie.size() + " movies in "
+                    + (System.currentTimeMillis() - started) + " ms");
+            }
+            version = until;
+        }
+    }
+
+    private void apply(List<Object[]> rows) {
+        lock.writeLock().lock();
+        try {
+            for (Object[] row : rows) {
+                long movieId = ((Number) row[0]).longValue();
+                remove(movieId);
+                all.add(movieId);
+                for (Attribute attribute : Attribute.values()) {
+                    String value = (String) row[attribute.column];
+                    if (value != null) {
+                        bitmaps.get(attribute)[attribute.ordinal(value)].add(movieId);
+                    }
+                }
+                // 0 - режиссер не указан: фильм остается в индексе, но не попадает ни в одну карту режиссера
+                long directorId = row[4] != null ? ((Number) row[4]).longValue() : 0;
+                directorByMovie.put(movieId, directorId);
+                if (directorId != 0) {
+                    byDirector.computeIfAbsent(directorId, id -> new RoaringBitmap()).add(movieId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(long movieId) {
+        Long directorId = directorByMovie.remove(movieId);
+        if (directorId == null) {
+            return;
+        }
+        all.remove(movieId);
+        for (RoaringBitmap[] values : bitmaps.values()) {
+            for (RoaringBitmap bitmap : values) {
+                bitmap.remove(movieId);
+            }
+        }
+        RoaringBitmap movies = byDirector.get(directorId);
+        if (movies != null) {
+            movies.remove(movieId);
+            if (movies.isEmpty()) {
+                byDirector.remove(directorId);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.moviesystem.back.analytics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Колоночное представление таблицы movies: по массиву примитивов на столбец,
+ * строка - индекс в массивах. Жанр и рейтинг хранятся порядковым номером перечисления,
+ * режиссер - кодом словаря (0 - режиссера нет). Отсутствующие значения: NaN для бюджета,
+ * -1 для Золотых пальм.
+ *
+ * Класс не потокобезопасен: изменения и чтение разграничивает {@link AnalyticsSnapshot}.
+ */
+final class MovieColumns {
+
+    static final long NO_PALMS = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    int size;
+    long[] ids = new long[INITIAL_CAPACITY];
+    int[] oscars = new int[INITIAL_CAPACITY];
+    long[] boxOffice = new long[INITIAL_CAPACITY];
+    long[] length = new long[INITIAL_CAPACITY];
+    double[] budget = new double[INITIAL_CAPACITY];
+    long[] palms = new long[INITIAL_CAPACITY];
+    int[] year = new int[INITIAL_CAPACITY];
+    byte[] genre = new byte[INITIAL_CAPACITY];
+    byte[] mpaa = new byte[INITIAL_CAPACITY];
+    int[] director = new int[INITIAL_CAPACITY];
+
+    // Словарь режиссеров: код -> id человека; код 0 зарезервирован за "нет режиссера"
+    long[] directorIds = new long[16];
+    int directorCount = 1;
+    private final Map<Long, Integer> directorCodes = new HashMap<>();
+
+    private final Map<Long, Integer> rowById = new HashMap<>();
+
+    void upsert(long id, int oscarsCount, long totalBoxOffice, long movieLength, double movieBudget,
+                long goldenPalms, int creationYear, byte genreOrdinal, byte mpaaOrdinal, Long directorId) {
+        Integer existing = rowById.get(id);
+        int row;
+        if (existing != null) {
+            row = existing;
+        } else {
+            ensureCapacity(size + 1);
+            row = size++;
+            rowById.put(id, row);
+        }
+        ids[row] = id;
+        oscars[row] = oscarsCount;
+        boxOffice[row] = totalBoxOffice;
+        length[row] = movieLength;
+        budget[row] = movieBudget;
+        palms[row] = goldenPalms;
+        year[row] = creationYear;
+        genre[row] = genreOrdinal;
+        mpaa[row] = mpaaOrdinal;
+        director[row] = directorId != null ? directorCode(directorId) : 0;
+    }
+
+    /**
+     * Удаляет строку, переставляя на ее место последнюю: массивы остаются плотными.
+     */
+    void delete(long id) {
+        Integer removed = rowById.remove(id);
+        if (removed == null) {
+            return;
+        }
+        int row = removed;
+        int last = --size;
+        if (row != last) {
+            ids[row] = ids[last];
+            oscars[row] = oscars[last];
+            boxOffice[row] = boxOffice[last];
+            length[row] = length[last];
+            budget[row] = budget[last];
+            palms[row] = palms[last];
+            year[row] = year[last];
+            genre[row] = genre[last];
+            mpaa[row] = mpaa[last];
+            director[row] = director[last];
+            rowById.put(ids[row], row);
+        }
+    }
+
+    long directorId(int code) {
+        return directorIds[code];
+    }
+
+    private int directorCode(long directorId) {
+        Integer code = directorCodes.get(directorId);
+        if (code != null) {
+            return code;
+        }
+        if (directorCount == directorIds.length) {
+            directorIds = Arrays.copyOf(directorIds, directorCount * 2);
+        }
+        directorIds[directorCount] = directorId;
+        directorCodes.put(directorId, directorCount);
+        return directorCount++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        oscars = Arrays.copyOf(oscars, newCapacity);
+        boxOffice = Arrays.copyOf(boxOffice, newCapacity);
+        length = Arrays.copyOf(length, newCapacity);
+        budget = Arrays.copyOf(budget, newCapacity);
+        palms = Arrays.copyOf(palms, newCapacity);
+        year = Arrays.copyOf(year, newCapacity);
+        genre = Arrays.copyOf(genre, newCapacity);
+        mpaa = Arrays.copyOf(mpaa, newCapacity);
+        director = Arrays.copyOf(director, newCapacity);
+    }
+}
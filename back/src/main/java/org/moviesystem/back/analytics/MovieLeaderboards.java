@@ -0,0 +1,234 @@
+package org.moviesystem.back.analytics;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.moviesystem.back.dao.ChangeDAO;
+import org.moviesystem.back.event.MovieChangeEvent;
+import org.moviesystem.back.metrics.MetricsRegistry;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Рейтинги фильмов по Оскарам, кассовым сборам, длительности и Золотым пальмам
+ * (/api/movies/top/{metric}?k=) без сортировки таблицы на каждый запрос.
+ *
+ * Включается {@code -Dmoviesystem.leaderboards.enabled=true}. Для каждого показателя
+ * в памяти лежат не больше {@code moviesystem.top.capacity} (по умолчанию 1000) лучших
+ * фильмов, чтение первых k - O(k). Рейтинги поддерживаются по версиям изменений
+ * (change_version и надгробия, см. {@link ChangeDAO}): после события об изменении фильма
+ * и раз в {@code moviesystem.top.refresh-ms} (по умолчанию 5000 мс, для записей в обход
+ * приложения и с других узлов) применяются строки, измененные после примененной версии.
+ * События, пришедшие до начала обновления, сливаются в одно: водяной знак берется один
+ * раз на обновление, а не на событие. Рейтинг, укоротившийся до {@link #MAX_K} из-за
+ * удалений и уменьшений, перечитывается из базы; массовое изменение больше одной порции
+ * тоже проще перечитать целиком.
+ */
+@ApplicationScoped
+public class MovieLeaderboards {
+
+    private static final Logger LOG = Logger.getLogger(MovieLeaderboards.class.getName());
+
+    public static final int MAX_K = 100;
+
+    private static final boolean ENABLED = Boolean.getBoolean("moviesystem.leaderboards.enabled");
+    private static final int CAPACITY = Math.max(MAX_K * 2, Integer.getInteger("moviesystem.top.capacity", 1000));
+    private static final long REFRESH_MS = Long.getLong("moviesystem.top.refresh-ms", 5000);
+    private static final int BATCH_SIZE = 10_000;
+
+    /**
+     * Показатель рейтинга: имя как у поля фильма в JSON, столбец и позиция
+     * в строке {@link ChangeDAO#changedColumns}.
+     */
+    enum Metric {
+        OSCARS_COUNT("oscarsCount", "oscars_count", 2),
+        TOTAL_BOX_OFFICE("totalBoxOffice", "total_box_office", 3),
+        LENGTH("length", "length", 4),
+        GOLDEN_PALM_COUNT("goldenPalmCount", "golden_palm_count", 6);
+
+        final String param;
+        final String column;
+        final int changedColumn;
+
+        Metric(String param, String column, int changedColumn) {
+            this.param = param;
+            this.column = column;
+            this.changedColumn = changedColumn;
+        }
+
+        static Metric of(String param) {
+            String normalized = param == null ? "" : param.trim().toLowerCase(Locale.ROOT);
+            for (Metric metric : values()) {
+                if (metric.param.toLowerCase(Locale.ROOT).equals(normalized)) {
+                    return metric;
+                }
+            }
+            throw new IllegalArgumentException("Unknown metric: " + param
+                + " (oscarsCount, totalBoxOffice, length, goldenPalmCount)");
+        }
+    }
+
+    private static final int NAME_COLUMN = 11;
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    private ChangeDAO changeDAO;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private final Map<Metric, Leaderboard> boards = new EnumMap<>(Metric.class);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object refreshLock = new Object();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private final LongAdder reloads = new LongAdder();
+
+    // Примененная версия изменений; -1 - рейтинги еще не загружены
+    private volatile long version = -1;
+    private ScheduledFuture<?> task;
+
+    public MovieLeaderboards() {
+        for (Metric metric : Metric.values()) {
+            boards.put(metric, new Leaderboard(CAPACITY, MAX_K));
+        }
+    }
+
+    public void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        if (!ENABLED) {
+            return;
+        }
+        metricsRegistry.counter("moviesystem_top_reloads_total",
+            "Перечитывания рейтингов фильмов из базы", "", reloads::sum);
+        metricsRegistry.gauge("moviesystem_top_version", "Версия изменений, до которой применены рейтинги", "",
+            () -> version);
+        task = scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    public void onMovieChange(@Observes(during = TransactionPhase.AFTER_SUCCESS) MovieChangeEvent event) {
+        if (ENABLED && version >= 0 && refreshQueued.compareAndSet(false, true)) {
+            scheduler.execute(this::refreshQuietly);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException если показатель неизвестен или k вне [1, {@link #MAX_K}]
+     * @throws IllegalStateException если рейтинги выключены или еще загружаются
+     */
+    public LeaderboardPage top(String metricName, int k) {
+        Metric metric = Metric.of(metricName);
+        if (k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("k must be between 1 and " + MAX_K);
+        }
+        if (!ENABLED) {
+            throw new IllegalStateException("Leaderboards are disabled (-Dmoviesystem.leaderboards.enabled=true)");
+        }
+        if (version < 0) {
+            throw new IllegalStateException("Leaderboards are loading");
+        }
+        LeaderboardPage page = new LeaderboardPage();
+        page.metric = metric.param;
+        lock.readLock().lock();
+        try {
+            boards.get(metric).top(k, page.entries);
+            page.version = version;
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // Исключение отменило бы периодическую задачу
+            LOG.log(Level.WARNING, "Leaderboard refresh failed", e);
+        }
+    }
+
+    private void refresh() {
+        synchronized (refreshLock) {
+            refreshQueued.set(false);
+            if (version < 0) {
+                reloadAll(changeDAO.watermark());
+                return;
+            }
+            if (changeDAO.latestVersion() <= version) {
+                return;
+            }
+            long until = changeDAO.watermark();
+            List<Object[]> rows = changeDAO.changedColumns(version, until, BATCH_SIZE);
+            if (rows.size() == BATCH_SIZE) {
+                reloadAll(until);
+                return;
+            }
+            List<Long> deleted = changeDAO.deletedIds(version, until);
+            lock.writeLock().lock();
+            try {
+                for (Object[] row : rows) {
+                    long movieId = ((Number) row[0]).longValue();
+                    String name = (String) row[NAME_COLUMN];
+                    boards.forEach((metric, board) -> {
+                        Object value = row[metric.changedColumn];
+                        board.upsert(movieId, name, value != null ? ((Number) value).longValue() : null);
+                    });
+                }
+                for (Long movieId : deleted) {
+                    boards.values().forEach(board -> board.remove(movieId));
+                }
+                version = until;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            boards.forEach((metric, board) -> {
+                if (board.needsReload()) {
+                    reload(metric, board);
+                }
+            });
+        }
+    }
+
+    // Строки читаются не раньше водяного знака until, поэтому могут включать и более
+    // поздние изменения; они применятся еще раз следующим обновлением, что безопасно
+    private void reloadAll(long until) {
+        for (Map.Entry<Metric, Leaderboard> entry : boards.entrySet()) {
+            reload(entry.getKey(), entry.getValue());
+        }
+        version = Math.max(version, until);
+    }
+
+    private void reload(Metric metric, Leaderboard board) {
+        List<Object[]> top = changeDAO.topByColumn(metric.column, CAPACITY);
+        lock.writeLock().lock();
+        try {
+            board.reset(top);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        reloads.increment();
+    }
+}
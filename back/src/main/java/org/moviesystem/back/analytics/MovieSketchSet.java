@@ -0,0 +1,65 @@
+package org.moviesystem.back.analytics;
+
+import org.moviesystem.back.model.MovieGenre;
+
+import java.util.List;
+
+/**
+ * Скетчи по набору фильмов: различные режиссеры (HyperLogLog), квантили бюджета,
+ * кассовых сборов и длительности (KLL), число фильмов режиссера (count-min)
+ * и точные счетчики жанров - их всего несколько, скетч тут не нужен.
+ *
+ * Строится по блоку id, а сводка по всем фильмам получается слиянием блоков.
+ */
+final class MovieSketchSet {
+
+    private static final MovieGenre[] GENRES = MovieGenre.values();
+
+    final HyperLogLog directors = new HyperLogLog();
+    final KllSketch budget = new KllSketch();
+    final KllSketch totalBoxOffice = new KllSketch();
+    final KllSketch length = new KllSketch();
+    final CountMinSketch directorMovies = new CountMinSketch();
+    final long[] genres = new long[GENRES.length];
+    long rows;
+
+    /**
+     * @param rows строки {@link org.moviesystem.back.dao.ChangeDAO#sketchColumns}
+     */
+    static MovieSketchSet of(List<Object[]> rows) {
+        MovieSketchSet set = new MovieSketchSet();
+        for (Object[] row : rows) {
+            if (row[0] != null) {
+                long directorId = ((Number) row[0]).longValue();
+                set.directors.add(directorId);
+                set.directorMovies.add(directorId);
+            }
+            set.genres[MovieGenre.valueOf((String) row[1]).ordinal()]++;
+            if (row[2] != null) {
+                set.budget.add(((Number) row[2]).doubleValue());
+            }
+            set.totalBoxOffice.add(((Number) row[3]).doubleValue());
+            if (row[4] != null) {
+                set.length.add(((Number) row[4]).doubleValue());
+            }
+            set.rows++;
+        }
+        return set;
+    }
+
+    void merge(MovieSketchSet other) {
+        directors.merge(other.directors);
+        budget.merge(other.budget);
+        totalBoxOffice.merge(other.totalBoxOffice);
+        length.merge(other.length);
+        directorMovies.merge(other.directorMovies);
+        for (int i = 0; i < genres.length; i++) {
+            genres[i] += other.genres[i];
+        }
+        rows += other.rows;
+    }
+
+    static String genreName(int ordinal) {
+        return GENRES[ordinal].name();
+    }
+}
@@ -0,0 +1,194 @@
+package org.moviesystem.back.analytics;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.moviesystem.back.dao.ChangeDAO;
+import org.moviesystem.back.event.MovieChangeEvent;
+import org.moviesystem.back.metrics.MetricsRegistry;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Приближенная статистика фильмов на скетчах (/api/stats): число различных режиссеров,
+ * квантили бюджета, кассовых сборов и длительности, число фильмов режиссера.
+ *
+ * Включается {@code -Dmoviesystem.stats.enabled=true}. Скетчи не умеют удалять значения,
+ * поэтому строятся по блокам id ({@code moviesystem.stats.block-size}, по умолчанию 32768
+ * id): изменение или удаление фильма помечает его блок, и блок перестраивается из базы.
+ * Какие блоки изменились, видно по версиям изменений (change_version и надгробия,
+ * см. {@link ChangeDAO}); обновление запускается событием об изменении фильма и раз
+ * в {@code moviesystem.stats.refresh-ms} (по умолчанию 5000 мс). Сводка по всем фильмам -
+ * слияние скетчей блоков; она пересобирается после обновления и публикуется целиком,
+ * так что запросы читают ее без блокировок.
+ */
+@ApplicationScoped
+public class MovieSketches {
+
+    private static final Logger LOG = Logger.getLogger(MovieSketches.class.getName());
+
+    private static final boolean ENABLED = Boolean.getBoolean("moviesystem.stats.enabled");
+    private static final long BLOCK_SIZE = Long.getLong("moviesystem.stats.block-size", 32768);
+    private static final long REFRESH_MS = Long.getLong("moviesystem.stats.refresh-ms", 5000);
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    private ChangeDAO changeDAO;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    // Изменяются только под refreshLock
+    private final Map<Long, MovieSketchSet> blocks = new HashMap<>();
+    private final Object refreshLock = new Object();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private final LongAdder rebuiltBlocks = new LongAdder();
+
+    // Примененная версия изменений; -1 - скетчи еще не построены
+    private volatile long version = -1;
+    private volatile MovieSketchSet summary;
+    private ScheduledFuture<?> task;
+
+    public void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        if (!ENABLED) {
+            return;
+        }
+        metricsRegistry.counter("moviesystem_stats_rebuilt_blocks_total",
+            "Блоки id, перестроенные для скетчей статистики", "", rebuiltBlocks::sum);
+        metricsRegistry.gauge("moviesystem_stats_version", "Версия изменений, до которой применены скетчи", "",
+            () -> version);
+        task = scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    public void onMovieChange(@Observes(during = TransactionPhase.AFTER_SUCCESS) MovieChangeEvent event) {
+        if (ENABLED && version >= 0 && refreshQueued.compareAndSet(false, true)) {
+            scheduler.execute(this::refreshQuietly);
+        }
+    }
+
+    /**
+     * @param ranks доли от 0 до 1 для квантилей
+     * @throws IllegalStateException если статистика выключена или еще строится
+     */
+    public StatsReport report(double[] ranks) {
+        MovieSketchSet current = current();
+        StatsReport report = new StatsReport();
+        report.version = version;
+        report.movies = current.rows;
+        report.distinctDirectors = new StatsReport.Cardinality();
+        report.distinctDirectors.estimate = current.directors.estimate();
+        report.distinctDirectors.relativeError = HyperLogLog.RELATIVE_ERROR;
+        report.quantiles.put("budget", quantiles(current.budget, ranks));
+        report.quantiles.put("totalBoxOffice", quantiles(current.totalBoxOffice, ranks));
+        report.quantiles.put("length", quantiles(current.length, ranks));
+        for (int genre = 0; genre < current.genres.length; genre++) {
+            report.genres.put(MovieSketchSet.genreName(genre), current.genres[genre]);
+        }
+        return report;
+    }
+
+    /**
+     * @throws IllegalStateException если статистика выключена или еще строится
+     */
+    public StatsReport.Frequency directorMovies(long directorId) {
+        MovieSketchSet current = current();
+        StatsReport.Frequency frequency = new StatsReport.Frequency();
+        frequency.directorId = directorId;
+        frequency.estimate = current.directorMovies.estimate(directorId);
+        frequency.errorBound = current.directorMovies.errorBound();
+        frequency.confidence = CountMinSketch.CONFIDENCE;
+        frequency.version = version;
+        return frequency;
+    }
+
+    private MovieSketchSet current() {
+        if (!ENABLED) {
+            throw new IllegalStateException("Statistics sketches are disabled (-Dmoviesystem.stats.enabled=true)");
+        }
+        MovieSketchSet current = summary;
+        if (current == null) {
+            throw new IllegalStateException("Statistics sketches are loading");
+        }
+        return current;
+    }
+
+    private static StatsReport.Quantiles quantiles(KllSketch sketch, double[] ranks) {
+        StatsReport.Quantiles quantiles = new StatsReport.Quantiles();
+        quantiles.count = sketch.count();
+        quantiles.rankError = KllSketch.RANK_ERROR;
+        if (sketch.count() > 0) {
+            quantiles.min = sketch.min();
+            quantiles.max = sketch.max();
+            for (double rank : ranks) {
+                quantiles.values.put(String.valueOf(rank), sketch.quantile(rank));
+            }
+        }
+        return quantiles;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // Исключение отменило бы периодическую задачу
+            LOG.log(Level.WARNING, "Statistics sketches refresh failed", e);
+        }
+    }
+
+    private void refresh() {
+        synchronized (refreshLock) {
+            refreshQueued.set(false);
+            long since = Math.max(version, 0);
+            if (version >= 0 && changeDAO.latestVersion() <= since) {
+                return;
+            }
+            long until = changeDAO.watermark();
+            long started = System.currentTimeMillis();
+            // Блок читается не раньше водяного знака и может включать более поздние изменения;
+            // следующее обновление перестроит его еще раз, что безопасно
+            List<Long> changed = changeDAO.changedBlocks(since, until, BLOCK_SIZE);
+            for (Long block : changed) {
+                List<Object[]> rows = changeDAO.sketchColumns(block * BLOCK_SIZE, (block + 1) * BLOCK_SIZE);
+                if (rows.isEmpty()) {
+                    blocks.remove(block);
+                } else {
+                    blocks.put(block, MovieSketchSet.of(rows));
+                }
+                rebuiltBlocks.increment();
+            }
+
+            if (!changed.isEmpty() || summary == null) {
+                MovieSketchSet merged = new MovieSketchSet();
+                blocks.values().forEach(merged::merge);
+                summary = merged;
+            }
+            if (version < 0) {
+                LOG.info(() -> "Statistics sketches built: " + blocks.size() + " blocks in "
+                    + (System.currentTimeMillis() - started) + " ms");
+            }
+            version = until;
+        }
+    }
+}
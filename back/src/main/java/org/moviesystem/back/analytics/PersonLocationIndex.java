@@ -0,0 +1,145 @@
+package org.moviesystem.back.analytics;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.moviesystem.back.dao.PersonDAO;
+import org.moviesystem.back.event.MovieChangeEvent;
+import org.moviesystem.back.metrics.MetricsRegistry;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Пространственный индекс местоположений людей (Location x, y, z) для /api/persons/nearest
+ * и /api/persons/within: {@link KdTree} в памяти. GiST по point в PostgreSQL двумерный,
+ * а z без расширения cube не проиндексировать, поэтому трехмерные запросы идут здесь.
+ *
+ * Приложение не меняет людей после создания, поэтому индекс перестраивается целиком,
+ * когда меняются число людей с местоположением или наибольший id: после события
+ * об изменении фильма (при нем создаются люди) и раз в {@code moviesystem.persons.spatial-refresh-ms}
+ * (по умолчанию 10000 мс). Готовое дерево публикуется целиком, запросы читают его без блокировок.
+ */
+@ApplicationScoped
+public class PersonLocationIndex {
+
+    private static final Logger LOG = Logger.getLogger(PersonLocationIndex.class.getName());
+
+    private static final long REFRESH_MS = Long.getLong("moviesystem.persons.spatial-refresh-ms", 10_000);
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    private PersonDAO personDAO;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private final Object refreshLock = new Object();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private final LongAdder rebuilds = new LongAdder();
+
+    // Изменяется только под refreshLock
+    private long[] signature;
+    private volatile KdTree tree;
+    private ScheduledFuture<?> task;
+
+    public void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        metricsRegistry.gauge("moviesystem_person_locations", "Люди в пространственном индексе местоположений", "",
+            () -> tree != null ? tree.size() : 0);
+        metricsRegistry.counter("moviesystem_person_locations_rebuilds_total",
+            "Перестроения пространственного индекса местоположений", "", rebuilds::sum);
+        task = scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    public void onMovieChange(@Observes(during = TransactionPhase.AFTER_SUCCESS) MovieChangeEvent event) {
+        if (tree != null && refreshQueued.compareAndSet(false, true)) {
+            scheduler.execute(this::refreshQuietly);
+        }
+    }
+
+    /**
+     * @param indexed false - полный проход вместо дерева, для сравнения
+     * @return id не больше k ближайших людей, от ближнего к дальнему
+     * @throws IllegalStateException если индекс еще строится
+     */
+    public long[] nearest(double x, double y, double z, int k, boolean indexed) {
+        KdTree current = current();
+        return indexed ? current.nearest(x, y, z, k) : current.nearestScan(x, y, z, k);
+    }
+
+    /**
+     * @param indexed false - полный проход вместо дерева, для сравнения
+     * @return id людей внутри параллелепипеда [min, max] (границы включены), по возрастанию
+     * @throws IllegalStateException если индекс еще строится
+     */
+    public long[] within(double[] min, double[] max, boolean indexed) {
+        KdTree current = current();
+        return indexed ? current.within(min, max) : current.withinScan(min, max);
+    }
+
+    private KdTree current() {
+        KdTree current = tree;
+        if (current == null) {
+            throw new IllegalStateException("Person location index is loading");
+        }
+        return current;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // Исключение отменило бы периодическую задачу
+            LOG.log(Level.WARNING, "Person location index refresh failed", e);
+        }
+    }
+
+    private void refresh() {
+        synchronized (refreshLock) {
+            refreshQueued.set(false);
+            long[] latest = personDAO.locationsSignature();
+            if (tree != null && Arrays.equals(latest, signature)) {
+                return;
+            }
+            long started = System.currentTimeMillis();
+            List<Object[]> rows = personDAO.locations();
+            long[] ids = new long[rows.size()];
+            double[] points = new double[rows.size() * 3];
+            for (int i = 0; i < ids.length; i++) {
+                Object[] row = rows.get(i);
+                ids[i] = ((Number) row[0]).longValue();
+                points[i * 3] = ((Number) row[1]).doubleValue();
+                points[i * 3 + 1] = ((Number) row[2]).doubleValue();
+                points[i * 3 + 2] = ((Number) row[3]).doubleValue();
+            }
+            KdTree built = new KdTree(ids, points);
+            tree = built;
+            // Строки прочитаны после подписи, так что пропущенное между ними изменение
+            // подпись не скроет: следующее обновление перестроит дерево еще раз
+            signature = latest;
+            rebuilds.increment();
+            LOG.fine(() -> "Person location index built: " + built.size() + " persons in "
+                + (System.currentTimeMillis() - started) + " ms");
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package org.moviesystem.back.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Сжатое множество id в духе Roaring: id делится на старшую часть (ключ контейнера)
+ * и младшие 16 бит. Контейнер с не больше чем {@link #ARRAY_MAX} значениями - отсортированный
+ * массив char (2 байта на id), плотнее - битовая карта на 65536 бит (8 КБ). Поэтому
+ * и разреженные, и плотные множества занимают мало памяти, а пересечение и объединение
+ * идут по контейнерам с одинаковым ключом. Контейнеры серий (run) не реализованы:
+ * id фильмов выдаются пачками последовательности и редко образуют длинные серии.
+ *
+ * Результаты {@link #and}/{@link #or} могут разделять контейнеры с исходными множествами,
+ * поэтому их нельзя изменять. Класс не потокобезопасен.
+ */
+final class RoaringBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+
+    private long[] keys = new long[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    void add(long value) {
+        long key = value >>> 16;
+        int index = find(key);
+        if (index < 0) {
+            index = -index - 1;
+            insert(index, key, new ArrayContainer());
+        }
+        containers[index] = containers[index].add((char) value);
+    }
+
+    void remove(long value) {
+        int index = find(value >>> 16);
+        if (index < 0) {
+            return;
+        }
+        Container container = containers[index].remove((char) value);
+        if (container.cardinality() == 0) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+            containers[--size] = null;
+        } else {
+            containers[index] = container;
+        }
+    }
+
+    boolean contains(long value) {
+        int index = find(value >>> 16);
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Число контейнеров-битовых карт: остальные - массивы.
+     */
+    int bitmapContainers() {
+        int bitmaps = 0;
+        for (int i = 0; i < size; i++) {
+            if (containers[i] instanceof BitmapContainer) {
+                bitmaps++;
+            }
+        }
+        return bitmaps;
+    }
+
+    static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            int order = Long.compare(a.keys[i], b.keys[j]);
+            if (order < 0) {
+                i++;
+            } else if (order > 0) {
+                j++;
+            } else {
+                Container container = a.containers[i].and(b.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.append(a.keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            int order = i == a.size ? 1 : j == b.size ? -1 : Long.compare(a.keys[i], b.keys[j]);
+            if (order < 0) {
+                result.append(a.keys[i], a.containers[i]);
+                i++;
+            } else if (order > 0) {
+                result.append(b.keys[j], b.containers[j]);
+                j++;
+            } else {
+                result.append(a.keys[i], a.containers[i].or(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * До limit значений, начиная с позиции offset, по возрастанию или по убыванию.
+     */
+    long[] page(long offset, int limit, boolean descending) {
+        long[] page = new long[limit];
+        int filled = 0;
+        long skip = offset;
+        for (int n = 0; n < size && filled < limit; n++) {
+            int index = descending ? size - 1 - n : n;
+            Container container = containers[index];
+            int cardinality = container.cardinality();
+            if (skip >= cardinality) {
+                skip -= cardinality;
+                continue;
+            }
+            char[] values = container.values();
+            long high = keys[index] << 16;
+            for (int rank = (int) skip; rank < cardinality && filled < limit; rank++) {
+                page[filled++] = high | values[descending ? cardinality - 1 - rank : rank];
+            }
+            skip = 0;
+        }
+        return filled == limit ? page : Arrays.copyOf(page, filled);
+    }
+
+    private int find(long key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int index, long key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void append(long key, Container container) {
+        insert(size, key, container);
+    }
+
+    private abstract static class Container {
+
+        /**
+         * @return этот же контейнер или новый, если поменялось представление
+         */
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        /**
+         * Значения по возрастанию (без знака).
+         */
+        abstract char[] values();
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        private char[] content;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] content, int cardinality) {
+            this.content = content;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(content, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return BitmapContainer.of(this).add(value);
+            }
+            index = -index - 1;
+            if (cardinality == content.length) {
+                content = Arrays.copyOf(content, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(content, index, content, index + 1, cardinality - index);
+            content[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(content, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(content, index + 1, content, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(content, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[cardinality];
+            int count = 0;
+            if (other instanceof ArrayContainer array) {
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (content[i] < array.content[j]) {
+                        i++;
+                    } else if (content[i] > array.content[j]) {
+                        j++;
+                    } else {
+                        result[count++] = content[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(content[i])) {
+                        result[count++] = content[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                char next;
+                if (j == array.cardinality || (i < cardinality && content[i] < array.content[j])) {
+                    next = content[i++];
+                } else if (i == cardinality || content[i] > array.content[j]) {
+                    next = array.content[j++];
+                } else {
+                    next = content[i++];
+                    j++;
+                }
+                result[count++] = next;
+            }
+            ArrayContainer union = new ArrayContainer(result, count);
+            return count > ARRAY_MAX ? BitmapContainer.of(union) : union;
+        }
+
+        @Override
+        char[] values() {
+            return cardinality == content.length ? content : Arrays.copyOf(content, cardinality);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+
+        private final long[] words = new long[1024];
+        private int cardinality;
+
+        static BitmapContainer of(ArrayContainer array) {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < array.cardinality; i++) {
+                bitmap.add(array.content[i]);
+            }
+            return bitmap;
+        }
+
+        @Override
+        Container add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) != 0) {
+                words[value >>> 6] &= ~bit;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < words.length; i++) {
+                result.words[i] = words[i] & bitmap.words[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+            return result.cardinality <= ARRAY_MAX ? result.toArray() : result;
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer result = new BitmapContainer();
+            System.arraycopy(words, 0, result.words, 0, words.length);
+            result.cardinality = cardinality;
+            if (other instanceof ArrayContainer array) {
+                for (int i = 0; i < array.cardinality; i++) {
+                    result.add(array.content[i]);
+                }
+            } else {
+                BitmapContainer bitmap = (BitmapContainer) other;
+                result.cardinality = 0;
+                for (int i = 0; i < words.length; i++) {
+                    result.words[i] |= bitmap.words[i];
+                    result.cardinality += Long.bitCount(result.words[i]);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        char[] values() {
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return values;
+        }
+
+        private ArrayContainer toArray() {
+            return new ArrayContainer(values(), cardinality);
+        }
+    }
+}
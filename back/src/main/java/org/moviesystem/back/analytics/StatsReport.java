@@ -0,0 +1,47 @@
+package org.moviesystem.back.analytics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ответ /api/stats: приближенная статистика фильмов с границами погрешности.
+ *
+ * {@code relativeError} - относительная стандартная ошибка оценки числа различных значений;
+ * {@code rankError} - погрешность ранга квантиля (оценка 0.9-квантиля лежит между
+ * истинными (0.9 - rankError)- и (0.9 + rankError)-квантилями).
+ */
+public class StatsReport {
+
+    // Версия изменений (change_version), до которой применены скетчи
+    public long version;
+    public long movies;
+    public Cardinality distinctDirectors;
+    public Map<String, Quantiles> quantiles = new LinkedHashMap<>();
+    // Точные значения
+    public Map<String, Long> genres = new LinkedHashMap<>();
+
+    public static class Cardinality {
+        public long estimate;
+        public double relativeError;
+    }
+
+    public static class Quantiles {
+        public long count;
+        public Double min;
+        public Double max;
+        public double rankError;
+        public Map<String, Double> values = new LinkedHashMap<>();
+    }
+
+    /**
+     * Ответ /api/stats/directors/{id}: оценка числа фильмов режиссера. Истинное значение
+     * лежит в [estimate - errorBound, estimate] с вероятностью confidence.
+     */
+    public static class Frequency {
+        public long directorId;
+        public long estimate;
+        public long errorBound;
+        public double confidence;
+        public long version;
+    }
+}
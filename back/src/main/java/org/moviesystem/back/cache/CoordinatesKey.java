@@ -0,0 +1,13 @@
+package org.moviesystem.back.cache;
+
+/**
+ * Естественный ключ координат (x, y).
+ * Значение -0.0 приводится к 0.0, чтобы совпадать с равенством в PostgreSQL.
+ */
+public record CoordinatesKey(int x, double y) {
+
+    public static CoordinatesKey of(Integer x, Double y) {
+        double normalizedY = y == 0.0 ? 0.0 : y;
+        return new CoordinatesKey(x, normalizedY);
+    }
+}
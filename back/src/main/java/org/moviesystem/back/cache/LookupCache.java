@@ -0,0 +1,70 @@
+package org.moviesystem.back.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Неблокирующий кеш "естественный ключ -> id строки" для сценариев find-or-create.
+ *
+ * Кеш только ускоряет поиск: источником истины остается уникальный индекс в БД,
+ * поэтому промах или устаревшая запись приводят лишь к лишнему запросу, а не к дубликату.
+ * Записи добавляются только для зафиксированных строк (см. TransactionCallbacks).
+ *
+ * @param <K> тип естественного ключа (должен корректно реализовывать equals/hashCode)
+ */
+public final class LookupCache<K> {
+
+    private final ConcurrentMap<K, Long> ids = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public LookupCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Long get(K key) {
+        Long id = ids.get(key);
+        if (id != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return id;
+    }
+
+    public void put(K key, Long id) {
+        // При переполнении новые ключи просто не кешируются
+        if (ids.size() < maxSize || ids.containsKey(key)) {
+            ids.put(key, id);
+        }
+    }
+
+    public void evict(K key) {
+        ids.remove(key);
+    }
+
+    /**
+     * Удаляет запись по id (при удалении или изменении строки). Линейный проход - операция редкая.
+     */
+    public void evictId(Long id) {
+        ids.values().removeIf(id::equals);
+    }
+
+    public void clear() {
+        ids.clear();
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+}
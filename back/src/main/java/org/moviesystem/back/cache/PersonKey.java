@@ -0,0 +1,16 @@
+package org.moviesystem.back.cache;
+
+import org.moviesystem.back.model.Country;
+import org.moviesystem.back.model.Person;
+
+import java.time.LocalDate;
+
+/**
+ * Естественный ключ человека: имя, дата рождения и гражданство (может отсутствовать).
+ */
+public record PersonKey(String name, LocalDate birthday, Country nationality) {
+
+    public static PersonKey of(Person person) {
+        return new PersonKey(person.getName(), person.getBirthday(), person.getNationality());
+    }
+}
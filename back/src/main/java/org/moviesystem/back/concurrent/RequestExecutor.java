@@ -0,0 +1,153 @@
+package org.moviesystem.back.concurrent;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ContextService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.moviesystem.back.metrics.MetricsRegistry;
+import org.moviesystem.back.replica.ReplicaRouter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Исполнитель для обработчиков REST и рассылки WebSocket.
+ *
+ * Режимы:
+ * - виртуальные потоки (сборка с -PjavaVersion=21, по умолчанию включен): задача
+ *   выполняется в отдельном виртуальном потоке, а поток контейнера сразу освобождается.
+ *   Контекст приложения (JNDI, загрузчик классов, безопасность) переносится через
+ *   ContextService контейнера, так что задачи ведут себя как управляемые;
+ * - платформенные потоки (Java 17 или -Dmoviesystem.threads.virtual=false): задача
+ *   выполняется сразу в вызывающем потоке, как и раньше.
+ *
+ * Виртуальных потоков может быть сколько угодно, а соединений в пуле - нет
+ * (max-pool-size в web.xml). Поэтому задачи, обращающиеся к БД, сначала берут
+ * разрешение семафора размером с пул ({@code moviesystem.threads.db-permits}):
+ * лишние запросы дешево ждут в виртуальных потоках, а не упираются в таймаут пула.
+ *
+ * Задачи {@link #supply} получают токен согласованности запроса, поэтому чтения
+ * внутри них могут уйти на реплику (см. {@link ReplicaRouter}).
+ */
+@ApplicationScoped
+public class RequestExecutor {
+
+    private static final Logger LOG = Logger.getLogger(RequestExecutor.class.getName());
+
+    private static final boolean VIRTUAL_ENABLED =
+        Boolean.parseBoolean(System.getProperty("moviesystem.threads.virtual", "true"));
+
+    @Resource(lookup = "java:comp/DefaultContextService")
+    private ContextService contextService;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    @Inject
+    private ReplicaRouter replicaRouter;
+
+    private final Semaphore dbPermits = new Semaphore(Integer.getInteger("moviesystem.threads.db-permits", 10), true);
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // null - режим платформенных потоков
+    private ExecutorService virtualExecutor;
+
+    @PostConstruct
+    void init() {
+        if (VIRTUAL_ENABLED) {
+            virtualExecutor = VirtualThreads.newExecutor("movies-vt-").orElse(null);
+        }
+        String mode = isVirtual() ? "virtual" : "platform";
+        LOG.info(() -> "Request executor mode: " + mode);
+
+        metricsRegistry.gauge("moviesystem_executor_info", "Режим исполнителя запросов",
+            MetricsRegistry.labels("mode", mode), () -> 1);
+        metricsRegistry.gauge("moviesystem_executor_in_flight", "Задачи исполнителя запросов в работе", "",
+            inFlight::get);
+        metricsRegistry.gauge("moviesystem_executor_db_permits_available", "Свободные разрешения на обращение к БД", "",
+            dbPermits::availablePermits);
+        metricsRegistry.gauge("moviesystem_executor_db_permits_waiting", "Задачи, ожидающие разрешения на обращение к БД", "",
+            dbPermits::getQueueLength);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdown();
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtualExecutor != null;
+    }
+
+    /**
+     * Выполняет задачу, обращающуюся к БД, с учетом ограничения по соединениям.
+     * Исключения задачи завершают результат с ошибкой.
+     */
+    public <T> CompletionStage<T> supply(Supplier<T> task) {
+        // Токен согласованности читается здесь, в потоке запроса
+        Supplier<T> routed = replicaRouter.routed(task);
+        if (!isVirtual()) {
+            try {
+                return CompletableFuture.completedFuture(withDbPermit(routed));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        virtualExecutor.execute(contextual(() -> {
+            try {
+                result.complete(withDbPermit(routed));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * Выполняет задачу без обращения к БД (например, рассылку WebSocket) вне вызывающего потока.
+     */
+    public void execute(Runnable task) {
+        if (!isVirtual()) {
+            task.run();
+            return;
+        }
+        virtualExecutor.execute(contextual(task));
+    }
+
+    /**
+     * Выполняет задачу в текущем потоке под тем же ограничением по соединениям, что и
+     * {@link #supply}. Для задач из других пулов приложения (см. {@link SlowOperationExecutor}):
+     * их соединения берутся из того же MoviesDS.
+     */
+    public <T> T callWithDbPermit(Supplier<T> task) {
+        dbPermits.acquireUninterruptibly();
+        try {
+            return task.get();
+        } finally {
+            dbPermits.release();
+        }
+    }
+
+    private <T> T withDbPermit(Supplier<T> task) {
+        inFlight.incrementAndGet();
+        try {
+            return callWithDbPermit(task);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private Runnable contextual(Runnable task) {
+        return contextService.createContextualProxy(task, Runnable.class);
+    }
+}
@@ -0,0 +1,103 @@
+package org.moviesystem.back.concurrent;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.moviesystem.back.metrics.MetricsRegistry;
+import org.moviesystem.back.replica.ReplicaRouter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный пул управляемых потоков для медленных операций
+ * (массовые изменения Оскаров, поиск без постраничности).
+ *
+ * Такие запросы не занимают потоки контейнера: ответ отдается, когда задача завершится.
+ * Пул и очередь ограничены ({@code moviesystem.slow.pool-size}, {@code moviesystem.slow.queue-size}):
+ * при переполнении задача сразу отклоняется с {@link RejectedExecutionException},
+ * а ожидание результата ограничено {@code moviesystem.slow.timeout-ms}
+ * (по истечении результат завершается {@link TimeoutException}, сама задача продолжает работу).
+ *
+ * Соединения задачи берут из того же MoviesDS, что и запросы {@link RequestExecutor},
+ * поэтому каждая задача сначала получает его разрешение на обращение к БД: вместе
+ * с обычными запросами они не займут больше {@code moviesystem.threads.db-permits} соединений.
+ */
+@ApplicationScoped
+public class SlowOperationExecutor {
+
+    @Resource(lookup = "java:comp/DefaultManagedThreadFactory")
+    private ManagedThreadFactory threadFactory;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    @Inject
+    private ReplicaRouter replicaRouter;
+
+    @Inject
+    private RequestExecutor requestExecutor;
+
+    private final long timeoutMs = Long.getLong("moviesystem.slow.timeout-ms", 30_000);
+    private final long retryAfterSeconds = Long.getLong("moviesystem.slow.retry-after-seconds", 5);
+
+    private ThreadPoolExecutor pool;
+    private LongAdder rejected;
+    private LongAdder timeouts;
+
+    @PostConstruct
+    void init() {
+        int poolSize = Integer.getInteger("moviesystem.slow.pool-size", 4);
+        pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(Integer.getInteger("moviesystem.slow.queue-size", 16)),
+            threadFactory, new ThreadPoolExecutor.AbortPolicy());
+
+        metricsRegistry.gauge("moviesystem_slow_executor_active", "Выполняющиеся медленные операции", "",
+            pool::getActiveCount);
+        metricsRegistry.gauge("moviesystem_slow_executor_queue", "Медленные операции в очереди", "",
+            () -> pool.getQueue().size());
+        rejected = metricsRegistry.counter("moviesystem_slow_executor_rejected_total",
+            "Медленные операции, отклоненные из-за переполнения очереди", "");
+        timeouts = metricsRegistry.counter("moviesystem_slow_executor_timeouts_total",
+            "Медленные операции, не уложившиеся в таймаут ожидания", "");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    public <T> CompletionStage<T> supply(Supplier<T> task) {
+        CompletableFuture<T> result;
+        try {
+            Supplier<T> routed = replicaRouter.routed(task);
+            result = CompletableFuture.supplyAsync(() -> requestExecutor.callWithDbPermit(routed), pool);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+        return result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+            .whenComplete((value, error) -> {
+                if (error instanceof TimeoutException) {
+                    timeouts.increment();
+                }
+            });
+    }
+
+    /**
+     * Значение заголовка Retry-After для ответа 503.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
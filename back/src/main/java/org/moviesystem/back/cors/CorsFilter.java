@@ -16,12 +16,16 @@ public class CorsFilter implements ContainerResponseFilter {
         responseContext.getHeaders().remove("Access-Control-Allow-Headers");
         responseContext.getHeaders().remove("Access-Control-Allow-Credentials");
         responseContext.getHeaders().remove("Access-Control-Max-Age");
+        responseContext.getHeaders().remove("Access-Control-Expose-Headers");
         
         // Добавляем наши CORS заголовки
         responseContext.getHeaders().add("Access-Control-Allow-Origin", "*");
         responseContext.getHeaders().add("Access-Control-Allow-Credentials", "true");
-        responseContext.getHeaders().add("Access-Control-Allow-Headers", "origin, content-type, accept, authorization, x-requested-with");
-        responseContext.getHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS, HEAD");
+        responseContext.getHeaders().add("Access-Control-Allow-Headers", "origin, content-type, accept, authorization, x-requested-with, if-match, x-consistency-token, last-event-id");
+        responseContext.getHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, PATCH, DELETE, OPTIONS, HEAD");
         responseContext.getHeaders().add("Access-Control-Max-Age", "1209600");
+        // ETag нужен клиенту для условного обновления (If-Match), Location - для фоновых задач,
+        // X-Consistency-Token - для чтения своих записей с реплик
+        responseContext.getHeaders().add("Access-Control-Expose-Headers", "etag, location, retry-after, x-consistency-token");
     }
 }
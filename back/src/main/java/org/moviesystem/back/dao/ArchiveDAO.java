@@ -0,0 +1,47 @@
+package org.moviesystem.back.dao;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.moviesystem.back.metrics.Timed;
+import org.moviesystem.back.model.ArchivedMovie;
+import org.moviesystem.back.replica.ReplicaRouter;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Чтение холодного архива фильмов (movies_archive). Запись в архив выполняет
+ * задача архивации через {@link MovieDAO#archiveChunk}.
+ */
+@Timed
+@ApplicationScoped
+public class ArchiveDAO {
+
+    @Inject
+    private ReplicaRouter replicaRouter;
+
+    /**
+     * Поиск по подстроке названия с keyset-постраничностью по id.
+     * Архив читается редко, поэтому отдельного индекса для поиска нет.
+     */
+    public ArchivePage search(String name, String after, int limit) {
+        String pattern = name == null || name.isBlank()
+            ? "%"
+            : "%" + name.trim().toLowerCase(Locale.ROOT) + "%";
+        long afterId = after == null || after.isEmpty() ? 0L : Long.parseLong(Queries.decodeCursor(after, 1)[0]);
+
+        List<ArchivedMovie> movies = replicaRouter.read(em -> Queries.readOnly(em,
+                em.createNamedQuery(ArchivedMovie.SEARCH, ArchivedMovie.class))
+            .setParameter("name", pattern)
+            .setParameter("afterId", afterId)
+            .setMaxResults(limit + 1)
+            .getResultList());
+
+        ArchivePage page = new ArchivePage();
+        page.movies.addAll(movies.subList(0, Math.min(movies.size(), limit)));
+        if (movies.size() > limit) {
+            page.nextCursor = Queries.encodeCursor(String.valueOf(movies.get(limit - 1).getId()));
+        }
+        return page;
+    }
+}
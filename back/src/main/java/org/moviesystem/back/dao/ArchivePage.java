@@ -0,0 +1,16 @@
+package org.moviesystem.back.dao;
+
+import org.moviesystem.back.model.ArchivedMovie;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Страница результатов поиска по архиву фильмов с keyset-постраничностью
+ * (курсор {@code nextCursor} передается в следующий запрос как {@code after}).
+ */
+public class ArchivePage {
+
+    public List<ArchivedMovie> movies = new ArrayList<>();
+    public String nextCursor;
+}
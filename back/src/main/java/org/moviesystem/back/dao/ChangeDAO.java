@@ -0,0 +1,287 @@
+package org.moviesystem.back.dao;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.moviesystem.back.metrics.Timed;
+import org.moviesystem.back.model.Movie;
+import org.moviesystem.back.model.MovieTombstone;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Чтение изменений фильмов по версиям (change_version и надгробия movie_tombstones,
+ * которые ведут триггеры, см. db/migration/V7__movie_changes.sql и V10__movie_changes_xid.sql).
+ * Версия - номер пишущей транзакции, поэтому у строк одной транзакции она общая,
+ * и порции читаются по паре (change_version, id).
+ *
+ * Все запросы идут на основной сервер: реплика может еще не видеть изменений
+ * до водяного знака, полученного с основного.
+ */
+@Timed
+@ApplicationScoped
+public class ChangeDAO {
+
+    @PersistenceContext(unitName = "default")
+    private EntityManager entityManager;
+
+    /**
+     * Версия, до которой включительно все изменения уже зафиксированы (или откачены):
+     * xmin текущего снимка. Ничего не ждет - незавершенная пишущая транзакция просто
+     * держит водяной знак ниже своей версии.
+     */
+    public long watermark() {
+        return ((Number) entityManager.createNativeQuery("SELECT movie_change_watermark()")
+            .getSingleResult()).longValue();
+    }
+
+    /**
+     * Наибольшая версия среди уже видимых изменений (по индексам). Если она не больше
+     * прочитанного водяного знака, новых изменений нет; как граница чтения не годится -
+     * для этого {@link #watermark()}.
+     */
+    public long latestVersion() {
+        return ((Number) entityManager.createNativeQuery(
+                "SELECT GREATEST((SELECT COALESCE(MAX(change_version), 0) FROM movies), "
+                    + "(SELECT COALESCE(MAX(change_version), 0) FROM movie_tombstones))")
+            .getSingleResult()).longValue();
+    }
+
+    /**
+     * Наибольшая версия удаленных надгробий: изменения до нее восстановить нельзя.
+     */
+    public long purgedVersion() {
+        return ((Number) entityManager.createNativeQuery("SELECT purged_version FROM movie_change_state WHERE id = 1")
+            .getSingleResult()).longValue();
+    }
+
+    /**
+     * Изменения с версиями из (since, водяной знак] - не больше limit, по возрастанию версии.
+     */
+    public ChangePage changes(long since, int limit) {
+        // since выдан прежним водяным знаком, и все до него уже окончательно
+        long until = Math.max(watermark(), since);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> upserts = entityManager.createNativeQuery(
+                "SELECT id, change_version FROM movies WHERE change_version > ? AND change_version <= ? "
+                    + "ORDER BY change_version, id LIMIT ?")
+            .setParameter(1, since)
+            .setParameter(2, until)
+            .setParameter(3, limit + 1)
+            .getResultList();
+        List<MovieTombstone> deletes = Queries.readOnly(entityManager,
+                entityManager.createNamedQuery(MovieTombstone.FIND_SINCE, MovieTombstone.class))
+            .setParameter("since", since)
+            .setParameter("until", until)
+            .setMaxResults(limit + 1)
+            .getResultList();
+
+        // Слияние двух упорядоченных по версии списков
+        List<long[]> merged = new ArrayList<>(); // {version, id, 1 - удаление}
+        int u = 0;
+        int d = 0;
+        while (merged.size() <= limit && (u < upserts.size() || d < deletes.size())) {
+            long upsertVersion = u < upserts.size() ? ((Number) upserts.get(u)[1]).longValue() : Long.MAX_VALUE;
+            long deleteVersion = d < deletes.size() ? deletes.get(d).getChangeVersion() : Long.MAX_VALUE;
+            if (upsertVersion < deleteVersion) {
+                merged.add(new long[] {upsertVersion, ((Number) upserts.get(u++)[0]).longValue(), 0});
+            } else {
+                merged.add(new long[] {deleteVersion, deletes.get(d++).getMovieId(), 1});
+            }
+        }
+
+        ChangePage page = new ChangePage();
+        page.hasMore = merged.size() > limit;
+        if (page.hasMore) {
+            // Версия не делится между страницами: изменения с версией первой не вошедшей
+            // записи уходят на следующую, а если это вся страница - версия отдается целиком
+            long cutVersion = merged.get(limit)[0];
+            int cut = limit;
+            while (cut > 0 && merged.get(cut - 1)[0] == cutVersion) {
+                cut--;
+            }
+            merged = cut > 0 ? merged.subList(0, cut) : wholeVersion(cutVersion);
+            page.nextSince = merged.get(merged.size() - 1)[0];
+        } else {
+            page.nextSince = until;
+        }
+
+        Map<Long, Movie> movies = loadMovies(merged);
+        for (long[] entry : merged) {
+            if (entry[2] == 1) {
+                page.changes.add(ChangePage.Change.delete(entry[0], entry[1]));
+            } else {
+                Movie movie = movies.get(entry[1]);
+                // Удален после чтения версий - надгробие придет следующей синхронизацией
+                if (movie != null) {
+                    page.changes.add(ChangePage.Change.upsert(entry[0], movie));
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Столбцы фильмов, измененных в (since, until], для колоночного снимка аналитики:
+     * id, change_version, oscars_count, total_box_office, length, budget, golden_palm_count,
+     * genre, mpaa_rating, director_id, год creation_date, name. Порядок - по change_version и id.
+     */
+    public List<Object[]> changedColumns(long since, long until, int limit) {
+        return changedColumns(since, Long.MAX_VALUE, until, limit);
+    }
+
+    /**
+     * То же после позиции (sinceVersion, afterId) - для чтения порциями: следующая порция
+     * начинается после версии и id последней строки предыдущей.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> changedColumns(long sinceVersion, long afterId, long until, int limit) {
+        return entityManager.createNativeQuery(
+                "SELECT id, change_version, oscars_count, total_box_office, length, budget, golden_palm_count, "
+                    + "genre, mpaa_rating, director_id, EXTRACT(YEAR FROM creation_date)::int, name "
+                    + "FROM movies WHERE (change_version, id) > (?, ?) AND change_version <= ? "
+                    + "ORDER BY change_version, id LIMIT ?")
+            .setParameter(1, sinceVersion)
+            .setParameter(2, afterId)
+            .setParameter(3, until)
+            .setParameter(4, limit)
+            .getResultList();
+    }
+
+    /**
+     * Атрибуты фильмов, измененных после позиции (sinceVersion, afterId) и не позже until,
+     * для битовых индексов: id, change_version, genre, mpaa_rating, director_id
+     * и eye_color, hair_color, nationality режиссера. Порядок - по change_version и id.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> changedAttributes(long sinceVersion, long afterId, long until, int limit) {
+        return entityManager.createNativeQuery(
+                "SELECT m.id, m.change_version, m.genre, m.mpaa_rating, m.director_id, "
+                    + "d.eye_color, d.hair_color, d.nationality "
+                    + "FROM movies m LEFT JOIN persons d ON d.id = m.director_id "
+                    + "WHERE (m.change_version, m.id) > (?, ?) AND m.change_version <= ? "
+                    + "ORDER BY m.change_version, m.id LIMIT ?")
+            .setParameter(1, sinceVersion)
+            .setParameter(2, afterId)
+            .setParameter(3, until)
+            .setParameter(4, limit)
+            .getResultList();
+    }
+
+    /**
+     * Первые limit фильмов по убыванию столбца (при равенстве - по id): id, name, значение.
+     * Фильмы без значения не попадают. Читает с основного сервера, как и изменения,
+     * чтобы результат был не старше водяного знака, взятого перед вызовом.
+     *
+     * @param column имя столбца из фиксированного списка вызывающего, не из запроса
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> topByColumn(String column, int limit) {
+        return entityManager.createNativeQuery(
+                "SELECT id, name, " + column + " FROM movies WHERE " + column + " IS NOT NULL "
+                    + "ORDER BY " + column + " DESC, id LIMIT ?")
+            .setParameter(1, limit)
+            .getResultList();
+    }
+
+    /**
+     * id фильмов, удаленных в (since, until].
+     */
+    public List<Long> deletedIds(long since, long until) {
+        List<Long> ids = new ArrayList<>();
+        for (MovieTombstone tombstone : Queries.readOnly(entityManager,
+                entityManager.createNamedQuery(MovieTombstone.FIND_SINCE, MovieTombstone.class))
+                .setParameter("since", since)
+                .setParameter("until", until)
+                .getResultList()) {
+            ids.add(tombstone.getMovieId());
+        }
+        return ids;
+    }
+
+    /**
+     * Номера блоков id (id / blockSize), в которых фильмы менялись или удалялись в (since, until].
+     */
+    public List<Long> changedBlocks(long since, long until, long blockSize) {
+        List<Long> blocks = new ArrayList<>();
+        for (Object block : entityManager.createNativeQuery(
+                "SELECT id / ?1 FROM movies WHERE change_version > ?2 AND change_version <= ?3 "
+                    + "UNION SELECT movie_id / ?1 FROM movie_tombstones WHERE change_version > ?2 AND change_version <= ?3")
+                .setParameter(1, blockSize)
+                .setParameter(2, since)
+                .setParameter(3, until)
+                .getResultList()) {
+            blocks.add(((Number) block).longValue());
+        }
+        return blocks;
+    }
+
+    /**
+     * Столбцы фильмов с id из [fromId, toId) для скетчей статистики:
+     * director_id, genre, budget, total_box_office, length.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> sketchColumns(long fromId, long toId) {
+        return entityManager.createNativeQuery(
+                "SELECT director_id, genre, budget, total_box_office, length FROM movies WHERE id >= ? AND id < ?")
+            .setParameter(1, fromId)
+            .setParameter(2, toId)
+            .getResultList();
+    }
+
+    /**
+     * Удаляет надгробия старше cutoff и сдвигает {@link #purgedVersion()}.
+     *
+     * @return количество удаленных надгробий
+     */
+    public int purgeTombstones(LocalDateTime cutoff) {
+        return ((Number) entityManager.createNativeQuery("SELECT movie_purge_tombstones(?)")
+            .setParameter(1, cutoff)
+            .getSingleResult()).intValue();
+    }
+
+    // Все изменения одной версии (одной транзакции), когда их больше страницы
+    private List<long[]> wholeVersion(long version) {
+        List<long[]> entries = new ArrayList<>();
+        for (Object id : entityManager.createNativeQuery(
+                "SELECT id FROM movies WHERE change_version = ? ORDER BY id")
+                .setParameter(1, version)
+                .getResultList()) {
+            entries.add(new long[] {version, ((Number) id).longValue(), 0});
+        }
+        for (Long id : deletedIds(version - 1, version)) {
+            entries.add(new long[] {version, id, 1});
+        }
+        return entries;
+    }
+
+    // Фильмы читаются из базы, а не из разделяемого кеша: массовые операции меняют
+    // строки в обход EclipseLink, и синхронизация не должна отдавать устаревшее состояние
+    private Map<Long, Movie> loadMovies(List<long[]> entries) {
+        List<Long> ids = new ArrayList<>();
+        for (long[] entry : entries) {
+            if (entry[2] == 0) {
+                ids.add(entry[1]);
+            }
+        }
+        Map<Long, Movie> movies = new HashMap<>();
+        if (ids.isEmpty()) {
+            return movies;
+        }
+        for (Movie movie : Queries.readOnly(entityManager,
+                entityManager.createNamedQuery(Movie.FIND_BY_IDS, Movie.class))
+                .setParameter("ids", ids)
+                .setHint(QueryHints.REFRESH, HintValues.TRUE)
+                .getResultList()) {
+            movies.put(movie.getId(), movie);
+        }
+        return movies;
+    }
+}
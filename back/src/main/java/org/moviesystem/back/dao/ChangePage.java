@@ -0,0 +1,46 @@
+package org.moviesystem.back.dao;
+
+import org.moviesystem.back.model.Movie;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Изменения фильмов после версии {@code since} в порядке версий.
+ *
+ * Клиент применяет их по порядку (upsert - заменить фильм целиком, delete - удалить по id)
+ * и передает {@code nextSince} в следующий запрос. Пока {@code hasMore} истинно,
+ * за этой страницей уже есть следующие изменения.
+ */
+public class ChangePage {
+
+    public List<Change> changes = new ArrayList<>();
+    public long nextSince;
+    public boolean hasMore;
+
+    public static class Change {
+        public long version;
+        public String op;
+        public Long id;
+        // Текущее состояние фильма: оно может быть новее version - тогда
+        // следующая синхронизация вернет его еще раз с большей версией
+        public Movie movie;
+
+        static Change upsert(long version, Movie movie) {
+            Change change = new Change();
+            change.version = version;
+            change.op = "upsert";
+            change.id = movie.getId();
+            change.movie = movie;
+            return change;
+        }
+
+        static Change delete(long version, Long id) {
+            Change change = new Change();
+            change.version = version;
+            change.op = "delete";
+            change.id = id;
+            return change;
+        }
+    }
+}
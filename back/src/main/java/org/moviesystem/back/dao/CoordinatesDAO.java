@@ -1,34 +1,125 @@
 package org.moviesystem.back.dao;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import org.moviesystem.back.metrics.Timed;
 import org.moviesystem.back.model.Coordinates;
+import org.moviesystem.back.replica.ReplicaRouter;
 
+import java.util.ArrayList;
 import java.util.List;
 
+@Timed
 @ApplicationScoped
 public class CoordinatesDAO {
     
     @PersistenceContext(unitName = "default")
     private EntityManager entityManager;
+
+    @Inject
+    private ReplicaRouter replicaRouter;
     
     public List<Coordinates> findAll() {
-        TypedQuery<Coordinates> query = entityManager.createQuery(
-            "SELECT c FROM Coordinates c ORDER BY c.id", 
-            Coordinates.class);
-        return query.getResultList();
+        return replicaRouter.read(em -> em.createNamedQuery(Coordinates.FIND_ALL, Coordinates.class).getResultList());
     }
     
+    /**
+     * Страница координат для выпадающего списка с keyset-постраничностью по (x, y).
+     *
+     * Префиксом поиска служит значение x: у координат нет имени, а уникальный индекс
+     * coordinates_x_y_key обслуживает и фильтр по x, и сортировку. Нечисловой префикс
+     * ничего не фильтрует.
+     */
+    public LookupPage lookup(String prefix, String after, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT id, x, y FROM coordinates WHERE TRUE");
+        List<Object> params = new ArrayList<>();
+        if (prefix != null && !prefix.isBlank()) {
+            try {
+                params.add(Integer.parseInt(prefix.trim()));
+                sql.append(" AND x = ?");
+            } catch (NumberFormatException e) {
+                // Фильтр только по числовому x
+            }
+        }
+        if (after != null && !after.isEmpty()) {
+            String[] cursor = Queries.decodeCursor(after, 2);
+            sql.append(" AND (x, y) > (?, ?)");
+            params.add(Integer.parseInt(cursor[0]));
+            params.add(Double.parseDouble(cursor[1]));
+        }
+        sql.append(" ORDER BY x, y LIMIT ?");
+        params.add(limit + 1);
+
+        List<?> rows = replicaRouter.read(em -> {
+            Query query = em.createNativeQuery(sql.toString());
+            for (int i = 0; i < params.size(); i++) {
+                query.setParameter(i + 1, params.get(i));
+            }
+            return query.getResultList();
+        });
+
+        LookupPage page = new LookupPage();
+        for (int i = 0; i < Math.min(rows.size(), limit); i++) {
+            Object[] row = (Object[]) rows.get(i);
+            page.items.add(new LookupPage.Item(((Number) row[0]).longValue(),
+                "X: " + row[1] + ", Y: " + row[2]));
+        }
+        if (rows.size() > limit) {
+            Object[] last = (Object[]) rows.get(limit - 1);
+            page.nextCursor = Queries.encodeCursor(String.valueOf(last[1]), String.valueOf(last[2]));
+        }
+        return page;
+    }
+
+    /**
+     * Координаты внутри прямоугольника (границы включительно), по id, не больше limit.
+     *
+     * @param indexed true - через GiST-индекс coordinates_point_gist (point <@ box),
+     *                false - обычным сравнением x и y, для сравнения с полным просмотром
+     */
+    @SuppressWarnings("unchecked")
+    public List<Coordinates> findWithin(double minX, double minY, double maxX, double maxY, int limit, boolean indexed) {
+        String condition = indexed
+            ? "point(x, y) <@ box(point(?1, ?2), point(?3, ?4))"
+            : "x >= ?1 AND y >= ?2 AND x <= ?3 AND y <= ?4";
+        return replicaRouter.read(em -> em.createNativeQuery(
+                "SELECT * FROM coordinates WHERE " + condition + " ORDER BY id LIMIT ?5", Coordinates.class)
+            .setParameter(1, minX)
+            .setParameter(2, minY)
+            .setParameter(3, maxX)
+            .setParameter(4, maxY)
+            .setParameter(5, limit)
+            .getResultList());
+    }
+
+    /**
+     * k ближайших к точке координат по евклидову расстоянию, от ближних к дальним.
+     *
+     * @param indexed true - обход GiST-индекса в порядке расстояния (point <-> point),
+     *                false - вычисление расстояния для всех строк и сортировка
+     */
+    @SuppressWarnings("unchecked")
+    public List<Coordinates> findNearest(double x, double y, int k, boolean indexed) {
+        String distance = indexed ? "point(x, y) <-> point(?1, ?2)" : "sqrt((x - ?1) ^ 2 + (y - ?2) ^ 2)";
+        return replicaRouter.read(em -> em.createNativeQuery(
+                "SELECT * FROM coordinates ORDER BY " + distance + " LIMIT ?3", Coordinates.class)
+            .setParameter(1, x)
+            .setParameter(2, y)
+            .setParameter(3, k)
+            .getResultList());
+    }
+
     public Coordinates findById(Long id) {
         return entityManager.find(Coordinates.class, id);
     }
     
     public Coordinates findByXAndY(Integer x, Double y) {
-        TypedQuery<Coordinates> query = entityManager.createQuery(
-            "SELECT c FROM Coordinates c WHERE c.x = :x AND c.y = :y", 
-            Coordinates.class);
+        TypedQuery<Coordinates> query = entityManager.createNamedQuery(
+            Coordinates.FIND_BY_X_AND_Y, Coordinates.class);
         query.setParameter("x", x);
         query.setParameter("y", y);
         
@@ -36,44 +127,44 @@ public class CoordinatesDAO {
         return results.isEmpty() ? null : results.get(0);
     }
     
-    public Coordinates create(Coordinates coordinates) {
-        entityManager.getTransaction().begin();
-        try {
-            entityManager.persist(coordinates);
-            entityManager.flush();
-            entityManager.getTransaction().commit();
-            return coordinates;
-        } catch (Exception e) {
-            entityManager.getTransaction().rollback();
-            throw e;
+    /**
+     * Находит или атомарно создает координаты (x, y) и возвращает их id.
+     *
+     * Опирается на уникальный индекс coordinates (x, y): параллельные вставки одной
+     * пары не создают дубликатов, проигравшая вставка просто читает существующую строку.
+     * id берется из той же последовательности, что и у JPA: значение nextval считается
+     * концом блока, поэтому не пересекается с блоками, выданными EclipseLink.
+     */
+    public Long upsert(Integer x, Double y) {
+        List<?> inserted = entityManager.createNativeQuery(
+                "INSERT INTO coordinates (id, x, y) VALUES (nextval('coordinates_id_seq'), ?, ?) "
+                    + "ON CONFLICT (x, y) DO NOTHING RETURNING id")
+            .setParameter(1, x)
+            .setParameter(2, y)
+            .getResultList();
+        if (!inserted.isEmpty()) {
+            return ((Number) inserted.get(0)).longValue();
         }
+        Object existing = entityManager.createNativeQuery("SELECT id FROM coordinates WHERE x = ? AND y = ?")
+            .setParameter(1, x)
+            .setParameter(2, y)
+            .getSingleResult();
+        return ((Number) existing).longValue();
+    }
+    
+    public Coordinates create(Coordinates coordinates) {
+        entityManager.persist(coordinates);
+        return coordinates;
     }
     
     public Coordinates update(Coordinates coordinates) {
-        entityManager.getTransaction().begin();
-        try {
-            Coordinates updatedCoordinates = entityManager.merge(coordinates);
-            entityManager.flush();
-            entityManager.getTransaction().commit();
-            return updatedCoordinates;
-        } catch (Exception e) {
-            entityManager.getTransaction().rollback();
-            throw e;
-        }
+        return entityManager.merge(coordinates);
     }
     
     public void delete(Long id) {
-        entityManager.getTransaction().begin();
-        try {
-            Coordinates coordinates = entityManager.find(Coordinates.class, id);
-            if (coordinates != null) {
-                entityManager.remove(coordinates);
-                entityManager.flush();
-            }
-            entityManager.getTransaction().commit();
-        } catch (Exception e) {
-            entityManager.getTransaction().rollback();
-            throw e;
+        Coordinates coordinates = entityManager.find(Coordinates.class, id);
+        if (coordinates != null) {
+            entityManager.remove(coordinates);
         }
     }
 }
@@ -0,0 +1,48 @@
+package org.moviesystem.back.dao;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import org.moviesystem.back.metrics.Timed;
+import org.moviesystem.back.model.Job;
+import org.moviesystem.back.model.JobStatus;
+
+import java.util.List;
+
+@Timed
+@ApplicationScoped
+public class JobDAO {
+
+    @PersistenceContext(unitName = "default")
+    private EntityManager entityManager;
+
+    public Job create(Job job) {
+        entityManager.persist(job);
+        return job;
+    }
+
+    public Job findById(Long id) {
+        return entityManager.find(Job.class, id);
+    }
+
+    /**
+     * Загружает задачу с блокировкой строки: одну задачу не выполняют
+     * две порции одновременно (например, после повторного запуска).
+     */
+    public Job findForUpdate(Long id) {
+        return entityManager.find(Job.class, id, LockModeType.PESSIMISTIC_WRITE);
+    }
+
+    public List<Job> findRecent(int limit) {
+        return Queries.readOnly(entityManager, entityManager.createNamedQuery(Job.FIND_RECENT, Job.class))
+            .setMaxResults(limit)
+            .getResultList();
+    }
+
+    public List<Long> findUnfinishedIds() {
+        return entityManager.createNamedQuery(Job.FIND_UNFINISHED, Long.class)
+            .setParameter("statuses", List.of(JobStatus.QUEUED, JobStatus.RUNNING))
+            .getResultList();
+    }
+}
@@ -0,0 +1,29 @@
+package org.moviesystem.back.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Страница легкой проекции (id и отображаемое имя) для выпадающих списков.
+ *
+ * Постраничность keyset: {@code nextCursor} - непрозрачная строка с ключом последней
+ * записи страницы, которую клиент передает в следующий запрос как {@code after}.
+ * Если следующей страницы нет, {@code nextCursor} равен null.
+ */
+public class LookupPage {
+
+    public List<Item> items = new ArrayList<>();
+    public String nextCursor;
+
+    public static class Item {
+        public Long id;
+        public String name;
+
+        public Item() {}
+
+        public Item(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
@@ -1,15 +1,27 @@
 package org.moviesystem.back.dao;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import org.eclipse.persistence.config.QueryHints;
+import org.moviesystem.back.metrics.Timed;
 import org.moviesystem.back.model.Movie;
 import org.moviesystem.back.model.MovieGenre;
+import org.moviesystem.back.model.MpaaRating;
+import org.moviesystem.back.model.Person;
+import org.moviesystem.back.replica.ReplicaRouter;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.logging.Logger;
 
 /**
  * DAO (Data Access Object) для работы с фильмами в базе данных.
@@ -22,13 +34,25 @@ import java.util.Optional;
  * - Специальные операции (перераспределение Оскаров, подсчет статистики)
  * 
  * Использует JPA (Java Persistence API) для работы с базой данных PostgreSQL.
- * Все операции выполняются в транзакциях для обеспечения целостности данных.
+ * Транзакциями управляет контейнер (JTA) на уровне сервиса: DAO никогда не
+ * открывает и не фиксирует транзакции сам, а работает в текущей.
+ * 
+ * Версию изменения (change_version) и надгробия удаленных фильмов для синхронизации
+ * по дельте ведут триггеры базы, поэтому любая запись здесь, включая нативный SQL,
+ * учитывается без дополнительного кода (см. {@link ChangeDAO}).
  * 
  * @author Movie Management System Team
  * @version 1.0
  */
+@Timed
 @ApplicationScoped
 public class MovieDAO {
+
+    private static final Logger LOG = Logger.getLogger(MovieDAO.class.getName());
+    
+    // Нижние границы интервалов фасетов; последний интервал открыт сверху
+    private static final long[] OSCARS_FACET_BOUNDS = {0, 1, 2, 5, 10};
+    private static final long[] GOLDEN_PALM_FACET_BOUNDS = {0, 1, 2, 5};
     
     /**
      * EntityManager - основной интерфейс JPA для работы с базой данных.
@@ -38,6 +62,15 @@ public class MovieDAO {
     @PersistenceContext(unitName = "default")
     private EntityManager entityManager;
     
+    @Inject
+    private MovieQueryRegistry queryRegistry;
+    
+    /**
+     * Чтения списков, поиска и сводок вне транзакции могут выполняться на реплике.
+     */
+    @Inject
+    private ReplicaRouter replicaRouter;
+    
     /**
      * Создает новый фильм в базе данных.
      * 
@@ -46,21 +79,9 @@ public class MovieDAO {
      * @throws Exception если произошла ошибка при сохранении
      */
     public Movie create(Movie movie) {
-        // Начинаем транзакцию для обеспечения целостности данных
-        entityManager.getTransaction().begin();
-        try {
-            // Сохраняем фильм в базе данных
-            entityManager.persist(movie);
-            // Принудительно записываем изменения в БД
-            entityManager.flush();
-            // Подтверждаем транзакцию
-            entityManager.getTransaction().commit();
-            return movie;
-        } catch (Exception e) {
-            // В случае ошибки откатываем транзакцию
-            entityManager.getTransaction().rollback();
-            throw e;
-        }
+        // Запись в БД произойдет при фиксации транзакции сервиса
+        entityManager.persist(movie);
+        return movie;
     }
     
     public Optional<Movie> findById(Long id) {
@@ -69,64 +90,73 @@ public class MovieDAO {
     }
     
     public List<Movie> findAll() {
-        TypedQuery<Movie> query = entityManager.createQuery(
-            "SELECT m FROM Movie m ORDER BY m.id", Movie.class);
-        return query.getResultList();
+        return replicaRouter.read(em -> Queries.withRelations(Queries.readOnly(em,
+            em.createNamedQuery(Movie.FIND_ALL, Movie.class))).getResultList());
+    }
+    
+    /**
+     * Все фильмы только с жанром и количеством Оскаров (группа выборки Movie.OSCARS_FETCH_GROUP):
+     * остальные столбцы не читаются, а связанные объекты не загружаются.
+     */
+    public List<Movie> findAllOscars() {
+        return replicaRouter.read(em -> Queries.readOnly(em,
+                em.createNamedQuery(Movie.FIND_ALL, Movie.class))
+            .setHint(QueryHints.FETCH_GROUP_NAME, Movie.OSCARS_FETCH_GROUP)
+            .getResultList());
+    }
+    
+    /**
+     * Фильмы с заданными id в том же порядке; удаленных к этому моменту в списке нет.
+     */
+    public List<Movie> findByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Movie> byId = new HashMap<>();
+        for (Movie movie : replicaRouter.read(em -> Queries.withRelations(Queries.readOnly(em,
+                em.createNamedQuery(Movie.FIND_BY_IDS, Movie.class)))
+            .setParameter("ids", ids)
+            .getResultList())) {
+            byId.put(movie.getId(), movie);
+        }
+        List<Movie> movies = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Movie movie = byId.get(id);
+            if (movie != null) {
+                movies.add(movie);
+            }
+        }
+        return movies;
     }
     
     public List<Movie> findAll(int page, int size, String sortField, String sortOrder) {
-        String orderBy = validateSortField(sortField) + " " + (sortOrder.equalsIgnoreCase("desc") ? "DESC" : "ASC");
-        TypedQuery<Movie> query = entityManager.createQuery(
-            "SELECT m FROM Movie m ORDER BY " + orderBy, 
-            Movie.class);
-        query.setFirstResult(page * size);
-        query.setMaxResults(size);
-        return query.getResultList();
+        return replicaRouter.read(em -> sortedQuery(em, MovieQueryRegistry.FIND_ALL, sortField, sortOrder)
+            .setFirstResult(page * size)
+            .setMaxResults(size)
+            .getResultList());
     }
     
     public List<Movie> findAll(int page, int size) {
         return findAll(page, size, "id", "asc");
     }
     
-    private String validateSortField(String sortField) {
-        // Разрешенные поля для сортировки
-        switch (sortField.toLowerCase()) {
-            case "id": return "m.id";
-            case "name": return "m.name";
-            case "creationdate": return "m.creationDate";
-            case "oscarscount": return "m.oscarsCount";
-            case "budget": return "m.budget";
-            case "totalboxoffice": return "m.totalBoxOffice";
-            case "mpaarating": return "m.mpaaRating";
-            case "length": return "m.length";
-            case "goldenpalmcount": return "m.goldenPalmCount";
-            case "genre": return "m.genre";
-            default: return "m.id";
-        }
+    /**
+     * Возвращает заранее разобранный запрос с нужной сортировкой.
+     * Поле сортировки проверяется по списку разрешенных в {@link MovieQueryRegistry}.
+     */
+    private TypedQuery<Movie> sortedQuery(EntityManager em, String baseQuery, String sortField, String sortOrder) {
+        return Queries.readOnly(em,
+            em.createNamedQuery(queryRegistry.name(baseQuery, sortField, sortOrder), Movie.class));
     }
     
     public long countAll() {
-        TypedQuery<Long> query = entityManager.createQuery(
-            "SELECT COUNT(m) FROM Movie m", Long.class);
-        return query.getSingleResult();
+        return replicaRouter.read(em -> em.createNamedQuery(Movie.COUNT_ALL, Long.class).getSingleResult());
     }
     
     public List<Movie> findByNameContaining(String name, String sortField, String sortOrder) {
-        String orderBy = validateSortField(sortField) + " " + (sortOrder.equalsIgnoreCase("desc") ? "DESC" : "ASC");
-        TypedQuery<Movie> query = entityManager.createQuery(
-            "SELECT DISTINCT m FROM Movie m " +
-            "LEFT JOIN m.director d " +
-            "LEFT JOIN m.screenwriter s " +
-            "LEFT JOIN m.operator o " +
-            "WHERE LOWER(m.name) LIKE LOWER(:name) " +
-            "OR LOWER(m.genre) LIKE LOWER(:name) " +
-            "OR LOWER(d.name) LIKE LOWER(:name) " +
-            "OR LOWER(s.name) LIKE LOWER(:name) " +
-            "OR LOWER(o.name) LIKE LOWER(:name) " +
-            "ORDER BY " + orderBy, 
-            Movie.class);
-        query.setParameter("name", "%" + name + "%");
-        return query.getResultList();
+        return replicaRouter.read(em -> sortedQuery(em, MovieQueryRegistry.FIND_BY_NAME_CONTAINING, sortField, sortOrder)
+            .setParameter("name", "%" + name + "%")
+            .getResultList());
     }
     
     public List<Movie> findByNameContaining(String name) {
@@ -134,17 +164,16 @@ public class MovieDAO {
     }
     
     public List<Movie> findByGenre(String genre, String sortField, String sortOrder) {
+        MovieGenre movieGenre;
         try {
-            String orderBy = validateSortField(sortField) + " " + (sortOrder.equalsIgnoreCase("desc") ? "DESC" : "ASC");
-            TypedQuery<Movie> query = entityManager.createQuery(
-                "SELECT m FROM Movie m WHERE m.genre = :genre ORDER BY " + orderBy, 
-                Movie.class);
-            query.setParameter("genre", MovieGenre.valueOf(genre));
-            return query.getResultList();
+            movieGenre = MovieGenre.valueOf(genre);
         } catch (IllegalArgumentException e) {
             // Если жанр не найден, возвращаем пустой список
             return List.of();
         }
+        return replicaRouter.read(em -> sortedQuery(em, MovieQueryRegistry.FIND_BY_GENRE, sortField, sortOrder)
+            .setParameter("genre", movieGenre)
+            .getResultList());
     }
     
     public List<Movie> findByGenre(String genre) {
@@ -152,12 +181,9 @@ public class MovieDAO {
     }
     
     public List<Movie> findByDirector(String directorName, String sortField, String sortOrder) {
-        String orderBy = validateSortField(sortField) + " " + (sortOrder.equalsIgnoreCase("desc") ? "DESC" : "ASC");
-        TypedQuery<Movie> query = entityManager.createQuery(
-            "SELECT m FROM Movie m JOIN m.director d WHERE LOWER(d.name) LIKE LOWER(:name) ORDER BY " + orderBy, 
-            Movie.class);
-        query.setParameter("name", "%" + directorName + "%");
-        return query.getResultList();
+        return replicaRouter.read(em -> sortedQuery(em, MovieQueryRegistry.FIND_BY_DIRECTOR, sortField, sortOrder)
+            .setParameter("name", "%" + directorName + "%")
+            .getResultList());
     }
     
     public List<Movie> findByDirector(String directorName) {
@@ -165,263 +191,376 @@ public class MovieDAO {
     }
     
     public List<Movie> findByOscarsRange(int minOscars, int maxOscars, String sortField, String sortOrder) {
-        String orderBy = validateSortField(sortField) + " " + (sortOrder.equalsIgnoreCase("desc") ? "DESC" : "ASC");
-        TypedQuery<Movie> query = entityManager.createQuery(
-            "SELECT m FROM Movie m WHERE m.oscarsCount >= :minOscars AND m.oscarsCount <= :maxOscars ORDER BY " + orderBy, 
-            Movie.class);
-        query.setParameter("minOscars", minOscars);
-        query.setParameter("maxOscars", maxOscars);
-        return query.getResultList();
+        return replicaRouter.read(em -> sortedQuery(em, MovieQueryRegistry.FIND_BY_OSCARS_RANGE, sortField, sortOrder)
+            .setParameter("minOscars", minOscars)
+            .setParameter("maxOscars", maxOscars)
+            .getResultList());
     }
     
     public List<Movie> findByOscarsRange(int minOscars, int maxOscars) {
         return findByOscarsRange(minOscars, maxOscars, "id", "asc");
     }
     
+    /**
+     * Фильмы, подходящие под все заданные фильтры сразу (см. {@link MovieFilter}), без
+     * постраничности, в порядке сортировки списка (при равенстве - по id). Фильтр тот же,
+     * что у {@link #facets}, поэтому размер списка совпадает с {@code facets.total}.
+     */
+    public List<Movie> findFiltered(String search, String genre, String director, Integer minOscars,
+                                    Integer maxOscars, String sortField, String sortOrder) {
+        MovieFilter filter = new MovieFilter(search, genre, director, minOscars, maxOscars);
+        if (filter.matchesNothing()) {
+            return List.of();
+        }
+        String sql = listSql(filter, queryRegistry.sortColumn(sortField),
+            "desc".equalsIgnoreCase(sortOrder) ? "DESC" : "ASC");
+        return replicaRouter.read(em -> readFiltered(em, sql, filter));
+    }
+
+    /**
+     * Нативный запрос не загружает связи соединением, поэтому они догружаются здесь,
+     * пока EntityManager открыт (см. {@link Queries#withRelations}): по @BatchFetch
+     * это один запрос с IN на связь для всего списка.
+     */
+    static List<Movie> readFiltered(EntityManager em, String sql, MovieFilter filter) {
+        Query query = Queries.readOnly(em, em.createNativeQuery(sql, Movie.class));
+        bind(query, filter.parameters());
+        @SuppressWarnings("unchecked")
+        List<Movie> movies = query.getResultList();
+        for (Movie movie : movies) {
+            movie.getCoordinates();
+            for (Person person : new Person[] {movie.getDirector(), movie.getScreenwriter(), movie.getOperator()}) {
+                if (person != null) {
+                    person.getLocation();
+                }
+            }
+        }
+        return movies;
+    }
+
+    static String listSql(MovieFilter filter, String column, String direction) {
+        return "SELECT m.*" + filter.sql() + " ORDER BY m." + column + " " + direction + ", m.id";
+    }
+
+    /**
+     * Фасеты списка одним запросом: GROUPING SETS считает количество по жанру, рейтингу,
+     * интервалам Оскаров и Золотых пальм (фильм без Пальм - в интервале 0) и общее число
+     * за один проход по строкам, отобранным тем же фильтром, что и {@link #findFiltered}.
+     */
+    public MovieFacets facets(String search, String genre, String director, Integer minOscars, Integer maxOscars) {
+        MovieFacets facets = new MovieFacets();
+        for (MovieGenre value : MovieGenre.values()) {
+            facets.genre.add(bucket(value.name(), null, null));
+        }
+        for (MpaaRating value : MpaaRating.values()) {
+            facets.mpaaRating.add(bucket(value.name(), null, null));
+        }
+        addRangeBuckets(facets.oscarsCount, OSCARS_FACET_BOUNDS);
+        addRangeBuckets(facets.goldenPalmCount, GOLDEN_PALM_FACET_BOUNDS);
+
+        MovieFilter filter = new MovieFilter(search, genre, director, minOscars, maxOscars);
+        if (filter.matchesNothing()) {
+            return facets;
+        }
+        String sql = "SELECT GROUPING(genre, mpaa_rating, oscars_bucket, palms_bucket), "
+            + "genre, mpaa_rating, oscars_bucket, palms_bucket, COUNT(*) FROM (" + facetRowsSql(filter) + ") f "
+            + "GROUP BY GROUPING SETS ((genre), (mpaa_rating), (oscars_bucket), (palms_bucket), ())";
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = replicaRouter.read(em -> {
+            Query query = em.createNativeQuery(sql);
+            bind(query, filter.parameters());
+            return query.getResultList();
+        });
+        for (Object[] row : rows) {
+            long count = ((Number) row[5]).longValue();
+            // Бит GROUPING сброшен у столбца, по которому сгруппирована строка
+            switch (((Number) row[0]).intValue()) {
+                case 0b0111 -> facets.genre.get(MovieGenre.valueOf((String) row[1]).ordinal()).count = count;
+                case 0b1011 -> facets.mpaaRating.get(MpaaRating.valueOf((String) row[2]).ordinal()).count = count;
+                case 0b1101 -> facets.oscarsCount.get(((Number) row[3]).intValue()).count = count;
+                case 0b1110 -> facets.goldenPalmCount.get(((Number) row[4]).intValue()).count = count;
+                default -> facets.total = count;
+            }
+        }
+        return facets;
+    }
+
+    // Строки фильтра с интервалами фасетов; их число - facets.total
+    static String facetRowsSql(MovieFilter filter) {
+        return "SELECT m.genre, m.mpaa_rating, "
+            + bucketCase("m.oscars_count", OSCARS_FACET_BOUNDS) + " AS oscars_bucket, "
+            + bucketCase("COALESCE(m.golden_palm_count, 0)", GOLDEN_PALM_FACET_BOUNDS) + " AS palms_bucket"
+            + filter.sql();
+    }
+
+    private static void bind(Query query, List<Object> parameters) {
+        for (int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 1, parameters.get(i));
+        }
+    }
+
+    private static String bucketCase(String expression, long[] bounds) {
+        StringBuilder sql = new StringBuilder("CASE");
+        for (int i = bounds.length - 1; i > 0; i--) {
+            sql.append(" WHEN ").append(expression).append(" >= ").append(bounds[i]).append(" THEN ").append(i);
+        }
+        return sql.append(" ELSE 0 END").toString();
+    }
+
+    private static void addRangeBuckets(List<MovieFacets.Bucket> buckets, long[] bounds) {
+        for (int i = 0; i < bounds.length; i++) {
+            Long to = i + 1 < bounds.length ? bounds[i + 1] - 1 : null;
+            String value = to == null ? bounds[i] + "+" : to == bounds[i] ? String.valueOf(to) : bounds[i] + "-" + to;
+            buckets.add(bucket(value, bounds[i], to));
+        }
+    }
+
+    private static MovieFacets.Bucket bucket(String value, Long from, Long to) {
+        MovieFacets.Bucket bucket = new MovieFacets.Bucket();
+        bucket.value = value;
+        bucket.from = from;
+        bucket.to = to;
+        return bucket;
+    }
+    
     public List<Movie> findByGoldenPalmCountGreaterThan(Long goldenPalmCount) {
-        TypedQuery<Movie> query = entityManager.createQuery(
-            "SELECT m FROM Movie m WHERE m.goldenPalmCount IS NOT NULL AND m.goldenPalmCount > :goldenPalmCount ORDER BY m.id", 
-            Movie.class);
-        query.setParameter("goldenPalmCount", goldenPalmCount);
-        return query.getResultList();
+        return replicaRouter.read(em -> Queries.withRelations(Queries.readOnly(em,
+                em.createNamedQuery(Movie.FIND_BY_GOLDEN_PALM_COUNT_GREATER_THAN, Movie.class)))
+            .setParameter("goldenPalmCount", goldenPalmCount)
+            .getResultList());
     }
     
     public List<Movie> findByGoldenPalmCount(Long goldenPalmCount) {
-        TypedQuery<Movie> query = entityManager.createQuery(
-            "SELECT m FROM Movie m WHERE m.goldenPalmCount = :goldenPalmCount ORDER BY m.id", 
-            Movie.class);
-        query.setParameter("goldenPalmCount", goldenPalmCount);
-        return query.getResultList();
+        return replicaRouter.read(em -> Queries.withRelations(Queries.readOnly(em,
+                em.createNamedQuery(Movie.FIND_BY_GOLDEN_PALM_COUNT, Movie.class)))
+            .setParameter("goldenPalmCount", goldenPalmCount)
+            .getResultList());
     }
     
     public List<Movie> findByLengthGreaterThan(Long length) {
-        TypedQuery<Movie> query = entityManager.createQuery(
-            "SELECT m FROM Movie m WHERE m.length > :length ORDER BY m.id", 
-            Movie.class);
+        TypedQuery<Movie> query = Queries.readOnly(entityManager,
+            entityManager.createNamedQuery(Movie.FIND_BY_LENGTH_GREATER_THAN, Movie.class));
         query.setParameter("length", length);
         return query.getResultList();
     }
     
     public Movie update(Movie movie) {
-        entityManager.getTransaction().begin();
-        try {
-            Movie updatedMovie = entityManager.merge(movie);
-            entityManager.flush();
-            entityManager.getTransaction().commit();
-            return updatedMovie;
-        } catch (Exception e) {
-            entityManager.getTransaction().rollback();
-            throw e;
-        }
+        return entityManager.merge(movie);
     }
     
-    public void delete(Long id) {
-        entityManager.getTransaction().begin();
-        try {
-            System.out.println("DEBUG: Удаляем фильм с ID: " + id);
-            System.out.println("DEBUG: Используем ТОЛЬКО нативный SQL без find()");
-            
-            // Используем ТОЛЬКО нативный SQL запрос - НЕ делаем find()!
-            int deletedCount = entityManager.createNativeQuery("DELETE FROM movies WHERE id = ?")
-                .setParameter(1, id)
-                .executeUpdate();
-            
-            if (deletedCount == 0) {
-                throw new IllegalArgumentException("Фильм с ID " + id + " не найден");
+    /**
+     * Точечное обновление: один UPDATE только по переданным столбцам, без загрузки
+     * фильма и связанных объектов и без сравнения полей при merge. Версия увеличивается
+     * в том же запросе, а при заданной ожидаемой версии UPDATE выполняется только при совпадении.
+     *
+     * Имена столбцов подставляются в SQL, поэтому они должны браться из фиксированного
+     * списка (см. разбор merge patch в сервисе), а не из запроса.
+     *
+     * @param columns столбец -> новое значение
+     * @return новая версия или null, если фильма нет или версия не совпала
+     */
+    public Long patch(Long id, Map<String, Object> columns, Long expectedVersion) {
+        Query query = entityManager.createNativeQuery(patchSql(columns, expectedVersion != null));
+        int position = 1;
+        for (Object value : columns.values()) {
+            if (value != null) {
+                query.setParameter(position++, value);
             }
-            
-            entityManager.flush();
-            entityManager.getTransaction().commit();
-            
-            System.out.println("DEBUG: Фильм успешно удален с ID: " + id);
-            System.out.println("DEBUG: Связанные объекты сохранены в базе данных");
-        } catch (Exception e) {
-            entityManager.getTransaction().rollback();
-            System.out.println("DEBUG: Ошибка при удалении фильма: " + e.getMessage());
-            e.printStackTrace();
-            throw e;
         }
+        query.setParameter(position++, id);
+        if (expectedVersion != null) {
+            query.setParameter(position, expectedVersion);
+        }
+        List<?> updated = query.getResultList();
+        return updated.isEmpty() ? null : ((Number) updated.get(0)).longValue();
     }
-    
-    public void deleteByGoldenPalmCount(Long goldenPalmCount) {
-        entityManager.getTransaction().begin();
-        try {
-            System.out.println("DEBUG: Удаляем фильмы с " + goldenPalmCount + " Золотыми пальмами");
-            System.out.println("DEBUG: Используем нативный SQL для обхода всех проблем с JPA");
-            
-            // Используем нативный SQL запрос для удаления - это гарантированно работает
-            int deletedCount = entityManager.createNativeQuery(
-                "DELETE FROM movies WHERE golden_palm_count = ?")
-                .setParameter(1, goldenPalmCount)
-                .executeUpdate();
-            
-            entityManager.flush();
-            entityManager.getTransaction().commit();
-            
-            System.out.println("DEBUG: Удалено фильмов с " + goldenPalmCount + " Золотыми пальмами: " + deletedCount);
-            System.out.println("DEBUG: Связанные объекты сохранены в базе данных");
-        } catch (Exception e) {
-            entityManager.getTransaction().rollback();
-            System.out.println("DEBUG: Ошибка при удалении фильмов: " + e.getMessage());
-            e.printStackTrace();
-            throw e;
+
+    /**
+     * Текст UPDATE для {@link #patch}. Очищаемые столбцы получают NULL прямо в тексте:
+     * null, переданный параметром, драйвер отправляет без типа, и PostgreSQL отвергает
+     * его для числовых столбцов. Параметры идут в порядке остальных столбцов, затем id
+     * и ожидаемая версия.
+     */
+    static String patchSql(Map<String, Object> columns, boolean checkVersion) {
+        StringBuilder sql = new StringBuilder("UPDATE movies SET ");
+        for (Map.Entry<String, Object> column : columns.entrySet()) {
+            sql.append(column.getKey()).append(column.getValue() == null ? " = NULL, " : " = ?, ");
+        }
+        sql.append("version = version + 1 WHERE id = ?");
+        if (checkVersion) {
+            sql.append(" AND version = ?");
+        }
+        sql.append(" RETURNING version");
+        return sql.toString();
+    }
+
+    /**
+     * Текущая версия фильма одним чтением по первичному ключу или null, если фильма нет.
+     */
+    public Long findVersion(Long id) {
+        List<?> versions = entityManager.createNativeQuery("SELECT version FROM movies WHERE id = ?")
+            .setParameter(1, id)
+            .getResultList();
+        return versions.isEmpty() ? null : ((Number) versions.get(0)).longValue();
+    }
+
+    /**
+     * Убирает фильм из разделяемого кеша EclipseLink после изменения нативным SQL.
+     */
+    public void evictFromCache(Long id) {
+        entityManager.getEntityManagerFactory().getCache().evict(Movie.class, id);
+    }
+
+    public void delete(Long id) {
+        // Используем ТОЛЬКО нативный SQL запрос - НЕ делаем find()!
+        int deletedCount = entityManager.createNativeQuery("DELETE FROM movies WHERE id = ?")
+            .setParameter(1, id)
+            .executeUpdate();
+        
+        if (deletedCount == 0) {
+            throw new IllegalArgumentException("Фильм с ID " + id + " не найден");
         }
+        
+        LOG.fine(() -> "Фильм удален, ID: " + id);
     }
     
     public Long sumGoldenPalmCount() {
-        TypedQuery<BigDecimal> query = entityManager.createQuery(
-            "SELECT COALESCE(SUM(m.goldenPalmCount), 0) FROM Movie m WHERE m.goldenPalmCount IS NOT NULL AND m.goldenPalmCount > 0", 
-            BigDecimal.class);
-        BigDecimal result = query.getSingleResult();
+        BigDecimal result = replicaRouter.read(em ->
+            em.createNamedQuery(Movie.SUM_GOLDEN_PALM_COUNT, BigDecimal.class).getSingleResult());
         return result != null ? result.longValue() : 0L;
     }
     
     public List<String> getAllGenres() {
-        TypedQuery<String> query = entityManager.createQuery(
-            "SELECT DISTINCT m.genre FROM Movie m ORDER BY m.genre", 
-            String.class);
-        return query.getResultList();
+        return replicaRouter.read(em -> em.createNamedQuery(Movie.FIND_ALL_GENRES, String.class).getResultList());
     }
     
     /**
-     * Перераспределяет Оскары между жанрами фильмов.
-     * 
-     * Логика работы:
-     * 1. Собирает все Оскары с фильмов исходного жанра
-     * 2. Обнуляет Оскары у всех фильмов исходного жанра
-     * 3. Обнуляет Оскары у всех фильмов целевого жанра
-     * 4. Равномерно распределяет все собранные Оскары между фильмами целевого жанра
-     * 
-     * Пример: если у жанра ADVENTURE есть 12 Оскаров (6+4+2), а у DRAMA 2 фильма,
-     * то каждый фильм DRAMA получит по 6 Оскаров (12/2).
-     * 
-     * @param fromGenre жанр, с которого забираем Оскары (например, "ADVENTURE")
-     * @param toGenre жанр, которому отдаем Оскары (например, "DRAMA")
-     * @throws IllegalArgumentException если жанры неверные или одинаковые
-     * @throws Exception если произошла ошибка при перераспределении
+     * Результат одной порции массовой операции: сколько фильмов затронуто,
+     * id последнего из них (keyset-курсор следующей порции) и, если нужно, сумма Оскаров.
      */
-    public void redistributeOscars(String fromGenre, String toGenre) {
-        entityManager.getTransaction().begin();
-        try {
-            // Валидация жанров
-            if (fromGenre == null || toGenre == null || fromGenre.trim().isEmpty() || toGenre.trim().isEmpty()) {
-                throw new IllegalArgumentException("Жанры не могут быть пустыми");
-            }
-            
-            if (fromGenre.equals(toGenre)) {
-                throw new IllegalArgumentException("Исходный и целевой жанры не могут быть одинаковыми");
-            }
-            
-            // Преобразуем строки в enum
-            MovieGenre fromGenreEnum;
-            MovieGenre toGenreEnum;
-            
-            try {
-                fromGenreEnum = MovieGenre.valueOf(fromGenre);
-                toGenreEnum = MovieGenre.valueOf(toGenre);
-            } catch (IllegalArgumentException e) {
-                throw new IllegalArgumentException("Неверный жанр: " + e.getMessage());
-            }
-            
-            // Получаем все фильмы исходного жанра
-            TypedQuery<Movie> fromMoviesQuery = entityManager.createQuery(
-                "SELECT m FROM Movie m WHERE m.genre = :fromGenre", Movie.class);
-            fromMoviesQuery.setParameter("fromGenre", fromGenreEnum);
-            List<Movie> fromMovies = fromMoviesQuery.getResultList();
-            
-            // Получаем все фильмы целевого жанра
-            TypedQuery<Movie> toMoviesQuery = entityManager.createQuery(
-                "SELECT m FROM Movie m WHERE m.genre = :toGenre", Movie.class);
-            toMoviesQuery.setParameter("toGenre", toGenreEnum);
-            List<Movie> toMovies = toMoviesQuery.getResultList();
-            
-            if (fromMovies.isEmpty()) {
-                List<String> availableGenres = getAllGenres();
-                throw new IllegalArgumentException("Не найдено фильмов жанра: " + fromGenre + 
-                    ". Доступные жанры: " + String.join(", ", availableGenres));
-            }
-            
-            if (toMovies.isEmpty()) {
-                List<String> availableGenres = getAllGenres();
-                throw new IllegalArgumentException("Не найдено фильмов жанра: " + toGenre + 
-                    ". Доступные жанры: " + String.join(", ", availableGenres));
-            }
-            
-            // Суммируем все Оскары исходного жанра
-            int totalOscars = fromMovies.stream()
-                .mapToInt(Movie::getOscarsCount)
-                .sum();
-            
-            System.out.println("DEBUG: Перераспределение Оскаров");
-            System.out.println("DEBUG: Исходный жанр: " + fromGenre + ", фильмов: " + fromMovies.size());
-            System.out.println("DEBUG: Целевой жанр: " + toGenre + ", фильмов: " + toMovies.size());
-            System.out.println("DEBUG: Всего Оскаров для перераспределения: " + totalOscars);
-            
-            if (totalOscars == 0) {
-                System.out.println("DEBUG: Нет Оскаров для перераспределения");
-                entityManager.getTransaction().commit();
-                return; // Нет Оскаров для перераспределения
-            }
-            
-            // Обнуляем Оскары у исходного жанра
-            for (Movie movie : fromMovies) {
-                System.out.println("DEBUG: Обнуляем Оскары у фильма: " + movie.getName() + " (было: " + movie.getOscarsCount() + ")");
-                movie.setOscarsCount(0);
-                entityManager.merge(movie);
-            }
-            
-            // Сначала обнуляем Оскары у целевого жанра
-            for (Movie movie : toMovies) {
-                System.out.println("DEBUG: Обнуляем Оскары у фильма целевого жанра: " + movie.getName() + " (было: " + movie.getOscarsCount() + ")");
-                movie.setOscarsCount(0);
-                entityManager.merge(movie);
-            }
-            
-            // Равномерно распределяем все Оскары между фильмами целевого жанра
-            int oscarsPerMovie = totalOscars / toMovies.size();
-            int remainingOscars = totalOscars % toMovies.size();
-            
-            System.out.println("DEBUG: Оскаров на фильм: " + oscarsPerMovie + ", остаток: " + remainingOscars);
-            
-            for (int i = 0; i < toMovies.size(); i++) {
-                Movie movie = toMovies.get(i);
-                int oscarsToSet = oscarsPerMovie + (i < remainingOscars ? 1 : 0);
-                movie.setOscarsCount(oscarsToSet);
-                System.out.println("DEBUG: Устанавливаем " + oscarsToSet + " Оскаров фильму: " + movie.getName());
-                entityManager.merge(movie);
-            }
-            
-            System.out.println("DEBUG: Сохраняем изменения...");
-            entityManager.flush();
-            entityManager.getTransaction().commit();
-            
-            // Принудительно очищаем кеш для обновления данных
-            entityManager.clear();
-            
-            System.out.println("DEBUG: Перераспределение завершено успешно");
-        } catch (Exception e) {
-            entityManager.getTransaction().rollback();
-            throw e;
-        }
+    public record Chunk(int count, long lastId, long oscarsSum) {}
+
+    public long countByGenre(MovieGenre genre) {
+        return entityManager.createNamedQuery(Movie.COUNT_BY_GENRE, Long.class)
+            .setParameter("genre", genre)
+            .getSingleResult();
     }
-    
-    public void addOscarsToLongMovies(Long minLength, int oscarsToAdd) {
-        entityManager.getTransaction().begin();
-        try {
-            TypedQuery<Movie> query = entityManager.createQuery(
-                "SELECT m FROM Movie m WHERE m.length > :minLength", Movie.class);
-            query.setParameter("minLength", minLength);
-            List<Movie> movies = query.getResultList();
-            
-            for (Movie movie : movies) {
-                movie.setOscarsCount(movie.getOscarsCount() + oscarsToAdd);
-                entityManager.merge(movie);
-            }
-            entityManager.flush();
-            entityManager.getTransaction().commit();
-        } catch (Exception e) {
-            entityManager.getTransaction().rollback();
-            throw e;
-        }
+
+    public long countByGoldenPalmCount(Long goldenPalmCount) {
+        return entityManager.createNamedQuery(Movie.COUNT_BY_GOLDEN_PALM_COUNT, Long.class)
+            .setParameter("goldenPalmCount", goldenPalmCount)
+            .getSingleResult();
+    }
+
+    public long countByLengthGreaterThan(Long minLength) {
+        return entityManager.createNamedQuery(Movie.COUNT_BY_LENGTH_GREATER_THAN, Long.class)
+            .setParameter("length", minLength)
+            .getSingleResult();
+    }
+
+    public long countCreatedBefore(LocalDateTime cutoff) {
+        return entityManager.createNamedQuery(Movie.COUNT_CREATED_BEFORE, Long.class)
+            .setParameter("cutoff", cutoff)
+            .getSingleResult();
+    }
+
+    /**
+     * Переносит очередную порцию фильмов, созданных раньше cutoff, в movies_archive:
+     * удаление и вставка выполняются одним запросом, так что фильм не теряется
+     * и не оказывается в обеих таблицах. Перенесенные строки больше не попадают в выборку.
+     */
+    public Chunk archiveChunk(LocalDateTime cutoff, int chunkSize) {
+        Object[] row = (Object[]) entityManager.createNativeQuery(
+                "WITH moved AS (DELETE FROM movies WHERE id IN ("
+                    + "SELECT id FROM movies WHERE creation_date < ? ORDER BY id LIMIT ?) "
+                    + "RETURNING id, name, coordinates_id, creation_date, oscars_count, budget, total_box_office, "
+                    + "mpaa_rating, director_id, screenwriter_id, operator_id, length, golden_palm_count, genre), "
+                    + "a AS (INSERT INTO movies_archive (id, name, coordinates_id, creation_date, oscars_count, budget, "
+                    + "total_box_office, mpaa_rating, director_id, screenwriter_id, operator_id, length, "
+                    + "golden_palm_count, genre, archived_at) "
+                    + "SELECT moved.*, now() FROM moved) "
+                    + "SELECT COUNT(*), MAX(id), 0 FROM moved")
+            .setParameter(1, cutoff)
+            .setParameter(2, chunkSize)
+            .getSingleResult();
+        return chunk(row);
+    }
+
+    /**
+     * Удаляет очередную порцию фильмов с заданным количеством Золотых пальм.
+     * Удаленные строки больше не попадают в выборку, поэтому курсор не нужен.
+     */
+    public Chunk deleteChunkByGoldenPalmCount(Long goldenPalmCount, int chunkSize) {
+        Object[] row = (Object[]) entityManager.createNativeQuery(
+                "WITH d AS (DELETE FROM movies WHERE id IN ("
+                    + "SELECT id FROM movies WHERE golden_palm_count = ? ORDER BY id LIMIT ?) RETURNING id) "
+                    + "SELECT COUNT(*), MAX(id), 0 FROM d")
+            .setParameter(1, goldenPalmCount)
+            .setParameter(2, chunkSize)
+            .getSingleResult();
+        return chunk(row);
+    }
+
+    /**
+     * Добавляет Оскары очередной порции фильмов длиннее minLength с id больше afterId.
+     */
+    public Chunk addOscarsChunk(Long minLength, int oscarsToAdd, long afterId, int chunkSize) {
+        Object[] row = (Object[]) entityManager.createNativeQuery(
+                "WITH c AS (SELECT id FROM movies WHERE length > ? AND id > ? ORDER BY id LIMIT ?), "
+                    + "u AS (UPDATE movies m SET oscars_count = m.oscars_count + ?, version = m.version + 1 FROM c WHERE m.id = c.id RETURNING m.id) "
+                    + "SELECT COUNT(*), MAX(id), 0 FROM u")
+            .setParameter(1, minLength)
+            .setParameter(2, afterId)
+            .setParameter(3, chunkSize)
+            .setParameter(4, oscarsToAdd)
+            .getSingleResult();
+        return chunk(row);
+    }
+
+    /**
+     * Забирает Оскары у очередной порции фильмов жанра: обнуляет их и возвращает сумму
+     * прежних значений. Строки блокируются, чтобы параллельное изменение не потерялось.
+     */
+    public Chunk collectOscarsChunk(MovieGenre genre, long afterId, int chunkSize) {
+        Object[] row = (Object[]) entityManager.createNativeQuery(
+                "WITH c AS (SELECT id, oscars_count FROM movies WHERE genre = ? AND id > ? ORDER BY id LIMIT ? FOR UPDATE), "
+                    + "u AS (UPDATE movies m SET oscars_count = 0, version = m.version + 1 FROM c WHERE m.id = c.id RETURNING c.id, c.oscars_count) "
+                    + "SELECT COUNT(*), MAX(id), COALESCE(SUM(oscars_count), 0) FROM u")
+            .setParameter(1, genre.name())
+            .setParameter(2, afterId)
+            .setParameter(3, chunkSize)
+            .getSingleResult();
+        return chunk(row);
+    }
+
+    /**
+     * Назначает Оскары очередной порции фильмов жанра: каждый получает oscarsPerMovie,
+     * а первые remainder фильмов жанра (по порядку id) - еще по одному.
+     *
+     * @param offset сколько фильмов жанра уже обработано предыдущими порциями
+     */
+    public Chunk distributeOscarsChunk(MovieGenre genre, int oscarsPerMovie, long remainder,
+                                       long offset, long afterId, int chunkSize) {
+        Object[] row = (Object[]) entityManager.createNativeQuery(
+                "WITH c AS (SELECT id, ROW_NUMBER() OVER (ORDER BY id) + ? AS rn FROM movies "
+                    + "WHERE genre = ? AND id > ? ORDER BY id LIMIT ?), "
+                    + "u AS (UPDATE movies m SET oscars_count = ? + CASE WHEN c.rn <= ? THEN 1 ELSE 0 END, version = m.version + 1 "
+                    + "FROM c WHERE m.id = c.id RETURNING m.id) "
+                    + "SELECT COUNT(*), MAX(id), 0 FROM u")
+            .setParameter(1, offset)
+            .setParameter(2, genre.name())
+            .setParameter(3, afterId)
+            .setParameter(4, chunkSize)
+            .setParameter(5, oscarsPerMovie)
+            .setParameter(6, remainder)
+            .getSingleResult();
+        return chunk(row);
+    }
+
+    private static Chunk chunk(Object[] row) {
+        int count = ((Number) row[0]).intValue();
+        long lastId = row[1] != null ? ((Number) row[1]).longValue() : 0;
+        return new Chunk(count, lastId, ((Number) row[2]).longValue());
     }
 }
@@ -0,0 +1,30 @@
+package org.moviesystem.back.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Количество фильмов по значениям фасетов (жанр, рейтинг MPAA, интервалы Оскаров
+ * и Золотых пальм) для текущего фильтра списка. Значения без фильмов тоже
+ * перечислены - с нулевым количеством.
+ */
+public class MovieFacets {
+
+    public long total;
+    public List<Bucket> genre = new ArrayList<>();
+    public List<Bucket> mpaaRating = new ArrayList<>();
+    public List<Bucket> oscarsCount = new ArrayList<>();
+    public List<Bucket> goldenPalmCount = new ArrayList<>();
+
+    /**
+     * Значение фасета. Для интервалов {@code from}/{@code to} - границы включительно
+     * ({@code to} не задан у последнего, открытого интервала); их можно подставить
+     * в фильтр minOscars/maxOscars.
+     */
+    public static class Bucket {
+        public String value;
+        public Long from;
+        public Long to;
+        public long count;
+    }
+}
@@ -0,0 +1,78 @@
+package org.moviesystem.back.dao;
+
+import org.moviesystem.back.model.MovieGenre;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Фильтры списка фильмов (поиск, жанр, режиссер, диапазон Оскаров), объединенные через И,
+ * как FROM и WHERE нативного SQL с параметрами по порядку. Из одного фильтра строятся
+ * и список, и его фасеты, поэтому количества в фасетах совпадают со списком.
+ *
+ * Поиск - как в {@link MovieQueryRegistry#FIND_BY_NAME_CONTAINING} (название, жанр, имена
+ * режиссера, сценариста и оператора), режиссер - по части имени без учета регистра.
+ */
+final class MovieFilter {
+
+    private final StringBuilder from = new StringBuilder(" FROM movies m");
+    private final StringBuilder where = new StringBuilder(" WHERE TRUE");
+    private final List<Object> parameters = new ArrayList<>();
+    private boolean matchesNothing;
+
+    MovieFilter(String search, String genre, String director, Integer minOscars, Integer maxOscars) {
+        boolean searching = search != null && !search.isBlank();
+        boolean byDirector = director != null && !director.isBlank();
+        if (searching || byDirector) {
+            from.append(" LEFT JOIN persons d ON d.id = m.director_id");
+        }
+        if (searching) {
+            from.append(" LEFT JOIN persons s ON s.id = m.screenwriter_id LEFT JOIN persons o ON o.id = m.operator_id");
+            where.append(" AND (LOWER(m.name) LIKE LOWER(?) OR LOWER(m.genre) LIKE LOWER(?) OR LOWER(d.name) LIKE LOWER(?)"
+                + " OR LOWER(s.name) LIKE LOWER(?) OR LOWER(o.name) LIKE LOWER(?))");
+            for (int i = 0; i < 5; i++) {
+                parameters.add("%" + search + "%");
+            }
+        }
+        if (genre != null && !genre.isBlank()) {
+            try {
+                parameters.add(MovieGenre.valueOf(genre).name());
+                where.append(" AND m.genre = ?");
+            } catch (IllegalArgumentException e) {
+                // Неизвестный жанр - ничего не найдено
+                matchesNothing = true;
+            }
+        }
+        if (byDirector) {
+            where.append(" AND LOWER(d.name) LIKE LOWER(?)");
+            parameters.add("%" + director + "%");
+        }
+        if (minOscars != null) {
+            where.append(" AND m.oscars_count >= ?");
+            parameters.add(minOscars);
+        }
+        if (maxOscars != null) {
+            where.append(" AND m.oscars_count <= ?");
+            parameters.add(maxOscars);
+        }
+    }
+
+    /**
+     * Фильтр заведомо пуст, запрос можно не выполнять.
+     */
+    boolean matchesNothing() {
+        return matchesNothing;
+    }
+
+    /**
+     * FROM и WHERE; фильм - псевдоним m.
+     */
+    String sql() {
+        return from.toString() + where;
+    }
+
+    List<Object> parameters() {
+        return Collections.unmodifiableList(parameters);
+    }
+}
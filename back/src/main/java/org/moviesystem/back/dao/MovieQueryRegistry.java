@@ -0,0 +1,171 @@
+package org.moviesystem.back.dao;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Реестр заранее разобранных запросов к фильмам с сортировкой.
+ *
+ * Поле и направление сортировки нельзя передать параметром JPQL, поэтому раньше
+ * на каждый запрос собиралась новая строка {@code "... ORDER BY " + orderBy}, которую
+ * EclipseLink разбирал и по которой заново генерировал SQL. Теперь при старте для
+ * каждой комбинации "запрос × разрешенное поле × направление" регистрируется
+ * именованный запрос, и в горячем пути остается только {@code createNamedQuery}.
+ */
+@ApplicationScoped
+public class MovieQueryRegistry {
+
+    public static final String FIND_ALL = "Movie.findAllSorted";
+    public static final String FIND_BY_NAME_CONTAINING = "Movie.findByNameContaining";
+    public static final String FIND_BY_GENRE = "Movie.findByGenreSorted";
+    public static final String FIND_BY_DIRECTOR = "Movie.findByDirector";
+    public static final String FIND_BY_OSCARS_RANGE = "Movie.findByOscarsRange";
+
+    /** Разрешенные поля сортировки: значение параметра (в нижнем регистре) -> атрибут сущности. */
+    private static final Map<String, String> SORT_FIELDS = new LinkedHashMap<>();
+
+    /** Столбцы атрибутов сортировки - для нативных запросов с той же сортировкой. */
+    private static final Map<String, String> SORT_COLUMNS = new LinkedHashMap<>();
+
+    /** Тела запросов без ORDER BY. */
+    private static final Map<String, String> BASE_QUERIES = new LinkedHashMap<>();
+
+    static {
+        SORT_FIELDS.put("id", "id");
+        SORT_FIELDS.put("name", "name");
+        SORT_FIELDS.put("creationdate", "creationDate");
+        SORT_FIELDS.put("oscarscount", "oscarsCount");
+        SORT_FIELDS.put("budget", "budget");
+        SORT_FIELDS.put("totalboxoffice", "totalBoxOffice");
+        SORT_FIELDS.put("mpaarating", "mpaaRating");
+        SORT_FIELDS.put("length", "length");
+        SORT_FIELDS.put("goldenpalmcount", "goldenPalmCount");
+        SORT_FIELDS.put("genre", "genre");
+
+        SORT_COLUMNS.put("id", "id");
+        SORT_COLUMNS.put("name", "name");
+        SORT_COLUMNS.put("creationDate", "creation_date");
+        SORT_COLUMNS.put("oscarsCount", "oscars_count");
+        SORT_COLUMNS.put("budget", "budget");
+        SORT_COLUMNS.put("totalBoxOffice", "total_box_office");
+        SORT_COLUMNS.put("mpaaRating", "mpaa_rating");
+        SORT_COLUMNS.put("length", "length");
+        SORT_COLUMNS.put("goldenPalmCount", "golden_palm_count");
+        SORT_COLUMNS.put("genre", "genre");
+
+        BASE_QUERIES.put(FIND_ALL, "SELECT m FROM Movie m");
+        BASE_QUERIES.put(FIND_BY_NAME_CONTAINING,
+            "SELECT DISTINCT m FROM Movie m " +
+            "LEFT JOIN m.director d " +
+            "LEFT JOIN m.screenwriter s " +
+            "LEFT JOIN m.operator o " +
+            "WHERE LOWER(m.name) LIKE LOWER(:name) " +
+            "OR LOWER(m.genre) LIKE LOWER(:name) " +
+            "OR LOWER(d.name) LIKE LOWER(:name) " +
+            "OR LOWER(s.name) LIKE LOWER(:name) " +
+            "OR LOWER(o.name) LIKE LOWER(:name)");
+        BASE_QUERIES.put(FIND_BY_GENRE, "SELECT m FROM Movie m WHERE m.genre = :genre");
+        BASE_QUERIES.put(FIND_BY_DIRECTOR,
+            "SELECT m FROM Movie m JOIN m.director d WHERE LOWER(d.name) LIKE LOWER(:name)");
+        BASE_QUERIES.put(FIND_BY_OSCARS_RANGE,
+            "SELECT m FROM Movie m WHERE m.oscarsCount >= :minOscars AND m.oscarsCount <= :maxOscars");
+    }
+
+    @PersistenceUnit(unitName = "default")
+    private EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    void registerQueries() {
+        register(entityManagerFactory);
+    }
+
+    /**
+     * Регистрирует все варианты запросов в фабрике EntityManager
+     * (основной и, если настроены, фабриках реплик). Связи фильмов загружаются
+     * тем же запросом (см. {@link Queries#withRelations}).
+     */
+    public void register(EntityManagerFactory entityManagerFactory) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            for (Map.Entry<String, String> base : BASE_QUERIES.entrySet()) {
+                for (String attribute : SORT_FIELDS.values()) {
+                    for (String direction : new String[] {"ASC", "DESC"}) {
+                        entityManagerFactory.addNamedQuery(
+                            queryName(base.getKey(), attribute, direction),
+                            Queries.withRelations(entityManager.createQuery(jpql(base.getKey(), attribute, direction))));
+                    }
+                }
+            }
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Регистрация при старте приложения, чтобы первый запрос не платил за разбор.
+     */
+    void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        // Обращение к бину создает его и вызывает @PostConstruct
+        sortAttribute("id");
+    }
+
+    /**
+     * Возвращает имя зарегистрированного запроса для заданной сортировки.
+     * Неизвестные поля сортируются по id, неизвестные направления - по возрастанию.
+     */
+    public String name(String baseQuery, String sortField, String sortOrder) {
+        String direction = "desc".equalsIgnoreCase(sortOrder) ? "DESC" : "ASC";
+        return queryName(baseQuery, sortAttribute(sortField), direction);
+    }
+
+    /**
+     * Допустимые значения параметра сортировки.
+     */
+    public Set<String> sortFields() {
+        return Collections.unmodifiableSet(SORT_FIELDS.keySet());
+    }
+
+    String sortAttribute(String sortField) {
+        String attribute = sortField != null ? SORT_FIELDS.get(sortField.toLowerCase(Locale.ROOT)) : null;
+        return attribute != null ? attribute : "id";
+    }
+
+    /**
+     * Столбец movies для сортировки по тем же правилам, что и {@link #name}.
+     */
+    String sortColumn(String sortField) {
+        return SORT_COLUMNS.get(sortAttribute(sortField));
+    }
+
+    /**
+     * Базовые запросы и атрибуты сортировки - для бенчмарка, сравнивающего именованные
+     * запросы со сборкой JPQL на каждый запрос.
+     */
+    static Set<String> baseQueries() {
+        return Collections.unmodifiableSet(BASE_QUERIES.keySet());
+    }
+
+    static Collection<String> sortAttributes() {
+        return Collections.unmodifiableCollection(SORT_FIELDS.values());
+    }
+
+    static String jpql(String baseQuery, String attribute, String direction) {
+        return BASE_QUERIES.get(baseQuery) + " ORDER BY m." + attribute + " " + direction;
+    }
+
+    static String queryName(String baseQuery, String attribute, String direction) {
+        return baseQuery + "." + attribute + "." + direction;
+    }
+}
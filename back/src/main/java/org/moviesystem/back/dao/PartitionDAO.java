@@ -0,0 +1,50 @@
+package org.moviesystem.back.dao;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.moviesystem.back.metrics.Timed;
+
+import java.time.LocalDateTime;
+
+/**
+ * Обслуживание секций таблицы movies (см. миграцию V5__movies_partitioning.sql).
+ * Если миграция не выполнена и таблица обычная, методы ничего не делают.
+ */
+@Timed
+@ApplicationScoped
+public class PartitionDAO {
+
+    @PersistenceContext(unitName = "default")
+    private EntityManager entityManager;
+
+    /**
+     * Таблица movies секционирована по диапазонам creation_date.
+     */
+    public boolean isRangePartitioned() {
+        Object result = entityManager.createNativeQuery(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table p JOIN pg_class c ON c.oid = p.partrelid "
+                    + "WHERE c.relname = 'movies' AND c.relnamespace = current_schema()::regnamespace AND p.partstrat = 'r') "
+                    + "AND to_regproc('movies_ensure_partition') IS NOT NULL")
+            .getSingleResult();
+        return Boolean.TRUE.equals(result);
+    }
+
+    public void ensureYearPartition(int year) {
+        entityManager.createNativeQuery("SELECT movies_ensure_partition(?)")
+            .setParameter(1, year)
+            .getSingleResult();
+    }
+
+    /**
+     * Удаляет опустевшие годовые секции, целиком лежащие раньше cutoff.
+     *
+     * @return сколько секций удалено
+     */
+    public int dropArchivedPartitions(LocalDateTime cutoff) {
+        Object dropped = entityManager.createNativeQuery("SELECT movies_drop_archived_partitions(?)")
+            .setParameter(1, cutoff)
+            .getSingleResult();
+        return ((Number) dropped).intValue();
+    }
+}
@@ -1,68 +1,189 @@
 package org.moviesystem.back.dao;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
-import jakarta.persistence.TypedQuery;
+import jakarta.persistence.Query;
+import org.moviesystem.back.cache.PersonKey;
+import org.moviesystem.back.metrics.Timed;
 import org.moviesystem.back.model.Person;
+import org.moviesystem.back.replica.ReplicaRouter;
+import org.moviesystem.back.tx.TransactionCallbacks;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
+@Timed
 @ApplicationScoped
 public class PersonDAO {
+
+    private static final Object PENDING_KEY = PersonDAO.class.getName() + ".pending";
     
     @PersistenceContext(unitName = "default")
     private EntityManager entityManager;
+
+    @Inject
+    private ReplicaRouter replicaRouter;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
     
     public List<Person> findAll() {
-        TypedQuery<Person> query = entityManager.createQuery(
-            "SELECT p FROM Person p ORDER BY p.name", 
-            Person.class);
-        return query.getResultList();
+        return replicaRouter.read(em -> Queries.withLocation(em.createNamedQuery(Person.FIND_ALL, Person.class))
+            .getResultList());
     }
     
+    /**
+     * Страница людей для выпадающего списка: поиск по префиксу имени без учета регистра,
+     * keyset-постраничность по (lower(name), id).
+     *
+     * Сравнение идет в сортировке "C", поэтому и LIKE по префиксу, и ORDER BY обслуживаются
+     * индексом persons_lower_name_id и стоимость страницы не зависит от размера таблицы.
+     */
+    public LookupPage lookup(String prefix, String after, int limit) {
+        StringBuilder sql = new StringBuilder(
+            "SELECT id, name, lower(name) COLLATE \"C\" FROM persons WHERE TRUE");
+        List<Object> params = new ArrayList<>();
+        if (prefix != null && !prefix.isEmpty()) {
+            sql.append(" AND lower(name) COLLATE \"C\" LIKE ?");
+            params.add(Queries.likePrefix(prefix.toLowerCase(Locale.ROOT)));
+        }
+        if (after != null && !after.isEmpty()) {
+            String[] cursor = Queries.decodeCursor(after, 2);
+            sql.append(" AND (lower(name) COLLATE \"C\", id) > (?, ?)");
+            params.add(cursor[1]);
+            params.add(Long.parseLong(cursor[0]));
+        }
+        sql.append(" ORDER BY lower(name) COLLATE \"C\", id LIMIT ?");
+        params.add(limit + 1);
+
+        List<?> rows = replicaRouter.read(em -> {
+            Query query = em.createNativeQuery(sql.toString());
+            for (int i = 0; i < params.size(); i++) {
+                query.setParameter(i + 1, params.get(i));
+            }
+            return query.getResultList();
+        });
+
+        LookupPage page = new LookupPage();
+        for (int i = 0; i < Math.min(rows.size(), limit); i++) {
+            Object[] row = (Object[]) rows.get(i);
+            page.items.add(new LookupPage.Item(((Number) row[0]).longValue(), (String) row[1]));
+        }
+        if (rows.size() > limit) {
+            Object[] last = (Object[]) rows.get(limit - 1);
+            page.nextCursor = Queries.encodeCursor(String.valueOf(last[0]), (String) last[2]);
+        }
+        return page;
+    }
+
+    /**
+     * Люди с данными id в порядке списка; отсутствующие id пропускаются.
+     */
+    public List<Person> findByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Person> byId = new HashMap<>();
+        for (Person person : replicaRouter.read(em -> Queries.withLocation(Queries.readOnly(em,
+                em.createNamedQuery(Person.FIND_BY_IDS, Person.class)))
+            .setParameter("ids", ids)
+            .getResultList())) {
+            byId.put(person.getId(), person);
+        }
+        List<Person> persons = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Person person = byId.get(id);
+            if (person != null) {
+                persons.add(person);
+            }
+        }
+        return persons;
+    }
+
+    /**
+     * Число людей с местоположением и наибольший id: меняются при добавлении и удалении
+     * людей, по ним видно, что пространственный индекс пора перестроить.
+     */
+    public long[] locationsSignature() {
+        Object[] row = replicaRouter.read(em -> (Object[]) em.createNativeQuery(
+                "SELECT count(*), COALESCE(max(id), 0) FROM persons WHERE location_id IS NOT NULL")
+            .getSingleResult());
+        return new long[] {((Number) row[0]).longValue(), ((Number) row[1]).longValue()};
+    }
+
+    /**
+     * Строки (id человека, x, y, z) для всех людей с местоположением.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> locations() {
+        return replicaRouter.read(em -> em.createNativeQuery(
+                "SELECT p.id, l.x, l.y, l.z FROM persons p JOIN locations l ON l.id = p.location_id")
+            .getResultList());
+    }
+
     public Person findById(Long id) {
         return entityManager.find(Person.class, id);
     }
     
-    public Person create(Person person) {
-        entityManager.getTransaction().begin();
-        try {
-            entityManager.persist(person);
-            entityManager.flush();
-            entityManager.getTransaction().commit();
-            return person;
-        } catch (Exception e) {
-            entityManager.getTransaction().rollback();
-            throw e;
+    /**
+     * Находит человека с таким же естественным ключом (имя, дата рождения, гражданство)
+     * или сохраняет переданного и возвращает id.
+     *
+     * Поиск и вставка выполняются под транзакционной advisory-блокировкой по ключу,
+     * поэтому параллельные импорты одного и того же человека не создают дубликатов
+     * (Person хранит Location, так что INSERT ... ON CONFLICT оставлял бы лишние строки
+     * в locations). Уникальный индекс persons_natural_key служит для поиска и страховки.
+     */
+    public Long upsert(Person person) {
+        // Люди, сохраненные в этой транзакции, но еще не записанные в БД
+        Map<PersonKey, Long> pending = transactionCallbacks.transactionResource(PENDING_KEY, HashMap::new);
+        PersonKey key = PersonKey.of(person);
+        Long pendingId = pending.get(key);
+        if (pendingId != null) {
+            return pendingId;
+        }
+
+        String nationality = person.getNationality() == null ? "" : person.getNationality().name();
+        entityManager.createNativeQuery("SELECT pg_advisory_xact_lock(hashtext('persons'), hashtext(?))")
+            .setParameter(1, person.getName() + '\u0000' + person.getBirthday() + '\u0000' + nationality)
+            .getResultList();
+
+        List<?> existing = entityManager.createNativeQuery(
+                "SELECT id FROM persons WHERE name = ? AND birthday = ? AND COALESCE(nationality, '') = ? "
+                    + "ORDER BY id LIMIT 1")
+            .setParameter(1, person.getName())
+            .setParameter(2, person.getBirthday())
+            .setParameter(3, nationality)
+            .getResultList();
+        if (!existing.isEmpty()) {
+            return ((Number) existing.get(0)).longValue();
         }
+        // id выдается из последовательности сразу при persist, а INSERT уходит пакетом
+        // при фиксации. Повторный поиск того же человека в этой транзакции (режиссер
+        // он же оператор) находит его в pending, а не в БД
+        entityManager.persist(person);
+        pending.put(key, person.getId());
+        return person.getId();
+    }
+
+    public Person create(Person person) {
+        entityManager.persist(person);
+        return person;
     }
     
     public Person update(Person person) {
-        entityManager.getTransaction().begin();
-        try {
-            Person updatedPerson = entityManager.merge(person);
-            entityManager.flush();
-            entityManager.getTransaction().commit();
-            return updatedPerson;
-        } catch (Exception e) {
-            entityManager.getTransaction().rollback();
-            throw e;
-        }
+        return entityManager.merge(person);
     }
     
     public void delete(Long id) {
-        entityManager.getTransaction().begin();
-        try {
-            Person person = entityManager.find(Person.class, id);
-            if (person != null) {
-                entityManager.remove(person);
-                entityManager.flush();
-            }
-            entityManager.getTransaction().commit();
-        } catch (Exception e) {
-            entityManager.getTransaction().rollback();
-            throw e;
+        Person person = entityManager.find(Person.class, id);
+        if (person != null) {
+            entityManager.remove(person);
         }
     }
 }
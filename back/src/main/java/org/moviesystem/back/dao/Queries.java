@@ -0,0 +1,90 @@
+package org.moviesystem.back.dao;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Общие приемы для запросов DAO.
+ */
+final class Queries {
+
+    // Связи фильма для LEFT JOIN FETCH, вместе с местоположениями людей
+    private static final String[] MOVIE_RELATIONS = {
+        "m.coordinates",
+        "m.director", "m.director.location",
+        "m.screenwriter", "m.screenwriter.location",
+        "m.operator", "m.operator.location"
+    };
+
+    private Queries() {}
+
+    /**
+     * Помечает запрос как только-для-чтения, если он выполняется вне транзакции
+     * (GET-запросы идут через методы сервиса с {@code TxType.SUPPORTS}).
+     *
+     * Такие результаты берутся из разделяемого кеша EclipseLink без копирования
+     * в единицу работы и без отслеживания изменений. Внутри транзакции подсказка
+     * не ставится: там найденные сущности могут изменяться и связываться с новыми.
+     */
+    static <Q extends Query> Q readOnly(EntityManager entityManager, Q query) {
+        if (!entityManager.isJoinedToTransaction()) {
+            query.setHint(QueryHints.READ_ONLY, HintValues.TRUE);
+        }
+        return query;
+    }
+
+    /**
+     * Загружает связи фильма (координаты, людей и их местоположения) тем же запросом
+     * через LEFT JOIN; фильм в запросе - m. Нужно для чтений через ReplicaRouter:
+     * EntityManager реплики закрывается до сериализации ответа, и LAZY-связи, не
+     * загруженные внутри чтения, потом уже не загрузить.
+     */
+    static <Q extends Query> Q withRelations(Q query) {
+        for (String relation : MOVIE_RELATIONS) {
+            query.setHint(QueryHints.LEFT_FETCH, relation);
+        }
+        return query;
+    }
+
+    /**
+     * То же для людей: местоположение; человек в запросе - p.
+     */
+    static <Q extends Query> Q withLocation(Q query) {
+        query.setHint(QueryHints.LEFT_FETCH, "p.location");
+        return query;
+    }
+
+    /**
+     * Экранирует спецсимволы LIKE и добавляет '%' - поиск по префиксу.
+     */
+    static String likePrefix(String prefix) {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /**
+     * Кодирует ключ keyset-курсора в непрозрачную строку для URL.
+     */
+    static String encodeCursor(String... parts) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(String.join("\n", parts).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разбирает курсор, выданный {@link #encodeCursor}.
+     *
+     * @throws IllegalArgumentException если курсор поврежден
+     */
+    static String[] decodeCursor(String cursor, int parts) {
+        String[] decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+            .split("\n", parts);
+        if (decoded.length != parts) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,108 @@
+package org.moviesystem.back.event;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import org.moviesystem.back.model.Movie;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Событие об изменении фильмов. Рассылается наблюдателям (WebSocket) после фиксации транзакции.
+ *
+ * Для частичного обновления событие несет только измененные поля с новыми значениями,
+ * чтобы клиенты могли обновить строку без повторного чтения фильма.
+ */
+public final class MovieChangeEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        PATCHED,
+        DELETED,
+        // Массовая операция: затронуто неизвестное заранее множество фильмов
+        BULK
+    }
+
+    private final Type type;
+    private final Long movieId;
+    private final Long version;
+    private final Map<String, Object> changedFields;
+
+    private MovieChangeEvent(Type type, Long movieId, Long version, Map<String, Object> changedFields) {
+        this.type = type;
+        this.movieId = movieId;
+        this.version = version;
+        this.changedFields = changedFields;
+    }
+
+    public static MovieChangeEvent created(Movie movie) {
+        return new MovieChangeEvent(Type.CREATED, movie.getId(), movie.getVersion(), Collections.emptyMap());
+    }
+
+    public static MovieChangeEvent updated(Movie movie) {
+        return new MovieChangeEvent(Type.UPDATED, movie.getId(), movie.getVersion(), Collections.emptyMap());
+    }
+
+    /**
+     * @param changedFields имя поля (как в JSON) -> новое значение
+     */
+    public static MovieChangeEvent patched(Long movieId, Long version, Map<String, Object> changedFields) {
+        return new MovieChangeEvent(Type.PATCHED, movieId, version,
+            Collections.unmodifiableMap(new LinkedHashMap<>(changedFields)));
+    }
+
+    public static MovieChangeEvent deleted(Long movieId) {
+        return new MovieChangeEvent(Type.DELETED, movieId, null, Collections.emptyMap());
+    }
+
+    public static MovieChangeEvent bulk() {
+        return new MovieChangeEvent(Type.BULK, null, null, Collections.emptyMap());
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getMovieId() {
+        return movieId;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public Map<String, Object> getChangedFields() {
+        return changedFields;
+    }
+
+    /**
+     * Описание изменения для клиентов (WebSocket и поток SSE): change, movieId, version, fields.
+     */
+    public JsonObjectBuilder toJson() {
+        JsonObjectBuilder json = Json.createObjectBuilder().add("change", type.name());
+        if (movieId != null) {
+            json.add("movieId", movieId);
+        }
+        if (version != null) {
+            json.add("version", version);
+        }
+        if (!changedFields.isEmpty()) {
+            JsonObjectBuilder fields = Json.createObjectBuilder();
+            changedFields.forEach((field, value) -> {
+                if (value == null) {
+                    fields.addNull(field);
+                } else if (value instanceof Integer || value instanceof Long) {
+                    fields.add(field, ((Number) value).longValue());
+                } else if (value instanceof Number number) {
+                    fields.add(field, number.doubleValue());
+                } else {
+                    fields.add(field, value.toString());
+                }
+            });
+            json.add("fields", fields);
+        }
+        return json;
+    }
+}
@@ -0,0 +1,67 @@
+package org.moviesystem.back.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма с фиксированными границами бакетов в формате Prometheus.
+ *
+ * Запись значения не захватывает блокировок и не выделяет память:
+ * счетчики бакетов построены на {@link LongAdder}, поэтому гистограмму
+ * можно безопасно обновлять из горячего пути запроса.
+ */
+public final class Histogram {
+
+    /** Границы по умолчанию для латентности в секундах (от 1 мс до 10 с). */
+    public static final double[] LATENCY_BUCKETS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private final double[] bounds;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+
+    public Histogram(double[] bounds) {
+        this.bounds = bounds.clone();
+        this.buckets = new LongAdder[bounds.length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observe(double value) {
+        for (int i = 0; i < bounds.length; i++) {
+            if (value <= bounds[i]) {
+                buckets[i].increment();
+                break;
+            }
+        }
+        count.increment();
+        sum.add(value);
+    }
+
+    public void observeNanos(long nanos) {
+        observe(nanos / 1_000_000_000.0);
+    }
+
+    void render(StringBuilder out, String name, String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{");
+            if (!labels.isEmpty()) {
+                out.append(labels).append(',');
+            }
+            out.append("le=\"").append(bounds[i]).append("\"} ").append(cumulative).append('\n');
+        }
+        long total = count.sum();
+        out.append(name).append("_bucket{");
+        if (!labels.isEmpty()) {
+            out.append(labels).append(',');
+        }
+        out.append("le=\"+Inf\"} ").append(total).append('\n');
+        out.append(name).append("_sum").append(MetricsRegistry.braces(labels)).append(' ').append(sum.sum()).append('\n');
+        out.append(name).append("_count").append(MetricsRegistry.braces(labels)).append(' ').append(total).append('\n');
+    }
+}
@@ -0,0 +1,98 @@
+package org.moviesystem.back.metrics;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
+import org.eclipse.persistence.internal.identitymaps.IdentityMap;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.server.ConnectionPool;
+import org.eclipse.persistence.sessions.server.ServerSession;
+import org.moviesystem.back.model.Coordinates;
+import org.moviesystem.back.model.Location;
+import org.moviesystem.back.model.Movie;
+import org.moviesystem.back.model.Person;
+import org.moviesystem.back.profiler.SqlProfiler;
+import org.moviesystem.back.websocket.MovieWebSocket;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Регистрирует gauge-метрики при старте приложения: WebSocket-сессии, куча и потоки JVM,
+ * собственные пулы соединений EclipseLink (если они используются) и размеры кеша сущностей (identity map).
+ *
+ * Значения читаются лениво в момент scrape, поэтому горячий путь не затрагивается.
+ */
+@ApplicationScoped
+public class MetricsBootstrap {
+
+    @Inject
+    private MetricsRegistry registry;
+
+    @PersistenceUnit(unitName = "default")
+    private EntityManagerFactory entityManagerFactory;
+
+    public void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        registry.gauge("moviesystem_websocket_sessions", "Открытые WebSocket-сессии", "",
+            MovieWebSocket::getSessionCount);
+        registry.gauge("moviesystem_websocket_pending_sends", "Сообщения WebSocket, находящиеся в отправке", "",
+            MovieWebSocket::getPendingSends);
+
+        // Счетчики накапливаются с момента старта и не сбрасываются вместе с отчетом /admin/sql-stats
+        registry.counter("moviesystem_jpa_objects_built_total", "Объекты, построенные EclipseLink из строк результата",
+            "", SqlProfiler::objectsBuilt);
+        registry.counter("moviesystem_jpa_uow_commits_total", "Фиксации единиц работы EclipseLink", "",
+            SqlProfiler::commits);
+        registry.counter("moviesystem_jpa_uow_commit_seconds_total",
+            "Время фиксации единиц работы: расчет изменений и запись", "", () -> SqlProfiler.commitNanos() / 1e9);
+
+        // Для сравнения режимов исполнителя под нагрузкой (см. src/loadtest): память на запрос в работе
+        // и платформенные потоки (виртуальные ThreadMXBean не считает)
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        registry.gauge("moviesystem_jvm_heap_used_bytes", "Занятая куча JVM", "",
+            () -> memory.getHeapMemoryUsage().getUsed());
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        registry.gauge("moviesystem_jvm_platform_threads", "Живые платформенные потоки JVM", "", threads::getThreadCount);
+
+        ServerSession session = JpaHelper.getEntityManagerFactory(entityManagerFactory).getServerSession();
+        // С JTA-источником данных соединения берутся из пула контейнера, собственных пулов
+        // у EclipseLink нет - тогда статистику пула смотрим в метриках WildFly
+        if (session.getDefaultConnectionPool() != null) {
+            registerPool(session, "default", ServerSession::getDefaultConnectionPool);
+            registerPool(session, "read", ServerSession::getReadConnectionPool);
+        }
+
+        for (Class<?> entity : List.of(Movie.class, Person.class, Coordinates.class, Location.class)) {
+            registry.gauge("moviesystem_entity_cache_size", "Объекты в разделяемом кеше EclipseLink",
+                MetricsRegistry.labels("entity", entity.getSimpleName()),
+                () -> {
+                    IdentityMap map = session.getIdentityMapAccessorInstance().getIdentityMap(entity);
+                    return map != null ? map.getSize() : 0;
+                });
+        }
+    }
+
+    private void registerPool(ServerSession session, String name, Function<ServerSession, ConnectionPool> pool) {
+        String labels = MetricsRegistry.labels("pool", name);
+        registry.gauge("moviesystem_db_pool_connections_max", "Максимальный размер пула соединений", labels,
+            () -> poolValue(session, pool, ConnectionPool::getMaxNumberOfConnections));
+        registry.gauge("moviesystem_db_pool_connections_total", "Открытые соединения пула", labels,
+            () -> poolValue(session, pool, ConnectionPool::getTotalNumberOfConnections));
+        registry.gauge("moviesystem_db_pool_connections_idle", "Свободные соединения пула", labels,
+            () -> poolValue(session, pool, p -> p.getConnectionsAvailable().size()));
+    }
+
+    private static int poolValue(ServerSession session,
+                                 Function<ServerSession, ConnectionPool> pool,
+                                 ToIntFunction<ConnectionPool> value) {
+        ConnectionPool connectionPool = pool.apply(session);
+        return connectionPool != null ? value.applyAsInt(connectionPool) : 0;
+    }
+}
@@ -0,0 +1,62 @@
+package org.moviesystem.back.metrics;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.ext.Provider;
+
+import java.lang.reflect.Method;
+
+/**
+ * JAX-RS фильтр, измеряющий латентность каждого эндпоинта.
+ *
+ * Метка {@code endpoint} строится из класса и метода ресурса, а не из URI,
+ * чтобы кардинальность не росла от path-параметров вроде {@code /movies/{id}}.
+ * Первый ответ отмечается в {@link StartupMetrics} (время до первого запроса).
+ */
+@Provider
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String START_PROPERTY = MetricsFilter.class.getName() + ".start";
+
+    @Inject
+    private MetricsRegistry registry;
+
+    @Inject
+    private StartupMetrics startupMetrics;
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Object start = requestContext.getProperty(START_PROPERTY);
+        if (!(start instanceof Long startNanos)) {
+            return;
+        }
+        String labels = MetricsRegistry.labels(
+            "method", requestContext.getMethod(),
+            "endpoint", endpoint(),
+            "status", (responseContext.getStatus() / 100) + "xx");
+        registry.histogram("moviesystem_http_request_seconds", "Латентность HTTP-запросов к REST API", labels)
+            .observeNanos(System.nanoTime() - startNanos);
+        startupMetrics.requestCompleted();
+    }
+
+    private String endpoint() {
+        Method method = resourceInfo != null ? resourceInfo.getResourceMethod() : null;
+        if (method == null) {
+            return "unmatched";
+        }
+        return resourceInfo.getResourceClass().getSimpleName() + "." + method.getName();
+    }
+}
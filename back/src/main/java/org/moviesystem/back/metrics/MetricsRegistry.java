@@ -0,0 +1,120 @@
+package org.moviesystem.back.metrics;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Реестр метрик приложения.
+ *
+ * Хранит счетчики, гистограммы и gauge-метрики, сгруппированные по имени
+ * семейства, и отдает их в текстовом формате Prometheus (см. {@code /api/metrics}).
+ * Метки передаются уже отформатированной строкой вида {@code method="GET",path="x"},
+ * которую удобно построить через {@link #labels(String...)} один раз и переиспользовать.
+ */
+@ApplicationScoped
+public class MetricsRegistry {
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public LongAdder counter(String name, String help, String labels) {
+        return (LongAdder) family(name, help, "counter")
+            .series.computeIfAbsent(labels, l -> new LongAdder());
+    }
+
+    /**
+     * Счетчик, значение которого ведет сам компонент (например, попадания в кеш).
+     */
+    public void counter(String name, String help, String labels, DoubleSupplier supplier) {
+        family(name, help, "counter").series.put(labels, supplier);
+    }
+
+    public Histogram histogram(String name, String help, String labels) {
+        return (Histogram) family(name, help, "histogram")
+            .series.computeIfAbsent(labels, l -> new Histogram(Histogram.LATENCY_BUCKETS));
+    }
+
+    public void gauge(String name, String help, String labels, DoubleSupplier supplier) {
+        family(name, help, "gauge").series.put(labels, supplier);
+    }
+
+    /**
+     * Формирует текст в формате Prometheus exposition 0.0.4.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                Object metric = series.getValue();
+                String labels = series.getKey();
+                if (metric instanceof Histogram histogram) {
+                    histogram.render(out, name, labels);
+                } else if (metric instanceof LongAdder counter) {
+                    out.append(name).append(braces(labels)).append(' ').append(counter.sum()).append('\n');
+                } else if (metric instanceof DoubleSupplier gauge) {
+                    double value;
+                    try {
+                        value = gauge.getAsDouble();
+                    } catch (RuntimeException e) {
+                        // Gauge не должен ломать весь scrape
+                        continue;
+                    }
+                    out.append(name).append(braces(labels)).append(' ').append(value).append('\n');
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Строит строку меток из пар ключ-значение: {@code labels("method", "GET")}.
+     */
+    public static String labels(String... keyValues) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(keyValues[i]).append("=\"").append(escape(keyValues[i + 1])).append('"');
+        }
+        return sb.toString();
+    }
+
+    static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Метрика " + name + " уже зарегистрирована с типом " + family.type);
+        }
+        return family;
+    }
+
+    private static final class Family {
+        final String help;
+        final String type;
+        final Map<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
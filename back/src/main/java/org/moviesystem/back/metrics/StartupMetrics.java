@@ -0,0 +1,64 @@
+package org.moviesystem.back.metrics;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Время старта: от запуска JVM до готовности приложения и до первого обработанного
+ * REST-запроса. Отсчет идет от старта JVM, поэтому загрузка самого WildFly тоже
+ * учитывается - именно ее сокращает архив AppCDS (задача appCdsArchive в build.gradle).
+ *
+ * Значения публикуются в /api/metrics и пишутся в лог, чтобы их можно было сравнивать
+ * между сборками.
+ */
+@ApplicationScoped
+public class StartupMetrics {
+
+    private static final Logger LOG = Logger.getLogger(StartupMetrics.class.getName());
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final AtomicLong firstRequestMillis = new AtomicLong();
+    private volatile long initializedMillis;
+    private volatile long warmupMillis;
+
+    @Inject
+    private MetricsRegistry registry;
+
+    public void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        initializedMillis = System.currentTimeMillis();
+        LOG.info(() -> "Application initialized " + (initializedMillis - jvmStartMillis) + " ms after JVM start");
+
+        registry.gauge("moviesystem_startup_seconds", "Время от запуска JVM до готовности приложения", "",
+            () -> (initializedMillis - jvmStartMillis) / 1000.0);
+        registry.gauge("moviesystem_time_to_first_request_seconds",
+            "Время от запуска JVM до ответа на первый REST-запрос (0 - запросов еще не было)", "",
+            () -> {
+                long first = firstRequestMillis.get();
+                return first != 0 ? (first - jvmStartMillis) / 1000.0 : 0;
+            });
+        registry.gauge("moviesystem_warmup_seconds", "Длительность прогрева запросов при старте", "",
+            () -> warmupMillis / 1000.0);
+    }
+
+    /**
+     * Вызывается после каждого ответа; учитывается только первый.
+     */
+    public void requestCompleted() {
+        if (firstRequestMillis.get() == 0) {
+            long now = System.currentTimeMillis();
+            if (firstRequestMillis.compareAndSet(0, now)) {
+                LOG.info(() -> "First request completed " + (now - jvmStartMillis) + " ms after JVM start");
+            }
+        }
+    }
+
+    public void warmupCompleted(long millis) {
+        warmupMillis = millis;
+    }
+}
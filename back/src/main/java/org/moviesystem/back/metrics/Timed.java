@@ -0,0 +1,20 @@
+package org.moviesystem.back.metrics;
+
+import jakarta.interceptor.InterceptorBinding;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Помечает бин (или отдельный метод), вызовы которого нужно измерять:
+ * время выполнения, количество возвращенных/измененных строк и ошибки.
+ *
+ * @see TimedInterceptor
+ */
+@InterceptorBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Timed {
+}
@@ -0,0 +1,78 @@
+package org.moviesystem.back.metrics;
+
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.interceptor.AroundInvoke;
+import jakarta.interceptor.Interceptor;
+import jakarta.interceptor.InvocationContext;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Перехватчик для {@link Timed}: пишет в {@link MetricsRegistry}
+ * время вызова, число строк в результате и количество ошибок по каждому методу DAO.
+ *
+ * Строки считаются по результату: коллекция - ее размер, любое другое значение - одна
+ * строка (сущность, агрегат COUNT/SUM). Числа не трактуются как количество измененных
+ * строк: по типу Integer или Long не отличить счетчик изменений от агрегата.
+ *
+ * Серии метрик кешируются по {@link Method}, так что на каждый вызов
+ * приходится только два чтения из карты и обновление LongAdder-ов.
+ */
+@Timed
+@Interceptor
+@Priority(Interceptor.Priority.APPLICATION)
+public class TimedInterceptor {
+
+    private final Map<Method, Series> series = new ConcurrentHashMap<>();
+
+    @Inject
+    private MetricsRegistry registry;
+
+    @AroundInvoke
+    public Object time(InvocationContext context) throws Exception {
+        Series s = series.computeIfAbsent(context.getMethod(), this::createSeries);
+        long start = System.nanoTime();
+        try {
+            Object result = context.proceed();
+            s.rows.add(rowCount(result));
+            return result;
+        } catch (Exception e) {
+            s.errors.increment();
+            throw e;
+        } finally {
+            s.latency.observeNanos(System.nanoTime() - start);
+        }
+    }
+
+    private Series createSeries(Method method) {
+        String labels = MetricsRegistry.labels(
+            "dao", method.getDeclaringClass().getSimpleName(),
+            "method", method.getName());
+        return new Series(
+            registry.histogram("moviesystem_dao_query_seconds", "Время выполнения методов DAO", labels),
+            registry.counter("moviesystem_dao_rows_total", "Строки, возвращенные методами DAO", labels),
+            registry.counter("moviesystem_dao_errors_total", "Исключения, выброшенные методами DAO", labels));
+    }
+
+    static long rowCount(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        return 1;
+    }
+
+    private record Series(Histogram latency, LongAdder rows, LongAdder errors) {
+    }
+}
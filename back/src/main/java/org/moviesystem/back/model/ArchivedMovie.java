@@ -0,0 +1,127 @@
+package org.moviesystem.back.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Фильм, перенесенный в холодный архив (таблица movies_archive) фоновой задачей
+ * архивации. Связанные объекты хранятся только ссылками по id: архив только читается
+ * и не должен мешать удалению людей и координат.
+ */
+@Entity
+@Table(name = "movies_archive")
+@NamedQueries({
+    @NamedQuery(name = ArchivedMovie.SEARCH,
+        query = "SELECT a FROM ArchivedMovie a WHERE LOWER(a.name) LIKE :name AND a.id > :afterId ORDER BY a.id")
+})
+public class ArchivedMovie {
+    public static final String SEARCH = "ArchivedMovie.search";
+
+    // id сохраняется прежним, чтобы ссылки на фильм оставались действительными
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(name = "coordinates_id")
+    private Long coordinatesId;
+
+    @Column(name = "creation_date", nullable = false)
+    private LocalDateTime creationDate;
+
+    @Column(name = "oscars_count", nullable = false)
+    private int oscarsCount;
+
+    private Double budget;
+
+    @Column(name = "total_box_office", nullable = false)
+    private long totalBoxOffice;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "mpaa_rating", nullable = false)
+    private MpaaRating mpaaRating;
+
+    @Column(name = "director_id")
+    private Long directorId;
+
+    @Column(name = "screenwriter_id")
+    private Long screenwriterId;
+
+    @Column(name = "operator_id")
+    private Long operatorId;
+
+    @Column(nullable = false)
+    private Long length;
+
+    @Column(name = "golden_palm_count")
+    private Long goldenPalmCount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private MovieGenre genre;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Long getCoordinatesId() {
+        return coordinatesId;
+    }
+
+    public LocalDateTime getCreationDate() {
+        return creationDate;
+    }
+
+    public int getOscarsCount() {
+        return oscarsCount;
+    }
+
+    public Double getBudget() {
+        return budget;
+    }
+
+    public long getTotalBoxOffice() {
+        return totalBoxOffice;
+    }
+
+    public MpaaRating getMpaaRating() {
+        return mpaaRating;
+    }
+
+    public Long getDirectorId() {
+        return directorId;
+    }
+
+    public Long getScreenwriterId() {
+        return screenwriterId;
+    }
+
+    public Long getOperatorId() {
+        return operatorId;
+    }
+
+    public Long getLength() {
+        return length;
+    }
+
+    public Long getGoldenPalmCount() {
+        return goldenPalmCount;
+    }
+
+    public MovieGenre getGenre() {
+        return genre;
+    }
+
+    public LocalDateTime getArchivedAt() {
+        return archivedAt;
+    }
+}
@@ -2,12 +2,24 @@ package org.moviesystem.back.model;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
+import org.eclipse.persistence.annotations.ChangeTracking;
+import org.eclipse.persistence.annotations.ChangeTrackingType;
 
 @Entity
-@Table(name = "coordinates")
+@ChangeTracking(ChangeTrackingType.ATTRIBUTE)
+@Table(name = "coordinates",
+    uniqueConstraints = @UniqueConstraint(name = "coordinates_x_y_key", columnNames = {"x", "y"}))
+@NamedQueries({
+    @NamedQuery(name = Coordinates.FIND_ALL, query = "SELECT c FROM Coordinates c ORDER BY c.id"),
+    @NamedQuery(name = Coordinates.FIND_BY_X_AND_Y,
+        query = "SELECT c FROM Coordinates c WHERE c.x = :x AND c.y = :y")
+})
 public class Coordinates {
+    public static final String FIND_ALL = "Coordinates.findAll";
+    public static final String FIND_BY_X_AND_Y = "Coordinates.findByXAndY";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coordinates_seq")
     private Long id;
     
     @NotNull
@@ -0,0 +1,245 @@
+package org.moviesystem.back.model;
+
+import jakarta.persistence.*;
+import org.eclipse.persistence.annotations.ChangeTracking;
+import org.eclipse.persistence.annotations.ChangeTrackingType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Фоновая задача для массовой операции над фильмами.
+ *
+ * Задача выполняется порциями, каждая в своей транзакции, и состояние
+ * (фаза, курсор по id, накопленные значения, прогресс) фиксируется вместе с порцией.
+ * Поэтому после перезапуска сервера задача продолжается с того же места.
+ */
+@Entity
+@ChangeTracking(ChangeTrackingType.ATTRIBUTE)
+@Table(name = "jobs")
+@NamedQueries({
+    @NamedQuery(name = Job.FIND_RECENT, query = "SELECT j FROM Job j ORDER BY j.id DESC"),
+    @NamedQuery(name = Job.FIND_UNFINISHED,
+        query = "SELECT j.id FROM Job j WHERE j.status IN :statuses ORDER BY j.id")
+})
+public class Job {
+    public static final String FIND_RECENT = "Job.findRecent";
+    public static final String FIND_UNFINISHED = "Job.findUnfinished";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private JobType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private JobStatus status;
+
+    // Параметры операции (используются в зависимости от типа)
+    @Enumerated(EnumType.STRING)
+    @Column(name = "from_genre")
+    private MovieGenre fromGenre;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "to_genre")
+    private MovieGenre toGenre;
+
+    // Количество Золотых пальм, минимальная длительность или возраст архивируемых фильмов в днях
+    private Long threshold;
+
+    // Сколько Оскаров добавить
+    private Integer amount;
+
+    // Состояние выполнения
+    @Column(nullable = false)
+    private int phase;
+
+    // id последнего обработанного фильма (keyset-курсор)
+    @Column(name = "last_id", nullable = false)
+    private long lastId;
+
+    // Обработано фильмов в текущей фазе
+    @Column(name = "phase_processed", nullable = false)
+    private long phaseProcessed;
+
+    // Собранные Оскары при перераспределении
+    @Column(nullable = false)
+    private long accumulated;
+
+    // Число фильмов целевого жанра при перераспределении
+    @Column(name = "target_count", nullable = false)
+    private long targetCount;
+
+    @Column(name = "total_items", nullable = false)
+    private long totalItems;
+
+    @Column(name = "processed_items", nullable = false)
+    private long processedItems;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    public Job() {}
+
+    public Job(JobType type) {
+        this.type = type;
+        this.status = JobStatus.QUEUED;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public JobType getType() {
+        return type;
+    }
+
+    public void setType(JobType type) {
+        this.type = type;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(JobStatus status) {
+        this.status = status;
+    }
+
+    public MovieGenre getFromGenre() {
+        return fromGenre;
+    }
+
+    public void setFromGenre(MovieGenre fromGenre) {
+        this.fromGenre = fromGenre;
+    }
+
+    public MovieGenre getToGenre() {
+        return toGenre;
+    }
+
+    public void setToGenre(MovieGenre toGenre) {
+        this.toGenre = toGenre;
+    }
+
+    public Long getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(Long threshold) {
+        this.threshold = threshold;
+    }
+
+    public Integer getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Integer amount) {
+        this.amount = amount;
+    }
+
+    public int getPhase() {
+        return phase;
+    }
+
+    public void setPhase(int phase) {
+        this.phase = phase;
+    }
+
+    public long getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(long lastId) {
+        this.lastId = lastId;
+    }
+
+    public long getPhaseProcessed() {
+        return phaseProcessed;
+    }
+
+    public void setPhaseProcessed(long phaseProcessed) {
+        this.phaseProcessed = phaseProcessed;
+    }
+
+    public long getAccumulated() {
+        return accumulated;
+    }
+
+    public void setAccumulated(long accumulated) {
+        this.accumulated = accumulated;
+    }
+
+    public long getTargetCount() {
+        return targetCount;
+    }
+
+    public void setTargetCount(long targetCount) {
+        this.targetCount = targetCount;
+    }
+
+    public long getTotalItems() {
+        return totalItems;
+    }
+
+    public void setTotalItems(long totalItems) {
+        this.totalItems = totalItems;
+    }
+
+    public long getProcessedItems() {
+        return processedItems;
+    }
+
+    public void setProcessedItems(long processedItems) {
+        this.processedItems = processedItems;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
@@ -0,0 +1,8 @@
+package org.moviesystem.back.model;
+
+public enum JobType {
+    DELETE_BY_GOLDEN_PALM_COUNT,
+    REDISTRIBUTE_OSCARS,
+    ADD_OSCARS_TO_LONG_MOVIES,
+    ARCHIVE_MOVIES
+}
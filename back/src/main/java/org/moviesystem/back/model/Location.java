@@ -2,12 +2,15 @@ package org.moviesystem.back.model;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
+import org.eclipse.persistence.annotations.ChangeTracking;
+import org.eclipse.persistence.annotations.ChangeTrackingType;
 
 @Entity
+@ChangeTracking(ChangeTrackingType.ATTRIBUTE)
 @Table(name = "locations")
 public class Location {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "locations_seq")
     private Long id;
     
     private int x;
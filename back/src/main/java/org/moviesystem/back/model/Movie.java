@@ -3,14 +3,72 @@ package org.moviesystem.back.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
 import jakarta.persistence.PreRemove;
+import org.eclipse.persistence.annotations.BatchFetch;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.annotations.ChangeTracking;
+import org.eclipse.persistence.annotations.ChangeTrackingType;
+import org.eclipse.persistence.annotations.FetchAttribute;
+import org.eclipse.persistence.annotations.FetchGroup;
 import java.time.LocalDateTime;
+import java.util.logging.Logger;
 
+// Отслеживание изменений по атрибутам и ленивые связи работают только со связанными
+// (woven) классами - см. задачу weaveEntities в build.gradle
 @Entity
+@ChangeTracking(ChangeTrackingType.ATTRIBUTE)
 @Table(name = "movies")
+@FetchGroup(name = Movie.OSCARS_FETCH_GROUP, attributes = {
+    @FetchAttribute(name = "genre"),
+    @FetchAttribute(name = "oscarsCount")
+})
+@NamedQueries({
+    @NamedQuery(name = Movie.FIND_ALL, query = "SELECT m FROM Movie m ORDER BY m.id"),
+    @NamedQuery(name = Movie.COUNT_ALL, query = "SELECT COUNT(m) FROM Movie m"),
+    @NamedQuery(name = Movie.FIND_BY_IDS, query = "SELECT m FROM Movie m WHERE m.id IN :ids"),
+    @NamedQuery(name = Movie.FIND_BY_GOLDEN_PALM_COUNT_GREATER_THAN,
+        query = "SELECT m FROM Movie m WHERE m.goldenPalmCount IS NOT NULL AND m.goldenPalmCount > :goldenPalmCount ORDER BY m.id"),
+    @NamedQuery(name = Movie.FIND_BY_GOLDEN_PALM_COUNT,
+        query = "SELECT m FROM Movie m WHERE m.goldenPalmCount = :goldenPalmCount ORDER BY m.id"),
+    @NamedQuery(name = Movie.FIND_BY_LENGTH_GREATER_THAN,
+        query = "SELECT m FROM Movie m WHERE m.length > :length ORDER BY m.id"),
+    @NamedQuery(name = Movie.SUM_GOLDEN_PALM_COUNT,
+        query = "SELECT COALESCE(SUM(m.goldenPalmCount), 0) FROM Movie m WHERE m.goldenPalmCount IS NOT NULL AND m.goldenPalmCount > 0"),
+    @NamedQuery(name = Movie.COUNT_BY_GENRE,
+        query = "SELECT COUNT(m) FROM Movie m WHERE m.genre = :genre"),
+    @NamedQuery(name = Movie.COUNT_BY_GOLDEN_PALM_COUNT,
+        query = "SELECT COUNT(m) FROM Movie m WHERE m.goldenPalmCount = :goldenPalmCount"),
+    @NamedQuery(name = Movie.COUNT_BY_LENGTH_GREATER_THAN,
+        query = "SELECT COUNT(m) FROM Movie m WHERE m.length > :length"),
+    @NamedQuery(name = Movie.COUNT_CREATED_BEFORE,
+        query = "SELECT COUNT(m) FROM Movie m WHERE m.creationDate < :cutoff"),
+    @NamedQuery(name = Movie.FIND_ALL_GENRES,
+        query = "SELECT DISTINCT m.genre FROM Movie m ORDER BY m.genre")
+})
 public class Movie {
+    public static final String FIND_ALL = "Movie.findAll";
+    public static final String OSCARS_FETCH_GROUP = "oscars";
+    public static final String COUNT_ALL = "Movie.countAll";
+    public static final String FIND_BY_IDS = "Movie.findByIds";
+    public static final String FIND_BY_GOLDEN_PALM_COUNT_GREATER_THAN = "Movie.findByGoldenPalmCountGreaterThan";
+    public static final String FIND_BY_GOLDEN_PALM_COUNT = "Movie.findByGoldenPalmCount";
+    public static final String FIND_BY_LENGTH_GREATER_THAN = "Movie.findByLengthGreaterThan";
+    public static final String SUM_GOLDEN_PALM_COUNT = "Movie.sumGoldenPalmCount";
+    public static final String COUNT_BY_GENRE = "Movie.countByGenre";
+    public static final String COUNT_BY_GOLDEN_PALM_COUNT = "Movie.countByGoldenPalmCount";
+    public static final String COUNT_BY_LENGTH_GREATER_THAN = "Movie.countByLengthGreaterThan";
+    public static final String COUNT_CREATED_BEFORE = "Movie.countCreatedBefore";
+    public static final String FIND_ALL_GENRES = "Movie.findAllGenres";
+
+    private static final Logger LOG = Logger.getLogger(Movie.class.getName());
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Генератор и размер выделяемого блока id - в META-INF/orm.xml
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movies_seq")
     private Long id;
+
+    // Оптимистическая блокировка: UPDATE проверяет, что строку не изменили после чтения
+    @Version
+    private Long version;
     
     @NotBlank
     @Column(nullable = false)
@@ -18,6 +76,8 @@ public class Movie {
     
     @NotNull
     @OneToOne(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
+    // Связи страницы фильмов догружаются одним запросом с IN по id, а не по одному
+    @BatchFetch(BatchFetchType.IN)
     @JoinColumn(name = "coordinates_id", nullable = false)
     private Coordinates coordinates;
     
@@ -44,15 +104,18 @@ public class Movie {
     
     @NotNull
     @OneToOne(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
+    @BatchFetch(BatchFetchType.IN)
     @JoinColumn(name = "director_id", nullable = false)
     private Person director;
     
     @OneToOne(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
+    @BatchFetch(BatchFetchType.IN)
     @JoinColumn(name = "screenwriter_id")
     private Person screenwriter;
     
     @NotNull
     @OneToOne(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
+    @BatchFetch(BatchFetchType.IN)
     @JoinColumn(name = "operator_id", nullable = false)
     private Person operator;
     
@@ -102,6 +165,14 @@ public class Movie {
         this.id = id;
     }
     
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+    
     public String getName() {
         return name;
     }
@@ -209,6 +280,6 @@ public class Movie {
     @PreRemove
     private void preRemove() {
         // Отключаем валидацию при удалении
-        System.out.println("DEBUG: PreRemove callback для фильма: " + this.name);
+        LOG.finest(() -> "PreRemove callback для фильма: " + name);
     }
 }
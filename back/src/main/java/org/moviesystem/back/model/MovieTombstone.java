@@ -0,0 +1,49 @@
+package org.moviesystem.back.model;
+
+import jakarta.persistence.*;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.config.CacheIsolationType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Надгробие удаленного фильма (таблица movie_tombstones). Строки пишет триггер при
+ * удалении из movies (см. db/migration/V7__movie_changes.sql); приложение их только читает
+ * для синхронизации по дельте. Не кешируется: триггер переписывает версию повторного удаления.
+ */
+@Entity
+@Table(name = "movie_tombstones")
+@Cache(isolation = CacheIsolationType.ISOLATED)
+@NamedQueries({
+    // Надгробие живого фильма остается после переноса строки между секциями - пропускаем
+    @NamedQuery(name = MovieTombstone.FIND_SINCE,
+        query = "SELECT t FROM MovieTombstone t " +
+                "WHERE t.changeVersion > :since AND t.changeVersion <= :until " +
+                "AND NOT EXISTS (SELECT m.id FROM Movie m WHERE m.id = t.movieId) " +
+                "ORDER BY t.changeVersion")
+})
+public class MovieTombstone {
+    public static final String FIND_SINCE = "MovieTombstone.findSince";
+
+    @Id
+    @Column(name = "movie_id")
+    private Long movieId;
+
+    @Column(name = "change_version", nullable = false)
+    private long changeVersion;
+
+    @Column(name = "deleted_at", nullable = false)
+    private LocalDateTime deletedAt;
+
+    public Long getMovieId() {
+        return movieId;
+    }
+
+    public long getChangeVersion() {
+        return changeVersion;
+    }
+
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+}
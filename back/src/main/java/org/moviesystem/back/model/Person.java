@@ -3,15 +3,31 @@ package org.moviesystem.back.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import org.eclipse.persistence.annotations.BatchFetch;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.annotations.ChangeTracking;
+import org.eclipse.persistence.annotations.ChangeTrackingType;
 
 import java.time.LocalDate;
 
 @Entity
+@ChangeTracking(ChangeTrackingType.ATTRIBUTE)
 @Table(name = "persons")
+@NamedQueries({
+    @NamedQuery(name = Person.FIND_ALL, query = "SELECT p FROM Person p ORDER BY p.name"),
+    @NamedQuery(name = Person.FIND_BY_IDS, query = "SELECT p FROM Person p WHERE p.id IN :ids")
+})
 public class Person {
+    public static final String FIND_ALL = "Person.findAll";
+    public static final String FIND_BY_IDS = "Person.findByIds";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "persons_seq")
     private Long id;
+
+    // Оптимистическая блокировка: UPDATE проверяет, что строку не изменили после чтения
+    @Version
+    private Long version;
     
     @NotBlank
     @Column(nullable = false)
@@ -26,6 +42,7 @@ public class Person {
     private Color hairColor;
     
     @OneToOne(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @BatchFetch(BatchFetchType.IN)
     @JoinColumn(name = "location_id")
     private Location location;
     
@@ -52,6 +69,14 @@ public class Person {
         this.id = id;
     }
     
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+    
     public String getName() {
         return name;
     }
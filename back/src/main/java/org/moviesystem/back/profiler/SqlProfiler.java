@@ -0,0 +1,227 @@
+package org.moviesystem.back.profiler;
+
+import org.eclipse.persistence.internal.sessions.AbstractRecord;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.DataRecord;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Профилировщик SQL для EclipseLink (подключается свойством {@code eclipselink.profiler}
+ * в persistence.xml).
+ *
+ * Замеряется только реальное выполнение JDBC-выражения (операция {@code StatementExecute}),
+ * поэтому чтения, обслуженные кешем EclipseLink, в статистику не попадают.
+ * Выражения нормализуются (литералы заменяются на {@code ?}), по каждому копятся
+ * количество выполнений, время, строки и медленные вызовы. Отдельно считается,
+ * сколько раз EclipseLink заново подготавливал запрос (разбор JPQL и генерация SQL).
+ *
+ * Кроме того, считаются объекты, построенные из строк результата ({@code ObjectBuilding}),
+ * и время фиксации единиц работы ({@code UowCommit}: расчет изменений и запись) - по ним
+ * видно, сколько работы экономят группы выборки и отслеживание изменений по атрибутам.
+ *
+ * Порог медленного запроса задается системным свойством
+ * {@code moviesystem.sql.slow-threshold-ms} (по умолчанию 100 мс).
+ */
+public class SqlProfiler extends SessionProfilerAdapter {
+
+    private static final int MAX_STATEMENTS = 2000;
+    private static final String OVERFLOW_STATEMENT = "<other statements>";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Map<String, SqlStatementStats> STATEMENTS = new ConcurrentHashMap<>();
+    private static final Map<String, SqlStatementStats> BY_RAW_SQL = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> PREPARATIONS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Deque<Frame>> FRAMES = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private static final LongAdder OBJECTS_BUILT = new LongAdder();
+    private static final LongAdder COMMITS = new LongAdder();
+    private static final LongAdder COMMIT_NANOS = new LongAdder();
+    private static final ThreadLocal<long[]> COMMIT_STARTED = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final long slowThresholdNanos =
+        Long.getLong("moviesystem.sql.slow-threshold-ms", 100L) * 1_000_000L;
+
+    @Override
+    public Object profileExecutionOfQuery(DatabaseQuery query, DataRecord row, AbstractSession session) {
+        Deque<Frame> frames = FRAMES.get();
+        Frame frame = new Frame();
+        frames.push(frame);
+        Object result;
+        try {
+            result = session.internalExecuteQuery(query, (AbstractRecord) row);
+        } finally {
+            frames.pop();
+        }
+        if (frame.sql != null) {
+            record(frame, query, row, session, rowCount(result));
+        }
+        return result;
+    }
+
+    @Override
+    public void startOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        if (SessionProfiler.StatementExecute.equals(operationName)) {
+            Frame frame = FRAMES.get().peek();
+            if (frame != null && frame.depth++ == 0) {
+                frame.started = System.nanoTime();
+            }
+        } else if (SessionProfiler.ObjectBuilding.equals(operationName)) {
+            OBJECTS_BUILT.increment();
+        } else if (SessionProfiler.UowCommit.equals(operationName)) {
+            COMMIT_STARTED.get()[0] = System.nanoTime();
+        } else if (SessionProfiler.QueryPreparation.equals(operationName) && query != null) {
+            String key = query.getJPQLString() != null ? query.getJPQLString() : query.getName();
+            if (key != null && (PREPARATIONS.size() < MAX_STATEMENTS || PREPARATIONS.containsKey(key))) {
+                PREPARATIONS.computeIfAbsent(key, k -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    @Override
+    public void endOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        if (SessionProfiler.UowCommit.equals(operationName)) {
+            long[] started = COMMIT_STARTED.get();
+            if (started[0] != 0) {
+                COMMIT_NANOS.add(System.nanoTime() - started[0]);
+                COMMITS.increment();
+                started[0] = 0;
+            }
+            return;
+        }
+        if (!SessionProfiler.StatementExecute.equals(operationName)) {
+            return;
+        }
+        Frame frame = FRAMES.get().peek();
+        if (frame != null && frame.depth > 0 && --frame.depth == 0) {
+            frame.nanos += System.nanoTime() - frame.started;
+            if (query != null) {
+                frame.sql = query.getSQLString();
+            }
+        }
+    }
+
+    @Override
+    public int getProfileWeight() {
+        return SessionProfiler.ALL;
+    }
+
+    private void record(Frame frame, DatabaseQuery query, DataRecord row, AbstractSession session, long rows) {
+        SqlStatementStats stats = BY_RAW_SQL.get(frame.sql);
+        if (stats == null) {
+            String normalized = normalize(frame.sql);
+            if (normalized.startsWith("EXPLAIN ")) {
+                // Собственные EXPLAIN-запросы отчета не учитываем
+                return;
+            }
+            if (STATEMENTS.size() >= MAX_STATEMENTS && !STATEMENTS.containsKey(normalized)) {
+                normalized = OVERFLOW_STATEMENT;
+            }
+            stats = STATEMENTS.computeIfAbsent(normalized, SqlStatementStats::new);
+            if (BY_RAW_SQL.size() < MAX_STATEMENTS) {
+                BY_RAW_SQL.put(frame.sql, stats);
+            }
+        }
+        stats.record(frame.nanos, rows);
+        stats.setJpql(query.getJPQLString());
+        if (frame.nanos >= slowThresholdNanos) {
+            stats.recordSlow(translatedSql(query, row, session));
+        }
+    }
+
+    private static String translatedSql(DatabaseQuery query, DataRecord row, AbstractSession session) {
+        try {
+            return query.getTranslatedSQLString(session, row);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    static String normalize(String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = IN_LIST.matcher(normalized).replaceAll("(?...)");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    private static long rowCount(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Integer updated) {
+            return updated;
+        }
+        return 1;
+    }
+
+    /**
+     * Снимок статистики по всем нормализованным выражениям.
+     */
+    public static Collection<SqlStatementStats> statements() {
+        return Collections.unmodifiableCollection(STATEMENTS.values());
+    }
+
+    /**
+     * Сколько раз EclipseLink подготавливал запрос с данным JPQL (или именем запроса).
+     */
+    public static long preparations(String jpqlOrName) {
+        LongAdder adder = jpqlOrName != null ? PREPARATIONS.get(jpqlOrName) : null;
+        return adder != null ? adder.sum() : 0;
+    }
+
+    public static Map<String, LongAdder> allPreparations() {
+        return Collections.unmodifiableMap(PREPARATIONS);
+    }
+
+    /**
+     * Объекты, построенные EclipseLink из строк результата (с момента старта).
+     */
+    public static long objectsBuilt() {
+        return OBJECTS_BUILT.sum();
+    }
+
+    /**
+     * Количество фиксаций единиц работы.
+     */
+    public static long commits() {
+        return COMMITS.sum();
+    }
+
+    /**
+     * Суммарное время фиксаций единиц работы, нс.
+     */
+    public static long commitNanos() {
+        return COMMIT_NANOS.sum();
+    }
+
+    public static void reset() {
+        STATEMENTS.clear();
+        BY_RAW_SQL.clear();
+        PREPARATIONS.clear();
+    }
+
+    private static final class Frame {
+        int depth;
+        long started;
+        long nanos;
+        String sql;
+    }
+}
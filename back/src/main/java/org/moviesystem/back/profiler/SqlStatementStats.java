@@ -0,0 +1,115 @@
+package org.moviesystem.back.profiler;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Накопленная статистика по одному нормализованному SQL-выражению.
+ *
+ * Для перцентилей хранится кольцевой буфер последних {@link #SAMPLE_SIZE}
+ * замеров; запись в него не блокирующая, а сортировка выполняется
+ * только при построении отчета.
+ */
+public final class SqlStatementStats {
+
+    static final int SAMPLE_SIZE = 512;
+
+    private final String statement;
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder slowExecutions = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private final AtomicLong sampleIndex = new AtomicLong();
+
+    private volatile String jpql;
+    private volatile String slowSample;
+    private volatile String explainPlan;
+
+    SqlStatementStats(String statement) {
+        this.statement = statement;
+    }
+
+    void record(long nanos, long rowCount) {
+        executions.increment();
+        totalNanos.add(nanos);
+        rows.add(rowCount);
+        maxNanos.accumulate(nanos);
+        samples[(int) (sampleIndex.getAndIncrement() % SAMPLE_SIZE)] = nanos;
+    }
+
+    void recordSlow(String translatedSql) {
+        slowExecutions.increment();
+        if (translatedSql != null && !translatedSql.equals(slowSample)) {
+            slowSample = translatedSql;
+            // План пересчитывается для нового медленного примера
+            explainPlan = null;
+        }
+    }
+
+    void setJpql(String jpql) {
+        if (jpql != null && this.jpql == null) {
+            this.jpql = jpql;
+        }
+    }
+
+    public String getStatement() {
+        return statement;
+    }
+
+    public String getJpql() {
+        return jpql;
+    }
+
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getSlowExecutions() {
+        return slowExecutions.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Медленный запрос с подставленными значениями параметров — используется для EXPLAIN.
+     */
+    public String getSlowSample() {
+        return slowSample;
+    }
+
+    public String getExplainPlan() {
+        return explainPlan;
+    }
+
+    public void setExplainPlan(String explainPlan) {
+        this.explainPlan = explainPlan;
+    }
+
+    /**
+     * Возвращает перцентиль (0..100) по последним замерам, в наносекундах.
+     */
+    public long percentileNanos(double percentile) {
+        int filled = (int) Math.min(sampleIndex.get(), SAMPLE_SIZE);
+        if (filled == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, filled);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * filled) - 1;
+        return sorted[Math.max(0, Math.min(rank, filled - 1))];
+    }
+}
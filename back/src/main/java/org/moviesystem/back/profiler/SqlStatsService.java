@@ -0,0 +1,120 @@
+package org.moviesystem.back.profiler;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Строит ранжированный отчет по данным {@link SqlProfiler}.
+ *
+ * Для медленных SELECT-запросов план выполнения ({@code EXPLAIN}) запрашивается
+ * лениво, при первом построении отчета, и кешируется до появления нового медленного примера.
+ */
+@ApplicationScoped
+public class SqlStatsService {
+
+    private static final Logger LOG = Logger.getLogger(SqlStatsService.class.getName());
+
+    @PersistenceContext(unitName = "default")
+    private EntityManager entityManager;
+
+    public List<StatementReport> report(String sort, int limit) {
+        List<StatementReport> reports = new ArrayList<>();
+        for (SqlStatementStats stats : SqlProfiler.statements()) {
+            reports.add(new StatementReport(stats));
+        }
+        reports.sort(comparator(sort));
+        List<StatementReport> top = reports.subList(0, Math.min(Math.max(limit, 0), reports.size()));
+        for (StatementReport report : top) {
+            report.explainPlan = explain(report.source);
+        }
+        return new ArrayList<>(top);
+    }
+
+    public void reset() {
+        SqlProfiler.reset();
+    }
+
+    private String explain(SqlStatementStats stats) {
+        if (stats == null || stats.getSlowSample() == null) {
+            return null;
+        }
+        if (stats.getExplainPlan() != null) {
+            return stats.getExplainPlan();
+        }
+        String sample = stats.getSlowSample().trim();
+        // EXPLAIN без ANALYZE, и только для чтения: модифицирующие запросы не трогаем
+        if (!sample.toUpperCase(Locale.ROOT).startsWith("SELECT")) {
+            return null;
+        }
+        try {
+            List<?> lines = entityManager.createNativeQuery("EXPLAIN " + sample).getResultList();
+            StringBuilder plan = new StringBuilder();
+            for (Object line : lines) {
+                plan.append(line).append('\n');
+            }
+            stats.setExplainPlan(plan.toString());
+            return stats.getExplainPlan();
+        } catch (RuntimeException e) {
+            LOG.log(Level.FINE, "Не удалось получить план запроса", e);
+            return null;
+        }
+    }
+
+    private static Comparator<StatementReport> comparator(String sort) {
+        switch (sort == null ? "total" : sort.toLowerCase(Locale.ROOT)) {
+            case "count": return Comparator.comparingLong((StatementReport r) -> r.executions).reversed();
+            case "mean": return Comparator.comparingDouble((StatementReport r) -> r.meanMs).reversed();
+            case "p99": return Comparator.comparingDouble((StatementReport r) -> r.p99Ms).reversed();
+            case "slow": return Comparator.comparingLong((StatementReport r) -> r.slowExecutions).reversed();
+            default: return Comparator.comparingDouble((StatementReport r) -> r.totalMs).reversed();
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    public static class StatementReport {
+        public String statement;
+        public String jpql;
+        public long executions;
+        public long preparations;
+        public double totalMs;
+        public double meanMs;
+        public double p50Ms;
+        public double p99Ms;
+        public double maxMs;
+        public long rows;
+        public long slowExecutions;
+        public String slowSample;
+        public String explainPlan;
+
+        private SqlStatementStats source;
+
+        public StatementReport() {}
+
+        StatementReport(SqlStatementStats stats) {
+            this.source = stats;
+            this.statement = stats.getStatement();
+            this.jpql = stats.getJpql();
+            this.executions = stats.getExecutions();
+            this.preparations = SqlProfiler.preparations(stats.getJpql());
+            this.totalMs = millis(stats.getTotalNanos());
+            this.meanMs = executions > 0 ? totalMs / executions : 0;
+            this.p50Ms = millis(stats.percentileNanos(50));
+            this.p99Ms = millis(stats.percentileNanos(99));
+            this.maxMs = millis(stats.getMaxNanos());
+            this.rows = stats.getRows();
+            this.slowExecutions = stats.getSlowExecutions();
+            this.slowSample = stats.getSlowSample();
+        }
+    }
+}
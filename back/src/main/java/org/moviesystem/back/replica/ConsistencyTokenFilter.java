@@ -0,0 +1,44 @@
+package org.moviesystem.back.replica;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Добавляет к успешному ответу на запись токен согласованности (LSN основного сервера).
+ * Клиент отправляет его в следующих запросах, и чтение идет только с реплик,
+ * которые уже видят эту запись (см. {@link ReplicaRouter}).
+ */
+@Provider
+public class ConsistencyTokenFilter implements ContainerResponseFilter {
+
+    private static final Logger LOG = Logger.getLogger(ConsistencyTokenFilter.class.getName());
+
+    private static final Set<String> READ_METHODS = Set.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS);
+
+    @Inject
+    private ReplicaRouter replicaRouter;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        if (!replicaRouter.isEnabled()
+                || READ_METHODS.contains(requestContext.getMethod())
+                || responseContext.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            return;
+        }
+        try {
+            responseContext.getHeaders().putSingle(ReadConsistency.HEADER, replicaRouter.currentToken());
+        } catch (RuntimeException e) {
+            // Без токена клиент просто может прочитать с отстающей реплики
+            LOG.log(Level.WARNING, "Failed to read primary LSN", e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.moviesystem.back.replica;
+
+import java.util.function.Supplier;
+
+/**
+ * Требование к свежести чтения для текущей задачи обработки запроса.
+ *
+ * Задача REST выполняется не в потоке контейнера (см. RequestExecutor), поэтому
+ * токен из заголовка запроса переносится в поток задачи явно через {@link #bind}.
+ * Вне такой задачи (фоновые задачи, запуск приложения) чтение идет с основного сервера.
+ */
+public final class ReadConsistency {
+
+    /** Заголовок с LSN последней записи клиента: ответ на запись его выдает, чтение - передает обратно. */
+    public static final String HEADER = "X-Consistency-Token";
+
+    private static final ThreadLocal<ReadConsistency> CURRENT = new ThreadLocal<>();
+
+    private final long minLsn;
+
+    private ReadConsistency(long minLsn) {
+        this.minLsn = minLsn;
+    }
+
+    /**
+     * Оборачивает задачу так, что внутри нее разрешено чтение с реплик,
+     * уже применивших запись с LSN из токена (или любых свежих, если токена нет).
+     */
+    public static <T> Supplier<T> bind(String token, Supplier<T> task) {
+        ReadConsistency consistency = new ReadConsistency(parseToken(token));
+        return () -> {
+            ReadConsistency previous = CURRENT.get();
+            CURRENT.set(consistency);
+            try {
+                return task.get();
+            } finally {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        };
+    }
+
+    /**
+     * Требование текущей задачи или null, если читать можно только с основного сервера.
+     */
+    static ReadConsistency current() {
+        return CURRENT.get();
+    }
+
+    long minLsn() {
+        return minLsn;
+    }
+
+    /**
+     * LSN PostgreSQL в виде {@code 16/B374D848}. Испорченный токен требует
+     * недостижимый LSN, то есть чтения с основного сервера.
+     */
+    static long parseToken(String token) {
+        if (token == null || token.isBlank()) {
+            return 0L;
+        }
+        try {
+            return parseLsn(token.trim());
+        } catch (IllegalArgumentException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Каждая половина - от 1 до 8 шестнадцатеричных цифр без знака
+     * (Long.parseLong принял бы и "-1", и лишние разряды младшей половины).
+     */
+    static long parseLsn(String lsn) {
+        int slash = lsn.indexOf('/');
+        if (slash <= 0 || slash > 8 || lsn.length() - slash - 1 > 8 || slash == lsn.length() - 1) {
+            throw new IllegalArgumentException("Неверный LSN: " + lsn);
+        }
+        return (hex(lsn, 0, slash) << 32) | hex(lsn, slash + 1, lsn.length());
+    }
+
+    private static long hex(String lsn, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(lsn.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Неверный LSN: " + lsn);
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+}
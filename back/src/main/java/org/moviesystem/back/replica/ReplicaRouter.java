@@ -0,0 +1,257 @@
+package org.moviesystem.back.replica;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.ContextNotActiveException;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.moviesystem.back.dao.MovieQueryRegistry;
+import org.moviesystem.back.metrics.MetricsRegistry;
+import org.moviesystem.back.tx.TransactionCallbacks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Маршрутизация читающих запросов на реплики PostgreSQL (потоковая репликация).
+ *
+ * Реплики задаются списком JDBC URL в {@code -Dmoviesystem.replicas}; для каждой создается
+ * своя фабрика EntityManager по единице "replica" из persistence.xml (без разделяемого кеша,
+ * чтобы не отдавать данные, устаревшие относительно самой реплики). Без настройки все
+ * запросы, как и раньше, идут на основной сервер.
+ *
+ * На реплику уходит только чтение вне транзакции внутри задачи REST (см. {@link ReadConsistency}).
+ * Реплика подходит, если:
+ * - она доступна и отставание применения WAL не больше {@code moviesystem.replicas.max-lag-ms};
+ * - она уже применила LSN из токена клиента (read-your-writes: токен выдается в ответе на запись).
+ * Иначе, а также при ошибке запроса к реплике, чтение выполняется на основном сервере.
+ *
+ * Для проверки локально достаточно двух экземпляров PostgreSQL: основного и standby,
+ * поднятого через pg_basebackup -R, и {@code -Dmoviesystem.replicas=jdbc:postgresql://localhost:5433/studs}.
+ */
+@ApplicationScoped
+public class ReplicaRouter {
+
+    private static final Logger LOG = Logger.getLogger(ReplicaRouter.class.getName());
+
+    private static final long CHECK_INTERVAL_MS = Long.getLong("moviesystem.replicas.check-interval-ms", 500);
+    private static final long MAX_LAG_MS = Long.getLong("moviesystem.replicas.max-lag-ms", 2000);
+
+    // Отставание считается нулевым, если все полученное уже применено: иначе простой
+    // основного сервера (нет новых транзакций) выглядел бы как растущее отставание
+    private static final String STATE_SQL =
+        "SELECT pg_last_wal_replay_lsn()::text, " +
+        "CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+        "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    @PersistenceContext(unitName = "default")
+    private EntityManager primary;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    @Inject
+    private MovieQueryRegistry queryRegistry;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    @Inject
+    private HttpServletRequest request;
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        String urls = System.getProperty("moviesystem.replicas", "");
+        for (String url : urls.split(",")) {
+            if (!url.isBlank()) {
+                replicas.add(new Replica(url.trim(), createFactory(url.trim())));
+            }
+        }
+        if (!replicas.isEmpty()) {
+            LOG.info(() -> "Read replicas: " + urls);
+        }
+
+        metricsRegistry.counter("moviesystem_replica_router_reads_total", "Читающие запросы по месту выполнения",
+            MetricsRegistry.labels("target", "replica"), replicaReads::sum);
+        metricsRegistry.counter("moviesystem_replica_router_reads_total", "Читающие запросы по месту выполнения",
+            MetricsRegistry.labels("target", "primary"), primaryReads::sum);
+        metricsRegistry.counter("moviesystem_replica_router_fallbacks_total",
+            "Чтения, перенаправленные на основной сервер из-за ошибки реплики", "", fallbacks::sum);
+        for (Replica replica : replicas) {
+            String labels = MetricsRegistry.labels("replica", replica.url);
+            metricsRegistry.gauge("moviesystem_replica_lag_ms", "Отставание реплики по последней проверке",
+                labels, () -> replica.lagMs);
+            metricsRegistry.gauge("moviesystem_replica_up", "Доступность реплики по последней проверке",
+                labels, () -> replica.healthy ? 1 : 0);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (Replica replica : replicas) {
+            replica.factory.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return !replicas.isEmpty();
+    }
+
+    /**
+     * Переносит токен согласованности из текущего HTTP-запроса в задачу, которая
+     * выполнится в другом потоке. Вызывается в потоке запроса.
+     */
+    public <T> Supplier<T> routed(Supplier<T> task) {
+        if (!isEnabled()) {
+            return task;
+        }
+        String token;
+        try {
+            token = request.getHeader(ReadConsistency.HEADER);
+        } catch (ContextNotActiveException | IllegalStateException e) {
+            // Задача не из HTTP-запроса - читаем с основного сервера
+            return task;
+        }
+        return ReadConsistency.bind(token, task);
+    }
+
+    /**
+     * Выполняет чтение на подходящей реплике или на основном сервере.
+     * EntityManager реплики закрывается сразу после работы, поэтому результат
+     * должен быть получен внутри функции вместе с LAZY-связями, которые понадобятся
+     * при сериализации (в DAO - через Queries.withRelations).
+     */
+    public <T> T read(Function<EntityManager, T> work) {
+        ReadConsistency consistency = ReadConsistency.current();
+        if (replicas.isEmpty() || consistency == null || transactionCallbacks.isTransactionActive()) {
+            return work.apply(primary);
+        }
+        Replica replica = choose(consistency.minLsn());
+        if (replica == null) {
+            primaryReads.increment();
+            return work.apply(primary);
+        }
+        EntityManager entityManager = replica.factory.createEntityManager();
+        try {
+            T result = work.apply(entityManager);
+            replicaReads.increment();
+            return result;
+        } catch (PersistenceException e) {
+            LOG.log(Level.WARNING, "Read on replica " + replica.url + " failed, falling back to primary", e);
+            replica.markDown();
+            fallbacks.increment();
+            primaryReads.increment();
+            return work.apply(primary);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Токен для ответа на запись: текущий LSN основного сервера. Запрашивается после
+     * фиксации, поэтому он не меньше LSN зафиксированной транзакции.
+     */
+    public String currentToken() {
+        if (replicas.isEmpty()) {
+            return null;
+        }
+        return (String) primary.createNativeQuery("SELECT pg_current_wal_lsn()::text").getSingleResult();
+    }
+
+    private Replica choose(long minLsn) {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            replica.refresh(false);
+            if (replica.isUsable() && replica.replayLsn < minLsn) {
+                // Состояние могло устареть: перед отказом проверяем реплику заново
+                replica.refresh(true);
+            }
+            if (replica.isUsable() && replica.replayLsn >= minLsn) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private EntityManagerFactory createFactory(String url) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("jakarta.persistence.jdbc.url", url);
+        properties.put("jakarta.persistence.jdbc.user", System.getProperty("moviesystem.replicas.user", ""));
+        properties.put("jakarta.persistence.jdbc.password", System.getProperty("moviesystem.replicas.password", ""));
+        properties.put("eclipselink.connection-pool.default.max",
+            System.getProperty("moviesystem.replicas.pool-size", "10"));
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("replica", properties);
+        queryRegistry.register(factory);
+        return factory;
+    }
+
+    private static final class Replica {
+        final String url;
+        final EntityManagerFactory factory;
+        volatile boolean healthy;
+        volatile long replayLsn;
+        volatile long lagMs;
+        volatile long checkedAt;
+
+        Replica(String url, EntityManagerFactory factory) {
+            this.url = url;
+            this.factory = factory;
+        }
+
+        boolean isUsable() {
+            return healthy && lagMs <= MAX_LAG_MS;
+        }
+
+        void markDown() {
+            healthy = false;
+            checkedAt = System.currentTimeMillis();
+        }
+
+        void refresh(boolean force) {
+            long now = System.currentTimeMillis();
+            if (!force && now - checkedAt < CHECK_INTERVAL_MS) {
+                return;
+            }
+            checkedAt = now;
+            EntityManager entityManager = factory.createEntityManager();
+            try {
+                Object[] row = (Object[]) entityManager.createNativeQuery(STATE_SQL).getSingleResult();
+                if (row[0] == null) {
+                    // Сервер не в режиме восстановления - это не standby, LSN несравнимы
+                    LOG.warning(() -> "Replica " + url + " is not a standby server, skipping");
+                    healthy = false;
+                    return;
+                }
+                replayLsn = ReadConsistency.parseLsn((String) row[0]);
+                lagMs = ((Number) row[1]).longValue();
+                healthy = true;
+            } catch (RuntimeException e) {
+                LOG.log(Level.FINE, "Replica " + url + " is unavailable", e);
+                healthy = false;
+            } finally {
+                entityManager.close();
+            }
+        }
+    }
+}
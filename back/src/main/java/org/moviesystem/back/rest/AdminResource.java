@@ -0,0 +1,54 @@
+package org.moviesystem.back.rest;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.moviesystem.back.profiler.SqlStatsService;
+
+import java.util.List;
+
+/**
+ * Служебные эндпоинты для диагностики.
+ *
+ * - GET /admin/sql-stats?sort=total|count|mean|p99|slow&limit=N - рейтинг SQL-выражений
+ * - DELETE /admin/sql-stats - сброс накопленной статистики
+ */
+@Path("/admin")
+@Produces(MediaType.APPLICATION_JSON)
+public class AdminResource {
+
+    @Inject
+    private SqlStatsService sqlStatsService;
+
+    @GET
+    @Path("/sql-stats")
+    public Response getSqlStats(@QueryParam("sort") @DefaultValue("total") String sort,
+                                @QueryParam("limit") @DefaultValue("50") int limit) {
+        try {
+            List<SqlStatsService.StatementReport> report = sqlStatsService.report(sort, limit);
+            return Response.ok(report).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error building SQL statistics: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    @DELETE
+    @Path("/sql-stats")
+    public Response resetSqlStats() {
+        sqlStatsService.reset();
+        return Response.noContent().build();
+    }
+
+    public static class ErrorResponse {
+        public String error;
+
+        public ErrorResponse() {}
+
+        public ErrorResponse(String error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.moviesystem.back.rest;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.moviesystem.back.analytics.AnalyticsQuery;
+import org.moviesystem.back.analytics.AnalyticsSnapshot;
+
+/**
+ * Аналитические агрегаты по колоночному снимку фильмов в памяти, без запросов к базе.
+ *
+ * - GET /analytics?groupBy=genre|mpaaRating|director|year|length&measure=oscarsCount|totalBoxOffice|length|budget|goldenPalmCount
+ *   &bucket=N&genre=&mpaaRating=&minOscars=&maxOscars=&minLength=&maxLength=
+ *
+ * Снимок включается {@code -Dmoviesystem.analytics.enabled=true}; пока он выключен
+ * или загружается, ответ 503.
+ */
+@Path("/analytics")
+@Produces(MediaType.APPLICATION_JSON)
+public class AnalyticsResource {
+
+    @Inject
+    private AnalyticsSnapshot analyticsSnapshot;
+
+    @GET
+    public Response aggregate(@QueryParam("groupBy") String groupBy,
+                              @QueryParam("measure") String measure,
+                              @QueryParam("bucket") Long bucket,
+                              @QueryParam("genre") String genre,
+                              @QueryParam("mpaaRating") String mpaaRating,
+                              @QueryParam("minOscars") Integer minOscars,
+                              @QueryParam("maxOscars") Integer maxOscars,
+                              @QueryParam("minLength") Long minLength,
+                              @QueryParam("maxLength") Long maxLength) {
+        try {
+            AnalyticsQuery query = AnalyticsQuery.of(groupBy, measure, bucket, genre, mpaaRating,
+                minOscars, maxOscars, minLength, maxLength);
+            return Response.ok(analyticsSnapshot.query(query)).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error computing analytics: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    public static class ErrorResponse {
+        public String error;
+
+        public ErrorResponse() {}
+
+        public ErrorResponse(String error) {
+            this.error = error;
+        }
+    }
+}
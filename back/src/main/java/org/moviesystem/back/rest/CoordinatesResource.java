@@ -4,10 +4,14 @@ import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
-import org.moviesystem.back.dao.CoordinatesDAO;
+import org.moviesystem.back.concurrent.RequestExecutor;
+import org.moviesystem.back.dao.LookupPage;
 import org.moviesystem.back.model.Coordinates;
+import org.moviesystem.back.service.CoordinatesService;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionStage;
 
 @Path("/coordinates")
 @Produces(MediaType.APPLICATION_JSON)
@@ -15,12 +19,19 @@ import java.util.List;
 public class CoordinatesResource {
     
     @Inject
-    private CoordinatesDAO coordinatesDAO;
+    private CoordinatesService coordinatesService;
+
+    @Inject
+    private RequestExecutor requestExecutor;
     
     @GET
-    public Response getAllCoordinates() {
+    public CompletionStage<Response> getAllCoordinates() {
+        return requestExecutor.supply(this::getAllCoordinatesSync);
+    }
+    
+    private Response getAllCoordinatesSync() {
         try {
-            List<Coordinates> coordinates = coordinatesDAO.findAll();
+            List<Coordinates> coordinates = coordinatesService.getAllCoordinates();
             return Response.ok(coordinates).build();
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -29,11 +40,123 @@ public class CoordinatesResource {
         }
     }
     
+    /**
+     * Легкая проекция (id и имя) для выпадающих списков: поиск по префиксу {@code q}
+     * и keyset-постраничность через курсор {@code after} из предыдущего ответа.
+     */
+    @GET
+    @Path("/lookup")
+    public CompletionStage<Response> lookup(@QueryParam("q") String prefix,
+                                            @QueryParam("after") String after,
+                                            @QueryParam("limit") @DefaultValue("20") int limit) {
+        return requestExecutor.supply(() -> lookupSync(prefix, after, limit));
+    }
+    
+    private Response lookupSync(String prefix, String after, int limit) {
+        try {
+            LookupPage page = coordinatesService.lookup(prefix, after, Math.max(1, Math.min(limit, 100)));
+            return Response.ok(page).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse("Invalid lookup cursor: " + e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error retrieving coordinates: " + e.getMessage()))
+                    .build();
+        }
+    }
+    
+    /**
+     * Координаты внутри прямоугольника [minX, maxX] x [minY, maxY], по id.
+     *
+     * По умолчанию запрос идет через GiST-индекс; {@code method=scan} выполняет его без
+     * индекса, чтобы сравнить на реальных данных. Время запроса - в заголовке Server-Timing.
+     */
+    @GET
+    @Path("/within")
+    public CompletionStage<Response> getWithin(@QueryParam("minX") double minX,
+                                               @QueryParam("minY") double minY,
+                                               @QueryParam("maxX") double maxX,
+                                               @QueryParam("maxY") double maxY,
+                                               @QueryParam("limit") @DefaultValue("100") int limit,
+                                               @QueryParam("method") @DefaultValue("index") String method) {
+        return requestExecutor.supply(() -> getWithinSync(minX, minY, maxX, maxY, limit, method));
+    }
+    
+    private Response getWithinSync(double minX, double minY, double maxX, double maxY, int limit, String method) {
+        try {
+            boolean indexed = indexed(method);
+            long started = System.nanoTime();
+            List<Coordinates> coordinates = coordinatesService.getCoordinatesWithin(
+                minX, minY, maxX, maxY, Math.max(1, Math.min(limit, 1000)), indexed);
+            return Response.ok(coordinates)
+                    .header("Server-Timing", serverTiming(method, started))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error retrieving coordinates: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    /**
+     * k ближайших к точке (x, y) координат, от ближних к дальним. {@code method} - как в /within.
+     */
+    @GET
+    @Path("/nearest")
+    public CompletionStage<Response> getNearest(@QueryParam("x") double x,
+                                                @QueryParam("y") double y,
+                                                @QueryParam("k") @DefaultValue("10") int k,
+                                                @QueryParam("method") @DefaultValue("index") String method) {
+        return requestExecutor.supply(() -> getNearestSync(x, y, k, method));
+    }
+    
+    private Response getNearestSync(double x, double y, int k, String method) {
+        try {
+            boolean indexed = indexed(method);
+            long started = System.nanoTime();
+            List<Coordinates> coordinates = coordinatesService.getNearestCoordinates(
+                x, y, Math.max(1, Math.min(k, 1000)), indexed);
+            return Response.ok(coordinates)
+                    .header("Server-Timing", serverTiming(method, started))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error retrieving coordinates: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    static boolean indexed(String method) {
+        return switch (method) {
+            case "index" -> true;
+            case "scan" -> false;
+            default -> throw new IllegalArgumentException("Unknown method: " + method + " (index, scan)");
+        };
+    }
+
+    static String serverTiming(String method, long startedNanos) {
+        return String.format(Locale.ROOT, "%s;dur=%.3f", method, (System.nanoTime() - startedNanos) / 1_000_000.0);
+    }
+    
     @GET
     @Path("/{id}")
-    public Response getCoordinatesById(@PathParam("id") Long id) {
+    public CompletionStage<Response> getCoordinatesById(@PathParam("id") Long id) {
+        return requestExecutor.supply(() -> getCoordinatesByIdSync(id));
+    }
+    
+    private Response getCoordinatesByIdSync(Long id) {
         try {
-            Coordinates coordinates = coordinatesDAO.findById(id);
+            Coordinates coordinates = coordinatesService.getCoordinatesById(id);
             if (coordinates == null) {
                 return Response.status(Response.Status.NOT_FOUND)
                         .entity(new ErrorResponse("Coordinates not found"))
@@ -48,9 +171,13 @@ public class CoordinatesResource {
     }
     
     @POST
-    public Response createCoordinates(Coordinates coordinates) {
+    public CompletionStage<Response> createCoordinates(Coordinates coordinates) {
+        return requestExecutor.supply(() -> createCoordinatesSync(coordinates));
+    }
+    
+    private Response createCoordinatesSync(Coordinates coordinates) {
         try {
-            Coordinates createdCoordinates = coordinatesDAO.create(coordinates);
+            Coordinates createdCoordinates = coordinatesService.createCoordinates(coordinates);
             return Response.status(Response.Status.CREATED)
                     .entity(createdCoordinates)
                     .build();
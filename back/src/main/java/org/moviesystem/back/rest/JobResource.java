@@ -0,0 +1,77 @@
+package org.moviesystem.back.rest;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.moviesystem.back.concurrent.RequestExecutor;
+import org.moviesystem.back.model.Job;
+import org.moviesystem.back.service.JobService;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Состояние фоновых задач массовых операций.
+ *
+ * Задачи создаются специальными операциями {@code /movies} (ответ 202 с Location на задачу),
+ * прогресс также рассылается по WebSocket сообщениями {@code {"type":"job",...}}.
+ */
+@Path("/jobs")
+@Produces(MediaType.APPLICATION_JSON)
+public class JobResource {
+
+    @Inject
+    private JobService jobService;
+
+    @Inject
+    private RequestExecutor requestExecutor;
+
+    @GET
+    public CompletionStage<Response> getRecentJobs(@QueryParam("limit") @DefaultValue("20") int limit) {
+        return requestExecutor.supply(() -> getRecentJobsSync(limit));
+    }
+    
+    private Response getRecentJobsSync(int limit) {
+        try {
+            List<Job> jobs = jobService.getRecentJobs(Math.max(1, Math.min(limit, 100)));
+            return Response.ok(jobs).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error retrieving jobs: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    @GET
+    @Path("/{id}")
+    public CompletionStage<Response> getJob(@PathParam("id") Long id) {
+        return requestExecutor.supply(() -> getJobSync(id));
+    }
+    
+    private Response getJobSync(Long id) {
+        try {
+            Job job = jobService.getJob(id);
+            if (job == null) {
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity(new ErrorResponse("Job not found"))
+                        .build();
+            }
+            return Response.ok(job).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error retrieving job: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    public static class ErrorResponse {
+        public String error;
+
+        public ErrorResponse() {}
+
+        public ErrorResponse(String error) {
+            this.error = error;
+        }
+    }
+}
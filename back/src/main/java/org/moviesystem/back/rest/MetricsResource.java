@@ -0,0 +1,27 @@
+package org.moviesystem.back.rest;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Response;
+import org.moviesystem.back.metrics.MetricsRegistry;
+
+/**
+ * Эндпоинт для Prometheus: GET /metrics отдает все метрики приложения
+ * в текстовом формате exposition 0.0.4.
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    @GET
+    @Produces(PROMETHEUS_TEXT)
+    public Response scrape() {
+        return Response.ok(metricsRegistry.scrape(), PROMETHEUS_TEXT).build();
+    }
+}
@@ -1,18 +1,41 @@
 package org.moviesystem.back.rest;
 
 import jakarta.inject.Inject;
-import jakarta.transaction.Transactional;
+import jakarta.json.JsonObject;
+import jakarta.persistence.OptimisticLockException;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.moviesystem.back.analytics.LeaderboardPage;
+import org.moviesystem.back.analytics.MovieBitmapIndex;
+import org.moviesystem.back.analytics.MovieLeaderboards;
+import org.moviesystem.back.concurrent.RequestExecutor;
+import org.moviesystem.back.concurrent.SlowOperationExecutor;
+import org.moviesystem.back.dao.ArchivePage;
+import org.moviesystem.back.dao.ChangePage;
+import org.moviesystem.back.dao.MovieFacets;
+import org.moviesystem.back.model.Job;
 import org.moviesystem.back.model.Movie;
+import org.moviesystem.back.service.JobService;
 import org.moviesystem.back.service.MovieService;
+import org.moviesystem.back.sse.MovieChangeStream;
 
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * REST API ресурс для работы с фильмами.
@@ -20,20 +43,30 @@ import java.util.HashMap;
  * Этот класс предоставляет HTTP API для всех операций с фильмами:
  * 
  * Основные операции:
- * - GET /movies - получение списка фильмов с фильтрацией и пагинацией
+ * - GET /movies - получение списка фильмов с фильтрацией и пагинацией (facets=true - со счетчиками фасетов)
  * - POST /movies - создание нового фильма
  * - GET /movies/{id} - получение фильма по ID
- * - PUT /movies/{id} - обновление фильма
+ * - PUT /movies/{id} - обновление фильма (условное по If-Match)
+ * - PATCH /movies/{id} - частичное обновление фильма (JSON Merge Patch)
  * - DELETE /movies/{id} - удаление фильма
  * 
  * Специальные операции:
  * - GET /movies/sum-golden-palm - сумма Золотых пальм
- * - POST /movies/redistribute-oscars - перераспределение Оскаров
+ * - POST /movies/redistribute-oscars - перераспределение Оскаров (фоновая задача, см. /jobs)
  * - GET /movies/by-golden-palm/{count} - фильмы с определенным количеством Золотых пальм
  * - GET /movies/genres - список всех жанров
  * - GET /movies/oscars-summary - сводка по Оскарам
+ * - GET /movies/top/{metric}?k= - первые k фильмов по oscarsCount, totalBoxOffice, length или goldenPalmCount
+ * - GET /movies/filter - фильтр по жанру, рейтингу, режиссерам и их атрибутам через битовые индексы
+ * - POST /movies/archive - перенос старых фильмов в архив (фоновая задача)
+ * - GET /movies/archive - поиск по архиву
+ * - GET /movies/changes - изменения после версии since (синхронизация по дельте)
+ * - GET /movies/stream - поток изменений (Server-Sent Events) с продолжением по Last-Event-ID
  * 
  * Все методы возвращают JSON и поддерживают CORS для работы с frontend.
+ * Обработчики возвращают CompletionStage и выполняются через {@link RequestExecutor}:
+ * в сборке для Java 21 - в виртуальных потоках, иначе - в потоке запроса. Сама обработка -
+ * в синхронном методе с суффиксом Sync, метод JAX-RS только передает его исполнителю.
  * 
  * @author Movie Management System Team
  * @version 1.0
@@ -44,12 +77,54 @@ import java.util.HashMap;
 @Consumes(MediaType.APPLICATION_JSON)
 public class MovieResource {
     
+    static final String MERGE_PATCH_JSON = "application/merge-patch+json";
     
     @Inject
     private MovieService movieService;
+
+    @Inject
+    private RequestExecutor requestExecutor;
+
+    @Inject
+    private SlowOperationExecutor slowOperations;
+
+    @Inject
+    private JobService jobService;
+
+    @Inject
+    private MovieChangeStream changeStream;
+
+    @Inject
+    private MovieLeaderboards leaderboards;
+
+    @Inject
+    private MovieBitmapIndex bitmapIndex;
+    
+    /**
+     * Поток изменений фильмов (см. {@link MovieChangeStream}). Соединение остается
+     * открытым, поэтому обработчик не занимает исполнитель запросов: подписка только
+     * регистрирует клиента. Браузер при автоматическом переподключении передает
+     * Last-Event-ID; при новом подключении тот же id можно передать параметром lastEventId.
+     */
+    @GET
+    @Path("/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void stream(@Context SseEventSink sink, @Context Sse sse,
+                       @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId,
+                       @QueryParam("lastEventId") String lastEventIdParam) {
+        changeStream.subscribe(sink, sse, lastEventId != null ? lastEventId : lastEventIdParam);
+    }
     
+    /**
+     * Выборка с фильтрами (поиск, жанр, режиссер, диапазон Оскаров, все через И) читает все
+     * совпадения без постраничности, поэтому выполняется в ограниченном пуле медленных операций.
+     *
+     * С {@code facets=true} ответ дополнительно содержит количество фильмов по жанрам,
+     * рейтингам MPAA и интервалам Оскаров и Золотых пальм для тех же фильтров
+     * (см. {@link MovieFacets}) - одним SQL-запросом вместо запроса на каждый фасет.
+     */
     @GET
-    public Response getAllMovies(
+    public CompletionStage<Response> getAllMovies(
             @QueryParam("page") @DefaultValue("0") int page,
             @QueryParam("size") @DefaultValue("10") int size,
             @QueryParam("search") String search,
@@ -58,57 +133,39 @@ public class MovieResource {
             @QueryParam("minOscars") Integer minOscars,
             @QueryParam("maxOscars") Integer maxOscars,
             @QueryParam("sort") @DefaultValue("id") String sortField,
-            @QueryParam("order") @DefaultValue("asc") String sortOrder) {
+            @QueryParam("order") @DefaultValue("asc") String sortOrder,
+            @QueryParam("facets") @DefaultValue("false") boolean withFacets) {
+        boolean filtered = isPresent(search) || isPresent(genre) || isPresent(director)
+                || minOscars != null || maxOscars != null;
+        Supplier<Response> query = () -> getAllMoviesSync(page, size, search, genre, director,
+                minOscars, maxOscars, sortField, sortOrder, withFacets);
+        return filtered || withFacets ? slow(query) : requestExecutor.supply(query);
+    }
+    
+    private Response getAllMoviesSync(int page, int size, String search, String genre, String director,
+                                      Integer minOscars, Integer maxOscars, String sortField, String sortOrder,
+                                      boolean withFacets) {
         try {
             List<Movie> movies;
             long totalCount;
-            
-            // Комбинированная фильтрация - все фильтры работают вместе
-            if (search != null && !search.trim().isEmpty()) {
-                // Если есть поиск, используем его как основной фильтр
-                movies = movieService.searchMoviesByName(search, sortField, sortOrder);
+        
+            if (isPresent(search) || isPresent(genre) || isPresent(director)
+                    || minOscars != null || maxOscars != null) {
+                // Все фильтры объединяются через И в одном запросе - том же, что и у фасетов
+                movies = movieService.getFilteredMovies(search, genre, director, minOscars, maxOscars,
+                        sortField, sortOrder);
                 totalCount = movies.size();
-                
-                // Дополнительно применяем другие фильтры
-                if (genre != null && !genre.trim().isEmpty()) {
-                    movies = movies.stream()
-                            .filter(movie -> movie.getGenre().toString().equals(genre))
-                            .collect(Collectors.toList());
-                }
-                if (director != null && !director.trim().isEmpty()) {
-                    movies = movies.stream()
-                            .filter(movie -> movie.getDirector() != null && 
-                                    movie.getDirector().getName().toLowerCase().contains(director.toLowerCase()))
-                            .collect(Collectors.toList());
-                }
-                if (minOscars != null || maxOscars != null) {
-                    int min = minOscars != null ? minOscars : 0;
-                    int max = maxOscars != null ? maxOscars : Integer.MAX_VALUE;
-                    movies = movies.stream()
-                            .filter(movie -> movie.getOscarsCount() >= min && movie.getOscarsCount() <= max)
-                            .collect(Collectors.toList());
-                }
             } else {
-                // Если нет поиска, используем отдельные фильтры
-                if (genre != null && !genre.trim().isEmpty()) {
-                    movies = movieService.getMoviesByGenre(genre, sortField, sortOrder);
-                    totalCount = movies.size();
-                } else if (director != null && !director.trim().isEmpty()) {
-                    movies = movieService.getMoviesByDirector(director, sortField, sortOrder);
-                    totalCount = movies.size();
-                } else if (minOscars != null || maxOscars != null) {
-                    int min = minOscars != null ? minOscars : 0;
-                    int max = maxOscars != null ? maxOscars : Integer.MAX_VALUE;
-                    movies = movieService.getMoviesByOscarsRange(min, max, sortField, sortOrder);
-                    totalCount = movies.size();
-                } else {
-                    movies = movieService.getMovies(page, size, sortField, sortOrder);
-                    totalCount = movieService.getMoviesCount();
-                }
+                movies = movieService.getMovies(page, size, sortField, sortOrder);
+                totalCount = movieService.getMoviesCount();
+            }
+        
+            MovieResponse response = new MovieResponse(movies, totalCount, page, size);
+            if (withFacets) {
+                response.facets = movieService.getMovieFacets(search, genre, director, minOscars, maxOscars);
             }
-            
             return Response.ok()
-                    .entity(new MovieResponse(movies, totalCount, page, size))
+                    .entity(response)
                     .build();
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -119,11 +176,15 @@ public class MovieResource {
     
     @GET
     @Path("/{id}")
-    public Response getMovieById(@PathParam("id") Long id) {
+    public CompletionStage<Response> getMovieById(@PathParam("id") Long id) {
+        return requestExecutor.supply(() -> getMovieByIdSync(id));
+    }
+    
+    private Response getMovieByIdSync(Long id) {
         try {
             Optional<Movie> movie = movieService.getMovieById(id);
             if (movie.isPresent()) {
-                return Response.ok(movie.get()).build();
+                return Response.ok(movie.get()).tag(etag(movie.get())).build();
             } else {
                 return Response.status(Response.Status.NOT_FOUND)
                         .entity(new ErrorResponse("Movie not found"))
@@ -137,8 +198,11 @@ public class MovieResource {
     }
     
     @POST
-    @Transactional
-    public Response createMovie(Movie movie) {
+    public CompletionStage<Response> createMovie(Movie movie) {
+        return requestExecutor.supply(() -> createMovieSync(movie));
+    }
+    
+    private Response createMovieSync(Movie movie) {
         try {
             Movie createdMovie = movieService.createMovie(movie);
             return Response.status(Response.Status.CREATED)
@@ -151,15 +215,56 @@ public class MovieResource {
         }
     }
     
+    /**
+     * Полное обновление. С If-Match (ETag из GET) обновление выполняется, только если
+     * фильм не изменился с момента чтения, иначе - 412 Precondition Failed.
+     */
     @PUT
     @Path("/{id}")
-    @Transactional
-    public Response updateMovie(@PathParam("id") Long id, Movie movie) {
+    public CompletionStage<Response> updateMovie(@PathParam("id") Long id,
+                                                 @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                                                 Movie movie) {
+        return requestExecutor.supply(() -> updateMovieSync(id, ifMatch, movie));
+    }
+    
+    private Response updateMovieSync(Long id, String ifMatch, Movie movie) {
         try {
             movie.setId(id);
-            Movie updatedMovie = movieService.updateMovie(movie);
-            return Response.ok(updatedMovie).build();
+            Movie updatedMovie = movieService.updateMovie(movie, expectedVersion(ifMatch));
+            return Response.ok(updatedMovie).tag(etag(updatedMovie)).build();
+        } catch (Exception e) {
+            if (isConflict(e)) {
+                return preconditionFailed();
+            }
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse("Error updating movie: " + e.getMessage()))
+                    .build();
+        }
+    }
+    
+    /**
+     * Частичное обновление по JSON Merge Patch (RFC 7396): тело - объект только
+     * с изменяемыми полями, {@code null} очищает необязательное поле, связанные
+     * объекты задаются ссылкой {@code {"id": n}}. If-Match работает так же, как в PUT.
+     * Фильм не перечитывается: ответ 204 с новым ETag.
+     */
+    @PATCH
+    @Path("/{id}")
+    @Consumes({MERGE_PATCH_JSON, MediaType.APPLICATION_JSON})
+    public CompletionStage<Response> patchMovie(@PathParam("id") Long id,
+                                                @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                                                JsonObject patch) {
+        return requestExecutor.supply(() -> patchMovieSync(id, ifMatch, patch));
+    }
+    
+    private Response patchMovieSync(Long id, String ifMatch, JsonObject patch) {
+        try {
+            Long version = movieService.patchMovie(id, patch, expectedVersion(ifMatch));
+            return Response.noContent().tag(etag(version)).build();
         } catch (Exception e) {
+            if (isConflict(e)) {
+                return preconditionFailed();
+            }
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity(new ErrorResponse("Error updating movie: " + e.getMessage()))
                     .build();
@@ -168,8 +273,11 @@ public class MovieResource {
     
     @DELETE
     @Path("/{id}")
-    @Transactional
-    public Response deleteMovie(@PathParam("id") Long id) {
+    public CompletionStage<Response> deleteMovie(@PathParam("id") Long id) {
+        return requestExecutor.supply(() -> deleteMovieSync(id));
+    }
+    
+    private Response deleteMovieSync(Long id) {
         try {
             movieService.deleteMovie(id);
             return Response.noContent().build();
@@ -183,13 +291,15 @@ public class MovieResource {
     // Специальные операции
     @DELETE
     @Path("/by-golden-palm/{goldenPalmCount}")
-    @Transactional
-    public Response deleteMoviesByGoldenPalmCount(@PathParam("goldenPalmCount") Long goldenPalmCount) {
+    public CompletionStage<Response> deleteMoviesByGoldenPalmCount(@PathParam("goldenPalmCount") Long goldenPalmCount) {
+        return requestExecutor.supply(() -> deleteMoviesByGoldenPalmCountSync(goldenPalmCount));
+    }
+    
+    private Response deleteMoviesByGoldenPalmCountSync(Long goldenPalmCount) {
         try {
-            movieService.deleteMoviesByGoldenPalmCount(goldenPalmCount);
-            return Response.noContent().build();
+            return accepted(jobService.deleteMoviesByGoldenPalmCount(goldenPalmCount));
         } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+            return Response.status(Response.Status.BAD_REQUEST)
                     .entity(new ErrorResponse("Error deleting movies: " + e.getMessage()))
                     .build();
         }
@@ -197,7 +307,11 @@ public class MovieResource {
     
     @GET
     @Path("/sum-golden-palm")
-    public Response getSumGoldenPalmCount() {
+    public CompletionStage<Response> getSumGoldenPalmCount() {
+        return requestExecutor.supply(this::getSumGoldenPalmCountSync);
+    }
+    
+    private Response getSumGoldenPalmCountSync() {
         try {
             Long sum = movieService.getSumGoldenPalmCount();
             return Response.ok(new SumResponse(sum)).build();
@@ -210,7 +324,11 @@ public class MovieResource {
     
     @GET
     @Path("/by-golden-palm-greater/{goldenPalmCount}")
-    public Response getMoviesByGoldenPalmCountGreaterThan(@PathParam("goldenPalmCount") Long goldenPalmCount) {
+    public CompletionStage<Response> getMoviesByGoldenPalmCountGreaterThan(@PathParam("goldenPalmCount") Long goldenPalmCount) {
+        return requestExecutor.supply(() -> getMoviesByGoldenPalmCountGreaterThanSync(goldenPalmCount));
+    }
+    
+    private Response getMoviesByGoldenPalmCountGreaterThanSync(Long goldenPalmCount) {
         try {
             List<Movie> movies = movieService.getMoviesByGoldenPalmCountGreaterThan(goldenPalmCount);
             return Response.ok(movies).build();
@@ -223,7 +341,11 @@ public class MovieResource {
     
     @GET
     @Path("/by-golden-palm/{goldenPalmCount}")
-    public Response getMoviesByGoldenPalmCount(@PathParam("goldenPalmCount") Long goldenPalmCount) {
+    public CompletionStage<Response> getMoviesByGoldenPalmCount(@PathParam("goldenPalmCount") Long goldenPalmCount) {
+        return requestExecutor.supply(() -> getMoviesByGoldenPalmCountSync(goldenPalmCount));
+    }
+    
+    private Response getMoviesByGoldenPalmCountSync(Long goldenPalmCount) {
         try {
             List<Movie> movies = movieService.getMoviesByGoldenPalmCount(goldenPalmCount);
             return Response.ok(movies).build();
@@ -236,24 +358,28 @@ public class MovieResource {
     
     @GET
     @Path("/oscars-summary")
-    public Response getOscarsSummary() {
+    public CompletionStage<Response> getOscarsSummary() {
+        return requestExecutor.supply(this::getOscarsSummarySync);
+    }
+    
+    private Response getOscarsSummarySync() {
         try {
-            List<Movie> allMovies = movieService.getAllMovies();
+            List<Movie> allMovies = movieService.getMoviesForOscarsSummary();
             Map<String, Integer> genreOscars = new HashMap<>();
             int totalOscars = 0;
-            
+        
             for (Movie movie : allMovies) {
                 String genre = movie.getGenre().toString();
                 int oscars = movie.getOscarsCount();
                 genreOscars.put(genre, genreOscars.getOrDefault(genre, 0) + oscars);
                 totalOscars += oscars;
             }
-            
+        
             Map<String, Object> summary = new HashMap<>();
             summary.put("genreOscars", genreOscars);
             summary.put("totalOscars", totalOscars);
             summary.put("totalMovies", allMovies.size());
-            
+        
             return Response.ok(summary).build();
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -262,9 +388,111 @@ public class MovieResource {
         }
     }
     
+    /**
+     * Рейтинг из памяти (см. {@link MovieLeaderboards}); 503, пока он выключен или загружается при старте.
+     */
+    @GET
+    @Path("/top/{metric}")
+    public CompletionStage<Response> getTop(@PathParam("metric") String metric,
+                                            @QueryParam("k") @DefaultValue("10") int k) {
+        return requestExecutor.supply(() -> getTopSync(metric, k));
+    }
+    
+    private Response getTopSync(String metric, int k) {
+        try {
+            LeaderboardPage page = leaderboards.top(metric, k);
+            return Response.ok(page).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error retrieving top movies: " + e.getMessage()))
+                    .build();
+        }
+    }
+    
+    /**
+     * Фильтр по битовым индексам (см. {@link MovieBitmapIndex}): значения одного параметра
+     * через запятую объединяются, разные параметры пересекаются. Из базы читается только
+     * страница фильмов, порядок - по id. 503, пока индексы выключены или загружаются.
+     */
+    @GET
+    @Path("/filter")
+    public CompletionStage<Response> filterMovies(@QueryParam("genre") String genre,
+                                                  @QueryParam("mpaaRating") String mpaaRating,
+                                                  @QueryParam("director") String director,
+                                                  @QueryParam("directorEyeColor") String directorEyeColor,
+                                                  @QueryParam("directorHairColor") String directorHairColor,
+                                                  @QueryParam("directorNationality") String directorNationality,
+                                                  @QueryParam("page") @DefaultValue("0") int page,
+                                                  @QueryParam("size") @DefaultValue("10") int size,
+                                                  @QueryParam("order") @DefaultValue("asc") String sortOrder) {
+        return requestExecutor.supply(() -> filterMoviesSync(genre, mpaaRating, director, directorEyeColor, directorHairColor, directorNationality, page, size, sortOrder));
+    }
+    
+    private Response filterMoviesSync(String genre,
+                                      String mpaaRating,
+                                      String director,
+                                      String directorEyeColor,
+                                      String directorHairColor,
+                                      String directorNationality,
+                                      int page,
+                                      int size,
+                                      String sortOrder) {
+        try {
+            Map<String, String> filters = new HashMap<>();
+            filters.put("genre", genre);
+            filters.put("mpaaRating", mpaaRating);
+            filters.put("directorEyeColor", directorEyeColor);
+            filters.put("directorHairColor", directorHairColor);
+            filters.put("directorNationality", directorNationality);
+            List<Long> directorIds = new ArrayList<>();
+            if (isPresent(director)) {
+                for (String id : director.split(",")) {
+                    if (!id.isBlank()) {
+                        directorIds.add(Long.parseLong(id.trim()));
+                    }
+                }
+            }
+            int pageSize = Math.max(1, Math.min(size, 100));
+            MovieBitmapIndex.Result result = bitmapIndex.filter(filters, directorIds,
+                (long) Math.max(0, page) * pageSize, pageSize, "desc".equalsIgnoreCase(sortOrder));
+            List<Long> ids = new ArrayList<>(result.ids.length);
+            for (long id : result.ids) {
+                ids.add(id);
+            }
+            return Response.ok()
+                    .entity(new MovieResponse(movieService.getMoviesByIds(ids), result.total, page, pageSize))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            // В том числе NumberFormatException для id режиссера
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error filtering movies: " + e.getMessage()))
+                    .build();
+        }
+    }
+    
     @GET
     @Path("/genres")
-    public Response getAllGenres() {
+    public CompletionStage<Response> getAllGenres() {
+        return requestExecutor.supply(this::getAllGenresSync);
+    }
+    
+    private Response getAllGenresSync() {
         try {
             List<String> genres = movieService.getAllGenres();
             return Response.ok(genres).build();
@@ -277,12 +505,14 @@ public class MovieResource {
     
     @POST
     @Path("/redistribute-oscars")
-    @Transactional
-    public Response redistributeOscars(@QueryParam("fromGenre") String fromGenre, 
-                                     @QueryParam("toGenre") String toGenre) {
+    public CompletionStage<Response> redistributeOscars(@QueryParam("fromGenre") String fromGenre, 
+                                                      @QueryParam("toGenre") String toGenre) {
+        return requestExecutor.supply(() -> redistributeOscarsSync(fromGenre, toGenre));
+    }
+    
+    private Response redistributeOscarsSync(String fromGenre, String toGenre) {
         try {
-            movieService.redistributeOscars(fromGenre, toGenre);
-            return Response.ok(new MessageResponse("Oscars redistributed successfully")).build();
+            return accepted(jobService.redistributeOscars(fromGenre, toGenre));
         } catch (Exception e) {
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity(new ErrorResponse("Error redistributing oscars: " + e.getMessage()))
@@ -292,12 +522,14 @@ public class MovieResource {
     
     @POST
     @Path("/add-oscars-to-long-movies")
-    @Transactional
-    public Response addOscarsToLongMovies(@QueryParam("minLength") Long minLength,
-                                        @QueryParam("oscarsToAdd") int oscarsToAdd) {
+    public CompletionStage<Response> addOscarsToLongMovies(@QueryParam("minLength") Long minLength,
+                                                         @QueryParam("oscarsToAdd") int oscarsToAdd) {
+        return requestExecutor.supply(() -> addOscarsToLongMoviesSync(minLength, oscarsToAdd));
+    }
+    
+    private Response addOscarsToLongMoviesSync(Long minLength, int oscarsToAdd) {
         try {
-            movieService.addOscarsToLongMovies(minLength, oscarsToAdd);
-            return Response.ok(new MessageResponse("Oscars added successfully")).build();
+            return accepted(jobService.addOscarsToLongMovies(minLength, oscarsToAdd));
         } catch (Exception e) {
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity(new ErrorResponse("Error adding oscars: " + e.getMessage()))
@@ -305,12 +537,177 @@ public class MovieResource {
         }
     }
     
+    /**
+     * Переносит фильмы старше olderThanDays дней в холодный архив (фоновая задача, см. /jobs).
+     */
+    @POST
+    @Path("/archive")
+    public CompletionStage<Response> archiveMovies(@QueryParam("olderThanDays") Integer olderThanDays) {
+        return requestExecutor.supply(() -> archiveMoviesSync(olderThanDays));
+    }
+    
+    private Response archiveMoviesSync(Integer olderThanDays) {
+        try {
+            return accepted(jobService.archiveMovies(olderThanDays));
+        } catch (Exception e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse("Error archiving movies: " + e.getMessage()))
+                    .build();
+        }
+    }
+    
+    /**
+     * Поиск в архиве по подстроке названия; следующая страница - по курсору {@code after}.
+     */
+    @GET
+    @Path("/archive")
+    public CompletionStage<Response> searchArchive(@QueryParam("q") String name,
+                                                   @QueryParam("after") String after,
+                                                   @QueryParam("limit") @DefaultValue("20") int limit) {
+        return requestExecutor.supply(() -> searchArchiveSync(name, after, limit));
+    }
+    
+    private Response searchArchiveSync(String name, String after, int limit) {
+        try {
+            ArchivePage page = movieService.searchArchive(name, after, Math.max(1, Math.min(limit, 100)));
+            return Response.ok(page).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse("Invalid archive cursor: " + e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error searching archive: " + e.getMessage()))
+                    .build();
+        }
+    }
+    
+    /**
+     * Вставки, изменения и удаления фильмов после версии since, по возрастанию версии.
+     * Клиент хранит nextSince из ответа и передает его в следующий запрос; since=0 -
+     * первоначальная загрузка. 410 означает, что история уже удалена и каталог нужно
+     * перечитать с since=0.
+     */
+    @GET
+    @Path("/changes")
+    public CompletionStage<Response> getChanges(@QueryParam("since") @DefaultValue("0") long since,
+                                                @QueryParam("limit") @DefaultValue("500") int limit) {
+        return requestExecutor.supply(() -> getChangesSync(since, limit));
+    }
+    
+    private Response getChangesSync(long since, int limit) {
+        try {
+            ChangePage page = movieService.getChanges(Math.max(0, since), Math.max(1, Math.min(limit, 1000)));
+            return Response.ok(page).build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.GONE)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error reading changes: " + e.getMessage()))
+                    .build();
+        }
+    }
+    
+    private static EntityTag etag(Movie movie) {
+        return etag(movie.getVersion());
+    }
+    
+    private static EntityTag etag(Long version) {
+        return new EntityTag(String.valueOf(version));
+    }
+    
+    /**
+     * Версия из If-Match: {@code "3"} (или слабый {@code W/"3"}). Без заголовка
+     * или с {@code *} проверка по заголовку не выполняется.
+     */
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        try {
+            return Long.parseLong(tag.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            // Чужой ETag не совпадет ни с одной версией
+            return -1L;
+        }
+    }
+    
+    /**
+     * Конфликт версий: проверка в сервисе или условный UPDATE при фиксации
+     * (тогда исключение приходит обернутым в RollbackException).
+     */
+    private static boolean isConflict(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockException
+                    || t instanceof org.eclipse.persistence.exceptions.OptimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static Response preconditionFailed() {
+        return Response.status(Response.Status.PRECONDITION_FAILED)
+                .entity(new ErrorResponse("Movie was modified by another user"))
+                .build();
+    }
+    
+    /**
+     * Ответ на запуск массовой операции: 202 с Location на фоновую задачу.
+     */
+    private Response accepted(Job job) {
+        return Response.accepted(job)
+                .location(URI.create("jobs/" + job.getId()))
+                .build();
+    }
+    
+    /**
+     * Выполняет медленное чтение в {@link SlowOperationExecutor}.
+     *
+     * Переполненная очередь и истекший таймаут дают 503 с Retry-After:
+     * чтение безопасно повторить.
+     */
+    private CompletionStage<Response> slow(Supplier<Response> task) {
+        return slowOperations.supply(task).exceptionally(error -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (cause instanceof RejectedExecutionException) {
+                return serviceUnavailable("Server is busy, retry later");
+            }
+            if (cause instanceof TimeoutException) {
+                return serviceUnavailable("Request timed out, retry later");
+            }
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error executing operation: " + cause.getMessage()))
+                    .build();
+        });
+    }
+
+    private Response serviceUnavailable(String message) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, slowOperations.getRetryAfterSeconds())
+                .entity(new ErrorResponse(message))
+                .build();
+    }
+
+    private static boolean isPresent(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+    
     // Вспомогательные классы для ответов
     public static class MovieResponse {
         public List<Movie> movies;
         public long totalCount;
         public int page;
         public int size;
+        // Только при facets=true
+        public MovieFacets facets;
         
         public MovieResponse() {}
         
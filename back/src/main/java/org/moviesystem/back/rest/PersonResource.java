@@ -4,10 +4,14 @@ import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
-import org.moviesystem.back.dao.PersonDAO;
+import org.moviesystem.back.concurrent.RequestExecutor;
+import org.moviesystem.back.dao.LookupPage;
 import org.moviesystem.back.model.Person;
+import org.moviesystem.back.service.PersonService;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 @Path("/persons")
 @Produces(MediaType.APPLICATION_JSON)
@@ -15,12 +19,19 @@ import java.util.List;
 public class PersonResource {
     
     @Inject
-    private PersonDAO personDAO;
+    private PersonService personService;
+
+    @Inject
+    private RequestExecutor requestExecutor;
     
     @GET
-    public Response getAllPersons() {
+    public CompletionStage<Response> getAllPersons() {
+        return requestExecutor.supply(this::getAllPersonsSync);
+    }
+    
+    private Response getAllPersonsSync() {
         try {
-            List<Person> persons = personDAO.findAll();
+            List<Person> persons = personService.getAllPersons();
             return Response.ok(persons).build();
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -29,11 +40,135 @@ public class PersonResource {
         }
     }
     
+    /**
+     * Легкая проекция (id и имя) для выпадающих списков: поиск по префиксу {@code q}
+     * и keyset-постраничность через курсор {@code after} из предыдущего ответа.
+     */
+    @GET
+    @Path("/lookup")
+    public CompletionStage<Response> lookup(@QueryParam("q") String prefix,
+                                            @QueryParam("after") String after,
+                                            @QueryParam("limit") @DefaultValue("20") int limit) {
+        return requestExecutor.supply(() -> lookupSync(prefix, after, limit));
+    }
+    
+    private Response lookupSync(String prefix, String after, int limit) {
+        try {
+            LookupPage page = personService.lookup(prefix, after, Math.max(1, Math.min(limit, 100)));
+            return Response.ok(page).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse("Invalid lookup cursor: " + e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error retrieving persons: " + e.getMessage()))
+                    .build();
+        }
+    }
+    
+    /**
+     * k людей, ближайших к точке (x, y, z), от ближнего к дальнему.
+     *
+     * По умолчанию поиск идет по KD-дереву в памяти; {@code method=scan} перебирает все
+     * местоположения, чтобы сравнить. Время поиска (без чтения людей из базы) - в заголовке
+     * Server-Timing.
+     */
+    @GET
+    @Path("/nearest")
+    public CompletionStage<Response> getNearest(@QueryParam("x") double x,
+                                                @QueryParam("y") double y,
+                                                @QueryParam("z") double z,
+                                                @QueryParam("k") @DefaultValue("10") int k,
+                                                @QueryParam("method") @DefaultValue("index") String method) {
+        return requestExecutor.supply(() -> getNearestSync(x, y, z, k, method));
+    }
+    
+    private Response getNearestSync(double x, double y, double z, int k, String method) {
+        try {
+            boolean indexed = CoordinatesResource.indexed(method);
+            long started = System.nanoTime();
+            long[] ids = personService.getNearestPersonIds(x, y, z, Math.max(1, Math.min(k, 1000)), indexed);
+            String timing = CoordinatesResource.serverTiming(method, started);
+            return Response.ok(personService.getPersonsByIds(ids))
+                    .header("Server-Timing", timing)
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error retrieving persons: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    /**
+     * Люди, местоположение которых внутри параллелепипеда [minX, maxX] x [minY, maxY] x [minZ, maxZ],
+     * по id: не больше {@code limit}, общее число - в заголовке X-Total-Count. {@code method} -
+     * как в /nearest.
+     */
+    @GET
+    @Path("/within")
+    public CompletionStage<Response> getWithin(@QueryParam("minX") double minX,
+                                               @QueryParam("minY") double minY,
+                                               @QueryParam("minZ") double minZ,
+                                               @QueryParam("maxX") double maxX,
+                                               @QueryParam("maxY") double maxY,
+                                               @QueryParam("maxZ") double maxZ,
+                                               @QueryParam("limit") @DefaultValue("100") int limit,
+                                               @QueryParam("method") @DefaultValue("index") String method) {
+        return requestExecutor.supply(() -> getWithinSync(minX, minY, minZ, maxX, maxY, maxZ, limit, method));
+    }
+    
+    private Response getWithinSync(double minX,
+                                   double minY,
+                                   double minZ,
+                                   double maxX,
+                                   double maxY,
+                                   double maxZ,
+                                   int limit,
+                                   String method) {
+        try {
+            boolean indexed = CoordinatesResource.indexed(method);
+            long started = System.nanoTime();
+            long[] ids = personService.getPersonIdsWithin(
+                new double[] {minX, minY, minZ}, new double[] {maxX, maxY, maxZ}, indexed);
+            String timing = CoordinatesResource.serverTiming(method, started);
+            long[] page = Arrays.copyOf(ids, Math.min(ids.length, Math.max(1, Math.min(limit, 1000))));
+            return Response.ok(personService.getPersonsByIds(page))
+                    .header("Server-Timing", timing)
+                    .header("X-Total-Count", ids.length)
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error retrieving persons: " + e.getMessage()))
+                    .build();
+        }
+    }
+    
     @GET
     @Path("/{id}")
-    public Response getPersonById(@PathParam("id") Long id) {
+    public CompletionStage<Response> getPersonById(@PathParam("id") Long id) {
+        return requestExecutor.supply(() -> getPersonByIdSync(id));
+    }
+    
+    private Response getPersonByIdSync(Long id) {
         try {
-            Person person = personDAO.findById(id);
+            Person person = personService.getPersonById(id);
             if (person == null) {
                 return Response.status(Response.Status.NOT_FOUND)
                         .entity(new ErrorResponse("Person not found"))
@@ -48,9 +183,13 @@ public class PersonResource {
     }
     
     @POST
-    public Response createPerson(Person person) {
+    public CompletionStage<Response> createPerson(Person person) {
+        return requestExecutor.supply(() -> createPersonSync(person));
+    }
+    
+    private Response createPersonSync(Person person) {
         try {
-            Person createdPerson = personDAO.create(person);
+            Person createdPerson = personService.createPerson(person);
             return Response.status(Response.Status.CREATED)
                     .entity(createdPerson)
                     .build();
@@ -0,0 +1,89 @@
+package org.moviesystem.back.rest;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.moviesystem.back.analytics.MovieSketches;
+
+/**
+ * Приближенная статистика фильмов по скетчам в памяти, без запросов к базе.
+ *
+ * - GET /stats?q=0.5,0.9,0.99 - число различных режиссеров, квантили бюджета,
+ *   кассовых сборов и длительности, количество фильмов по жанрам
+ * - GET /stats/directors/{id} - оценка числа фильмов режиссера
+ *
+ * Каждая оценка сопровождается границей погрешности. Статистика включается
+ * {@code -Dmoviesystem.stats.enabled=true}; пока она выключена или строится, ответ 503.
+ */
+@Path("/stats")
+@Produces(MediaType.APPLICATION_JSON)
+public class StatsResource {
+
+    @Inject
+    private MovieSketches movieSketches;
+
+    @GET
+    public Response getStats(@QueryParam("q") @DefaultValue("0.5,0.9,0.99") String q) {
+        try {
+            return Response.ok(movieSketches.report(ranks(q))).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error computing statistics: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    @GET
+    @Path("/directors/{id}")
+    public Response getDirectorMovies(@PathParam("id") long directorId) {
+        try {
+            return Response.ok(movieSketches.directorMovies(directorId)).build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Error computing statistics: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    private static double[] ranks(String q) {
+        String[] parts = q.split(",");
+        if (parts.length > 20) {
+            throw new IllegalArgumentException("At most 20 quantiles");
+        }
+        double[] ranks = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                ranks[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid quantile: " + parts[i]);
+            }
+            if (!(ranks[i] >= 0 && ranks[i] <= 1)) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1: " + parts[i]);
+            }
+        }
+        return ranks;
+    }
+
+    public static class ErrorResponse {
+        public String error;
+
+        public ErrorResponse() {}
+
+        public ErrorResponse(String error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.moviesystem.back.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.moviesystem.back.cache.CoordinatesKey;
+import org.moviesystem.back.cache.LookupCache;
+import org.moviesystem.back.dao.CoordinatesDAO;
+import org.moviesystem.back.dao.LookupPage;
+import org.moviesystem.back.metrics.MetricsRegistry;
+import org.moviesystem.back.model.Coordinates;
+import org.moviesystem.back.tx.TransactionCallbacks;
+
+import java.util.List;
+
+/**
+ * Сервисный слой для координат. Задает границы транзакций для {@link CoordinatesDAO}
+ * и держит кеш (x, y) -> id для поиска-или-создания координат при создании фильма.
+ */
+@ApplicationScoped
+@Transactional(Transactional.TxType.SUPPORTS)
+public class CoordinatesService {
+
+    @Inject
+    private CoordinatesDAO coordinatesDAO;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private final LookupCache<CoordinatesKey> lookupCache =
+        new LookupCache<>(Integer.getInteger("moviesystem.cache.coordinates.max-size", 100_000));
+
+    @PostConstruct
+    void registerMetrics() {
+        String labels = MetricsRegistry.labels("cache", "coordinates");
+        metricsRegistry.gauge("moviesystem_lookup_cache_size", "Записи в кешах поиска по естественному ключу",
+            labels, lookupCache::size);
+        metricsRegistry.counter("moviesystem_lookup_cache_hits_total", "Попадания в кеши поиска по естественному ключу",
+            labels, lookupCache::hits);
+        metricsRegistry.counter("moviesystem_lookup_cache_misses_total", "Промахи кешей поиска по естественному ключу",
+            labels, lookupCache::misses);
+    }
+
+    public List<Coordinates> getAllCoordinates() {
+        return coordinatesDAO.findAll();
+    }
+
+    public LookupPage lookup(String prefix, String after, int limit) {
+        return coordinatesDAO.lookup(prefix, after, limit);
+    }
+
+    public Coordinates getCoordinatesById(Long id) {
+        return coordinatesDAO.findById(id);
+    }
+
+    public List<Coordinates> getCoordinatesWithin(double minX, double minY, double maxX, double maxY,
+                                                  int limit, boolean indexed) {
+        if (minX > maxX || minY > maxY) {
+            throw new IllegalArgumentException("min must not exceed max");
+        }
+        return coordinatesDAO.findWithin(minX, minY, maxX, maxY, limit, indexed);
+    }
+
+    public List<Coordinates> getNearestCoordinates(double x, double y, int k, boolean indexed) {
+        return coordinatesDAO.findNearest(x, y, k, indexed);
+    }
+
+    /**
+     * Пара (x, y) уникальна, поэтому повторное создание возвращает существующие координаты.
+     */
+    @Transactional
+    public Coordinates createCoordinates(Coordinates coordinates) {
+        return findOrCreate(coordinates);
+    }
+
+    /**
+     * Возвращает существующие координаты с такими же (x, y) или создает новые.
+     *
+     * В типичном случае это одно чтение из ConcurrentHashMap и поиск по id в
+     * разделяемом кеше EclipseLink. При промахе выполняется upsert по уникальному
+     * индексу, а найденный id попадает в кеш только после фиксации транзакции.
+     */
+    @Transactional
+    public Coordinates findOrCreate(Coordinates coordinates) {
+        CoordinatesKey key = CoordinatesKey.of(coordinates.getX(), coordinates.getY());
+        Long cachedId = lookupCache.get(key);
+        if (cachedId != null) {
+            Coordinates cached = coordinatesDAO.findById(cachedId);
+            if (cached != null) {
+                return cached;
+            }
+            // Строку удалили в обход приложения - забываем устаревший id
+            lookupCache.evict(key);
+        }
+        Long id = coordinatesDAO.upsert(coordinates.getX(), coordinates.getY());
+        transactionCallbacks.afterCommit(() -> lookupCache.put(key, id));
+        return coordinatesDAO.findById(id);
+    }
+}
@@ -0,0 +1,148 @@
+package org.moviesystem.back.service;
+
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.moviesystem.back.dao.JobDAO;
+import org.moviesystem.back.dao.MovieDAO;
+import org.moviesystem.back.model.Job;
+import org.moviesystem.back.model.JobType;
+import org.moviesystem.back.model.MovieGenre;
+import org.moviesystem.back.tx.TransactionCallbacks;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Фоновые задачи для массовых операций над фильмами.
+ *
+ * Запрос только создает задачу и сразу получает ее id, а сама работа идет в управляемом
+ * пуле контейнера порциями по {@code moviesystem.jobs.chunk-size} фильмов
+ * (см. {@link JobStepService}). Прогресс хранится в таблице jobs и рассылается по WebSocket.
+ * Незавершенные задачи продолжаются после перезапуска приложения.
+ */
+@ApplicationScoped
+@Transactional(Transactional.TxType.SUPPORTS)
+public class JobService {
+
+    private static final Logger LOG = Logger.getLogger(JobService.class.getName());
+
+    private static final int CHUNK_SIZE = Integer.getInteger("moviesystem.jobs.chunk-size", 500);
+
+    @Resource(lookup = "java:comp/DefaultManagedExecutorService")
+    private ManagedExecutorService executor;
+
+    @Inject
+    private JobDAO jobDAO;
+
+    @Inject
+    private MovieDAO movieDAO;
+
+    @Inject
+    private JobStepService jobStepService;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    public void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        for (Long id : jobDAO.findUnfinishedIds()) {
+            LOG.info(() -> "Resuming job " + id);
+            start(id);
+        }
+    }
+
+    public Job getJob(Long id) {
+        return jobDAO.findById(id);
+    }
+
+    public List<Job> getRecentJobs(int limit) {
+        return jobDAO.findRecent(limit);
+    }
+
+    @Transactional
+    public Job deleteMoviesByGoldenPalmCount(Long goldenPalmCount) {
+        if (goldenPalmCount == null) {
+            throw new IllegalArgumentException("Количество Золотых пальм не указано");
+        }
+        Job job = new Job(JobType.DELETE_BY_GOLDEN_PALM_COUNT);
+        job.setThreshold(goldenPalmCount);
+        return submit(job);
+    }
+
+    @Transactional
+    public Job redistributeOscars(String fromGenre, String toGenre) {
+        if (fromGenre == null || toGenre == null || fromGenre.trim().isEmpty() || toGenre.trim().isEmpty()) {
+            throw new IllegalArgumentException("Жанры не могут быть пустыми");
+        }
+        if (fromGenre.equals(toGenre)) {
+            throw new IllegalArgumentException("Исходный и целевой жанры не могут быть одинаковыми");
+        }
+        Job job = new Job(JobType.REDISTRIBUTE_OSCARS);
+        try {
+            job.setFromGenre(MovieGenre.valueOf(fromGenre));
+            job.setToGenre(MovieGenre.valueOf(toGenre));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неверный жанр: " + e.getMessage());
+        }
+        // Жанр без фильмов - ошибка запроса (400), а не упавшая задача; задача проверяет
+        // это еще раз при старте на случай удаления фильмов между запросом и запуском
+        for (MovieGenre genre : new MovieGenre[] {job.getFromGenre(), job.getToGenre()}) {
+            if (movieDAO.countByGenre(genre) == 0) {
+                throw new IllegalArgumentException("Не найдено фильмов жанра: " + genre
+                    + ". Доступные жанры: " + String.join(", ", movieDAO.getAllGenres()));
+            }
+        }
+        return submit(job);
+    }
+
+    @Transactional
+    public Job addOscarsToLongMovies(Long minLength, int oscarsToAdd) {
+        if (minLength == null) {
+            throw new IllegalArgumentException("Минимальная длительность не указана");
+        }
+        Job job = new Job(JobType.ADD_OSCARS_TO_LONG_MOVIES);
+        job.setThreshold(minLength);
+        job.setAmount(oscarsToAdd);
+        return submit(job);
+    }
+
+    /**
+     * Переносит в холодный архив фильмы, созданные больше olderThanDays дней назад.
+     */
+    @Transactional
+    public Job archiveMovies(Integer olderThanDays) {
+        if (olderThanDays == null || olderThanDays <= 0) {
+            throw new IllegalArgumentException("Возраст архивируемых фильмов должен быть положительным числом дней");
+        }
+        Job job = new Job(JobType.ARCHIVE_MOVIES);
+        job.setThreshold(olderThanDays.longValue());
+        return submit(job);
+    }
+
+    private Job submit(Job job) {
+        jobDAO.create(job);
+        // Задача запускается, только когда ее строка зафиксирована
+        transactionCallbacks.afterCommit(() -> start(job.getId()));
+        return job;
+    }
+
+    private void start(Long jobId) {
+        executor.execute(() -> run(jobId));
+    }
+
+    private void run(Long jobId) {
+        try {
+            while (jobStepService.runChunk(jobId, CHUNK_SIZE)) {
+                // Каждая порция - отдельная транзакция
+            }
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Job " + jobId + " failed", e);
+            jobStepService.fail(jobId, e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.moviesystem.back.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
+import jakarta.transaction.Transactional;
+import org.moviesystem.back.dao.JobDAO;
+import org.moviesystem.back.dao.MovieDAO;
+import org.moviesystem.back.dao.PartitionDAO;
+import org.moviesystem.back.event.MovieChangeEvent;
+import org.moviesystem.back.model.Job;
+import org.moviesystem.back.model.JobStatus;
+import org.moviesystem.back.model.Movie;
+import org.moviesystem.back.tx.TransactionCallbacks;
+
+import java.time.LocalDateTime;
+
+/**
+ * Выполнение одной порции фоновой задачи.
+ *
+ * Каждый вызов - отдельная транзакция (REQUIRES_NEW): изменения порции фильмов и новое
+ * состояние задачи фиксируются вместе, поэтому блокировки строк держатся только на время
+ * порции, а прерванная задача продолжается ровно с того места, где остановилась.
+ */
+@ApplicationScoped
+@Transactional(Transactional.TxType.REQUIRES_NEW)
+public class JobStepService {
+
+    // Фазы перераспределения Оскаров
+    private static final int PHASE_START = 0;
+    private static final int PHASE_COLLECT = 1;
+    private static final int PHASE_DISTRIBUTE = 2;
+
+    @Inject
+    private JobDAO jobDAO;
+
+    @Inject
+    private MovieDAO movieDAO;
+
+    @Inject
+    private PartitionDAO partitionDAO;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    @Inject
+    private Event<Job> jobEvent;
+
+    @Inject
+    private Event<MovieChangeEvent> movieEvent;
+
+    @PersistenceUnit(unitName = "default")
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Выполняет очередную порцию задачи.
+     *
+     * @return true, если задача еще не завершена
+     */
+    public boolean runChunk(Long jobId, int chunkSize) {
+        Job job = jobDAO.findForUpdate(jobId);
+        if (job == null || job.getStatus().isFinished()) {
+            return false;
+        }
+        if (job.getStatus() == JobStatus.QUEUED) {
+            job.setStatus(JobStatus.RUNNING);
+            job.setStartedAt(LocalDateTime.now());
+        }
+
+        boolean changedMovies;
+        switch (job.getType()) {
+            case DELETE_BY_GOLDEN_PALM_COUNT -> changedMovies = deleteByGoldenPalmCount(job, chunkSize);
+            case ADD_OSCARS_TO_LONG_MOVIES -> changedMovies = addOscarsToLongMovies(job, chunkSize);
+            case REDISTRIBUTE_OSCARS -> changedMovies = redistributeOscars(job, chunkSize);
+            case ARCHIVE_MOVIES -> changedMovies = archiveMovies(job, chunkSize);
+            default -> throw new IllegalStateException("Неизвестный тип задачи: " + job.getType());
+        }
+
+        if (changedMovies) {
+            // Порция изменена нативным SQL в обход разделяемого кеша EclipseLink
+            transactionCallbacks.afterCommit(() -> entityManagerFactory.getCache().evict(Movie.class));
+        }
+        if (job.getStatus() == JobStatus.SUCCEEDED) {
+            job.setFinishedAt(LocalDateTime.now());
+            movieEvent.fire(MovieChangeEvent.bulk());
+        }
+        jobEvent.fire(job);
+        return !job.getStatus().isFinished();
+    }
+
+    /**
+     * Помечает задачу как завершившуюся ошибкой.
+     */
+    public void fail(Long jobId, String error) {
+        Job job = jobDAO.findForUpdate(jobId);
+        if (job == null || job.getStatus().isFinished()) {
+            return;
+        }
+        job.setStatus(JobStatus.FAILED);
+        job.setError(error != null && error.length() > 1000 ? error.substring(0, 1000) : error);
+        job.setFinishedAt(LocalDateTime.now());
+        jobEvent.fire(job);
+    }
+
+    private boolean deleteByGoldenPalmCount(Job job, int chunkSize) {
+        if (job.getPhase() == PHASE_START) {
+            job.setTotalItems(movieDAO.countByGoldenPalmCount(job.getThreshold()));
+            job.setPhase(PHASE_COLLECT);
+        }
+        MovieDAO.Chunk chunk = movieDAO.deleteChunkByGoldenPalmCount(job.getThreshold(), chunkSize);
+        advance(job, chunk);
+        if (chunk.count() < chunkSize) {
+            job.setStatus(JobStatus.SUCCEEDED);
+        }
+        return chunk.count() > 0;
+    }
+
+    private boolean addOscarsToLongMovies(Job job, int chunkSize) {
+        if (job.getPhase() == PHASE_START) {
+            job.setTotalItems(movieDAO.countByLengthGreaterThan(job.getThreshold()));
+            job.setPhase(PHASE_COLLECT);
+        }
+        MovieDAO.Chunk chunk = movieDAO.addOscarsChunk(job.getThreshold(), job.getAmount(), job.getLastId(), chunkSize);
+        advance(job, chunk);
+        if (chunk.count() < chunkSize) {
+            job.setStatus(JobStatus.SUCCEEDED);
+        }
+        return chunk.count() > 0;
+    }
+
+    /**
+     * Архивация: фильмы старше threshold дней (от момента создания задачи, чтобы граница
+     * не сдвигалась между порциями и после перезапуска) переносятся в movies_archive.
+     * В конце удаляются опустевшие годовые секции, если таблица секционирована.
+     */
+    private boolean archiveMovies(Job job, int chunkSize) {
+        LocalDateTime cutoff = job.getCreatedAt().minusDays(job.getThreshold());
+        if (job.getPhase() == PHASE_START) {
+            job.setTotalItems(movieDAO.countCreatedBefore(cutoff));
+            job.setPhase(PHASE_COLLECT);
+        }
+        MovieDAO.Chunk chunk = movieDAO.archiveChunk(cutoff, chunkSize);
+        advance(job, chunk);
+        if (chunk.count() < chunkSize) {
+            if (partitionDAO.isRangePartitioned()) {
+                partitionDAO.dropArchivedPartitions(cutoff);
+            }
+            job.setStatus(JobStatus.SUCCEEDED);
+        }
+        return chunk.count() > 0;
+    }
+
+    /**
+     * Перераспределение идет в две фазы: сначала Оскары забираются у фильмов исходного
+     * жанра (сумма копится в задаче), затем равномерно назначаются фильмам целевого жанра.
+     */
+    private boolean redistributeOscars(Job job, int chunkSize) {
+        if (job.getPhase() == PHASE_START) {
+            long fromCount = movieDAO.countByGenre(job.getFromGenre());
+            long toCount = movieDAO.countByGenre(job.getToGenre());
+            if (fromCount == 0 || toCount == 0) {
+                throw new IllegalArgumentException("Не найдено фильмов жанра: "
+                    + (fromCount == 0 ? job.getFromGenre() : job.getToGenre())
+                    + ". Доступные жанры: " + String.join(", ", movieDAO.getAllGenres()));
+            }
+            job.setTotalItems(fromCount + toCount);
+            job.setPhase(PHASE_COLLECT);
+        }
+
+        if (job.getPhase() == PHASE_COLLECT) {
+            MovieDAO.Chunk chunk = movieDAO.collectOscarsChunk(job.getFromGenre(), job.getLastId(), chunkSize);
+            advance(job, chunk);
+            job.setAccumulated(job.getAccumulated() + chunk.oscarsSum());
+            if (chunk.count() < chunkSize) {
+                if (job.getAccumulated() == 0) {
+                    // Нет Оскаров для перераспределения
+                    job.setStatus(JobStatus.SUCCEEDED);
+                    return chunk.count() > 0;
+                }
+                long targetCount = movieDAO.countByGenre(job.getToGenre());
+                if (targetCount == 0) {
+                    throw new IllegalStateException("Фильмы жанра " + job.getToGenre() + " удалены во время перераспределения");
+                }
+                job.setPhase(PHASE_DISTRIBUTE);
+                job.setTargetCount(targetCount);
+                job.setTotalItems(job.getProcessedItems() + targetCount);
+                job.setLastId(0);
+                job.setPhaseProcessed(0);
+            }
+            return chunk.count() > 0;
+        }
+
+        int oscarsPerMovie = (int) (job.getAccumulated() / job.getTargetCount());
+        long remainder = job.getAccumulated() % job.getTargetCount();
+        MovieDAO.Chunk chunk = movieDAO.distributeOscarsChunk(job.getToGenre(), oscarsPerMovie, remainder,
+            job.getPhaseProcessed(), job.getLastId(), chunkSize);
+        advance(job, chunk);
+        if (chunk.count() < chunkSize) {
+            job.setStatus(JobStatus.SUCCEEDED);
+        }
+        return chunk.count() > 0;
+    }
+
+    private static void advance(Job job, MovieDAO.Chunk chunk) {
+        if (chunk.count() > 0) {
+            job.setLastId(chunk.lastId());
+        }
+        job.setPhaseProcessed(job.getPhaseProcessed() + chunk.count());
+        job.setProcessedItems(job.getProcessedItems() + chunk.count());
+    }
+}
@@ -0,0 +1,149 @@
+package org.moviesystem.back.service;
+
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import org.moviesystem.back.model.MovieGenre;
+import org.moviesystem.back.model.MpaaRating;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Разбор JSON Merge Patch (RFC 7396) для фильма в набор столбцов таблицы movies.
+ *
+ * Поддерживаются простые поля и ссылки на связанные объекты по id
+ * ({@code "director": {"id": 5}}): меняется только внешний ключ, сами объекты
+ * не загружаются. Изменить поля координат или людей можно только полным обновлением.
+ * Значение {@code null} очищает поле, если оно необязательное.
+ */
+final class MovieMergePatch {
+
+    // Поле JSON -> столбец. Только эти имена попадают в текст UPDATE
+    private static final Map<String, String> COLUMNS = Map.ofEntries(
+        Map.entry("name", "name"),
+        Map.entry("oscarsCount", "oscars_count"),
+        Map.entry("budget", "budget"),
+        Map.entry("totalBoxOffice", "total_box_office"),
+        Map.entry("mpaaRating", "mpaa_rating"),
+        Map.entry("length", "length"),
+        Map.entry("goldenPalmCount", "golden_palm_count"),
+        Map.entry("genre", "genre"),
+        Map.entry("coordinates", "coordinates_id"),
+        Map.entry("director", "director_id"),
+        Map.entry("screenwriter", "screenwriter_id"),
+        Map.entry("operator", "operator_id")
+    );
+
+    private final Map<String, Object> columns = new LinkedHashMap<>();
+    private final Map<String, Object> fields = new LinkedHashMap<>();
+    private Long version;
+
+    private MovieMergePatch() {
+    }
+
+    /**
+     * @throws IllegalArgumentException если поле неизвестно, не изменяется частично
+     *         или значение не проходит ограничения сущности
+     */
+    static MovieMergePatch parse(JsonObject patch) {
+        MovieMergePatch result = new MovieMergePatch();
+        for (Map.Entry<String, JsonValue> entry : patch.entrySet()) {
+            result.apply(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Столбец -> новое значение для {@code MovieDAO.patch}.
+     */
+    Map<String, Object> columns() {
+        return Collections.unmodifiableMap(columns);
+    }
+
+    /**
+     * Поле JSON -> новое значение для события об изменении.
+     */
+    Map<String, Object> fields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * Версия из тела запроса (используется, если нет If-Match) или null.
+     */
+    Long version() {
+        return version;
+    }
+
+    boolean isEmpty() {
+        return columns.isEmpty();
+    }
+
+    private void apply(String field, JsonValue value) {
+        try {
+            switch (field) {
+                case "id" -> { } // Задается URL
+                case "version" -> version = isNull(value) ? null : ((JsonNumber) value).longValueExact();
+                case "name" -> {
+                    String name = ((JsonString) value).getString();
+                    require(!name.isBlank(), field);
+                    set(field, name);
+                }
+                case "oscarsCount" -> {
+                    int oscars = ((JsonNumber) value).intValueExact();
+                    require(oscars >= 0, field);
+                    set(field, oscars);
+                }
+                case "budget" -> {
+                    Double budget = isNull(value) ? null : ((JsonNumber) value).doubleValue();
+                    require(budget == null || budget > 0, field);
+                    set(field, budget);
+                }
+                case "totalBoxOffice", "length" -> {
+                    long number = ((JsonNumber) value).longValueExact();
+                    require(number > 0, field);
+                    set(field, number);
+                }
+                case "goldenPalmCount" -> {
+                    Long palms = isNull(value) ? null : ((JsonNumber) value).longValueExact();
+                    require(palms == null || palms >= 0, field);
+                    set(field, palms);
+                }
+                case "mpaaRating" -> set(field, MpaaRating.valueOf(((JsonString) value).getString()).name());
+                case "genre" -> set(field, MovieGenre.valueOf(((JsonString) value).getString()).name());
+                case "coordinates", "director", "operator" -> set(field, reference(field, value));
+                case "screenwriter" -> set(field, isNull(value) ? null : reference(field, value));
+                default -> throw new IllegalArgumentException("Поле " + field + " нельзя изменить частичным обновлением");
+            }
+        } catch (ClassCastException | ArithmeticException e) {
+            throw new IllegalArgumentException("Неверное значение поля " + field + ": " + value);
+        }
+    }
+
+    // Связанный объект задается только ссылкой {"id": n}
+    private static Long reference(String field, JsonValue value) {
+        JsonObject object = value.asJsonObject();
+        if (object.size() != 1 || !object.containsKey("id") || object.isNull("id")) {
+            throw new IllegalArgumentException("Поле " + field
+                + " задается ссылкой {\"id\": ...}; для изменения связанного объекта используйте PUT");
+        }
+        return object.getJsonNumber("id").longValueExact();
+    }
+
+    private void set(String field, Object value) {
+        columns.put(COLUMNS.get(field), value);
+        fields.put(field, value);
+    }
+
+    private static boolean isNull(JsonValue value) {
+        return value.getValueType() == JsonValue.ValueType.NULL;
+    }
+
+    private static void require(boolean condition, String field) {
+        if (!condition) {
+            throw new IllegalArgumentException("Недопустимое значение поля " + field);
+        }
+    }
+}
@@ -3,11 +3,20 @@ package org.moviesystem.back.service;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
+import jakarta.json.JsonObject;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.transaction.Transactional;
+import org.moviesystem.back.dao.ArchiveDAO;
+import org.moviesystem.back.dao.ArchivePage;
+import org.moviesystem.back.dao.ChangeDAO;
+import org.moviesystem.back.dao.ChangePage;
 import org.moviesystem.back.dao.CoordinatesDAO;
 import org.moviesystem.back.dao.MovieDAO;
+import org.moviesystem.back.dao.MovieFacets;
 import org.moviesystem.back.dao.PersonDAO;
-import org.moviesystem.back.model.Coordinates;
+import org.moviesystem.back.event.MovieChangeEvent;
 import org.moviesystem.back.model.Movie;
+import org.moviesystem.back.tx.TransactionCallbacks;
 
 import java.util.List;
 import java.util.Optional;
@@ -19,33 +28,52 @@ import java.util.Optional;
  * различными DAO (Data Access Objects). Он отвечает за:
  * 
  * - Создание фильмов с правильной обработкой связанных объектов
- * - Управление транзакциями
+ * - Управление транзакциями (JTA): одна транзакция на операцию. Изменяющие методы
+ *   помечены {@code @Transactional}, читающие выполняются без транзакции
+ *   ({@code TxType.SUPPORTS}), поэтому GET-запросы не платят за commit
  * - Валидацию бизнес-правил
  * - Отправку событий для уведомления других компонентов
  * 
  * Основные функции:
  * 1. Создание фильмов - проверяет существование связанных объектов (координаты, люди)
  * 2. Управление фильмами - CRUD операции
- * 3. Специальные операции - перераспределение Оскаров, статистика
+ * 3. Специальные операции - статистика (массовые изменения выполняются
+ *    фоновыми задачами, см. {@link JobService})
  * 
  * @author Movie Management System Team
  * @version 1.0
  */
 
 @ApplicationScoped
+@Transactional(Transactional.TxType.SUPPORTS)
 public class MovieService {
     
     @Inject
     private MovieDAO movieDAO;
     
     @Inject
-    private Event<Movie> movieEvent;
+    private Event<MovieChangeEvent> movieEvent;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
 
     @Inject
     private CoordinatesDAO coordinatesDAO;
 
     @Inject
     private PersonDAO personDAO;
+
+    @Inject
+    private ArchiveDAO archiveDAO;
+
+    @Inject
+    private ChangeDAO changeDAO;
+
+    @Inject
+    private CoordinatesService coordinatesService;
+
+    @Inject
+    private PersonService personService;
     
     /**
      * Создает новый фильм с правильной обработкой связанных объектов.
@@ -54,77 +82,71 @@ public class MovieService {
      * 
      * 1. Координаты (Coordinates):
      *    - Если передан ID → ищем существующие координаты
-     *    - Если ID нет → проверяем по x,y, если найдены → используем существующие
-     *    - Если не найдены → создаем новые
+     *    - Если ID нет → берем существующие с такими же x,y или создаем новые
+     *      (см. {@link CoordinatesService#findOrCreate})
      * 
      * 2. Люди (Director, Screenwriter, Operator):
      *    - Если передан ID → ищем существующего человека
-     *    - Если ID нет → создаем нового человека
+     *    - Если ID нет → берем существующего с тем же именем, датой рождения и
+     *      гражданством или создаем нового (см. {@link PersonService#findOrCreate})
      * 
      * 3. Сохранение фильма и отправка события
      * 
+     * Все шаги выполняются в одной транзакции: связанные объекты и сам фильм
+     * записываются одним flush при фиксации.
+     * 
      * @param movie объект фильма для создания
      * @return созданный фильм
      * @throws Exception если произошла ошибка при создании
      */
+    @Transactional
     public Movie createMovie(Movie movie) {
-        // Обрабатываем координаты: если ID есть - ищем существующие, если нет - проверяем по x,y или создаем новые
+        // Обрабатываем координаты: если ID есть - ищем существующие, если нет - находим по x,y или создаем
         if (movie.getCoordinates() != null) {
             if (movie.getCoordinates().getId() != null) {
                 // Ищем существующие координаты по ID
                 movie.setCoordinates(coordinatesDAO.findById(movie.getCoordinates().getId()));
             } else {
-                // Проверяем, есть ли уже координаты с такими x,y
-                Coordinates existingCoordinates = coordinatesDAO.findByXAndY(
-                    movie.getCoordinates().getX(), 
-                    movie.getCoordinates().getY()
-                );
-                
-                if (existingCoordinates != null) {
-                    // Используем существующие координаты
-                    movie.setCoordinates(existingCoordinates);
-                } else {
-                    // Создаем новые координаты
-                    movie.setCoordinates(coordinatesDAO.create(movie.getCoordinates()));
-                }
+                // Кеш (x, y) -> id и upsert по уникальному индексу вместо поиска перед вставкой
+                movie.setCoordinates(coordinatesService.findOrCreate(movie.getCoordinates()));
             }
         }
         
-        // Обрабатываем режиссера: если ID есть - ищем существующего, если нет - создаем нового
+        // Обрабатываем режиссера: если ID есть - ищем существующего, если нет - находим по естественному ключу или создаем
         if (movie.getDirector() != null) {
             if (movie.getDirector().getId() != null) {
                 // Ищем существующего режиссера
                 movie.setDirector(personDAO.findById(movie.getDirector().getId()));
             } else {
-                // Создаем нового режиссера
-                movie.setDirector(personDAO.create(movie.getDirector()));
+                // Берем существующего с тем же естественным ключом или создаем нового
+                movie.setDirector(personService.findOrCreate(movie.getDirector()));
             }
         }
         
-        // Обрабатываем сценариста: если ID есть - ищем существующего, если нет - создаем нового
+        // Обрабатываем сценариста: если ID есть - ищем существующего, если нет - находим по естественному ключу или создаем
         if (movie.getScreenwriter() != null) {
             if (movie.getScreenwriter().getId() != null) {
                 // Ищем существующего сценариста
                 movie.setScreenwriter(personDAO.findById(movie.getScreenwriter().getId()));
             } else {
-                // Создаем нового сценариста
-                movie.setScreenwriter(personDAO.create(movie.getScreenwriter()));
+                // Берем существующего с тем же естественным ключом или создаем нового
+                movie.setScreenwriter(personService.findOrCreate(movie.getScreenwriter()));
             }
         }
         
-        // Обрабатываем оператора: если ID есть - ищем существующего, если нет - создаем нового
+        // Обрабатываем оператора: если ID есть - ищем существующего, если нет - находим по естественному ключу или создаем
         if (movie.getOperator() != null) {
             if (movie.getOperator().getId() != null) {
                 // Ищем существующего оператора
                 movie.setOperator(personDAO.findById(movie.getOperator().getId()));
             } else {
-                // Создаем нового оператора
-                movie.setOperator(personDAO.create(movie.getOperator()));
+                // Берем существующего с тем же естественным ключом или создаем нового
+                movie.setOperator(personService.findOrCreate(movie.getOperator()));
             }
         }
         
         Movie createdMovie = movieDAO.create(movie);
-        movieEvent.fire(createdMovie);
+        movieEvent.fire(MovieChangeEvent.created(createdMovie));
         return createdMovie;
     }
     
@@ -136,6 +158,13 @@ public class MovieService {
         return movieDAO.findAll();
     }
     
+    /**
+     * Фильмы для сводки по Оскарам: загружены только жанр и количество Оскаров.
+     */
+    public List<Movie> getMoviesForOscarsSummary() {
+        return movieDAO.findAllOscars();
+    }
+    
     public List<Movie> getMovies(int page, int size, String sortField, String sortOrder) {
         return movieDAO.findAll(page, size, sortField, sortOrder);
     }
@@ -180,21 +209,106 @@ public class MovieService {
         return movieDAO.findByOscarsRange(minOscars, maxOscars, "id", "asc");
     }
     
-    public Movie updateMovie(Movie movie) {
+    /**
+     * Фильмы под все заданные фильтры сразу; незаданные фильтры не применяются.
+     */
+    public List<Movie> getFilteredMovies(String search, String genre, String director, Integer minOscars,
+                                         Integer maxOscars, String sortField, String sortOrder) {
+        return movieDAO.findFiltered(search, genre, director, minOscars, maxOscars, sortField, sortOrder);
+    }
+    
+    public List<Movie> getMoviesByIds(List<Long> ids) {
+        return movieDAO.findByIds(ids);
+    }
+    
+    public MovieFacets getMovieFacets(String search, String genre, String director,
+                                      Integer minOscars, Integer maxOscars) {
+        return movieDAO.facets(search, genre, director, minOscars, maxOscars);
+    }
+    
+    /**
+     * Полностью обновляет фильм, если его не изменили после того, как клиент его прочитал.
+     *
+     * Ожидаемая версия берется из If-Match, а если заголовка нет - из тела запроса.
+     * Гонка между проверкой и записью тоже не теряет изменений: UPDATE выполняется
+     * с условием на версию, и проигравшая транзакция откатывается с OptimisticLockException.
+     *
+     * @param expectedVersion версия из If-Match или null
+     * @throws OptimisticLockException если фильм уже изменен
+     */
+    @Transactional
+    public Movie updateMovie(Movie movie, Long expectedVersion) {
+        Movie current = findForUpdate(movie.getId(), expectedVersion != null ? expectedVersion : movie.getVersion());
+        movie.setVersion(current.getVersion());
+        // Дата создания не редактируется: из тела запроса пришла бы текущая (ее ставит
+        // конструктор), а это ключ секционирования - фильм переехал бы в другую секцию
+        movie.setCreationDate(current.getCreationDate());
         Movie updatedMovie = movieDAO.update(movie);
-        movieEvent.fire(updatedMovie);
+        movieEvent.fire(MovieChangeEvent.updated(updatedMovie));
         return updatedMovie;
     }
     
+    /**
+     * Частично обновляет фильм по JSON Merge Patch (RFC 7396).
+     *
+     * Патч превращается в один {@code UPDATE movies SET <измененные столбцы>} с проверкой
+     * и увеличением версии: фильм и связанные объекты не загружаются и не сравниваются
+     * при merge. Разделяемый кеш EclipseLink сбрасывается для этого фильма после фиксации,
+     * а событие несет только измененные поля.
+     *
+     * @param expectedVersion версия из If-Match или null (тогда берется "version" из патча)
+     * @return новая версия фильма
+     * @throws OptimisticLockException если фильм уже изменен
+     * @throws IllegalArgumentException если фильма нет, поле неизвестно или значение неверно
+     */
+    @Transactional
+    public Long patchMovie(Long id, JsonObject patch, Long expectedVersion) {
+        MovieMergePatch changes = MovieMergePatch.parse(patch);
+        Long expected = expectedVersion != null ? expectedVersion : changes.version();
+        if (changes.isEmpty()) {
+            // Пустой патч ничего не меняет, но предусловие If-Match все равно проверяется
+            return checkVersion(id, expected);
+        }
+        Long newVersion = movieDAO.patch(id, changes.columns(), expected);
+        if (newVersion == null) {
+            checkVersion(id, expected);
+            // Версия совпала при повторном чтении - значит, ее изменили между запросами
+            throw new OptimisticLockException("Фильм с ID " + id + " уже изменен");
+        }
+        transactionCallbacks.afterCommit(() -> movieDAO.evictFromCache(id));
+        movieEvent.fire(MovieChangeEvent.patched(id, newVersion, changes.fields()));
+        return newVersion;
+    }
+    
+    private Movie findForUpdate(Long id, Long expectedVersion) {
+        Movie current = movieDAO.findById(id)
+            .orElseThrow(() -> new IllegalArgumentException("Фильм с ID " + id + " не найден"));
+        checkVersion(id, current.getVersion(), expectedVersion);
+        return current;
+    }
+    
+    private Long checkVersion(Long id, Long expectedVersion) {
+        Long version = movieDAO.findVersion(id);
+        if (version == null) {
+            throw new IllegalArgumentException("Фильм с ID " + id + " не найден");
+        }
+        checkVersion(id, version, expectedVersion);
+        return version;
+    }
+    
+    private static void checkVersion(Long id, Long version, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(version)) {
+            throw new OptimisticLockException("Фильм с ID " + id + " уже изменен: версия "
+                + version + ", ожидалась " + expectedVersion);
+        }
+    }
+    
+    @Transactional
     public void deleteMovie(Long id) {
         // Просто удаляем фильм - НЕ загружаем объект в кэш!
         movieDAO.delete(id);
-        movieEvent.fire(new Movie()); // Событие об удалении
-    }
-    
-    public void deleteMoviesByGoldenPalmCount(Long goldenPalmCount) {
-        movieDAO.deleteByGoldenPalmCount(goldenPalmCount);
-        movieEvent.fire(new Movie()); // Событие об удалении
+        transactionCallbacks.afterCommit(() -> movieDAO.evictFromCache(id));
+        movieEvent.fire(MovieChangeEvent.deleted(id));
     }
     
     public Long getSumGoldenPalmCount() {
@@ -209,17 +323,24 @@ public class MovieService {
         return movieDAO.findByGoldenPalmCount(goldenPalmCount);
     }
     
-    public List<String> getAllGenres() {
-        return movieDAO.getAllGenres();
+    public ArchivePage searchArchive(String name, String after, int limit) {
+        return archiveDAO.search(name, after, limit);
     }
     
-    public void redistributeOscars(String fromGenre, String toGenre) {
-        movieDAO.redistributeOscars(fromGenre, toGenre);
-        movieEvent.fire(new Movie()); // Событие об изменении
+    /**
+     * Изменения каталога после версии since (0 - весь каталог как последовательность upsert).
+     *
+     * @throws IllegalStateException если надгробия после since уже удалены и клиент
+     *         должен перечитать каталог целиком
+     */
+    public ChangePage getChanges(long since, int limit) {
+        if (since > 0 && since < changeDAO.purgedVersion()) {
+            throw new IllegalStateException("История изменений до версии " + since + " уже удалена");
+        }
+        return changeDAO.changes(since, limit);
     }
     
-    public void addOscarsToLongMovies(Long minLength, int oscarsToAdd) {
-        movieDAO.addOscarsToLongMovies(minLength, oscarsToAdd);
-        movieEvent.fire(new Movie()); // Событие об изменении
+    public List<String> getAllGenres() {
+        return movieDAO.getAllGenres();
     }
 }
@@ -0,0 +1,42 @@
+package org.moviesystem.back.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.moviesystem.back.dao.PartitionDAO;
+
+import java.time.Year;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Создает годовые секции movies на текущий и следующий год при старте приложения,
+ * чтобы новые фильмы не копились в секции по умолчанию. Запас в год покрывает
+ * работу без перезапуска через границу года.
+ */
+@ApplicationScoped
+public class PartitionMaintenance {
+
+    private static final Logger LOG = Logger.getLogger(PartitionMaintenance.class.getName());
+
+    @Inject
+    private PartitionDAO partitionDAO;
+
+    // Без транзакции: каждая секция создается отдельной автофиксируемой командой,
+    // и ошибка не откатывает уже созданные и не мешает развертыванию
+    public void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        try {
+            if (!partitionDAO.isRangePartitioned()) {
+                return;
+            }
+            int year = Year.now().getValue();
+            partitionDAO.ensureYearPartition(year);
+            partitionDAO.ensureYearPartition(year + 1);
+            LOG.info(() -> "Movie partitions ensured up to " + (year + 1));
+        } catch (RuntimeException e) {
+            // Без новых секций строки попадут в movies_default - приложение работает дальше
+            LOG.log(Level.WARNING, "Failed to ensure movie partitions", e);
+        }
+    }
+}
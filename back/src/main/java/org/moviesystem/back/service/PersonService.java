@@ -0,0 +1,125 @@
+package org.moviesystem.back.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.moviesystem.back.analytics.PersonLocationIndex;
+import org.moviesystem.back.cache.LookupCache;
+import org.moviesystem.back.cache.PersonKey;
+import org.moviesystem.back.dao.LookupPage;
+import org.moviesystem.back.dao.PersonDAO;
+import org.moviesystem.back.metrics.MetricsRegistry;
+import org.moviesystem.back.model.Person;
+import org.moviesystem.back.tx.TransactionCallbacks;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Сервисный слой для людей (режиссеры, сценаристы, операторы).
+ * Задает границы транзакций для {@link PersonDAO} и держит кеш
+ * (имя, дата рождения, гражданство) -> id для поиска-или-создания людей при создании фильма.
+ */
+@ApplicationScoped
+@Transactional(Transactional.TxType.SUPPORTS)
+public class PersonService {
+
+    @Inject
+    private PersonDAO personDAO;
+
+    @Inject
+    private PersonLocationIndex personLocationIndex;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private final LookupCache<PersonKey> lookupCache =
+        new LookupCache<>(Integer.getInteger("moviesystem.cache.persons.max-size", 100_000));
+
+    @PostConstruct
+    void registerMetrics() {
+        String labels = MetricsRegistry.labels("cache", "persons");
+        metricsRegistry.gauge("moviesystem_lookup_cache_size", "Записи в кешах поиска по естественному ключу",
+            labels, lookupCache::size);
+        metricsRegistry.counter("moviesystem_lookup_cache_hits_total", "Попадания в кеши поиска по естественному ключу",
+            labels, lookupCache::hits);
+        metricsRegistry.counter("moviesystem_lookup_cache_misses_total", "Промахи кешей поиска по естественному ключу",
+            labels, lookupCache::misses);
+    }
+
+    public List<Person> getAllPersons() {
+        return personDAO.findAll();
+    }
+
+    public LookupPage lookup(String prefix, String after, int limit) {
+        return personDAO.lookup(prefix, after, limit);
+    }
+
+    /**
+     * id не больше k людей, ближайших к точке (x, y, z), от ближнего к дальнему.
+     *
+     * @param indexed false - полный проход вместо KD-дерева, для сравнения
+     */
+    public long[] getNearestPersonIds(double x, double y, double z, int k, boolean indexed) {
+        return personLocationIndex.nearest(x, y, z, k, indexed);
+    }
+
+    /**
+     * id людей, местоположение которых внутри параллелепипеда [min, max], по возрастанию.
+     *
+     * @param indexed false - полный проход вместо KD-дерева, для сравнения
+     */
+    public long[] getPersonIdsWithin(double[] min, double[] max, boolean indexed) {
+        for (int axis = 0; axis < min.length; axis++) {
+            if (min[axis] > max[axis]) {
+                throw new IllegalArgumentException("min must not exceed max");
+            }
+        }
+        return personLocationIndex.within(min, max, indexed);
+    }
+
+    public List<Person> getPersonsByIds(long[] ids) {
+        return personDAO.findByIds(Arrays.stream(ids).boxed().toList());
+    }
+
+    public Person getPersonById(Long id) {
+        return personDAO.findById(id);
+    }
+
+    /**
+     * Человек с тем же естественным ключом уже мог быть создан - тогда возвращается он.
+     */
+    @Transactional
+    public Person createPerson(Person person) {
+        return findOrCreate(person);
+    }
+
+    /**
+     * Возвращает существующего человека с тем же именем, датой рождения и гражданством
+     * или создает нового.
+     *
+     * Повторный импорт той же съемочной группы стоит одного чтения из ConcurrentHashMap
+     * и поиска по id в разделяемом кеше EclipseLink. Остальные поля (цвет глаз, волос,
+     * местоположение) у существующей записи не перезаписываются.
+     */
+    @Transactional
+    public Person findOrCreate(Person person) {
+        PersonKey key = PersonKey.of(person);
+        Long cachedId = lookupCache.get(key);
+        if (cachedId != null) {
+            Person cached = personDAO.findById(cachedId);
+            if (cached != null) {
+                return cached;
+            }
+            // Строку удалили в обход приложения - забываем устаревший id
+            lookupCache.evict(key);
+        }
+        Long id = personDAO.upsert(person);
+        transactionCallbacks.afterCommit(() -> lookupCache.put(key, id));
+        return personDAO.findById(id);
+    }
+}
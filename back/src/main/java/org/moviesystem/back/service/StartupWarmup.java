@@ -0,0 +1,89 @@
+package org.moviesystem.back.service;
+
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.interceptor.Interceptor;
+import org.moviesystem.back.dao.CoordinatesDAO;
+import org.moviesystem.back.dao.MovieDAO;
+import org.moviesystem.back.dao.MovieQueryRegistry;
+import org.moviesystem.back.dao.PersonDAO;
+import org.moviesystem.back.metrics.StartupMetrics;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Необязательный прогрев при старте ({@code -Dmoviesystem.warmup=true}).
+ *
+ * Выполняет горячие запросы DAO до первого запроса пользователя: EclipseLink готовит
+ * SQL именованных запросов при первом выполнении, а JIT успевает скомпилировать путь
+ * построения объектов. Каждый вариант списка фильмов (все сортировки), подсчет
+ * и список жанров выполняются один раз - часть из них читает всю таблицу.
+ * Дешевые запросы по индексу (первая страница, версия, подсказки людей и координат)
+ * повторяются {@code moviesystem.warmup.iterations} раз (по умолчанию 10).
+ *
+ * Выполняется после остальных наблюдателей старта и без транзакции; развертывание
+ * ждет окончания прогрева, ошибка только пишется в лог.
+ */
+@ApplicationScoped
+public class StartupWarmup {
+
+    private static final Logger LOG = Logger.getLogger(StartupWarmup.class.getName());
+
+    private static final boolean ENABLED = Boolean.getBoolean("moviesystem.warmup");
+    private static final int ITERATIONS = Integer.getInteger("moviesystem.warmup.iterations", 10);
+    private static final int PAGE_SIZE = 10;
+
+    @Inject
+    private MovieDAO movieDAO;
+
+    @Inject
+    private PersonDAO personDAO;
+
+    @Inject
+    private CoordinatesDAO coordinatesDAO;
+
+    @Inject
+    private MovieQueryRegistry queryRegistry;
+
+    @Inject
+    private StartupMetrics startupMetrics;
+
+    public void onStartup(@Observes @Priority(Interceptor.Priority.LIBRARY_AFTER)
+                          @Initialized(ApplicationScoped.class) Object event) {
+        if (!ENABLED) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try {
+            prepareQueries();
+            for (int i = 0; i < ITERATIONS; i++) {
+                runHotQueries();
+            }
+            long millis = System.currentTimeMillis() - started;
+            startupMetrics.warmupCompleted(millis);
+            LOG.info(() -> "Warm-up finished: " + ITERATIONS + " iterations in " + millis + " ms");
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Warm-up failed, continuing without it", e);
+        }
+    }
+
+    private void prepareQueries() {
+        for (String sortField : queryRegistry.sortFields()) {
+            movieDAO.findAll(0, PAGE_SIZE, sortField, "asc");
+            movieDAO.findAll(0, PAGE_SIZE, sortField, "desc");
+        }
+        movieDAO.countAll();
+        movieDAO.getAllGenres();
+    }
+
+    private void runHotQueries() {
+        movieDAO.findAll(0, PAGE_SIZE, "id", "asc");
+        movieDAO.findVersion(0L);
+        personDAO.lookup("a", null, PAGE_SIZE);
+        coordinatesDAO.lookup("1", null, PAGE_SIZE);
+    }
+}
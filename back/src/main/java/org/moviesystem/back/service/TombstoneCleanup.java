@@ -0,0 +1,61 @@
+package org.moviesystem.back.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.moviesystem.back.dao.ChangeDAO;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Раз в сутки удаляет надгробия удаленных фильмов старше
+ * {@code moviesystem.changes.tombstone-retention-days} (по умолчанию 30 дней).
+ * Клиенты, не синхронизировавшиеся дольше, получают 410 и перечитывают каталог.
+ */
+@ApplicationScoped
+public class TombstoneCleanup {
+
+    private static final Logger LOG = Logger.getLogger(TombstoneCleanup.class.getName());
+
+    private static final int RETENTION_DAYS = Integer.getInteger("moviesystem.changes.tombstone-retention-days", 30);
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    private ChangeDAO changeDAO;
+
+    private ScheduledFuture<?> task;
+
+    public void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        task = scheduler.scheduleWithFixedDelay(this::purge, 1, 24 * 60, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    // Без транзакции: функция удаления выполняется одной автофиксируемой командой
+    private void purge() {
+        try {
+            int purged = changeDAO.purgeTombstones(LocalDateTime.now().minusDays(RETENTION_DAYS));
+            if (purged > 0) {
+                LOG.info(() -> "Purged " + purged + " movie tombstones older than " + RETENTION_DAYS + " days");
+            }
+        } catch (RuntimeException e) {
+            // Например, миграция V7 еще не выполнена - попробуем на следующий день
+            LOG.log(Level.WARNING, "Failed to purge movie tombstones", e);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package org.moviesystem.back.sse;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.moviesystem.back.concurrent.RequestExecutor;
+import org.moviesystem.back.event.MovieChangeEvent;
+import org.moviesystem.back.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Поток изменений фильмов для {@code GET /api/movies/stream} (Server-Sent Events).
+ *
+ * Последние изменения хранятся в кольцевом буфере ({@code moviesystem.stream.buffer-size},
+ * по умолчанию 1024) под возрастающими номерами. Номер передается клиенту как id события,
+ * и после обрыва соединения браузер присылает его в Last-Event-ID: сервер досылает
+ * пропущенные изменения из буфера, и клиенту не нужно перечитывать данные. Событие
+ * {@code resync} отправляется, только если пропущенные изменения уже вытеснены из буфера
+ * или id выдан до перезапуска сервера (в id входит эпоха - время старта).
+ *
+ * Порядок событий при подключении: {@code resync} или пропущенные {@code change},
+ * затем {@code ready} с текущим id - с этого места клиент получает изменения вживую.
+ * Номер изменению выдается сразу в наблюдателе, в порядке событий; в исполнитель
+ * запросов уходит только рассылка, и она досылает каждому подписчику все номера после
+ * последнего отправленного ему по порядку, сколько бы рассылок ни выполнялось параллельно.
+ * Интервал переподключения ({@code retry}) у каждого соединения свой, со случайной
+ * добавкой: после перезапуска сервера клиенты возвращаются не одновременно.
+ */
+@ApplicationScoped
+public class MovieChangeStream {
+
+    private static final Logger LOG = Logger.getLogger(MovieChangeStream.class.getName());
+
+    private static final int BUFFER_SIZE = Integer.getInteger("moviesystem.stream.buffer-size", 1024);
+    private static final long HEARTBEAT_SECONDS = Long.getLong("moviesystem.stream.heartbeat-seconds", 15);
+    private static final long RECONNECT_DELAY_MS = Long.getLong("moviesystem.stream.reconnect-delay-ms", 1000);
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    // Данные события с номером seq лежат в buffer[seq % BUFFER_SIZE]; доступны номера
+    // (lastSeq - BUFFER_SIZE, lastSeq]. Буфер и подписчики защищены монитором this
+    private final String[] buffer = new String[BUFFER_SIZE];
+    private long lastSeq;
+    private final List<Subscriber> subscribers = new ArrayList<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder newConnections = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    private RequestExecutor requestExecutor;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private ScheduledFuture<?> heartbeat;
+
+    @PostConstruct
+    void init() {
+        // Комментарий раз в несколько секунд держит соединение через прокси
+        // и выявляет закрытые клиентами соединения
+        heartbeat = scheduler.scheduleAtFixedRate(this::sendHeartbeat,
+            HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+
+        metricsRegistry.gauge("moviesystem_stream_subscribers", "Открытые SSE-соединения потока изменений", "",
+            this::subscriberCount);
+        metricsRegistry.counter("moviesystem_stream_events_total", "Изменения, отправленные в поток", "",
+            published::sum);
+        String help = "Подключения к потоку изменений по результату";
+        metricsRegistry.counter("moviesystem_stream_connections_total", help,
+            MetricsRegistry.labels("mode", "new"), newConnections::sum);
+        metricsRegistry.counter("moviesystem_stream_connections_total", help,
+            MetricsRegistry.labels("mode", "resumed"), resumed::sum);
+        metricsRegistry.counter("moviesystem_stream_connections_total", help,
+            MetricsRegistry.labels("mode", "resync"), resyncs::sum);
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+        subscribers.forEach(Subscriber::close);
+        subscribers.clear();
+    }
+
+    // Как и WebSocket, поток получает только зафиксированные изменения
+    public void onMovieChange(@Observes(during = TransactionPhase.AFTER_SUCCESS) MovieChangeEvent event) {
+        record(event.toJson().build().toString());
+        requestExecutor.execute(this::deliver);
+    }
+
+    /**
+     * Подключает клиента к потоку.
+     *
+     * @param lastEventId id последнего полученного события или null для нового клиента
+     */
+    public synchronized void subscribe(SseEventSink sink, Sse sse, String lastEventId) {
+        Subscriber subscriber = new Subscriber(sink, sse);
+        if (lastEventId == null || lastEventId.isBlank()) {
+            newConnections.increment();
+        } else {
+            long from = parseSeq(lastEventId);
+            if (from < 0 || from > lastSeq || from < lastSeq - BUFFER_SIZE) {
+                resyncs.increment();
+                if (!subscriber.send(control(sse, "resync", "reason",
+                        from < 0 || from > lastSeq ? "restarted" : "expired"))) {
+                    return;
+                }
+            } else {
+                resumed.increment();
+                for (long seq = from + 1; seq <= lastSeq; seq++) {
+                    if (!subscriber.send(change(sse, seq, buffer[slot(seq)]))) {
+                        return;
+                    }
+                }
+            }
+        }
+        if (subscriber.send(control(sse, "ready", "lastEventId", eventId(lastSeq)))) {
+            subscriber.sentSeq = lastSeq;
+            subscribers.add(subscriber);
+        }
+    }
+
+    synchronized int subscriberCount() {
+        return subscribers.size();
+    }
+
+    private synchronized void record(String data) {
+        lastSeq++;
+        buffer[slot(lastSeq)] = data;
+        published.increment();
+    }
+
+    // Досылает подписчикам записанные изменения; рассылки, пришедшие позже, находят
+    // все уже отправленным
+    private synchronized void deliver() {
+        subscribers.removeIf(subscriber -> !catchUp(subscriber));
+    }
+
+    private boolean catchUp(Subscriber subscriber) {
+        if (subscriber.sentSeq < lastSeq - BUFFER_SIZE) {
+            // Рассылка отстала больше чем на буфер - клиент перечитывает данные
+            resyncs.increment();
+            subscriber.sentSeq = lastSeq;
+            return subscriber.send(control(subscriber.sse, "resync", "reason", "expired"));
+        }
+        for (long seq = subscriber.sentSeq + 1; seq <= lastSeq; seq++) {
+            if (!subscriber.send(change(subscriber.sse, seq, buffer[slot(seq)]))) {
+                return false;
+            }
+            subscriber.sentSeq = seq;
+        }
+        return true;
+    }
+
+    private synchronized void sendHeartbeat() {
+        try {
+            subscribers.removeIf(subscriber ->
+                !subscriber.send(subscriber.sse.newEventBuilder().comment("heartbeat").build()));
+        } catch (RuntimeException e) {
+            // Исключение отменило бы дальнейшие запуски задачи
+            LOG.log(Level.WARNING, "SSE heartbeat failed", e);
+        }
+    }
+
+    // Данные - готовый JSON; тип по умолчанию (text/plain) записывает строку как есть
+    private OutboundSseEvent change(Sse sse, long seq, String data) {
+        return sse.newEventBuilder()
+            .id(eventId(seq))
+            .name("change")
+            .data(data)
+            .build();
+    }
+
+    private OutboundSseEvent control(Sse sse, String name, String key, String value) {
+        return sse.newEventBuilder()
+            .id(eventId(lastSeq))
+            .name(name)
+            .reconnectDelay(RECONNECT_DELAY_MS + ThreadLocalRandom.current().nextLong(RECONNECT_DELAY_MS * 4 + 1))
+            .data(Json.createObjectBuilder().add(key, value).build().toString())
+            .build();
+    }
+
+    private String eventId(long seq) {
+        return epoch + "-" + seq;
+    }
+
+    // Номер из id этого процесса или -1, если id чужой или поврежден
+    private long parseSeq(String eventId) {
+        int dash = eventId.lastIndexOf('-');
+        if (dash < 0 || !epoch.equals(eventId.substring(0, dash))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int slot(long seq) {
+        return (int) (seq % BUFFER_SIZE);
+    }
+
+    private static final class Subscriber {
+        final SseEventSink sink;
+        final Sse sse;
+        // Последний отправленный номер изменения
+        long sentSeq;
+
+        Subscriber(SseEventSink sink, Sse sse) {
+            this.sink = sink;
+            this.sse = sse;
+        }
+
+        // false - соединение закрыто, подписчика нужно убрать
+        boolean send(OutboundSseEvent event) {
+            if (sink.isClosed()) {
+                return false;
+            }
+            try {
+                sink.send(event).whenComplete((result, error) -> {
+                    if (error != null) {
+                        close();
+                    }
+                });
+                return true;
+            } catch (RuntimeException e) {
+                close();
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                sink.close();
+            } catch (IOException | RuntimeException e) {
+                LOG.log(Level.FINE, "Error closing SSE sink", e);
+            }
+        }
+    }
+}
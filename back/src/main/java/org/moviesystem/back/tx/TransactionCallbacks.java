@@ -0,0 +1,67 @@
+package org.moviesystem.back.tx;
+
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import java.util.function.Supplier;
+
+/**
+ * Выполнение действий по итогам текущей JTA-транзакции.
+ *
+ * Нужна для in-memory структур, которые должны видеть только зафиксированные
+ * данные: например, кеш поиска не должен запоминать id строки, вставленной
+ * в транзакции, которая потом откатилась.
+ */
+@ApplicationScoped
+public class TransactionCallbacks {
+
+    @Resource(lookup = "java:comp/TransactionSynchronizationRegistry")
+    private TransactionSynchronizationRegistry registry;
+
+    /**
+     * Выполняет действие после успешной фиксации текущей транзакции,
+     * а если транзакции нет - сразу.
+     */
+    public void afterCommit(Runnable action) {
+        if (!isTransactionActive()) {
+            action.run();
+            return;
+        }
+        registry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Объект, общий для всех вызовов в рамках текущей транзакции (создается при первом
+     * обращении). Без транзакции каждый вызов получает новый объект.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T transactionResource(Object key, Supplier<T> factory) {
+        if (!isTransactionActive()) {
+            return factory.get();
+        }
+        T resource = (T) registry.getResource(key);
+        if (resource == null) {
+            resource = factory.get();
+            registry.putResource(key, resource);
+        }
+        return resource;
+    }
+
+    public boolean isTransactionActive() {
+        return registry.getTransactionStatus() == Status.STATUS_ACTIVE;
+    }
+}
@@ -1,79 +1,116 @@
 package org.moviesystem.back.websocket;
 
 import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
 import jakarta.websocket.*;
 import jakarta.websocket.server.ServerEndpoint;
-import org.moviesystem.back.model.Movie;
+import org.moviesystem.back.concurrent.RequestExecutor;
+import org.moviesystem.back.event.MovieChangeEvent;
+import org.moviesystem.back.model.Job;
 
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 @ServerEndpoint("/websocket/movies")
 public class MovieWebSocket {
-    
+
+    private static final Logger LOG = Logger.getLogger(MovieWebSocket.class.getName());
+
     private static final Set<Session> sessions = Collections.synchronizedSet(new HashSet<>());
-    
+
+    // Количество сообщений, которые сейчас отправляются (для метрик)
+    private static final AtomicInteger pendingSends = new AtomicInteger();
+
+    @Inject
+    private RequestExecutor requestExecutor;
+
     @OnOpen
     public void onOpen(Session session) {
         sessions.add(session);
-        System.out.println("WebSocket connection opened: " + session.getId());
+        LOG.fine(() -> "WebSocket connection opened: " + session.getId());
     }
-    
+
     @OnClose
     public void onClose(Session session) {
         sessions.remove(session);
-        System.out.println("WebSocket connection closed: " + session.getId());
+        LOG.fine(() -> "WebSocket connection closed: " + session.getId());
     }
-    
+
     @OnError
     public void onError(Session session, Throwable throwable) {
-        System.err.println("WebSocket error: " + throwable.getMessage());
+        LOG.log(Level.WARNING, "WebSocket error: " + throwable.getMessage());
         sessions.remove(session);
     }
-    
+
     @OnMessage
     public void onMessage(String message, Session session) {
         // Эхо сообщения обратно клиенту
         try {
             session.getBasicRemote().sendText("Echo: " + message);
         } catch (IOException e) {
-            System.err.println("Error sending message: " + e.getMessage());
+            LOG.log(Level.WARNING, "Error sending message: " + e.getMessage());
         }
     }
-    
-    public void onMovieChange(@Observes Movie movie) {
-        broadcastUpdate();
+
+    // Клиенты перечитывают данные только после фиксации транзакции. Рассылка идет
+    // через RequestExecutor, чтобы медленный клиент не задерживал ответ на запрос
+    public void onMovieChange(@Observes(during = TransactionPhase.AFTER_SUCCESS) MovieChangeEvent event) {
+        String message = updateMessage(event);
+        requestExecutor.execute(() -> broadcastToAll(message));
     }
-    
-    private void broadcastUpdate() {
-        synchronized (sessions) {
-            for (Session session : sessions) {
-                if (session.isOpen()) {
-                    try {
-                        session.getBasicRemote().sendText("{\"type\":\"update\",\"message\":\"Movies updated\"}");
-                    } catch (IOException e) {
-                        System.err.println("Error broadcasting update: " + e.getMessage());
-                        sessions.remove(session);
-                    }
-                }
-            }
-        }
+
+    // Прогресс фоновой задачи - после фиксации очередной порции
+    public void onJobProgress(@Observes(during = TransactionPhase.AFTER_SUCCESS) Job job) {
+        String message = "{\"type\":\"job\",\"jobId\":" + job.getId()
+            + ",\"jobType\":\"" + job.getType() + "\",\"status\":\"" + job.getStatus()
+            + "\",\"processed\":" + job.getProcessedItems() + ",\"total\":" + job.getTotalItems() + "}";
+        requestExecutor.execute(() -> broadcastToAll(message));
+    }
+
+    // Старые клиенты смотрят только на type=update и перечитывают список, новые могут
+    // применить измененные поля (fields) к строке без запроса
+    private static String updateMessage(MovieChangeEvent event) {
+        return Json.createObjectBuilder()
+            .add("type", "update")
+            .add("message", "Movies updated")
+            .addAll(event.toJson())
+            .build()
+            .toString();
     }
-    
+
     public static void broadcastToAll(String message) {
         synchronized (sessions) {
-            for (Session session : sessions) {
+            Iterator<Session> iterator = sessions.iterator();
+            while (iterator.hasNext()) {
+                Session session = iterator.next();
                 if (session.isOpen()) {
+                    pendingSends.incrementAndGet();
                     try {
                         session.getBasicRemote().sendText(message);
                     } catch (IOException e) {
-                        System.err.println("Error broadcasting message: " + e.getMessage());
-                        sessions.remove(session);
+                        LOG.log(Level.WARNING, "Error broadcasting message: " + e.getMessage());
+                        iterator.remove();
+                    } finally {
+                        pendingSends.decrementAndGet();
                     }
                 }
             }
         }
     }
+
+    public static int getSessionCount() {
+        return sessions.size();
+    }
+
+    public static int getPendingSends() {
+        return pendingSends.get();
+    }
 }
@@ -0,0 +1,17 @@
+package org.moviesystem.back.concurrent;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Виртуальные потоки недоступны в сборке для Java 17 - {@link RequestExecutor}
+ * работает в режиме платформенных потоков. Вариант для Java 21 лежит в src/main/java21.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {}
+
+    static Optional<ExecutorService> newExecutor(String namePrefix) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,18 @@
+package org.moviesystem.back.concurrent;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Исполнитель "поток на задачу" на виртуальных потоках (сборка с -PjavaVersion=21).
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {}
+
+    static Optional<ExecutorService> newExecutor(String namePrefix) {
+        return Optional.of(Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name(namePrefix, 0).factory()));
+    }
+}
@@ -0,0 +1,61 @@
+-- Водяной знак изменений фильмов без блокировок (заменяет схему из V7__movie_changes.sql).
+--
+-- В V7 каждая пишущая транзакция держала разделяемую advisory-блокировку до фиксации,
+-- а movie_change_watermark() брал ее исключительно: пока функция ждала долгую запись,
+-- новые записи вставали в очередь за ней, и синхронизация выстраивала запись в ряд.
+--
+-- Теперь версия изменения - это номер (xid) пишущей транзакции со сдвигом: все строки
+-- одной транзакции получают одну версию. Водяной знак - xmin текущего снимка минус один:
+-- транзакции с меньшими номерами уже зафиксированы или откачены, а незавершенная
+-- транзакция получает версию не меньше xmin, то есть больше водяного знака. Никто никого
+-- не ждет; долгая пишущая транзакция (в любой базе кластера - номера общие) только
+-- задерживает водяной знак, пока не завершится.
+--
+-- Сдвиг подбирается так, чтобы новые версии и водяной знак продолжали старые номера
+-- movie_change_seq: курсоры клиентов остаются действительными. Функции с ним создаются
+-- здесь же через format. Выполняется вручную один раз.
+
+BEGIN;
+
+-- Ждем пишущие транзакции со старыми триггерами: после этой строки все версии
+-- из movie_change_seq зафиксированы или откачены
+LOCK TABLE movies IN SHARE ROW EXCLUSIVE MODE;
+
+DO $$
+DECLARE
+    last_version bigint := (SELECT CASE WHEN is_called THEN last_value ELSE 0 END FROM movie_change_seq);
+    -- Водяной знак сразу после миграции (xmin + shift - 1) не меньше last_version
+    shift bigint := GREATEST(0, last_version - pg_snapshot_xmin(pg_current_snapshot())::text::bigint + 1);
+BEGIN
+    EXECUTE format($f$
+        CREATE OR REPLACE FUNCTION movie_change_id() RETURNS bigint AS
+            'SELECT pg_current_xact_id()::text::bigint + %s' LANGUAGE sql VOLATILE
+    $f$, shift);
+    EXECUTE format($f$
+        CREATE OR REPLACE FUNCTION movie_change_watermark() RETURNS bigint AS
+            'SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint + %s - 1' LANGUAGE sql VOLATILE
+    $f$, shift);
+END
+$$;
+
+CREATE OR REPLACE FUNCTION movie_change_version() RETURNS trigger AS $$
+BEGIN
+    NEW.change_version := movie_change_id();
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION movie_tombstone() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO movie_tombstones (movie_id, change_version)
+    VALUES (OLD.id, movie_change_id())
+    ON CONFLICT (movie_id) DO UPDATE SET change_version = EXCLUDED.change_version, deleted_at = now();
+    RETURN OLD;
+END
+$$ LANGUAGE plpgsql;
+
+-- Версии больше не уникальны: порции читаются по (change_version, id)
+CREATE INDEX IF NOT EXISTS movies_change_version_id ON movies (change_version, id);
+DROP INDEX IF EXISTS movies_change_version;
+
+COMMIT;
@@ -0,0 +1,24 @@
+-- Уникальность координат (x, y).
+--
+-- Для новой базы ограничение создает EclipseLink (@UniqueConstraint на Coordinates).
+-- Для существующей базы скрипт выполняется вручную один раз: сначала схлопывает
+-- накопившиеся дубликаты, затем добавляет уникальный индекс, на который опирается
+-- INSERT ... ON CONFLICT (x, y) в CoordinatesDAO.upsert.
+
+BEGIN;
+
+-- Фильмы переводим на минимальный id среди одинаковых координат
+UPDATE movies m
+SET coordinates_id = d.keep_id
+FROM (SELECT id, MIN(id) OVER (PARTITION BY x, y) AS keep_id FROM coordinates) d
+WHERE m.coordinates_id = d.id
+  AND d.id <> d.keep_id;
+
+DELETE FROM coordinates c
+USING (SELECT id, MIN(id) OVER (PARTITION BY x, y) AS keep_id FROM coordinates) d
+WHERE c.id = d.id
+  AND d.id <> d.keep_id;
+
+ALTER TABLE coordinates ADD CONSTRAINT coordinates_x_y_key UNIQUE (x, y);
+
+COMMIT;
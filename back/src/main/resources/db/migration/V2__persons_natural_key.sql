@@ -0,0 +1,31 @@
+-- Уникальность людей по естественному ключу (name, birthday, nationality).
+--
+-- Гражданство необязательно, поэтому индекс строится по COALESCE(nationality, ''):
+-- обычное UNIQUE-ограничение пропускало бы дубликаты с NULL. Такой индекс нельзя
+-- описать аннотациями JPA, поэтому скрипт выполняется вручную один раз и для новой
+-- базы (после первого развертывания), и для существующей. Без индекса PersonDAO.upsert
+-- остается корректным за счет advisory-блокировки, но поиск идет полным просмотром.
+
+BEGIN;
+
+CREATE TEMP TABLE person_duplicates ON COMMIT DROP AS
+SELECT id, keep_id, location_id
+FROM (SELECT id, location_id,
+             MIN(id) OVER (PARTITION BY name, birthday, COALESCE(nationality, '')) AS keep_id
+      FROM persons) p
+WHERE id <> keep_id;
+
+-- Фильмы переводим на минимальный id среди одинаковых людей
+UPDATE movies m SET director_id = d.keep_id FROM person_duplicates d WHERE m.director_id = d.id;
+UPDATE movies m SET screenwriter_id = d.keep_id FROM person_duplicates d WHERE m.screenwriter_id = d.id;
+UPDATE movies m SET operator_id = d.keep_id FROM person_duplicates d WHERE m.operator_id = d.id;
+
+DELETE FROM persons p USING person_duplicates d WHERE p.id = d.id;
+
+-- Местоположения удаленных дубликатов больше ни на что не ссылаются
+DELETE FROM locations l USING person_duplicates d WHERE l.id = d.location_id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS persons_natural_key
+    ON persons (name, birthday, (COALESCE(nationality, '')));
+
+COMMIT;
@@ -0,0 +1,10 @@
+-- Индекс для /api/persons/lookup: поиск по префиксу имени без учета регистра
+-- и keyset-постраничность по (lower(name), id).
+--
+-- Сортировка "C" нужна, чтобы один и тот же индекс обслуживал и LIKE 'abc%',
+-- и ORDER BY. Выражение нельзя описать аннотациями JPA, поэтому скрипт выполняется
+-- вручную (для новой базы - после первого развертывания). Координатам отдельный
+-- индекс не нужен: их lookup идет по уникальному индексу coordinates_x_y_key.
+
+CREATE INDEX IF NOT EXISTS persons_lower_name_id
+    ON persons ((lower(name) COLLATE "C"), id);
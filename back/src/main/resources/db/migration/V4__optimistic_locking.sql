@@ -0,0 +1,7 @@
+-- Столбцы версии для оптимистической блокировки (@Version на Movie и Person).
+--
+-- Для новой базы столбцы создает EclipseLink. Для существующей скрипт выполняется
+-- вручную один раз: ddl-generation create-tables не добавляет столбцы в готовые таблицы.
+
+ALTER TABLE movies ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1;
+ALTER TABLE persons ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1;
@@ -0,0 +1,152 @@
+-- Секционирование movies по диапазонам creation_date (по году) и холодный архив movies_archive.
+--
+-- Выполняется вручную один раз, в окне обслуживания: таблица пересоздается и данные
+-- копируются. Для приложения ничего не меняется - запросы идут к родительской таблице
+-- movies, а PostgreSQL сам выбирает секции. Первичный ключ секционированной таблицы
+-- обязан включать ключ секционирования, поэтому он становится (id, creation_date);
+-- уникальность id по-прежнему обеспечивает последовательность.
+--
+-- Секции на текущий и следующий год создает приложение при старте (PartitionMaintenance),
+-- строки вне существующих секций попадают в movies_default и переносятся оттуда, когда
+-- создается секция их года. На базе, где этот файл уже выполнен, достаточно повторить
+-- CREATE OR REPLACE FUNCTION movies_ensure_partition. Задача архивации переносит
+-- старые фильмы в movies_archive и удаляет опустевшие годовые секции целиком - вместо
+-- очистки VACUUM'ом миллионов удаленных строк.
+--
+-- Вариант с разбиением по жанру - в комментарии в конце файла.
+
+BEGIN;
+
+ALTER TABLE movies RENAME TO movies_heap;
+ALTER INDEX IF EXISTS movies_pkey RENAME TO movies_heap_pkey;
+
+CREATE TABLE movies (LIKE movies_heap INCLUDING DEFAULTS INCLUDING CONSTRAINTS)
+    PARTITION BY RANGE (creation_date);
+ALTER TABLE movies ADD PRIMARY KEY (id, creation_date);
+
+CREATE TABLE movies_default PARTITION OF movies DEFAULT;
+
+-- Годовая секция movies_yYYYY: [YYYY-01-01, YYYY+1-01-01).
+-- Строки этого года, уже попавшие в movies_default, переносятся в новую секцию: иначе
+-- PostgreSQL не даст ее создать. Секция собирается отдельной таблицей и подключается
+-- после переноса; запись в movies_default на это время заблокирована, чтобы новая строка
+-- того же года не появилась там между переносом и подключением. Любая ошибка
+-- откатывает перенос целиком и возвращается вызывающему.
+CREATE OR REPLACE FUNCTION movies_ensure_partition(year integer) RETURNS void AS $$
+DECLARE
+    part text := 'movies_y' || year;
+    lower_bound date := make_date(year, 1, 1);
+    upper_bound date := make_date(year + 1, 1, 1);
+    moved bigint;
+BEGIN
+    IF to_regclass(part) IS NOT NULL THEN
+        RETURN;
+    END IF;
+    LOCK TABLE movies_default IN EXCLUSIVE MODE;
+    EXECUTE format('CREATE TABLE %I (LIKE movies INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', part);
+    EXECUTE format('WITH moved AS (DELETE FROM movies_default WHERE creation_date >= %L AND creation_date < %L RETURNING *) '
+        || 'INSERT INTO %I SELECT * FROM moved', lower_bound, upper_bound, part);
+    GET DIAGNOSTICS moved = ROW_COUNT;
+    EXECUTE format('ALTER TABLE movies ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', part, lower_bound, upper_bound);
+    IF moved > 0 THEN
+        RAISE NOTICE 'Moved % rows from movies_default to %', moved, part;
+    END IF;
+END
+$$ LANGUAGE plpgsql;
+
+-- Удаляет пустые годовые секции, целиком лежащие раньше cutoff (после архивации)
+CREATE OR REPLACE FUNCTION movies_drop_archived_partitions(cutoff timestamp) RETURNS integer AS $$
+DECLARE
+    part record;
+    is_empty boolean;
+    dropped integer := 0;
+BEGIN
+    FOR part IN
+        SELECT c.relname
+        FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'movies'::regclass AND c.relname ~ '^movies_y[0-9]{4}$'
+    LOOP
+        IF make_date(substring(part.relname FROM 9)::integer + 1, 1, 1) <= cutoff THEN
+            EXECUTE format('SELECT NOT EXISTS (SELECT 1 FROM %I)', part.relname) INTO is_empty;
+            IF is_empty THEN
+                EXECUTE format('DROP TABLE %I', part.relname);
+                dropped := dropped + 1;
+            END IF;
+        END IF;
+    END LOOP;
+    RETURN dropped;
+END
+$$ LANGUAGE plpgsql;
+
+SELECT movies_ensure_partition(year)
+FROM generate_series(
+    COALESCE((SELECT EXTRACT(YEAR FROM MIN(creation_date))::integer FROM movies_heap),
+             EXTRACT(YEAR FROM now())::integer),
+    EXTRACT(YEAR FROM now())::integer + 1) AS year;
+
+INSERT INTO movies SELECT * FROM movies_heap;
+
+-- LIKE не копирует внешние ключи (на координаты и людей) - переносим их отдельно
+DO $$
+DECLARE
+    con record;
+BEGIN
+    FOR con IN
+        SELECT conname, pg_get_constraintdef(oid) AS definition
+        FROM pg_constraint
+        WHERE conrelid = 'movies_heap'::regclass AND contype = 'f'
+    LOOP
+        EXECUTE format('ALTER TABLE movies ADD CONSTRAINT %I %s', con.conname, con.definition);
+    END LOOP;
+END
+$$;
+
+-- Последовательность id переходит к новой таблице вместе со значением по умолчанию
+DO $$
+DECLARE
+    seq text := pg_get_serial_sequence('movies_heap', 'id');
+BEGIN
+    IF seq IS NOT NULL THEN
+        EXECUTE format('ALTER SEQUENCE %s OWNED BY movies.id', seq);
+    END IF;
+END
+$$;
+
+DROP TABLE movies_heap;
+
+-- Выборка кандидатов в архив и отбор по дате внутри секции
+CREATE INDEX movies_creation_date_id ON movies (creation_date, id);
+
+CREATE TABLE IF NOT EXISTS movies_archive (
+    id BIGINT PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    coordinates_id BIGINT,
+    creation_date TIMESTAMP NOT NULL,
+    oscars_count INTEGER NOT NULL,
+    budget FLOAT,
+    total_box_office BIGINT NOT NULL,
+    mpaa_rating VARCHAR(255) NOT NULL,
+    director_id BIGINT,
+    screenwriter_id BIGINT,
+    operator_id BIGINT,
+    length BIGINT NOT NULL,
+    golden_palm_count BIGINT,
+    genre VARCHAR(255) NOT NULL,
+    archived_at TIMESTAMP NOT NULL
+);
+CREATE INDEX IF NOT EXISTS movies_archive_creation_date ON movies_archive (creation_date);
+
+COMMIT;
+
+-- Разбиение по жанру вместо дат (если запросы почти всегда фильтруют по жанру).
+-- Архивация в этом случае работает так же, но опустевшие секции не удаляются:
+--
+--   CREATE TABLE movies (LIKE movies_heap INCLUDING DEFAULTS INCLUDING CONSTRAINTS)
+--       PARTITION BY LIST (genre);
+--   ALTER TABLE movies ADD PRIMARY KEY (id, genre);
+--   CREATE TABLE movies_drama PARTITION OF movies FOR VALUES IN ('DRAMA');
+--   ... по одной секции на значение MovieGenre ...
+--   CREATE TABLE movies_default PARTITION OF movies DEFAULT;
+--
+-- Жанр меняется частичным обновлением, и PostgreSQL переносит строку между секциями
+-- при UPDATE автоматически.
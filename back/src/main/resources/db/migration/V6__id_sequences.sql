@@ -0,0 +1,32 @@
+-- Переход id фильмов, людей, координат и местоположений с IDENTITY на последовательности
+-- с выделением блоков по 50 значений (см. META-INF/orm.xml).
+--
+-- Для новой базы последовательности создает EclipseLink. Для существующей скрипт
+-- выполняется вручную один раз: последовательности SERIAL-столбцов переиспользуются,
+-- шаг увеличивается до размера блока, а текущее значение сдвигается за максимальный id
+-- (EclipseLink считает полученное nextval значение последним в блоке).
+-- Значение по умолчанию столбца id остается для вставок в обход JPA.
+
+DO $$
+DECLARE
+    tbl text;
+    seq text;
+    max_id bigint;
+BEGIN
+    FOREACH tbl IN ARRAY ARRAY['movies', 'persons', 'coordinates', 'locations'] LOOP
+        seq := tbl || '_id_seq';
+        EXECUTE format('CREATE SEQUENCE IF NOT EXISTS %I', seq);
+        EXECUTE format('ALTER SEQUENCE %I INCREMENT BY 50', seq);
+
+        EXECUTE format('SELECT COALESCE(MAX(id), 0) FROM %I', tbl) INTO max_id;
+        -- id архивированных фильмов сохраняются и не должны выдаваться повторно
+        IF tbl = 'movies' AND to_regclass('movies_archive') IS NOT NULL THEN
+            max_id := GREATEST(max_id, (SELECT COALESCE(MAX(id), 0) FROM movies_archive));
+        END IF;
+        PERFORM setval(seq, max_id + 50);
+
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN id SET DEFAULT nextval(%L)', tbl, seq);
+        EXECUTE format('ALTER SEQUENCE %I OWNED BY %I.id', seq, tbl);
+    END LOOP;
+END
+$$;
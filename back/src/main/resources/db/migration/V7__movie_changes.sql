@@ -0,0 +1,98 @@
+-- Версии изменений фильмов для синхронизации по дельте (GET /api/movies/changes).
+--
+-- Выполняется вручную один раз (для новой базы - после первого старта с -PschemaGeneration).
+-- Каждая вставка и каждое изменение строки movies получает change_version из общей
+-- последовательности movie_change_seq, а удаление оставляет надгробие в movie_tombstones.
+-- Номера выдают триггеры, поэтому учитываются все записи: через JPA, частичные обновления
+-- (MovieDAO.patch), массовые операции фоновых задач и архивация, а также правки в обход
+-- приложения.
+--
+-- Номер выдается при записи, а видна запись становится при фиксации, поэтому транзакция
+-- с меньшим номером может зафиксироваться позже транзакции с большим. Чтобы клиент не
+-- пропустил ее, ответ ограничен "водяным знаком" movie_change_watermark(): пишущие
+-- транзакции держат разделяемую advisory-блокировку до конца, а функция берет ее
+-- исключительно - дожидается их завершения - и возвращает последний выданный номер.
+-- Все номера не больше него уже зафиксированы или откачены.
+
+BEGIN;
+
+CREATE SEQUENCE IF NOT EXISTS movie_change_seq;
+
+ALTER TABLE movies ADD COLUMN IF NOT EXISTS change_version BIGINT;
+UPDATE movies SET change_version = nextval('movie_change_seq') WHERE change_version IS NULL;
+ALTER TABLE movies ALTER COLUMN change_version SET DEFAULT 0;
+ALTER TABLE movies ALTER COLUMN change_version SET NOT NULL;
+CREATE INDEX IF NOT EXISTS movies_change_version ON movies (change_version);
+
+CREATE TABLE IF NOT EXISTS movie_tombstones (
+    movie_id BIGINT PRIMARY KEY,
+    change_version BIGINT NOT NULL,
+    deleted_at TIMESTAMP NOT NULL DEFAULT now()
+);
+CREATE INDEX IF NOT EXISTS movie_tombstones_change_version ON movie_tombstones (change_version);
+
+-- Старые надгробия удаляются (movie_purge_tombstones); клиент, отставший дальше
+-- purged_version, должен перечитать каталог целиком
+CREATE TABLE IF NOT EXISTS movie_change_state (
+    id INTEGER PRIMARY KEY CHECK (id = 1),
+    purged_version BIGINT NOT NULL
+);
+INSERT INTO movie_change_state VALUES (1, 0) ON CONFLICT DO NOTHING;
+
+CREATE OR REPLACE FUNCTION movie_change_version() RETURNS trigger AS $$
+BEGIN
+    -- Блокировка берется до номера: функция водяного знака либо дождется этой
+    -- транзакции, либо вернет значение меньше ее номера
+    PERFORM pg_advisory_xact_lock_shared(hashtext('movie_change_seq'));
+    NEW.change_version := nextval('movie_change_seq');
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION movie_tombstone() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_advisory_xact_lock_shared(hashtext('movie_change_seq'));
+    INSERT INTO movie_tombstones (movie_id, change_version)
+    VALUES (OLD.id, nextval('movie_change_seq'))
+    ON CONFLICT (movie_id) DO UPDATE SET change_version = EXCLUDED.change_version, deleted_at = now();
+    RETURN OLD;
+END
+$$ LANGUAGE plpgsql;
+
+-- Триггеры на секционированной таблице переходят на все секции, в том числе будущие.
+-- Перенос строки между секциями при UPDATE выполняется как DELETE и INSERT и оставляет
+-- надгробие для живого фильма - такие надгробия запрос изменений пропускает
+DROP TRIGGER IF EXISTS movies_change_version ON movies;
+CREATE TRIGGER movies_change_version BEFORE INSERT OR UPDATE ON movies
+    FOR EACH ROW EXECUTE FUNCTION movie_change_version();
+
+DROP TRIGGER IF EXISTS movies_tombstone ON movies;
+CREATE TRIGGER movies_tombstone AFTER DELETE ON movies
+    FOR EACH ROW EXECUTE FUNCTION movie_tombstone();
+
+CREATE OR REPLACE FUNCTION movie_change_watermark() RETURNS bigint AS $$
+BEGIN
+    -- Долгая пишущая транзакция не должна надолго задерживать синхронизацию
+    SET LOCAL lock_timeout = '5s';
+    PERFORM pg_advisory_xact_lock(hashtext('movie_change_seq'));
+    RETURN (SELECT CASE WHEN is_called THEN last_value ELSE 0 END FROM movie_change_seq);
+END
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION movie_purge_tombstones(cutoff timestamp) RETURNS integer AS $$
+DECLARE
+    purged integer;
+    max_version bigint;
+BEGIN
+    WITH deleted AS (
+        DELETE FROM movie_tombstones WHERE deleted_at < cutoff RETURNING change_version
+    )
+    SELECT count(*), max(change_version) INTO purged, max_version FROM deleted;
+    IF max_version IS NOT NULL THEN
+        UPDATE movie_change_state SET purged_version = GREATEST(purged_version, max_version) WHERE id = 1;
+    END IF;
+    RETURN purged;
+END
+$$ LANGUAGE plpgsql;
+
+COMMIT;
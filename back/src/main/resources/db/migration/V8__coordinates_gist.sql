@@ -0,0 +1,11 @@
+-- Пространственный индекс для /api/coordinates/within и /api/coordinates/nearest:
+-- попадание в прямоугольник (point <@ box) и k ближайших (ORDER BY point <-> point).
+--
+-- GiST по выражению point(x, y) обслуживает оба оператора, а упорядочивание по
+-- расстоянию идет прямо по индексу, без сортировки всех строк. Запросы должны
+-- использовать то же выражение point(x, y), иначе индекс не применится.
+-- Выполняется вручную (для новой базы - после первого развертывания). CONCURRENTLY -
+-- чтобы не блокировать создание фильмов на время построения; поэтому без BEGIN.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS coordinates_point_gist
+    ON coordinates USING gist (point(x, y));
@@ -0,0 +1,34 @@
+-- Таблица фоновых задач (model/Job.java) для существующей базы.
+--
+-- Схема по умолчанию не создается при развертывании (см. -PschemaGeneration в build.gradle),
+-- поэтому без этого скрипта первая же массовая операция упадет на отсутствующей таблице.
+-- Выполняется вручную один раз; для новой базы таблицу создает первый старт с -PschemaGeneration.
+-- id выдается столбцом IDENTITY, как ожидает @GeneratedValue(strategy = IDENTITY).
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS jobs (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    type VARCHAR(255) NOT NULL,
+    status VARCHAR(255) NOT NULL,
+    from_genre VARCHAR(255),
+    to_genre VARCHAR(255),
+    threshold BIGINT,
+    amount INTEGER,
+    phase INTEGER NOT NULL,
+    last_id BIGINT NOT NULL,
+    phase_processed BIGINT NOT NULL,
+    accumulated BIGINT NOT NULL,
+    target_count BIGINT NOT NULL,
+    total_items BIGINT NOT NULL,
+    processed_items BIGINT NOT NULL,
+    error VARCHAR(1000),
+    created_at TIMESTAMP NOT NULL,
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP
+);
+
+-- Незавершенные задачи ищутся при каждом старте (Job.findUnfinished)
+CREATE INDEX IF NOT EXISTS jobs_unfinished ON jobs (id) WHERE status IN ('QUEUED', 'RUNNING');
+
+COMMIT;
@@ -0,0 +1,208 @@
+package org.moviesystem.back.analytics;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.moviesystem.back.model.MovieGenre;
+import org.moviesystem.back.model.MpaaRating;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnScanTest {
+
+    private static final int THREADS = 4;
+    private static final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    // Отрезки, отправленные в пул
+    private static final AtomicInteger submitted = new AtomicInteger();
+
+    @AfterAll
+    static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    private static AnalyticsResult run(MovieColumns columns, AnalyticsQuery query) {
+        submitted.set(0);
+        return ColumnScan.run(columns, query, task -> {
+            submitted.incrementAndGet();
+            pool.execute(task);
+        }, THREADS);
+    }
+
+    private static MovieColumns randomColumns(int rows, long seed) {
+        Random random = new Random(seed);
+        MovieColumns columns = new MovieColumns();
+        for (long id = 1; id <= rows; id++) {
+            columns.upsert(id,
+                random.nextInt(12),
+                1 + random.nextInt(1_000_000),
+                60 + random.nextInt(150),
+                random.nextInt(5) == 0 ? Double.NaN : 1 + random.nextInt(10_000),
+                random.nextInt(3) == 0 ? MovieColumns.NO_PALMS : random.nextInt(4),
+                1990 + random.nextInt(35),
+                (byte) random.nextInt(MovieGenre.values().length),
+                (byte) random.nextInt(MpaaRating.values().length),
+                random.nextInt(10) == 0 ? null : (long) random.nextInt(500));
+        }
+        return columns;
+    }
+
+    private static AnalyticsQuery query(String groupBy, String measure) {
+        return AnalyticsQuery.of(groupBy, measure, null, null, null, null, null, null, null);
+    }
+
+    /**
+     * Ожидаемые агрегаты простым проходом: ключ группы -> {count, values, sum, min, max}.
+     */
+    private static Map<String, double[]> naive(MovieColumns c, AnalyticsQuery q) {
+        Map<String, double[]> groups = new HashMap<>();
+        for (int row = 0; row < c.size; row++) {
+            if ((q.genre >= 0 && c.genre[row] != q.genre)
+                    || c.oscars[row] < q.minOscars || c.oscars[row] > q.maxOscars) {
+                continue;
+            }
+            String key = switch (q.groupBy) {
+                case GENRE -> MovieGenre.values()[c.genre[row]].name();
+                case DIRECTOR -> c.director[row] == 0 ? "none" : String.valueOf(c.directorId(c.director[row]));
+                case YEAR -> String.valueOf(c.year[row]);
+                default -> throw new IllegalArgumentException();
+            };
+            double value = switch (q.measure) {
+                case BUDGET -> c.budget[row];
+                case GOLDEN_PALM_COUNT -> c.palms[row] == MovieColumns.NO_PALMS ? Double.NaN : c.palms[row];
+                case OSCARS_COUNT -> c.oscars[row];
+                default -> throw new IllegalArgumentException();
+            };
+            double[] group = groups.computeIfAbsent(key,
+                k -> new double[] {0, 0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY});
+            group[0]++;
+            if (!Double.isNaN(value)) {
+                group[1]++;
+                group[2] += value;
+                group[3] = Math.min(group[3], value);
+                group[4] = Math.max(group[4], value);
+            }
+        }
+        return groups;
+    }
+
+    private static void assertMatches(Map<String, double[]> expected, AnalyticsResult result) {
+        assertEquals(expected.size(), result.groups.size());
+        long matched = 0;
+        for (AnalyticsResult.Group group : result.groups) {
+            double[] e = expected.get(group.key);
+            assertTrue(e != null, group.key);
+            assertEquals((long) e[0], group.count, group.key);
+            matched += group.count;
+            if (e[1] == 0) {
+                assertNull(group.avg, group.key);
+                continue;
+            }
+            // Суммы целых значений точны в double при любом порядке сложения
+            assertEquals(e[2], group.sum, group.key);
+            assertEquals(e[3], group.min, group.key);
+            assertEquals(e[4], group.max, group.key);
+            assertEquals(e[2] / e[1], group.avg, 1e-9, group.key);
+        }
+        assertEquals(matched, result.matched);
+    }
+
+    @Test
+    void chunkedScanMatchesSinglePass() {
+        // Больше трех отрезков по 64K строк, последний неполный
+        MovieColumns columns = randomColumns(200_003, 1);
+        for (String groupBy : new String[] {"genre", "director", "year"}) {
+            for (String measure : new String[] {"budget", "goldenPalmCount", "oscarsCount"}) {
+                AnalyticsQuery query = query(groupBy, measure);
+                AnalyticsResult result = run(columns, query);
+                assertEquals(200_003, result.rows);
+                assertMatches(naive(columns, query), result);
+                assertEquals(3, submitted.get());
+            }
+        }
+    }
+
+    @Test
+    void filtersApplyInEveryChunk() {
+        MovieColumns columns = randomColumns(150_000, 2);
+        AnalyticsQuery query = AnalyticsQuery.of("year", "budget", null, "DRAMA", null, 3, 7, null, null);
+        assertMatches(naive(columns, query), run(columns, query));
+    }
+
+    @Test
+    void deletedRowsAreNotCounted() {
+        MovieColumns columns = randomColumns(1000, 3);
+        for (long id = 1; id <= 1000; id += 2) {
+            columns.delete(id);
+        }
+        AnalyticsQuery query = query("genre", "oscarsCount");
+        AnalyticsResult result = run(columns, query);
+        assertEquals(500, result.rows);
+        assertEquals(500, result.matched);
+        assertMatches(naive(columns, query), result);
+    }
+
+    @Test
+    void lengthBucketsCoverTheirRange() {
+        MovieColumns columns = new MovieColumns();
+        columns.upsert(1, 1, 1, 95, 10, 0, 2000, (byte) 0, (byte) 0, null);
+        columns.upsert(2, 2, 1, 99, 20, 0, 2000, (byte) 0, (byte) 0, null);
+        columns.upsert(3, 3, 1, 120, Double.NaN, 0, 2000, (byte) 0, (byte) 0, null);
+
+        AnalyticsResult result = run(columns,
+            AnalyticsQuery.of("length", "budget", 10L, null, null, null, null, null, null));
+
+        assertEquals(2, result.groups.size());
+        assertEquals("90-99", result.groups.get(0).key);
+        assertEquals(2, result.groups.get(0).count);
+        assertEquals(15.0, result.groups.get(0).avg);
+        assertEquals("120-129", result.groups.get(1).key);
+        assertEquals(1, result.groups.get(1).count);
+        assertNull(result.groups.get(1).avg);
+    }
+
+    @Test
+    void emptySnapshotHasNoGroups() {
+        AnalyticsResult result = run(new MovieColumns(), query("year", "budget"));
+        assertEquals(0, result.rows);
+        assertEquals(0, result.matched);
+        assertTrue(result.groups.isEmpty());
+    }
+
+    @Test
+    void tooManyLengthBucketsAreRejected() {
+        MovieColumns columns = new MovieColumns();
+        columns.upsert(1, 1, 1, 10_000_000, 10, 0, 2000, (byte) 0, (byte) 0, null);
+        assertThrows(IllegalArgumentException.class, () -> run(columns,
+            AnalyticsQuery.of("length", "budget", 1L, null, null, null, null, null, null)));
+    }
+
+    @Test
+    void manyDirectorsUseFewerChunks() {
+        Random random = new Random(4);
+        MovieColumns columns = new MovieColumns();
+        for (long id = 1; id <= 400_000; id++) {
+            // Первые 99 998 фильмов - у разных режиссеров: с кодом "нет режиссера" 99 999 групп
+            long director = id <= 99_998 ? id : 1 + random.nextInt(99_998);
+            columns.upsert(id, random.nextInt(12), 1, 100, random.nextInt(1000), 0, 2000,
+                (byte) 0, (byte) 0, director);
+        }
+        AnalyticsQuery query = query("director", "budget");
+        AnalyticsResult result = run(columns, query);
+        assertMatches(naive(columns, query), result);
+        // По строкам было бы 7 отрезков, по размеру частичных результатов - 4
+        assertEquals(3, submitted.get());
+
+        columns.upsert(400_001, 0, 1, 100, 1, 0, 2000, (byte) 0, (byte) 0, 100_000L);
+        columns.upsert(400_002, 0, 1, 100, 1, 0, 2000, (byte) 0, (byte) 0, 100_001L);
+        assertThrows(IllegalArgumentException.class, () -> run(columns, query));
+    }
+}
@@ -0,0 +1,76 @@
+package org.moviesystem.back.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountMinSketchTest {
+
+    // Частоты как у режиссеров: немного частых ключей и длинный хвост редких
+    private static long skewedKey(Random random) {
+        return (long) Math.floor(Math.pow(random.nextDouble(), 3) * 20_000);
+    }
+
+    @Test
+    void neverUnderestimatesAndStaysWithinBound() {
+        Random random = new Random(47);
+        CountMinSketch sketch = new CountMinSketch();
+        Map<Long, Long> exact = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = skewedKey(random);
+            sketch.add(key);
+            exact.merge(key, 1L, Long::sum);
+        }
+        assertEquals(200_000, sketch.total());
+
+        int withinBound = 0;
+        for (Map.Entry<Long, Long> entry : exact.entrySet()) {
+            long estimate = sketch.estimate(entry.getKey());
+            assertTrue(estimate >= entry.getValue(), "key " + entry.getKey());
+            if (estimate - entry.getValue() <= sketch.errorBound()) {
+                withinBound++;
+            }
+        }
+        assertTrue(withinBound >= CountMinSketch.CONFIDENCE * exact.size(),
+            withinBound + " of " + exact.size());
+        // Ключ, которого не было, тоже оценивается сверху нуля и в пределах погрешности
+        assertTrue(sketch.estimate(-1) <= sketch.errorBound());
+    }
+
+    @Test
+    void emptySketchEstimatesZero() {
+        CountMinSketch sketch = new CountMinSketch();
+        assertEquals(0, sketch.estimate(42));
+        assertEquals(0, sketch.errorBound());
+    }
+
+    @Test
+    void mergeEqualsSketchOfAllKeys() {
+        Random random = new Random(470);
+        CountMinSketch all = new CountMinSketch();
+        CountMinSketch merged = new CountMinSketch();
+        Map<Long, Long> exact = new HashMap<>();
+        for (int part = 0; part < 6; part++) {
+            CountMinSketch sketch = new CountMinSketch();
+            for (int i = 0; i < 30_000; i++) {
+                long key = skewedKey(random);
+                sketch.add(key);
+                all.add(key);
+                exact.merge(key, 1L, Long::sum);
+            }
+            merged.merge(sketch);
+        }
+        assertEquals(all.total(), merged.total());
+        assertEquals(all.errorBound(), merged.errorBound());
+        for (Map.Entry<Long, Long> entry : exact.entrySet()) {
+            long estimate = merged.estimate(entry.getKey());
+            assertEquals(all.estimate(entry.getKey()), estimate);
+            assertTrue(estimate >= entry.getValue(), "key " + entry.getKey());
+        }
+    }
+}
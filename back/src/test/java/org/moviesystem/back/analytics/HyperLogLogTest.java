@@ -0,0 +1,89 @@
+package org.moviesystem.back.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    private static double relativeError(long estimate, long exact) {
+        return Math.abs(estimate - exact) / (double) exact;
+    }
+
+    @Test
+    void relativeErrorAtPrecision12() {
+        assertEquals(12, HyperLogLog.PRECISION);
+        Random random = new Random(47);
+        double sumOfSquares = 0;
+        int runs = 0;
+        for (int n : new int[] {1_000, 10_000, 20_000, 50_000, 100_000, 500_000}) {
+            for (int run = 0; run < 5; run++) {
+                HyperLogLog sketch = new HyperLogLog();
+                long base = random.nextLong();
+                for (int i = 0; i < n; i++) {
+                    sketch.add(base + i);
+                }
+                double error = relativeError(sketch.estimate(), n);
+                // Отдельная оценка - в пределах четырех стандартных ошибок
+                assertTrue(error < 4 * HyperLogLog.RELATIVE_ERROR, n + ": " + error);
+                sumOfSquares += error * error;
+                runs++;
+            }
+        }
+        // Среднеквадратичная ошибка по всем прогонам близка к 1.04 / sqrt(4096)
+        double rms = Math.sqrt(sumOfSquares / runs);
+        assertTrue(rms < 1.5 * HyperLogLog.RELATIVE_ERROR, "rms " + rms);
+    }
+
+    @Test
+    void smallSetsAreAlmostExact() {
+        for (int n : new int[] {0, 1, 10, 100, 500}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (int i = 0; i < n; i++) {
+                sketch.add(i * 7919L);
+            }
+            // Линейный подсчет по пустым регистрам
+            assertTrue(Math.abs(sketch.estimate() - n) <= Math.max(1, n / 50), n + ": " + sketch.estimate());
+        }
+    }
+
+    @Test
+    void duplicatesDoNotChangeEstimate() {
+        HyperLogLog once = new HyperLogLog();
+        HyperLogLog repeated = new HyperLogLog();
+        for (long i = 0; i < 10_000; i++) {
+            once.add(i);
+            for (int copy = 0; copy < 3; copy++) {
+                repeated.add(i);
+            }
+        }
+        assertEquals(once.estimate(), repeated.estimate());
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        Random random = new Random(470);
+        HyperLogLog union = new HyperLogLog();
+        HyperLogLog merged = new HyperLogLog();
+        Set<Long> exact = new HashSet<>();
+        for (int part = 0; part < 8; part++) {
+            HyperLogLog sketch = new HyperLogLog();
+            // Части пересекаются: значения берутся из общего диапазона
+            for (int i = 0; i < 20_000; i++) {
+                long value = random.nextInt(100_000);
+                sketch.add(value);
+                union.add(value);
+                exact.add(value);
+            }
+            merged.merge(sketch);
+        }
+        assertEquals(union.estimate(), merged.estimate());
+        double error = relativeError(merged.estimate(), exact.size());
+        assertTrue(error < 4 * HyperLogLog.RELATIVE_ERROR, "error " + error);
+    }
+}
@@ -0,0 +1,205 @@
+package org.moviesystem.back.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KdTreeTest {
+
+    // Точки по id; дерево переупорядочивает свои массивы, поэтому хранится копия
+    private final Map<Long, double[]> byId = new HashMap<>();
+
+    private KdTree build(long[] ids, double[] points) {
+        byId.clear();
+        for (int i = 0; i < ids.length; i++) {
+            byId.put(ids[i], Arrays.copyOfRange(points, i * 3, i * 3 + 3));
+        }
+        return new KdTree(ids.clone(), points.clone());
+    }
+
+    private KdTree random(Random random, int n, int grid) {
+        long[] ids = new long[n];
+        double[] points = new double[n * 3];
+        for (int i = 0; i < n; i++) {
+            ids[i] = 1000 + i * 7L;
+            for (int axis = 0; axis < 3; axis++) {
+                // grid > 0 - целочисленная сетка с множеством совпадающих координат
+                points[i * 3 + axis] = grid > 0 ? random.nextInt(grid) : random.nextDouble() * 2000 - 1000;
+            }
+        }
+        return build(ids, points);
+    }
+
+    private double distance(long id, double[] target) {
+        double[] point = byId.get(id);
+        double sum = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            double delta = point[axis] - target[axis];
+            sum += delta * delta;
+        }
+        return sum;
+    }
+
+    // Полный перебор: расстояния k ближайших по возрастанию
+    private double[] nearestDistances(double[] target, int k) {
+        return byId.keySet().stream()
+            .mapToDouble(id -> distance(id, target))
+            .sorted()
+            .limit(k)
+            .toArray();
+    }
+
+    private long[] withinBruteForce(double[] min, double[] max) {
+        return byId.entrySet().stream()
+            .filter(entry -> {
+                for (int axis = 0; axis < 3; axis++) {
+                    if (entry.getValue()[axis] < min[axis] || entry.getValue()[axis] > max[axis]) {
+                        return false;
+                    }
+                }
+                return true;
+            })
+            .mapToLong(Map.Entry::getKey)
+            .sorted()
+            .toArray();
+    }
+
+    // При равных расстояниях id может быть любым, поэтому сравниваются расстояния
+    private void assertNearest(KdTree tree, double[] target, int k) {
+        long[] found = tree.nearest(target[0], target[1], target[2], k);
+        double[] expected = nearestDistances(target, k);
+        assertEquals(expected.length, found.length, "k " + k);
+        Set<Long> distinct = new HashSet<>();
+        for (int i = 0; i < found.length; i++) {
+            assertEquals(expected[i], distance(found[i], target), "position " + i + " of k " + k);
+            distinct.add(found[i]);
+        }
+        assertEquals(found.length, distinct.size());
+
+        long[] scanned = tree.nearestScan(target[0], target[1], target[2], k);
+        assertEquals(expected.length, scanned.length);
+        for (int i = 0; i < scanned.length; i++) {
+            assertEquals(expected[i], distance(scanned[i], target));
+        }
+    }
+
+    private void assertWithin(KdTree tree, double[] min, double[] max) {
+        long[] expected = withinBruteForce(min, max);
+        assertArrayEquals(expected, tree.within(min, max));
+        assertArrayEquals(expected, tree.withinScan(min, max));
+    }
+
+    private static double[] target(Random random, double scale) {
+        return new double[] {
+            random.nextDouble() * scale * 2.4 - scale * 1.2,
+            random.nextDouble() * scale * 2.4 - scale * 1.2,
+            random.nextDouble() * scale * 2.4 - scale * 1.2
+        };
+    }
+
+    @Test
+    void nearestMatchesBruteForceOnRandomPoints() {
+        Random random = new Random(50);
+        for (int n : new int[] {1, 2, 3, 10, 100, 5000}) {
+            KdTree tree = random(random, n, 0);
+            assertEquals(n, tree.size());
+            for (int query = 0; query < 200; query++) {
+                assertNearest(tree, target(random, 1000), 1 + random.nextInt(Math.min(n, 50)));
+            }
+        }
+    }
+
+    @Test
+    void nearestReturnsExactIdsWithoutTies() {
+        long[] ids = {10, 20, 30, 40, 50};
+        double[] points = {
+            0, 0, 0,
+            1, 0, 0,
+            0, 2, 0,
+            0, 0, 3,
+            4, 4, 4
+        };
+        KdTree tree = build(ids, points);
+        assertArrayEquals(new long[] {10, 20, 30}, tree.nearest(0.1, 0, 0, 3));
+        assertArrayEquals(new long[] {50, 40}, tree.nearest(4, 4, 4.5, 2));
+        assertArrayEquals(new long[] {10, 20, 30}, tree.nearestScan(0.1, 0, 0, 3));
+    }
+
+    @Test
+    void duplicateCoordinates() {
+        Random random = new Random(500);
+        // Все точки на сетке 4 x 4 x 4 - в среднем десятки точек в одном месте
+        KdTree tree = random(random, 3000, 4);
+        for (int query = 0; query < 300; query++) {
+            double[] target = {random.nextInt(6) - 1, random.nextInt(6) - 1, random.nextInt(6) - 1};
+            assertNearest(tree, target, 1 + random.nextInt(200));
+            double[] min = {random.nextInt(4), random.nextInt(4), random.nextInt(4)};
+            double[] max = {min[0] + random.nextInt(3), min[1] + random.nextInt(3), min[2] + random.nextInt(3)};
+            assertWithin(tree, min, max);
+        }
+
+        // Все точки совпадают
+        long[] ids = new long[257];
+        double[] points = new double[ids.length * 3];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+            Arrays.fill(points, i * 3, i * 3 + 3, 7.5);
+        }
+        KdTree same = build(ids, points);
+        assertEquals(10, same.nearest(0, 0, 0, 10).length);
+        assertEquals(ids.length, same.within(new double[] {7.5, 7.5, 7.5}, new double[] {7.5, 7.5, 7.5}).length);
+        assertEquals(0, same.within(new double[] {7.6, 0, 0}, new double[] {8, 8, 8}).length);
+    }
+
+    @Test
+    void kGreaterThanSizeReturnsAllPoints() {
+        Random random = new Random(5000);
+        KdTree tree = random(random, 37, 0);
+        double[] target = target(random, 1000);
+        long[] found = tree.nearest(target[0], target[1], target[2], 1000);
+        assertEquals(37, found.length);
+        assertEquals(byId.keySet(), Arrays.stream(found).boxed().collect(Collectors.toSet()));
+        assertNearest(tree, target, 1000);
+        assertNearest(tree, target, 37);
+
+        KdTree empty = build(new long[0], new double[0]);
+        assertEquals(0, empty.nearest(0, 0, 0, 5).length);
+        assertEquals(0, empty.within(new double[] {-1, -1, -1}, new double[] {1, 1, 1}).length);
+    }
+
+    @Test
+    void withinMatchesBruteForce() {
+        Random random = new Random(50_000);
+        KdTree tree = random(random, 5000, 0);
+        for (int query = 0; query < 300; query++) {
+            double[] a = target(random, 1000);
+            double[] b = target(random, 1000);
+            double[] min = new double[3];
+            double[] max = new double[3];
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(a[axis], b[axis]);
+                max[axis] = Math.max(a[axis], b[axis]);
+            }
+            assertWithin(tree, min, max);
+        }
+        // Границы включены
+        long id = byId.keySet().iterator().next();
+        double[] point = byId.get(id);
+        assertArrayEquals(new long[] {id}, tree.within(point, point));
+    }
+
+    @Test
+    void rejectsMismatchedCoordinates() {
+        assertThrows(IllegalArgumentException.class, () -> new KdTree(new long[2], new double[5]));
+    }
+}
@@ -0,0 +1,116 @@
+package org.moviesystem.back.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KllSketchTest {
+
+    private static final double[] RANKS = {0.01, 0.05, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99};
+
+    // Сжатие случайно, поэтому допуск - две нормированные погрешности ранга
+    private static final double RANK_TOLERANCE = 2 * KllSketch.RANK_ERROR;
+
+    // Доля значений не больше value; sorted - все значения по возрастанию
+    private static double rankOf(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        while (index + 1 < sorted.length && sorted[index + 1] == value) {
+            index++;
+        }
+        return (index + 1) / (double) sorted.length;
+    }
+
+    private static void assertRankError(KllSketch sketch, double[] sorted) {
+        for (double rank : RANKS) {
+            double quantile = sketch.quantile(rank);
+            double actual = rankOf(sorted, quantile);
+            assertTrue(Math.abs(actual - rank) <= RANK_TOLERANCE,
+                "rank " + rank + ": value " + quantile + " has rank " + actual);
+        }
+    }
+
+    @Test
+    void rankErrorOnRandomStream() {
+        Random random = new Random(47);
+        for (int n : new int[] {10_000, 200_000}) {
+            double[] values = new double[n];
+            KllSketch sketch = new KllSketch();
+            for (int i = 0; i < n; i++) {
+                values[i] = random.nextGaussian() * 1000 + random.nextDouble();
+                sketch.add(values[i]);
+            }
+            Arrays.sort(values);
+            assertEquals(n, sketch.count());
+            assertEquals(values[0], sketch.min());
+            assertEquals(values[n - 1], sketch.max());
+            assertEquals(values[0], sketch.quantile(0));
+            assertEquals(values[n - 1], sketch.quantile(1));
+            assertRankError(sketch, values);
+        }
+    }
+
+    @Test
+    void rankErrorOnSortedStream() {
+        // Худший порядок для наивной выборки: значения приходят по возрастанию
+        int n = 100_000;
+        double[] values = new double[n];
+        KllSketch sketch = new KllSketch();
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+            sketch.add(i);
+        }
+        assertRankError(sketch, values);
+    }
+
+    @Test
+    void smallStreamIsExact() {
+        KllSketch sketch = new KllSketch();
+        double[] values = new double[KllSketch.K / 2];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = values.length - i;
+            sketch.add(values[i]);
+        }
+        sketch.add(Double.NaN);
+        Arrays.sort(values);
+        assertEquals(values.length, sketch.count());
+        for (double rank : RANKS) {
+            assertEquals(values[(int) Math.ceil(rank * values.length) - 1], sketch.quantile(rank), "rank " + rank);
+        }
+        assertTrue(Double.isNaN(new KllSketch().quantile(0.5)));
+    }
+
+    @Test
+    void mergeMatchesExactQuantilesOfUnion() {
+        Random random = new Random(470);
+        List<Double> all = new ArrayList<>();
+        for (int i = 0; i < 160_000; i++) {
+            all.add(random.nextDouble() * 1e6);
+        }
+        // Части разного размера и с разными распределениями
+        Collections.sort(all.subList(0, 40_000));
+        KllSketch merged = new KllSketch();
+        int from = 0;
+        for (int size : new int[] {40_000, 1, 500, 20_000, 99_499}) {
+            KllSketch part = new KllSketch();
+            for (double value : all.subList(from, from + size)) {
+                part.add(value);
+            }
+            merged.merge(part);
+            from += size;
+        }
+        merged.merge(new KllSketch());
+
+        double[] sorted = all.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        assertEquals(sorted.length, merged.count());
+        assertEquals(sorted[0], merged.min());
+        assertEquals(sorted[sorted.length - 1], merged.max());
+        assertRankError(merged, sorted);
+    }
+}
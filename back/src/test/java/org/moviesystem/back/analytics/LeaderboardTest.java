@@ -0,0 +1,148 @@
+package org.moviesystem.back.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeaderboardTest {
+
+    private static final int CAPACITY = 20;
+    private static final int MIN_SIZE = 5;
+
+    // Точный рейтинг: {id, значение} по убыванию значения, при равенстве - по id
+    private static List<long[]> expected(Map<Long, Long> values) {
+        List<long[]> rows = new ArrayList<>();
+        values.forEach((id, value) -> rows.add(new long[] {id, value}));
+        rows.sort((a, b) -> a[1] != b[1] ? Long.compare(b[1], a[1]) : Long.compare(a[0], b[0]));
+        return rows;
+    }
+
+    private static List<Object[]> topRows(Map<Long, Long> values, int limit) {
+        List<Object[]> rows = new ArrayList<>();
+        for (long[] row : expected(values)) {
+            if (rows.size() == limit) {
+                break;
+            }
+            rows.add(new Object[] {row[0], "movie " + row[0], row[1]});
+        }
+        return rows;
+    }
+
+    private static List<LeaderboardPage.Entry> top(Leaderboard board, int k) {
+        List<LeaderboardPage.Entry> out = new ArrayList<>();
+        board.top(k, out);
+        return out;
+    }
+
+    // Рейтинг - точное начало полного порядка
+    private static void assertPrefix(Map<Long, Long> values, Leaderboard board) {
+        List<long[]> expected = expected(values);
+        List<LeaderboardPage.Entry> actual = top(board, CAPACITY + 1);
+        assertEquals(board.size(), actual.size());
+        assertTrue(actual.size() <= CAPACITY);
+        assertTrue(actual.size() <= expected.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals(expected.get(i)[0], actual.get(i).movieId, "position " + i);
+            assertEquals(expected.get(i)[1], actual.get(i).value, "position " + i);
+        }
+    }
+
+    @Test
+    void keepsExactPrefixUnderRandomUpdatesAndRemovals() {
+        Random random = new Random(46);
+        for (int round = 0; round < 20; round++) {
+            Map<Long, Long> values = new HashMap<>();
+            for (long id = 1; id <= 100; id++) {
+                values.put(id, (long) random.nextInt(50));
+            }
+            Leaderboard board = new Leaderboard(CAPACITY, MIN_SIZE);
+            board.reset(topRows(values, CAPACITY));
+            assertPrefix(values, board);
+
+            for (int step = 0; step < 2000; step++) {
+                long id = 1 + random.nextInt(150);
+                int action = random.nextInt(10);
+                if (action < 2) {
+                    values.remove(id);
+                    board.remove(id);
+                } else if (action < 3) {
+                    // Показатель сброшен - фильм выпадает из рейтинга
+                    values.remove(id);
+                    board.upsert(id, "movie " + id, null);
+                } else {
+                    long value = random.nextInt(50);
+                    values.put(id, value);
+                    board.upsert(id, "movie " + id, value);
+                }
+                assertPrefix(values, board);
+                if (board.needsReload()) {
+                    board.reset(topRows(values, CAPACITY));
+                    assertPrefix(values, board);
+                }
+            }
+        }
+    }
+
+    @Test
+    void orderIsValueDescendingThenId() {
+        Leaderboard board = new Leaderboard(CAPACITY, MIN_SIZE);
+        board.reset(List.of());
+        board.upsert(3, "c", 10L);
+        board.upsert(1, "a", 10L);
+        board.upsert(2, "b", 30L);
+        board.upsert(4, "d", 20L);
+
+        List<LeaderboardPage.Entry> top = top(board, 10);
+        assertEquals(List.of(2L, 4L, 1L, 3L), top.stream().map(entry -> entry.movieId).toList());
+        assertEquals(2, top(board, 2).size());
+    }
+
+    @Test
+    void completeBoardAcceptsAnyValueUntilCapacity() {
+        Leaderboard board = new Leaderboard(3, 1);
+        board.reset(List.of());
+        board.upsert(1, "a", 1L);
+        board.upsert(2, "b", 2L);
+        board.upsert(3, "c", 3L);
+        assertEquals(3, board.size());
+
+        // Переполнение вытесняет последний, и рейтинг перестает быть полным
+        board.upsert(4, "d", 4L);
+        assertEquals(List.of(4L, 3L, 2L), top(board, 3).stream().map(entry -> entry.movieId).toList());
+        board.upsert(5, "e", 0L);
+        assertEquals(3, board.size());
+        assertFalse(top(board, 3).stream().anyMatch(entry -> entry.movieId == 5));
+    }
+
+    @Test
+    void demotedMovieLeavesBoardAndShortBoardAsksForReload() {
+        Leaderboard board = new Leaderboard(4, 3);
+        List<Object[]> rows = new ArrayList<>();
+        for (long id = 1; id <= 4; id++) {
+            rows.add(new Object[] {id, "movie " + id, 100 - id});
+        }
+        board.reset(rows);
+        assertFalse(board.needsReload());
+
+        // Неизвестно, кто за пределами рейтинга выше 0, поэтому фильм просто уходит
+        board.upsert(1, "movie 1", 0L);
+        assertEquals(3, board.size());
+        assertFalse(board.needsReload());
+
+        board.remove(2);
+        assertEquals(2, board.size());
+        assertTrue(board.needsReload());
+
+        // Повышение выше последнего возвращает фильм в рейтинг
+        board.upsert(1, "movie 1", 200L);
+        assertEquals(List.of(1L, 3L, 4L), top(board, 4).stream().map(entry -> entry.movieId).toList());
+    }
+}
@@ -0,0 +1,276 @@
+package org.moviesystem.back.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoaringBitmapTest {
+
+    private static final int CONTAINER = 1 << 16;
+
+    private static long[] toArray(TreeSet<Long> set, boolean descending) {
+        Iterator<Long> iterator = descending ? set.descendingIterator() : set.iterator();
+        long[] values = new long[set.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = iterator.next();
+        }
+        return values;
+    }
+
+    private static long[] toArray(BitSet set) {
+        return set.stream().asLongStream().toArray();
+    }
+
+    private static long[] all(RoaringBitmap bitmap) {
+        return bitmap.page(0, (int) bitmap.cardinality(), false);
+    }
+
+    private static void assertSame(TreeSet<Long> expected, RoaringBitmap actual) {
+        assertEquals(expected.size(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        assertArrayEquals(toArray(expected, false), all(actual));
+    }
+
+    // count значений из контейнера key: при count > 4096 - битовая карта
+    private static void fill(RoaringBitmap bitmap, BitSet reference, int key, int count, Random random) {
+        int added = 0;
+        while (added < count) {
+            int value = key * CONTAINER + random.nextInt(CONTAINER);
+            if (!reference.get(value)) {
+                bitmap.add(value);
+                reference.set(value);
+                added++;
+            }
+        }
+    }
+
+    @Test
+    void randomAddsAndRemovesMatchTreeSet() {
+        Random random = new Random(49);
+        RoaringBitmap bitmap = new RoaringBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int step = 0; step < 200_000; step++) {
+            // Контейнер 0 плотный, 1-3 разреженные, плюс далекие ключи
+            long value = switch (random.nextInt(4)) {
+                case 0 -> random.nextInt(8000);
+                case 1 -> CONTAINER + random.nextInt(3 * CONTAINER);
+                case 2 -> (random.nextLong() >>> 20) & ~0xFFFFL | random.nextInt(64);
+                default -> random.nextInt(4 * CONTAINER);
+            };
+            if (random.nextInt(3) == 0) {
+                bitmap.remove(value);
+                expected.remove(value);
+            } else {
+                bitmap.add(value);
+                expected.add(value);
+            }
+            if (step % 20_000 == 0) {
+                assertSame(expected, bitmap);
+            }
+        }
+        assertSame(expected, bitmap);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextInt(5 * CONTAINER);
+            assertEquals(expected.contains(value), bitmap.contains(value), "value " + value);
+        }
+        assertTrue(bitmap.bitmapContainers() > 0);
+    }
+
+    @Test
+    void arrayBecomesBitmapAfter4096Values() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (long value = 0; value < 2 * 4096; value += 2) {
+            bitmap.add(value);
+            expected.add(value);
+        }
+        assertEquals(4096, bitmap.cardinality());
+        assertEquals(0, bitmap.bitmapContainers());
+
+        // Повторное добавление не меняет представления
+        bitmap.add(0);
+        assertEquals(0, bitmap.bitmapContainers());
+
+        bitmap.add(1);
+        expected.add(1L);
+        assertEquals(1, bitmap.bitmapContainers());
+        assertSame(expected, bitmap);
+
+        // Удаление до 4096 возвращает массив
+        bitmap.remove(1);
+        expected.remove(1L);
+        assertEquals(0, bitmap.bitmapContainers());
+        assertSame(expected, bitmap);
+
+        // Массив, полученный из битовой карты, снова растет и превращается в нее
+        bitmap.add(3);
+        bitmap.add(5);
+        expected.add(3L);
+        expected.add(5L);
+        assertEquals(1, bitmap.bitmapContainers());
+        assertSame(expected, bitmap);
+    }
+
+    @Test
+    void removeShrinksAndDropsContainers() {
+        Random random = new Random(490);
+        RoaringBitmap bitmap = new RoaringBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int key = 0; key < 3; key++) {
+            for (int i = 0; i < 10_000; i++) {
+                long value = (long) key * CONTAINER + random.nextInt(CONTAINER);
+                bitmap.add(value);
+                expected.add(value);
+            }
+        }
+        assertEquals(3, bitmap.bitmapContainers());
+
+        int[] counts = new int[3];
+        expected.forEach(value -> counts[(int) (value >>> 16)]++);
+        List<Long> order = new ArrayList<>(expected);
+        Collections.shuffle(order, random);
+        for (Long value : order) {
+            bitmap.remove(value);
+            expected.remove(value);
+            counts[(int) (value >>> 16)]--;
+            // Битовыми картами остаются ровно контейнеры больше чем с 4096 значениями
+            int dense = 0;
+            for (int count : counts) {
+                if (count > 4096) {
+                    dense++;
+                }
+            }
+            assertEquals(dense, bitmap.bitmapContainers());
+            assertEquals(expected.size(), bitmap.cardinality());
+        }
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.cardinality());
+        assertEquals(0, bitmap.page(0, 10, false).length);
+        // Отсутствующие значения и ключи удаляются без ошибок
+        bitmap.remove(42);
+        bitmap.remove(Long.MAX_VALUE);
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    void andOrAcrossContainerTypesMatchBitSet() {
+        Random random = new Random(4900);
+        // Плотность контейнера: массив, массив на границе, битовая карта
+        int[] densities = {100, 4096, 3000, 20_000, 60_000};
+        for (int round = 0; round < 10; round++) {
+            RoaringBitmap a = new RoaringBitmap();
+            RoaringBitmap b = new RoaringBitmap();
+            BitSet expectedA = new BitSet();
+            BitSet expectedB = new BitSet();
+            for (int key = 0; key < 8; key++) {
+                // Часть ключей есть только в одном множестве
+                if (key != 6) {
+                    fill(a, expectedA, key, densities[random.nextInt(densities.length)], random);
+                }
+                if (key != 7) {
+                    fill(b, expectedB, key, densities[random.nextInt(densities.length)], random);
+                }
+            }
+            long[] beforeA = all(a);
+            long[] beforeB = all(b);
+
+            BitSet and = (BitSet) expectedA.clone();
+            and.and(expectedB);
+            BitSet or = (BitSet) expectedA.clone();
+            or.or(expectedB);
+            RoaringBitmap actualAnd = RoaringBitmap.and(a, b);
+            RoaringBitmap actualOr = RoaringBitmap.or(a, b);
+            assertArrayEquals(toArray(and), all(actualAnd));
+            assertEquals(and.cardinality(), actualAnd.cardinality());
+            assertArrayEquals(toArray(or), all(actualOr));
+            assertEquals(or.cardinality(), actualOr.cardinality());
+            assertArrayEquals(toArray(and), all(RoaringBitmap.and(b, a)));
+            assertArrayEquals(toArray(or), all(RoaringBitmap.or(b, a)));
+
+            // Операнды не меняются
+            assertArrayEquals(beforeA, all(a));
+            assertArrayEquals(beforeB, all(b));
+        }
+    }
+
+    @Test
+    void setOperationsPickRepresentationByCardinality() {
+        RoaringBitmap evens = new RoaringBitmap();
+        RoaringBitmap odds = new RoaringBitmap();
+        for (long value = 0; value < 6000; value += 2) {
+            evens.add(value);
+            odds.add(value + 1);
+        }
+        assertEquals(0, evens.bitmapContainers());
+        // Два массива по 3000 дают 6000 значений - битовую карту
+        RoaringBitmap union = RoaringBitmap.or(evens, odds);
+        assertEquals(6000, union.cardinality());
+        assertEquals(1, union.bitmapContainers());
+
+        RoaringBitmap low = new RoaringBitmap();
+        RoaringBitmap high = new RoaringBitmap();
+        for (long value = 0; value < 10_000; value++) {
+            low.add(value);
+            high.add(value + 9000);
+        }
+        assertEquals(1, low.bitmapContainers());
+        // Пересечение двух битовых карт в 1000 значений - массив
+        RoaringBitmap intersection = RoaringBitmap.and(low, high);
+        assertEquals(1000, intersection.cardinality());
+        assertEquals(0, intersection.bitmapContainers());
+        assertEquals(9000, intersection.page(0, 1, false)[0]);
+
+        // Пустое пересечение не оставляет контейнеров
+        assertTrue(RoaringBitmap.and(evens, odds).isEmpty());
+        assertTrue(RoaringBitmap.and(evens, new RoaringBitmap()).isEmpty());
+        assertEquals(3000, RoaringBitmap.or(new RoaringBitmap(), evens).cardinality());
+    }
+
+    @Test
+    void pageMatchesTreeSet() {
+        Random random = new Random(49_000);
+        RoaringBitmap bitmap = new RoaringBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int key = 0; key < 6; key++) {
+            int count = key % 2 == 0 ? 300 : 9000;
+            for (int i = 0; i < count; i++) {
+                // Ключи с пропусками
+                long value = (long) key * 3 * CONTAINER + random.nextInt(CONTAINER);
+                bitmap.add(value);
+                expected.add(value);
+            }
+        }
+        for (boolean descending : new boolean[] {false, true}) {
+            long[] ordered = toArray(expected, descending);
+            for (int i = 0; i < 500; i++) {
+                long offset = random.nextInt(ordered.length + 100);
+                int limit = random.nextInt(i % 10 == 0 ? 20_000 : 200);
+                int from = (int) Math.min(offset, ordered.length);
+                int to = (int) Math.min(offset + limit, ordered.length);
+                long[] page = bitmap.page(offset, limit, descending);
+                assertArrayEquals(Arrays.copyOfRange(ordered, from, to), page,
+                    "offset " + offset + ", limit " + limit + ", descending " + descending);
+            }
+            // Граница контейнеров
+            long boundary = expected.headSet(3L * CONTAINER).size();
+            long[] page = bitmap.page(descending ? ordered.length - boundary - 1 : boundary - 1, 2, descending);
+            assertEquals(2, page.length);
+            assertEquals(ordered[(int) (descending ? ordered.length - boundary - 1 : boundary - 1)], page[0]);
+            assertFalse(page[0] >>> 16 == page[1] >>> 16);
+        }
+        assertEquals(0, bitmap.page(expected.size(), 10, false).length);
+        assertEquals(0, bitmap.page(0, 0, true).length);
+    }
+}
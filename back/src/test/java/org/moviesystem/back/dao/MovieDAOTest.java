@@ -0,0 +1,33 @@
+package org.moviesystem.back.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MovieDAOTest {
+
+    @Test
+    void patchBindsValuesAndWritesNullLiterally() {
+        Map<String, Object> columns = new LinkedHashMap<>();
+        columns.put("name", "Solaris");
+        columns.put("budget", null);
+        columns.put("golden_palm_count", 2L);
+        columns.put("screenwriter_id", null);
+
+        assertEquals("UPDATE movies SET name = ?, budget = NULL, golden_palm_count = ?, screenwriter_id = NULL, "
+                + "version = version + 1 WHERE id = ? RETURNING version",
+            MovieDAO.patchSql(columns, false));
+    }
+
+    @Test
+    void patchChecksVersionWhenExpected() {
+        Map<String, Object> columns = new LinkedHashMap<>();
+        columns.put("budget", null);
+
+        assertEquals("UPDATE movies SET budget = NULL, version = version + 1 WHERE id = ? AND version = ? RETURNING version",
+            MovieDAO.patchSql(columns, true));
+    }
+}
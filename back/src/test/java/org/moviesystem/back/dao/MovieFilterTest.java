@@ -0,0 +1,201 @@
+package org.moviesystem.back.dao;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.moviesystem.back.model.MovieGenre;
+import org.moviesystem.back.model.MpaaRating;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Список и фасеты строятся из одного {@link MovieFilter}: число строк фасетов
+ * (facets.total) равно размеру списка (totalCount) при любом сочетании фильтров.
+ * GROUPING SETS в H2 нет, поэтому facets.total считается как COUNT(*) строк фасетов.
+ */
+class MovieFilterTest {
+
+    private static final String[] NAMES = {"Anna Karina", "Andrei Rublev", "Ran", "Solaris", "Marina", "Orson"};
+
+    private static Connection connection;
+    // {oscars, genre, director, screenwriter или -1, operator} по id фильма; имена - по id человека
+    private static final List<Object[]> movies = new ArrayList<>();
+
+    @BeforeAll
+    static void createDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:movie-filter;MODE=PostgreSQL");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE persons (id BIGINT PRIMARY KEY, name VARCHAR(100))");
+            statement.execute("CREATE TABLE movies (id BIGINT PRIMARY KEY, name VARCHAR(100), genre VARCHAR(20), "
+                + "mpaa_rating VARCHAR(10), oscars_count INT, golden_palm_count BIGINT, "
+                + "director_id BIGINT, screenwriter_id BIGINT, operator_id BIGINT)");
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO persons VALUES (?, ?)")) {
+            for (int i = 0; i < NAMES.length; i++) {
+                insert.setLong(1, i);
+                insert.setString(2, NAMES[i]);
+                insert.executeUpdate();
+            }
+        }
+        Random random = new Random(48);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO movies VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (long id = 1; id <= 500; id++) {
+                String name = NAMES[random.nextInt(NAMES.length)] + " " + id;
+                MovieGenre genre = MovieGenre.values()[random.nextInt(MovieGenre.values().length)];
+                int oscars = random.nextInt(12);
+                int director = random.nextInt(NAMES.length);
+                int screenwriter = random.nextInt(NAMES.length + 1) - 1;
+                int operator = random.nextInt(NAMES.length);
+                insert.setLong(1, id);
+                insert.setString(2, name);
+                insert.setString(3, genre.name());
+                insert.setString(4, MpaaRating.values()[random.nextInt(MpaaRating.values().length)].name());
+                insert.setInt(5, oscars);
+                insert.setObject(6, random.nextBoolean() ? null : (long) random.nextInt(6));
+                insert.setLong(7, director);
+                insert.setObject(8, screenwriter < 0 ? null : (long) screenwriter);
+                insert.setLong(9, operator);
+                insert.executeUpdate();
+                movies.add(new Object[] {id, name, genre, oscars, director, screenwriter, operator});
+            }
+        }
+    }
+
+    @AfterAll
+    static void closeDatabase() throws SQLException {
+        connection.close();
+    }
+
+    private static PreparedStatement prepare(String sql, MovieFilter filter) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        List<Object> parameters = filter.parameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            statement.setObject(i + 1, parameters.get(i));
+        }
+        return statement;
+    }
+
+    private static List<Long> list(MovieFilter filter, String column, String direction) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement statement = prepare(MovieDAO.listSql(filter, column, direction), filter);
+             ResultSet rows = statement.executeQuery()) {
+            while (rows.next()) {
+                ids.add(rows.getLong("id"));
+            }
+        }
+        return ids;
+    }
+
+    private static long facetsTotal(MovieFilter filter) throws SQLException {
+        try (PreparedStatement statement = prepare(
+                "SELECT COUNT(*) FROM (" + MovieDAO.facetRowsSql(filter) + ") f", filter);
+             ResultSet rows = statement.executeQuery()) {
+            rows.next();
+            return rows.getLong(1);
+        }
+    }
+
+    private static boolean like(String value, String part) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(part.toLowerCase(Locale.ROOT));
+    }
+
+    private static String person(int id) {
+        return id < 0 ? null : NAMES[id];
+    }
+
+    // Те же фильтры перебором, через И
+    private static long expected(String search, String genre, String director, Integer minOscars, Integer maxOscars) {
+        long count = 0;
+        for (Object[] movie : movies) {
+            String name = (String) movie[1];
+            MovieGenre movieGenre = (MovieGenre) movie[2];
+            int oscars = (int) movie[3];
+            String directorName = person((int) movie[4]);
+            boolean matches = (search == null || like(name, search) || like(movieGenre.name(), search)
+                    || like(directorName, search) || like(person((int) movie[5]), search)
+                    || like(person((int) movie[6]), search))
+                && (genre == null || movieGenre.name().equals(genre))
+                && (director == null || like(directorName, director))
+                && (minOscars == null || oscars >= minOscars)
+                && (maxOscars == null || oscars <= maxOscars);
+            if (matches) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void facetsTotalEqualsListSizeForCombinedFilters() throws SQLException {
+        int nonEmpty = 0;
+        for (String search : new String[] {null, "an", "drama"}) {
+            for (String genre : new String[] {null, "DRAMA", "COMEDY"}) {
+                for (String director : new String[] {null, "AN", "orson"}) {
+                    for (Integer minOscars : new Integer[] {null, 3}) {
+                        for (Integer maxOscars : new Integer[] {null, 8}) {
+                            MovieFilter filter = new MovieFilter(search, genre, director, minOscars, maxOscars);
+                            String combination = search + "/" + genre + "/" + director + "/" + minOscars + "/" + maxOscars;
+                            if (genre != null && !isGenre(genre)) {
+                                assertTrue(filter.matchesNothing(), combination);
+                                continue;
+                            }
+                            List<Long> ids = list(filter, "id", "ASC");
+                            assertEquals(expected(search, genre, director, minOscars, maxOscars), ids.size(), combination);
+                            assertEquals(ids.size(), facetsTotal(filter), combination);
+                            if (!ids.isEmpty()) {
+                                nonEmpty++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(nonEmpty > 20, "too few non-empty combinations: " + nonEmpty);
+    }
+
+    @Test
+    void listIsSortedWithIdTieBreak() throws SQLException {
+        MovieFilter filter = new MovieFilter(null, null, "an", 2, null);
+        List<Long> ascending = list(filter, "oscars_count", "ASC");
+        List<Long> descending = list(filter, "oscars_count", "DESC");
+        assertEquals(ascending.size(), descending.size());
+        int previousOscars = -1;
+        long previousId = 0;
+        for (long id : ascending) {
+            int oscars = (int) movies.get((int) id - 1)[3];
+            assertTrue(oscars > previousOscars || (oscars == previousOscars && id > previousId));
+            previousOscars = oscars;
+            previousId = id;
+        }
+        assertEquals((int) movies.get(descending.get(0).intValue() - 1)[3],
+            (int) movies.get(ascending.get(ascending.size() - 1).intValue() - 1)[3]);
+    }
+
+    @Test
+    void unknownGenreMatchesNothing() {
+        assertTrue(new MovieFilter(null, "NOIR", null, null, null).matchesNothing());
+        assertEquals(" FROM movies m WHERE TRUE", new MovieFilter(" ", null, "", null, null).sql());
+    }
+
+    private static boolean isGenre(String genre) {
+        for (MovieGenre value : MovieGenre.values()) {
+            if (value.name().equals(genre)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,149 @@
+package org.moviesystem.back.dao;
+
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import jakarta.persistence.PersistenceUnitUtil;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.moviesystem.back.model.Coordinates;
+import org.moviesystem.back.model.Location;
+import org.moviesystem.back.model.Movie;
+import org.moviesystem.back.model.MovieGenre;
+import org.moviesystem.back.model.MpaaRating;
+import org.moviesystem.back.model.Person;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Чтение как в {@link org.moviesystem.back.replica.ReplicaRouter}: единица "replica" (без
+ * разделяемого кеша, классы связаны), EntityManager закрывается до сериализации. Все
+ * связи фильма должны быть загружены внутри чтения, иначе JSON-B их уже не получит.
+ */
+class ReplicaReadTest {
+
+    private static EntityManagerFactory factory;
+    private static final MovieQueryRegistry registry = new MovieQueryRegistry();
+
+    @BeforeAll
+    static void createDatabase() {
+        factory = Persistence.createEntityManagerFactory("replica", Map.of(
+            "jakarta.persistence.jdbc.driver", "org.h2.Driver",
+            "jakarta.persistence.jdbc.url", "jdbc:h2:mem:replica-read;DB_CLOSE_DELAY=-1",
+            "eclipselink.target-database", "org.eclipse.persistence.platform.database.H2Platform",
+            "eclipselink.ddl-generation", "create-tables",
+            "eclipselink.ddl-generation.output-mode", "database",
+            "eclipselink.logging.level", "OFF"));
+        registry.register(factory);
+
+        EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 1; i <= 30; i++) {
+            Person director = person("Director " + i, i);
+            Person operator = person("Operator " + i, -i);
+            // У части фильмов нет сценариста, у части людей - местоположения
+            Person screenwriter = i % 3 == 0 ? null : person("Screenwriter " + i, i % 2 == 0 ? 0 : i * 10);
+            em.persist(new Movie("Movie " + i, new Coordinates(i, i * 1.5), i % 5, 1000.0 * i, 10_000L * i,
+                MpaaRating.values()[i % MpaaRating.values().length], director, screenwriter, operator,
+                90L + i, null, MovieGenre.values()[i % MovieGenre.values().length]));
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    }
+
+    private static Person person(String name, int location) {
+        Person person = new Person(name, LocalDate.of(1950, 1, 1));
+        if (location != 0) {
+            person.setLocation(new Location(location, location * 2L, 0.5));
+        }
+        return person;
+    }
+
+    private static <T> T read(Function<EntityManager, T> work) {
+        EntityManager em = factory.createEntityManager();
+        try {
+            return work.apply(em);
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void assertLoaded(List<Movie> movies) {
+        PersistenceUnitUtil util = factory.getPersistenceUnitUtil();
+        assertFalse(movies.isEmpty());
+        for (Movie movie : movies) {
+            for (String relation : new String[] {"coordinates", "director", "screenwriter", "operator"}) {
+                assertTrue(util.isLoaded(movie, relation), movie.getName() + "." + relation);
+            }
+        }
+        // Связи доступны после закрытия EntityManager
+        for (Movie movie : movies) {
+            for (Person person : new Person[] {movie.getDirector(), movie.getScreenwriter(), movie.getOperator()}) {
+                if (person != null) {
+                    assertTrue(util.isLoaded(person, "location"), person.getName() + ".location");
+                }
+            }
+        }
+    }
+
+    private static void assertSerialized(List<Movie> movies) throws Exception {
+        try (Jsonb jsonb = JsonbBuilder.create()) {
+            for (Movie movie : movies) {
+                String json = jsonb.toJson(movie);
+                int number = Integer.parseInt(movie.getName().substring("Movie ".length()));
+                assertTrue(json.contains("\"name\":\"Director " + number + "\""), json);
+                assertTrue(json.contains("\"name\":\"Operator " + number + "\""), json);
+                assertTrue(json.contains("\"x\":" + number + ","), json);
+                assertEquals(number % 3 != 0, json.contains("\"name\":\"Screenwriter " + number + "\""), json);
+                // Местоположение оператора: x = -number
+                assertTrue(json.contains("\"x\":" + -number + ","), json);
+            }
+        }
+    }
+
+    @Test
+    void registryQueryLoadsRelationsBeforeClose() throws Exception {
+        List<Movie> movies = read(em -> Queries.readOnly(em,
+                em.createNamedQuery(registry.name(MovieQueryRegistry.FIND_ALL, "name", "desc"), Movie.class))
+            .setFirstResult(5)
+            .setMaxResults(20)
+            .getResultList());
+        assertEquals(20, movies.size());
+        assertLoaded(movies);
+        assertSerialized(movies);
+    }
+
+    @Test
+    void namedQueryWithRelationsLoadsThemBeforeClose() throws Exception {
+        List<Movie> movies = read(em -> Queries.withRelations(Queries.readOnly(em,
+                em.createNamedQuery(Movie.FIND_ALL, Movie.class)))
+            .getResultList());
+        assertEquals(30, movies.size());
+        assertLoaded(movies);
+        assertSerialized(movies);
+    }
+
+    @Test
+    void filteredNativeQueryLoadsRelationsBeforeClose() throws Exception {
+        MovieFilter filter = new MovieFilter(null, null, "director", 1, null);
+        List<Movie> movies = read(em -> MovieDAO.readFiltered(em, MovieDAO.listSql(filter, "id", "ASC"), filter));
+        assertEquals(24, movies.size());
+        assertLoaded(movies);
+        assertSerialized(movies);
+    }
+}
@@ -0,0 +1,32 @@
+package org.moviesystem.back.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimedInterceptorTest {
+
+    @Test
+    void collectionsCountTheirElements() {
+        assertEquals(0, TimedInterceptor.rowCount(List.of()));
+        assertEquals(3, TimedInterceptor.rowCount(List.of(1, 2, 3)));
+    }
+
+    @Test
+    void scalarsAndEntitiesAreOneRow() {
+        assertEquals(1, TimedInterceptor.rowCount(42L));
+        assertEquals(1, TimedInterceptor.rowCount(7));
+        assertEquals(1, TimedInterceptor.rowCount(0L));
+        assertEquals(1, TimedInterceptor.rowCount("entity"));
+    }
+
+    @Test
+    void emptyResultsAreZeroRows() {
+        assertEquals(0, TimedInterceptor.rowCount(null));
+        assertEquals(0, TimedInterceptor.rowCount(Optional.empty()));
+        assertEquals(1, TimedInterceptor.rowCount(Optional.of("entity")));
+    }
+}
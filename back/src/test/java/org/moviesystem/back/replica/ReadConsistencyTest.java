@@ -0,0 +1,51 @@
+package org.moviesystem.back.replica;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReadConsistencyTest {
+
+    @Test
+    void parsesBothHalvesAsHex() {
+        assertEquals(0L, ReadConsistency.parseLsn("0/0"));
+        assertEquals(0x16_B374D848L, ReadConsistency.parseLsn("16/B374D848"));
+        assertEquals(0x16_B374D848L, ReadConsistency.parseLsn("16/b374d848"));
+        assertEquals(0x1_0000000AL, ReadConsistency.parseLsn("1/A"));
+        assertEquals(0xFFFFFFFF_FFFFFFFFL, ReadConsistency.parseLsn("FFFFFFFF/FFFFFFFF"));
+    }
+
+    @Test
+    void preservesWalOrder() {
+        // Сравнение по LSN должно совпадать с порядком записи в WAL
+        assertEquals(-1, Long.compareUnsigned(ReadConsistency.parseLsn("0/FFFFFFFF"), ReadConsistency.parseLsn("1/0")));
+        assertEquals(-1, Long.compareUnsigned(ReadConsistency.parseLsn("16/B374D848"), ReadConsistency.parseLsn("16/B374D849")));
+    }
+
+    @Test
+    void rejectsMalformedLsn() {
+        for (String lsn : new String[] {"", "16", "/B374D848", "16/", "16:B374D848", "-1/0", "1/-1", "+1/0",
+            "G/0", "0/1G", "1/2/3", "0/100000000", "100000000/0", " 1/0"}) {
+            assertThrows(IllegalArgumentException.class, () -> ReadConsistency.parseLsn(lsn), lsn);
+        }
+    }
+
+    @Test
+    void malformedTokenRequiresPrimary() {
+        assertEquals(0L, ReadConsistency.parseToken(null));
+        assertEquals(0L, ReadConsistency.parseToken("  "));
+        assertEquals(0x16_B374D848L, ReadConsistency.parseToken(" 16/B374D848 "));
+        assertEquals(Long.MAX_VALUE, ReadConsistency.parseToken("garbage"));
+        assertEquals(Long.MAX_VALUE, ReadConsistency.parseToken("-1/0"));
+    }
+
+    @Test
+    void bindIsVisibleOnlyInsideTask() {
+        assertNull(ReadConsistency.current());
+        long inside = ReadConsistency.bind("2/10", () -> ReadConsistency.current().minLsn()).get();
+        assertEquals(0x2_00000010L, inside);
+        assertNull(ReadConsistency.current());
+    }
+}
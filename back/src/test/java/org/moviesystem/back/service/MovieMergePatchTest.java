@@ -0,0 +1,90 @@
+package org.moviesystem.back.service;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MovieMergePatchTest {
+
+    private static JsonObject json(String text) {
+        return Json.createReader(new StringReader(text)).readObject();
+    }
+
+    private static MovieMergePatch parse(String text) {
+        return MovieMergePatch.parse(json(text));
+    }
+
+    @Test
+    void mapsFieldsToColumnsInRequestOrder() {
+        MovieMergePatch patch = parse("{\"name\": \"Solaris\", \"oscarsCount\": 2, \"genre\": \"DRAMA\","
+            + " \"director\": {\"id\": 5}, \"version\": 3}");
+
+        assertEquals(Arrays.asList("name", "oscars_count", "genre", "director_id"),
+            Arrays.asList(patch.columns().keySet().toArray()));
+        assertEquals("Solaris", patch.columns().get("name"));
+        assertEquals(2, patch.columns().get("oscars_count"));
+        assertEquals("DRAMA", patch.columns().get("genre"));
+        assertEquals(5L, patch.columns().get("director_id"));
+        assertEquals(5L, patch.fields().get("director"));
+        assertEquals(3L, patch.version());
+    }
+
+    @Test
+    void nullClearsOptionalFields() {
+        MovieMergePatch patch = parse("{\"budget\": null, \"goldenPalmCount\": null, \"screenwriter\": null}");
+
+        assertEquals(3, patch.columns().size());
+        assertTrue(patch.columns().containsKey("budget"));
+        assertNull(patch.columns().get("budget"));
+        assertTrue(patch.columns().containsKey("golden_palm_count"));
+        assertNull(patch.columns().get("golden_palm_count"));
+        assertTrue(patch.columns().containsKey("screenwriter_id"));
+        assertNull(patch.columns().get("screenwriter_id"));
+    }
+
+    @Test
+    void nullIsRejectedForRequiredFields() {
+        for (String field : new String[] {"name", "oscarsCount", "totalBoxOffice", "length", "mpaaRating",
+            "genre", "coordinates", "director", "operator"}) {
+            assertThrows(IllegalArgumentException.class, () -> parse("{\"" + field + "\": null}"), field);
+        }
+    }
+
+    @Test
+    void unknownAndNestedFieldsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"creationDate\": \"2020-01-01\"}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"title\": \"Solaris\"}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"director\": {\"id\": 5, \"name\": \"A\"}}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"coordinates\": {\"x\": 1}}"));
+    }
+
+    @Test
+    void wrongTypesAndValuesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"name\": 5}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"name\": \"  \"}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"oscarsCount\": \"2\"}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"oscarsCount\": 1.5}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"oscarsCount\": -1}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"length\": 0}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"budget\": 0}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"genre\": \"NOIR\"}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"director\": 5}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"version\": \"1\"}"));
+    }
+
+    @Test
+    void idAndVersionAreNotColumns() {
+        MovieMergePatch patch = parse("{\"id\": 10, \"version\": 4}");
+
+        assertTrue(patch.isEmpty());
+        assertEquals(4L, patch.version());
+    }
+}
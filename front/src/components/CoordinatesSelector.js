@@ -1,30 +1,15 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState } from 'react';
 import axios from 'axios';
+import useLookup from '../hooks/useLookup';
 import './SelectorStyles.css';
 
 const API_BASE_URL = 'http://localhost:8080/back-1.0-SNAPSHOT/api';
 
 const CoordinatesSelector = ({ value, onChange, label }) => {
-  const [existingCoordinates, setExistingCoordinates] = useState([]);
-  const [loading, setLoading] = useState(false);
   const [useExisting, setUseExisting] = useState(false);
   const [selectedId, setSelectedId] = useState('');
-
-  useEffect(() => {
-    fetchExistingCoordinates();
-  }, []);
-
-  const fetchExistingCoordinates = async () => {
-    try {
-      setLoading(true);
-      const response = await axios.get(`${API_BASE_URL}/coordinates`);
-      setExistingCoordinates(response.data);
-    } catch (error) {
-      console.error('Error fetching coordinates:', error);
-    } finally {
-      setLoading(false);
-    }
-  };
+  const [search, setSearch] = useState('');
+  const { items, loading, hasMore, loadMore } = useLookup(`${API_BASE_URL}/coordinates`, search, useExisting);
 
   const handleModeChange = (mode) => {
     setUseExisting(mode === 'existing');
@@ -34,13 +19,16 @@ const CoordinatesSelector = ({ value, onChange, label }) => {
     }
   };
 
-  const handleExistingChange = (e) => {
+  const handleExistingChange = async (e) => {
     const id = e.target.value;
     setSelectedId(id);
     if (id) {
-      const selected = existingCoordinates.find(c => c.id === parseInt(id));
-      if (selected) {
-        onChange(selected);
+      // В списке только id и имя - полную запись загружаем по выбору
+      try {
+        const response = await axios.get(`${API_BASE_URL}/coordinates/${id}`);
+        onChange(response.data);
+      } catch (error) {
+        console.error('Error fetching coordinates:', error);
       }
     }
   };
@@ -79,19 +67,30 @@ const CoordinatesSelector = ({ value, onChange, label }) => {
 
       {useExisting ? (
         <div className="existing-selector">
+          <input
+            type="text"
+            value={search}
+            onChange={(e) => setSearch(e.target.value)}
+            placeholder="Значение X..."
+            className="form-control lookup-search"
+          />
           <select
             value={selectedId}
             onChange={handleExistingChange}
             className="form-select"
-            disabled={loading}
           >
             <option value="">Выберите координаты...</option>
-            {existingCoordinates.map(coord => (
-              <option key={coord.id} value={coord.id}>
-                X: {coord.x}, Y: {coord.y}
+            {items.map(item => (
+              <option key={item.id} value={item.id}>
+                {item.name}
               </option>
             ))}
           </select>
+          {hasMore && (
+            <button type="button" className="lookup-more" onClick={loadMore} disabled={loading}>
+              Показать еще
+            </button>
+          )}
           {loading && <div className="loading">Загрузка...</div>}
         </div>
       ) : (
@@ -70,6 +70,7 @@ const MovieForm = () => {
 
   const [loading, setLoading] = useState(false);
   const [validationErrors, setValidationErrors] = useState({});
+  const [etag, setEtag] = useState(null);
 
   useEffect(() => {
     if (isEdit) {
@@ -82,6 +83,8 @@ const MovieForm = () => {
       setLoading(true);
       const response = await axios.get(`${API_BASE_URL}/movies/${id}`);
       const movie = response.data;
+      // Версия, которую видел пользователь: PUT пройдет, только если фильм с тех пор не меняли
+      setEtag(response.headers.etag || null);
       
       setFormData({
         name: movie.name || '',
@@ -310,7 +313,8 @@ const MovieForm = () => {
       console.log('Отправляемые данные:', JSON.stringify(submitData, null, 2));
       
       if (isEdit) {
-        await axios.put(`${API_BASE_URL}/movies/${id}`, submitData);
+        await axios.put(`${API_BASE_URL}/movies/${id}`, submitData,
+          etag ? { headers: { 'If-Match': etag } } : undefined);
         toast.success('Фильм успешно обновлен');
       } else {
         await axios.post(`${API_BASE_URL}/movies`, submitData);
@@ -323,7 +327,11 @@ const MovieForm = () => {
       if (error.response) {
         console.error('Ответ сервера:', error.response.data);
         console.error('Статус:', error.response.status);
-        toast.error('Ошибка сохранения фильма: ' + (error.response.data?.error || error.message));
+        if (error.response.status === 412) {
+          toast.error('Фильм уже изменен другим пользователем. Обновите страницу и повторите изменения');
+        } else {
+          toast.error('Ошибка сохранения фильма: ' + (error.response.data?.error || error.message));
+        }
       } else {
         toast.error('Ошибка сохранения фильма: ' + error.message);
       }
@@ -1,12 +1,16 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import { Link } from 'react-router-dom';
 import { toast } from 'react-toastify';
 import axios from 'axios';
-import useWebSocket from '../hooks/useWebSocket';
+import useMovieStream from '../hooks/useMovieStream';
 import './MovieList.css';
 
 const API_BASE_URL = 'http://localhost:8080/back-1.0-SNAPSHOT/api';
 
+// Поля, которые частичное обновление меняет значением (а не ссылкой на связанный объект)
+const SCALAR_FIELDS = ['name', 'oscarsCount', 'budget', 'totalBoxOffice', 'mpaaRating',
+  'length', 'goldenPalmCount', 'genre'];
+
 const MovieList = () => {
   const [movies, setMovies] = useState([]);
   const [loading, setLoading] = useState(true);
@@ -19,25 +23,56 @@ const MovieList = () => {
   const [maxOscars, setMaxOscars] = useState('');
   const [sortField, setSortField] = useState('id');
   const [sortDirection, setSortDirection] = useState('asc');
+  // Количество фильмов по значениям фильтров для текущей выборки (facets=true)
+  const [facets, setFacets] = useState(null);
 
   const pageSize = 10;
 
-  // WebSocket connection
-  const { isConnected, lastMessage, connectionError } = useWebSocket('ws://localhost:8080/back-1.0-SNAPSHOT/websocket/movies');
+  const fetchMoviesRef = useRef(null);
+  // Фильтры, для которых получены фасеты: при смене страницы или сортировки они не меняются
+  const facetsKeyRef = useRef(null);
+  const refreshTimeoutRef = useRef(null);
+
+  // Серия изменений (например, досылка после переподключения) - одно перечитывание
+  const scheduleRefresh = () => {
+    clearTimeout(refreshTimeoutRef.current);
+    refreshTimeoutRef.current = setTimeout(() => fetchMoviesRef.current(true), 300);
+  };
+
+  // Частичное обновление фильма на текущей странице применяем на месте, если оно
+  // не может изменить состав или порядок страницы; остальные изменения - перечитывание
+  const applyChange = (change) => {
+    const fields = change.fields ? Object.keys(change.fields) : [];
+    const filtered = searchTerm || genreFilter || directorFilter || minOscars || maxOscars;
+    const inPlace = change.change === 'PATCHED'
+      && !filtered
+      && fields.every((field) => SCALAR_FIELDS.includes(field) && field !== sortField)
+      && movies.some((movie) => movie.id === change.movieId);
+    if (!inPlace) {
+      scheduleRefresh();
+      return;
+    }
+    setMovies((current) => current.map((movie) => (movie.id === change.movieId
+      ? { ...movie, ...change.fields, version: change.version }
+      : movie)));
+  };
+
+  // Поток изменений (SSE): пропущенные при обрыве изменения сервер досылает сам
+  const { isConnected, connectionError } = useMovieStream(`${API_BASE_URL}/movies/stream`, {
+    onChange: (change) => applyChange(change),
+    onResync: () => fetchMoviesRef.current(true)
+  });
 
   useEffect(() => {
     fetchMovies();
   }, [currentPage, searchTerm, genreFilter, directorFilter, minOscars, maxOscars, sortField, sortDirection]);
 
-  // Listen for WebSocket updates
-  useEffect(() => {
-    if (lastMessage && lastMessage.type === 'update') {
-      console.log('Received update notification, refreshing movies...');
-      fetchMovies();
-    }
-  }, [lastMessage]);
+  useEffect(() => () => clearTimeout(refreshTimeoutRef.current), []);
 
-  const fetchMovies = async () => {
+  // refreshFacets - данные изменились, и фасеты нужно пересчитать даже при тех же фильтрах
+  const fetchMovies = async (refreshFacets = false) => {
+    const facetsKey = JSON.stringify([searchTerm, genreFilter, directorFilter, minOscars, maxOscars]);
+    const withFacets = refreshFacets || facetsKeyRef.current !== facetsKey;
     try {
       setLoading(true);
       const params = new URLSearchParams({
@@ -49,7 +84,8 @@ const MovieList = () => {
         ...(minOscars && minOscars !== '' && { minOscars: minOscars }),
         ...(maxOscars && maxOscars !== '' && { maxOscars: maxOscars }),
         ...(sortField && { sort: sortField }),
-        ...(sortDirection && { order: sortDirection })
+        ...(sortDirection && { order: sortDirection }),
+        ...(withFacets && { facets: true })
       });
 
       console.log('Fetching movies with params:', params.toString());
@@ -57,6 +93,10 @@ const MovieList = () => {
       console.log('Received movies:', response.data.movies.length);
       setMovies(response.data.movies);
       setTotalPages(Math.ceil(response.data.totalCount / pageSize));
+      if (withFacets) {
+        setFacets(response.data.facets || null);
+        facetsKeyRef.current = facetsKey;
+      }
     } catch (error) {
       toast.error('Ошибка загрузки фильмов: ' + error.message);
     } finally {
@@ -64,6 +104,8 @@ const MovieList = () => {
     }
   };
 
+  fetchMoviesRef.current = fetchMovies;
+
   const handleDelete = async (id) => {
     if (window.confirm('Вы уверены, что хотите удалить этот фильм?')) {
       try {
@@ -91,6 +133,17 @@ const MovieList = () => {
     fetchMovies();
   };
 
+  const facetLabel = (facet, value, label) => {
+    const bucket = facets && facets[facet].find((item) => item.value === value);
+    return bucket ? `${label} (${bucket.count})` : label;
+  };
+
+  const applyOscarsBucket = (bucket) => {
+    setMinOscars(String(bucket.from));
+    setMaxOscars(bucket.to != null ? String(bucket.to) : '');
+    setCurrentPage(0);
+  };
+
   const clearFilters = () => {
     setSearchTerm('');
     setGenreFilter('');
@@ -154,9 +207,9 @@ const MovieList = () => {
               className="filter-select"
             >
               <option value="">Все жанры</option>
-              <option value="DRAMA">Драма</option>
-              <option value="ADVENTURE">Приключения</option>
-              <option value="FANTASY">Фэнтези</option>
+              <option value="DRAMA">{facetLabel('genre', 'DRAMA', 'Драма')}</option>
+              <option value="ADVENTURE">{facetLabel('genre', 'ADVENTURE', 'Приключения')}</option>
+              <option value="FANTASY">{facetLabel('genre', 'FANTASY', 'Фэнтези')}</option>
             </select>
           </div>
           
@@ -201,6 +254,31 @@ const MovieList = () => {
             </button>
           </div>
         </div>
+
+        {facets && (
+          <div className="facets">
+            <span className="facets-label">Оскары:</span>
+            {facets.oscarsCount.map((bucket) => (
+              <button
+                key={bucket.value}
+                type="button"
+                className="facet-chip"
+                disabled={bucket.count === 0}
+                onClick={() => applyOscarsBucket(bucket)}
+              >
+                {bucket.value} ({bucket.count})
+              </button>
+            ))}
+            <span className="facets-label">MPAA:</span>
+            {facets.mpaaRating.map((bucket) => (
+              <span key={bucket.value} className="facet-count">{bucket.value}: {bucket.count}</span>
+            ))}
+            <span className="facets-label">Золотые пальмы:</span>
+            {facets.goldenPalmCount.map((bucket) => (
+              <span key={bucket.value} className="facet-count">{bucket.value}: {bucket.count}</span>
+            ))}
+          </div>
+        )}
       </div>
 
       <div className="table-container">
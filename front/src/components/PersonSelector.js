@@ -1,30 +1,15 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState } from 'react';
 import axios from 'axios';
+import useLookup from '../hooks/useLookup';
 import './SelectorStyles.css';
 
 const API_BASE_URL = 'http://localhost:8080/back-1.0-SNAPSHOT/api';
 
 const PersonSelector = ({ value, onChange, label, required = false }) => {
-  const [existingPersons, setExistingPersons] = useState([]);
-  const [loading, setLoading] = useState(false);
   const [useExisting, setUseExisting] = useState(false);
   const [selectedId, setSelectedId] = useState('');
-
-  useEffect(() => {
-    fetchExistingPersons();
-  }, []);
-
-  const fetchExistingPersons = async () => {
-    try {
-      setLoading(true);
-      const response = await axios.get(`${API_BASE_URL}/persons`);
-      setExistingPersons(response.data);
-    } catch (error) {
-      console.error('Error fetching persons:', error);
-    } finally {
-      setLoading(false);
-    }
-  };
+  const [search, setSearch] = useState('');
+  const { items, loading, hasMore, loadMore } = useLookup(`${API_BASE_URL}/persons`, search, useExisting);
 
   const handleModeChange = (mode) => {
     setUseExisting(mode === 'existing');
@@ -41,13 +26,16 @@ const PersonSelector = ({ value, onChange, label, required = false }) => {
     }
   };
 
-  const handleExistingChange = (e) => {
+  const handleExistingChange = async (e) => {
     const id = e.target.value;
     setSelectedId(id);
     if (id) {
-      const selected = existingPersons.find(p => p.id === parseInt(id));
-      if (selected) {
-        onChange(selected);
+      // В списке только id и имя - полную запись загружаем по выбору
+      try {
+        const response = await axios.get(`${API_BASE_URL}/persons/${id}`);
+        onChange(response.data);
+      } catch (error) {
+        console.error('Error fetching persons:', error);
       }
     }
   };
@@ -103,20 +91,31 @@ const PersonSelector = ({ value, onChange, label, required = false }) => {
 
       {useExisting ? (
         <div className="existing-selector">
+          <input
+            type="text"
+            value={search}
+            onChange={(e) => setSearch(e.target.value)}
+            placeholder="Начните вводить имя..."
+            className="form-control lookup-search"
+          />
           <select
             value={selectedId}
             onChange={handleExistingChange}
             className="form-select"
-            disabled={loading}
             required={required}
           >
             <option value="">Выберите человека...</option>
-            {existingPersons.map(person => (
-              <option key={person.id} value={person.id}>
-                {person.name} ({person.birthday})
+            {items.map(item => (
+              <option key={item.id} value={item.id}>
+                {item.name}
               </option>
             ))}
           </select>
+          {hasMore && (
+            <button type="button" className="lookup-more" onClick={loadMore} disabled={loading}>
+              Показать еще
+            </button>
+          )}
           {loading && <div className="loading">Загрузка...</div>}
         </div>
       ) : (
@@ -1,19 +1,66 @@
 import React, { useState, useEffect } from 'react';
 import { toast } from 'react-toastify';
 import axios from 'axios';
+import useWebSocket from '../hooks/useWebSocket';
 import './SpecialOperations.css';
 
 const API_BASE_URL = 'http://localhost:8080/back-1.0-SNAPSHOT/api';
 
+const JOB_SUCCESS_MESSAGES = {
+  DELETE_BY_GOLDEN_PALM_COUNT: 'Фильмы успешно удалены',
+  REDISTRIBUTE_OSCARS: 'Оскары успешно перераспределены',
+  ADD_OSCARS_TO_LONG_MOVIES: 'Оскары успешно добавлены',
+  ARCHIVE_MOVIES: 'Старые фильмы перенесены в архив'
+};
+
+const jobStatusText = (job) => {
+  if (!job) return '';
+  switch (job.status) {
+    case 'QUEUED':
+      return 'в очереди';
+    case 'RUNNING':
+      return `выполняется (${job.processedItems} из ${job.totalItems})`;
+    case 'SUCCEEDED':
+      return `завершено, обработано фильмов: ${job.processedItems}`;
+    case 'FAILED':
+      return 'завершилось с ошибкой';
+    default:
+      return job.status;
+  }
+};
+
 const SpecialOperations = () => {
   const [loading, setLoading] = useState(false);
   const [results, setResults] = useState(null);
   const [availableGenres, setAvailableGenres] = useState([]);
+  // Фоновая задача последней массовой операции: прогресс приходит по WebSocket
+  const [job, setJob] = useState(null);
+  const { lastMessage } = useWebSocket('ws://localhost:8080/back-1.0-SNAPSHOT/websocket/movies');
 
   useEffect(() => {
     fetchAvailableGenres();
   }, []);
 
+  useEffect(() => {
+    if (!lastMessage || lastMessage.type !== 'job' || !job || lastMessage.jobId !== job.id) {
+      return;
+    }
+    setJob(prev => ({ ...prev, status: lastMessage.status, processedItems: lastMessage.processed, totalItems: lastMessage.total }));
+    if (lastMessage.status === 'SUCCEEDED') {
+      toast.success(JOB_SUCCESS_MESSAGES[lastMessage.jobType]);
+    } else if (lastMessage.status === 'FAILED') {
+      // Текст ошибки в WebSocket-сообщение не попадает - берем его из задачи
+      axios.get(`${API_BASE_URL}/jobs/${job.id}`)
+        .then(response => toast.error('Ошибка выполнения операции: ' + response.data.error))
+        .catch(() => toast.error('Ошибка выполнения операции'));
+    }
+  }, [lastMessage]);
+
+  const startJob = (response) => {
+    setJob(response.data);
+    toast.info(`Операция запущена (задача #${response.data.id})`);
+  };
+
   const fetchAvailableGenres = async () => {
     try {
       const response = await axios.get(`${API_BASE_URL}/movies/genres`);
@@ -35,8 +82,8 @@ const SpecialOperations = () => {
     if (window.confirm(`Вы уверены, что хотите удалить фильмы с ${goldenPalmCount} Золотыми пальмами?`)) {
       try {
         setLoading(true);
-        await axios.delete(`${API_BASE_URL}/movies/by-golden-palm/${goldenPalmCount}`);
-        toast.success('Фильмы успешно удалены');
+        const response = await axios.delete(`${API_BASE_URL}/movies/by-golden-palm/${goldenPalmCount}`);
+        startJob(response);
         setResults({ operation: 'delete', goldenPalmCount });
       } catch (error) {
         toast.error('Ошибка удаления фильмов: ' + error.message);
@@ -98,9 +145,9 @@ const SpecialOperations = () => {
     if (window.confirm(`Вы уверены, что хотите перераспределить Оскары с ${fromGenre} на ${toGenre}?`)) {
       try {
         setLoading(true);
-        await axios.post(`${API_BASE_URL}/movies/redistribute-oscars?fromGenre=${fromGenre}&toGenre=${toGenre}`);
+        const response = await axios.post(`${API_BASE_URL}/movies/redistribute-oscars?fromGenre=${fromGenre}&toGenre=${toGenre}`);
+        startJob(response);
         setResults({ operation: 'redistribute', fromGenre, toGenre });
-        toast.success('Оскары успешно перераспределены');
       } catch (error) {
         toast.error('Ошибка перераспределения Оскаров: ' + error.message);
       } finally {
@@ -122,9 +169,9 @@ const SpecialOperations = () => {
     if (window.confirm(`Вы уверены, что хотите добавить ${oscarsToAdd} Оскаров к фильмам длиннее ${minLength} минут?`)) {
       try {
         setLoading(true);
-        await axios.post(`${API_BASE_URL}/movies/add-oscars-to-long-movies?minLength=${minLength}&oscarsToAdd=${oscarsToAdd}`);
+        const response = await axios.post(`${API_BASE_URL}/movies/add-oscars-to-long-movies?minLength=${minLength}&oscarsToAdd=${oscarsToAdd}`);
+        startJob(response);
         setResults({ operation: 'addOscars', minLength, oscarsToAdd });
-        toast.success('Оскары успешно добавлены');
       } catch (error) {
         toast.error('Ошибка добавления Оскаров: ' + error.message);
       } finally {
@@ -282,7 +329,7 @@ const SpecialOperations = () => {
           <div className="results-content">
             {results.operation === 'delete' && (
               <div className="result-item">
-                <p>Фильмы с {results.goldenPalmCount} Золотыми пальмами были удалены.</p>
+                <p>Удаление фильмов с {results.goldenPalmCount} Золотыми пальмами: {jobStatusText(job)}</p>
               </div>
             )}
             {results.operation === 'sum' && (
@@ -302,12 +349,12 @@ const SpecialOperations = () => {
             )}
             {results.operation === 'redistribute' && (
               <div className="result-item">
-                <p>Оскары были перераспределены с <strong>{results.fromGenre}</strong> на <strong>{results.toGenre}</strong>.</p>
+                <p>Перераспределение Оскаров с <strong>{results.fromGenre}</strong> на <strong>{results.toGenre}</strong>: {jobStatusText(job)}</p>
               </div>
             )}
             {results.operation === 'addOscars' && (
               <div className="result-item">
-                <p>Добавлено <strong>{results.oscarsToAdd}</strong> Оскаров к фильмам длиннее <strong>{results.minLength}</strong> минут.</p>
+                <p>Добавление <strong>{results.oscarsToAdd}</strong> Оскаров к фильмам длиннее <strong>{results.minLength}</strong> минут: {jobStatusText(job)}</p>
               </div>
             )}
             {results.operation === 'oscarsSummary' && (
@@ -0,0 +1,23 @@
+import axios from 'axios';
+
+const HEADER = 'x-consistency-token';
+
+// Токен согласованности (LSN последней записи этого клиента). Сервер выдает его
+// в ответе на запись, а чтение с ним идет только с реплик, уже видящих эту запись.
+let token = null;
+
+axios.interceptors.request.use((config) => {
+  if (token) {
+    config.headers = config.headers || {};
+    config.headers[HEADER] = token;
+  }
+  return config;
+});
+
+axios.interceptors.response.use((response) => {
+  const received = response.headers && response.headers[HEADER];
+  if (received) {
+    token = received;
+  }
+  return response;
+});
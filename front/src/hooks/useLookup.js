@@ -0,0 +1,50 @@
+import { useCallback, useEffect, useRef, useState } from 'react';
+import axios from 'axios';
+
+const PAGE_SIZE = 20;
+const DEBOUNCE_MS = 300;
+
+// Постраничная загрузка легких проекций (id, name) из /api/<resource>/lookup.
+// Сервер отдает keyset-курсор nextCursor, поэтому каждая страница стоит одинаково
+// независимо от размера таблицы; поиск по префиксу выполняется с задержкой ввода.
+const useLookup = (baseUrl, query, enabled = true) => {
+  const [items, setItems] = useState([]);
+  const [nextCursor, setNextCursor] = useState(null);
+  const [loading, setLoading] = useState(false);
+  const requestId = useRef(0);
+
+  const fetchPage = useCallback(async (after, append) => {
+    const current = ++requestId.current;
+    try {
+      setLoading(true);
+      const params = new URLSearchParams({ limit: PAGE_SIZE });
+      if (query) params.append('q', query);
+      if (after) params.append('after', after);
+      const response = await axios.get(`${baseUrl}/lookup?${params}`);
+      // Ответ на устаревший запрос (пользователь уже ввел другой префикс) игнорируем
+      if (current !== requestId.current) return;
+      setItems(prev => (append ? [...prev, ...response.data.items] : response.data.items));
+      setNextCursor(response.data.nextCursor);
+    } catch (error) {
+      console.error('Error fetching lookup page:', error);
+    } finally {
+      if (current === requestId.current) setLoading(false);
+    }
+  }, [baseUrl, query]);
+
+  useEffect(() => {
+    if (!enabled) return undefined;
+    const timeout = setTimeout(() => fetchPage(null, false), DEBOUNCE_MS);
+    return () => clearTimeout(timeout);
+  }, [fetchPage, enabled]);
+
+  const loadMore = () => {
+    if (nextCursor && !loading) {
+      fetchPage(nextCursor, true);
+    }
+  };
+
+  return { items, loading, hasMore: nextCursor !== null, loadMore };
+};
+
+export default useLookup;
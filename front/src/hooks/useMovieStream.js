@@ -0,0 +1,92 @@
+import { useEffect, useRef, useState } from 'react';
+
+// Поток изменений фильмов (Server-Sent Events, GET /movies/stream).
+// После обрыва сервер досылает пропущенные изменения по id последнего события,
+// а resync присылает, только если они уже недоступны - тогда данные нужно перечитать.
+// Обработчики вызываются на каждое событие (без склейки состояний React).
+const useMovieStream = (url, { onChange, onResync } = {}) => {
+  const [isConnected, setIsConnected] = useState(false);
+  const [connectionError, setConnectionError] = useState(null);
+  const handlersRef = useRef({ onChange, onResync });
+  const lastEventIdRef = useRef(null);
+  const reconnectTimeoutRef = useRef(null);
+  const reconnectAttempts = useRef(0);
+
+  handlersRef.current = { onChange, onResync };
+
+  useEffect(() => {
+    let source = null;
+    let closed = false;
+
+    const connect = () => {
+      const streamUrl = lastEventIdRef.current
+        ? `${url}?lastEventId=${encodeURIComponent(lastEventIdRef.current)}`
+        : url;
+      source = new EventSource(streamUrl);
+
+      source.addEventListener('ready', (event) => {
+        lastEventIdRef.current = event.lastEventId;
+        reconnectAttempts.current = 0;
+        setIsConnected(true);
+        setConnectionError(null);
+      });
+
+      source.addEventListener('change', (event) => {
+        lastEventIdRef.current = event.lastEventId;
+        try {
+          const change = JSON.parse(event.data);
+          if (handlersRef.current.onChange) {
+            handlersRef.current.onChange(change);
+          }
+        } catch (error) {
+          console.error('Error parsing stream event:', error);
+        }
+      });
+
+      source.addEventListener('resync', (event) => {
+        lastEventIdRef.current = event.lastEventId;
+        console.log('Movie stream requires resync:', event.data);
+        // Случайная задержка: после перезапуска сервера клиенты перечитывают данные не одновременно
+        const delay = Math.random() * 2000;
+        setTimeout(() => {
+          if (!closed && handlersRef.current.onResync) {
+            handlersRef.current.onResync();
+          }
+        }, delay);
+      });
+
+      source.onerror = () => {
+        setIsConnected(false);
+        // При обрыве браузер переподключается сам (с Last-Event-ID), но после ответа
+        // с ошибкой (например, 404 во время развертывания) закрывает поток - тогда
+        // переподключаемся сами, передавая id параметром
+        if (source.readyState === EventSource.CLOSED && !closed) {
+          const base = Math.min(30000, 1000 * Math.pow(2, reconnectAttempts.current));
+          const delay = base * (0.5 + Math.random());
+          reconnectAttempts.current++;
+          setConnectionError('Поток изменений недоступен, повторное подключение...');
+          reconnectTimeoutRef.current = setTimeout(connect, delay);
+        }
+      };
+    };
+
+    connect();
+
+    return () => {
+      closed = true;
+      if (reconnectTimeoutRef.current) {
+        clearTimeout(reconnectTimeoutRef.current);
+      }
+      if (source) {
+        source.close();
+      }
+    };
+  }, [url]);
+
+  return {
+    isConnected,
+    connectionError
+  };
+};
+
+export default useMovieStream;